@@ -25,6 +25,10 @@ import util.Sampler;
 public class RandomBiasedAI extends AI {
     static final double REGULAR_ACTION_WEIGHT = 1;
     static final double BIASED_ACTION_WEIGHT = 5;
+    // the weight of each action type (indexed by UnitAction.TYPE_*):
+    static final double ACTION_WEIGHTS[] = {REGULAR_ACTION_WEIGHT, REGULAR_ACTION_WEIGHT,
+                                             BIASED_ACTION_WEIGHT, BIASED_ACTION_WEIGHT,
+                                             REGULAR_ACTION_WEIGHT, BIASED_ACTION_WEIGHT};
     Random r = new Random();
 
     
@@ -107,6 +111,17 @@ public class RandomBiasedAI extends AI {
     }
     
     
+    /**
+     * Issues the same kind of actions as getAction directly in an ArrayGameState
+     * (used to run fast playouts)
+     * @param player
+     * @param gs
+     */
+    public void issueAction(int player, ArrayGameState gs) {
+        gs.issueRandomActions(player, ACTION_WEIGHTS, 10, r);
+    }
+    
+    
     @Override
     public List<ParameterSpecification> getParameters()
     {
@@ -121,7 +121,7 @@ public class EconomyRush extends AbstractionLayerAI {
 
     @Override
     public AI clone() {
-        return new EconomyRush(utt, pf);
+        return new EconomyRush(utt, pf.clone());
     }
 
     @Override
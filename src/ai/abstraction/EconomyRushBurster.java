@@ -117,7 +117,7 @@ public class EconomyRushBurster extends AbstractionLayerAI {
 
     @Override
     public AI clone() {
-        return new EconomyRushBurster(utt, pf);
+        return new EconomyRushBurster(utt, pf.clone());
     }
 
     @Override
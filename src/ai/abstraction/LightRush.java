@@ -62,7 +62,7 @@ public class LightRush extends AbstractionLayerAI {
     
 
     public AI clone() {
-        return new LightRush(utt, pf);
+        return new LightRush(utt, pf.clone());
     }
 
     /*
@@ -58,7 +58,7 @@ public class RangedRush extends AbstractionLayerAI {
     }
 
     public AI clone() {
-        return new RangedRush(utt, pf);
+        return new RangedRush(utt, pf.clone());
     }
 
     public PlayerAction getAction(int player, GameState gs) {
@@ -68,7 +68,7 @@ public class WorkerDefense extends AbstractionLayerAI {
     
     
     public AI clone() {
-        return new WorkerDefense(utt, pf);
+        return new WorkerDefense(utt, pf.clone());
     }
     
     public PlayerAction getAction(int player, GameState gs) {
@@ -57,7 +57,7 @@ public class WorkerRush extends AbstractionLayerAI {
     
     
     public AI clone() {
-        return new WorkerRush(utt, pf);
+        return new WorkerRush(utt, pf.clone());
     }
     
     public PlayerAction getAction(int player, GameState gs) {
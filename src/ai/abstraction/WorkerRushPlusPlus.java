@@ -67,7 +67,7 @@ public class WorkerRushPlusPlus extends AbstractionLayerAI {
     
     
     public AI clone() {
-        return new WorkerRushPlusPlus(utt, pf);
+        return new WorkerRushPlusPlus(utt, pf.clone());
     }
     
     public PlayerAction getAction(int player, GameState gs) {
@@ -36,7 +36,7 @@ public class POHeavyRush extends HeavyRush {
     }
 
     public AI clone() {
-        return new POHeavyRush(utt, pf);
+        return new POHeavyRush(utt, pf.clone());
     }
 
     public void meleeUnitBehavior(Unit u, Player p, GameState gs) {
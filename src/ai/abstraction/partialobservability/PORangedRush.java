@@ -36,7 +36,7 @@ public class PORangedRush extends RangedRush {
     }
 
     public AI clone() {
-        return new PORangedRush(utt, pf);
+        return new PORangedRush(utt, pf.clone());
     }
 
     public void meleeUnitBehavior(Unit u, Player p, GameState gs) {
@@ -0,0 +1,272 @@
+package ai.abstraction.pathfinding;
+
+import java.util.Arrays;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+
+/**
+ * A* pathfinding, like AStarPathFinding, but keeping the open list in a bucket queue
+ * instead of a sorted array (which has to be shifted on every insertion). Since all the
+ * moves cost 1, cost + heuristic is a small integer, and the open list has one bucket per
+ * value: a stack of positions, linked through "next". Ties between positions with the
+ * same cost + heuristic are broken in the same way as in AStarPathFinding (the one added
+ * last is expanded first), so both return exactly the same paths.
+ *
+ * A position is added to the open list at most once, so its cost, parent, etc. are
+ * stored by position. They are not cleared between searches: each search has a new
+ * "generation" number, and data from older generations is ignored.
+ */
+public class BucketAStarPathFinding extends PathFinding {
+
+    public static int iterations = 0;   // this is a debugging variable
+    public static int accumlength = 0;   // this is a debugging variable
+
+    int size = 0;           // size of the per-position arrays
+    int generation = 0;
+    int added[];            // generation in which each position was added to the open list
+    int closed[];           // parent of each expanded position (if "expanded" is the current generation)
+    int expanded[];         // generation in which each position was expanded
+    int freeChecked[];      // generation in which "free" was computed for each position
+    boolean free[];
+    int cost[];             // cost of reaching a given position so far
+    int parents[];
+    int next[];             // next position in the same bucket
+
+    int buckets[];          // first position of the stack of each value of cost + heuristic (or -1)
+    int minBucket = 0;      // no bucket below this one has positions
+    int maxBucket = 0;      // no bucket above this one has been used in this search
+    int openSize = 0;
+    int lastPos = -1;       // the position where the last successful search ended
+
+
+    // This function finds the shortest path from 'start' to 'targetpos' and then returns
+    // a UnitAction of the type 'actionType' with the direction of the first step in the shortest path
+    public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 0, gs, ru);
+    }
+
+
+    /*
+     * This function is like the previous one, but doesn't try to reach 'target', but just to
+     * reach a position that is at most 'range' far away from 'target'
+     */
+    public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        if (!runAStar(start, targetpos, range, gs, ru)) return null;
+        return firstAction(gs.getPhysicalGameState().getWidth());
+    }
+
+
+    /*
+     * Like the previous one, but the search does not leave the rectangle from (minx, miny)
+     * to (maxx, maxy) (both included), which must contain the start
+     */
+    UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru,
+                                         int minx, int miny, int maxx, int maxy) {
+        if (!runAStar(start, targetpos, range, gs, ru, minx, miny, maxx, maxy)) return null;
+        return firstAction(gs.getPhysicalGameState().getWidth());
+    }
+
+
+    /*
+     * Returns the move to the second position of the path that ends in "lastPos"
+     */
+    UnitAction firstAction(int w) {
+        int pos = lastPos;
+        int parent = closed[pos];
+        int last = pos;
+        while (parent != pos) {
+            last = pos;
+            pos = parent;
+            parent = closed[pos];
+            accumlength++;
+        }
+
+        if (last == pos + w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN);
+        if (last == pos - 1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT);
+        if (last == pos - w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP);
+        if (last == pos + 1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT);
+        return null;
+    }
+
+
+    /*
+     * This function is like the previous one, but doesn't try to reach 'target', but just to
+     * reach a position adjacent to 'target'
+     */
+    public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 1, gs, ru);
+    }
+
+
+    public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return start.getPosition(gs.getPhysicalGameState()) == targetpos
+            || findPath(start, targetpos, gs, ru) != null;
+    }
+
+
+    public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        int x = targetpos % gs.getPhysicalGameState().getWidth();
+        int y = targetpos / gs.getPhysicalGameState().getWidth();
+        int d = (x - start.getX()) * (x - start.getX()) + (y - start.getY()) * (y - start.getY());
+        return d <= range * range
+            || findPathToPositionInRange(start, targetpos, range, gs, ru) != null;
+    }
+
+
+    public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        if (!runAStar(start, targetpos, range, gs, ru)) return -1;
+
+        int pos = lastPos;
+        int parent = closed[pos];
+        int dist = 0;
+        while (parent != pos) {
+            pos = parent;
+            parent = closed[pos];
+            accumlength++;
+            dist++;
+        }
+        return dist;
+    }
+
+
+    /**
+     * Runs A* search, leaving in "lastPos" the position where the path ends
+     *
+     * @param start
+     * @param targetpos
+     * @param range
+     * @param gs
+     * @param ru
+     * @return Did we successfully complete our search?
+     */
+    boolean runAStar(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        return runAStar(start, targetpos, range, gs, ru, 0, 0, pgs.getWidth() - 1, pgs.getHeight() - 1);
+    }
+
+
+    /**
+     * Runs A* search without leaving the rectangle from (minx, miny) to (maxx, maxy)
+     */
+    boolean runAStar(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru,
+                     int minx, int miny, int maxx, int maxy) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        int w = pgs.getWidth();
+        int h = pgs.getHeight();
+        if (size < w * h) {
+            size = w * h;
+            added = new int[size];
+            closed = new int[size];
+            expanded = new int[size];
+            freeChecked = new int[size];
+            free = new boolean[size];
+            cost = new int[size];
+            parents = new int[size];
+            next = new int[size];
+            // cost + heuristic is at most (w*h - 1) + (w + h - 2):
+            buckets = new int[size + w + h];
+            Arrays.fill(buckets, -1);
+            maxBucket = 0;
+            generation = 0;
+        }
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            // start over, so that no old generation can be mistaken for the current one:
+            Arrays.fill(added, 0);
+            Arrays.fill(expanded, 0);
+            Arrays.fill(freeChecked, 0);
+            generation = 1;
+        }
+
+        if (ru != null) {
+            for (int pos : ru.getPositionsUsed()) {
+                freeChecked[pos] = generation;
+                free[pos] = false;
+            }
+        }
+        int targetx = targetpos % w;
+        int targety = targetpos / w;
+        int sq_range = range * range;
+        int startPos = start.getY() * w + start.getX();
+
+        // empty the buckets used by the previous search:
+        Arrays.fill(buckets, 0, maxBucket + 1, -1);
+        openSize = 0;
+        minBucket = maxBucket = 0;
+        cost[startPos] = 0;
+        push(startPos, startPos, manhattanDistance(start.getX(), start.getY(), targetx, targety));
+        while (openSize > 0) {
+            iterations++;
+            int pos = pop();
+            if (expanded[pos] == generation) continue;
+            expanded[pos] = generation;
+            closed[pos] = parents[pos];
+
+            int x = pos % w;
+            int y = pos / w;
+
+            if (((x - targetx) * (x - targetx) + (y - targety) * (y - targety)) <= sq_range) {
+                // path found: return to let the calling code compute either action or cost
+                lastPos = pos;
+                return true;
+            }
+            if (y > miny && added[pos - w] != generation && isFree(pos - w, x, y - 1, gs)) {
+                cost[pos - w] = cost[pos] + 1;
+                push(pos - w, pos, manhattanDistance(x, y - 1, targetx, targety));
+            }
+            if (x < maxx && added[pos + 1] != generation && isFree(pos + 1, x + 1, y, gs)) {
+                cost[pos + 1] = cost[pos] + 1;
+                push(pos + 1, pos, manhattanDistance(x + 1, y, targetx, targety));
+            }
+            if (y < maxy && added[pos + w] != generation && isFree(pos + w, x, y + 1, gs)) {
+                cost[pos + w] = cost[pos] + 1;
+                push(pos + w, pos, manhattanDistance(x, y + 1, targetx, targety));
+            }
+            if (x > minx && added[pos - 1] != generation && isFree(pos - 1, x - 1, y, gs)) {
+                cost[pos - 1] = cost[pos] + 1;
+                push(pos - 1, pos, manhattanDistance(x - 1, y, targetx, targety));
+            }
+        }
+
+        return false;
+    }
+
+
+    boolean isFree(int pos, int x, int y, GameState gs) {
+        if (freeChecked[pos] != generation) {
+            freeChecked[pos] = generation;
+            free[pos] = gs.free(x, y);
+        }
+        return free[pos];
+    }
+
+
+    int manhattanDistance(int x, int y, int x2, int y2) {
+        return Math.abs(x - x2) + Math.abs(y - y2);
+    }
+
+
+    void push(int pos, int parent, int h) {
+        added[pos] = generation;
+        parents[pos] = parent;
+        int f = cost[pos] + h;
+        next[pos] = buckets[f];
+        buckets[f] = pos;
+        if (f < minBucket || openSize == 0) minBucket = f;
+        if (f > maxBucket) maxBucket = f;
+        openSize++;
+    }
+
+
+    int pop() {
+        while (buckets[minBucket] == -1) minBucket++;
+        int pos = buckets[minBucket];
+        buckets[minBucket] = next[pos];
+        openSize--;
+        return pos;
+    }
+}
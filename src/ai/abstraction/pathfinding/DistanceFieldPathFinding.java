@@ -0,0 +1,520 @@
+package ai.abstraction.pathfinding;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+
+/**
+ * Pathfinding with cached distance fields. For each (target, range) asked for, a
+ * breadth-first search is run backwards from all the free positions in range of the
+ * target, storing in a "distance field" how many moves each position is away from them.
+ * After that, any unit can find its next step just by looking at the field values of its
+ * four neighbors, so all the units going to the same place (e.g., the same base or
+ * resource) share a single search.
+ *
+ * The fields are computed over the positions that are free in the last GameState seen:
+ * the terrain, the units, and the positions reserved by move/produce actions. On each
+ * query, the obstacles of the received GameState are compared with those of the previous
+ * one, and the cached fields are updated incrementally: a position that becomes free
+ * just propagates the shorter distances it opens; a position that becomes blocked only
+ * invalidates a field (to be recomputed the next time it is needed) if some position was
+ * relying on it and has no other equally short way to the target. The fields are
+ * discarded when the map changes (a different terrain array, version or size).
+ *
+ * Positions in the ResourceUsage are not part of the fields (they change with every unit
+ * in the same frame): the path given by the field is followed to check that it does not
+ * go through them, and if it does, an A* search from the unit is run instead, with the
+ * field as the heuristic. Either way, the paths returned are shortest paths. Notice that this is not always the
+ * case with AStarPathFinding (positions are not re-opened when a shorter path to them is
+ * found), so the paths of both can differ in length.
+ */
+public class DistanceFieldPathFinding extends PathFinding {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    public static final int MAX_CACHED_POSITIONS = 1 << 20; // more field positions than this (4MB), and all the fields are discarded
+    public static final int MAX_INCREMENTAL_CHANGES = 32;   // more obstacle changes than this, and all the fields are recomputed
+
+    public static int fieldsComputed = 0;   // this is a debugging variable
+    public static int searches = 0;         // this is a debugging variable
+
+    class DistanceField {
+        int target;
+        int range;
+        int dist[];
+        boolean valid = false;
+
+        DistanceField(int a_target, int a_range) {
+            target = a_target;
+            range = a_range;
+            dist = new int[width * height];
+        }
+    }
+
+    int width = 0, height = 0;
+    int terrain[] = null;       // terrain for which the fields were computed
+    int terrainVersion = 0;     // and its version (the array can be changed in place)
+    boolean blocked[];          // terrain or obstacles
+    int obstacles[] = new int[0];       // sorted positions of the units and reservations in the last GameState
+    int nObstacles = 0;
+    int newObstacles[] = new int[0];
+    int queue[];
+    int ruStamp[];              // positions in the current ResourceUsage are marked with the current "stamp"
+    int visited[];              // positions reached by the current search are marked with the current "stamp"
+    int closed[];               // positions expanded by the current search are marked with the current "stamp"
+    int searchDist[];           // for the search: distance from the start
+    int firstMove[];            // for the search: neighbor of the start through which each position was reached
+    int stamp = 0;
+    int lastDist = 0;           // length of the path found by the last call to "firstStep"
+    int buckets[];              // first entry of each value of cost + heuristic (or -1)
+    int entryPos[];             // position of each entry of the open list
+    int entryNext[];            // next entry in the same bucket
+    int nEntries = 0;
+    int minBucket = 0, maxBucket = 0;
+    HashMap<Long, DistanceField> fields = new HashMap<>();
+
+
+    public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 0, gs, ru);
+    }
+
+
+    public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        sync(gs);
+        int w = width;
+        int startPos = start.getX() + start.getY() * w;
+        if (inRange(startPos, targetpos, range)) return null;
+        DistanceField field = getField(targetpos, range);
+        int next = firstStep(field, start, ru);
+        if (next < 0) return null;
+
+        if (next == startPos + w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN);
+        if (next == startPos - 1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT);
+        if (next == startPos - w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP);
+        if (next == startPos + 1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT);
+        return null;
+    }
+
+
+    public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 1, gs, ru);
+    }
+
+
+    public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return start.getPosition(gs.getPhysicalGameState()) == targetpos
+            || findPath(start, targetpos, gs, ru) != null;
+    }
+
+
+    public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        int w = gs.getPhysicalGameState().getWidth();
+        int x = targetpos % w;
+        int y = targetpos / w;
+        int d = (x - start.getX()) * (x - start.getX()) + (y - start.getY()) * (y - start.getY());
+        return d <= range * range
+            || findPathToPositionInRange(start, targetpos, range, gs, ru) != null;
+    }
+
+
+    /**
+     * Returns the number of moves needed to get in range of the target, or -1 if it cannot
+     * be reached (like AStarPathFinding.findDistToPositionInRange)
+     */
+    public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        sync(gs);
+        int startPos = start.getX() + start.getY() * width;
+        if (inRange(startPos, targetpos, range)) return 0;
+        DistanceField field = getField(targetpos, range);
+        if (firstStep(field, start, ru) < 0) return -1;
+        return lastDist;
+    }
+
+
+    /**
+     * Returns the neighbor of "start" that is the first step of a shortest path to the
+     * target avoiding the positions in "ru" (leaving its length in "lastDist"), or -1 if the
+     * target cannot be reached
+     */
+    int firstStep(DistanceField field, Unit start, ResourceUsage ru) {
+        int dist[] = field.dist;
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(ruStamp, 0);
+            Arrays.fill(visited, 0);
+            Arrays.fill(closed, 0);
+            stamp = 1;
+        }
+        boolean useRu = false;
+        if (ru != null) {
+            for (int pos : ru.getPositionsUsed()) {
+                ruStamp[pos] = stamp;
+                useRu = true;
+            }
+        }
+
+        int x = start.getX();
+        int y = start.getY();
+        int pos = x + y * width;
+        int best = -1;
+        // the same order in which AStarPathFinding expands the neighbors:
+        if (y > 0) {
+            best = better(pos - width, best, dist);
+        }
+        if (x < width - 1) {
+            best = better(pos + 1, best, dist);
+        }
+        if (y < height - 1) {
+            best = better(pos + width, best, dist);
+        }
+        if (x > 0) {
+            best = better(pos - 1, best, dist);
+        }
+        if (best < 0) {
+            // no neighbor gets to the target, with or without "ru":
+            return -1;
+        }
+        lastDist = dist[best] + 1;
+        if (!useRu) return best;
+
+        // follow the field down to the target, avoiding the positions in "ru":
+        pos = best;
+        while (true) {
+            if (ruStamp[pos] == stamp) return search(field, start);
+            int d = dist[pos];
+            if (d == 0) return best;
+            x = pos % width;
+            y = pos / width;
+            if (y > 0 && dist[pos - width] == d - 1 && ruStamp[pos - width] != stamp) {
+                pos = pos - width;
+            } else if (x < width - 1 && dist[pos + 1] == d - 1 && ruStamp[pos + 1] != stamp) {
+                pos = pos + 1;
+            } else if (y < height - 1 && dist[pos + width] == d - 1 && ruStamp[pos + width] != stamp) {
+                pos = pos + width;
+            } else if (x > 0 && dist[pos - 1] == d - 1 && ruStamp[pos - 1] != stamp) {
+                pos = pos - 1;
+            } else {
+                return search(field, start);
+            }
+        }
+    }
+
+
+    /**
+     * A* search from "start" to the positions in range of the target, avoiding the positions
+     * in the current ResourceUsage. The field is used as the heuristic: since "ru" only
+     * blocks more positions, it never overestimates, and it is exact wherever "ru" is not in
+     * the way, so only the positions around the blocked ones are usually expanded. The open
+     * list is a bucket queue by cost + heuristic, and a position might be added to it more
+     * than once if a shorter way to it is found (the old entry is then skipped).
+     */
+    int search(DistanceField field, Unit start) {
+        searches++;
+        int dist[] = field.dist;
+        int startPos = start.getX() + start.getY() * width;
+        Arrays.fill(buckets, 0, maxBucket + 1, -1);
+        minBucket = maxBucket = 0;
+        nEntries = 0;
+        visited[startPos] = stamp;
+        closed[startPos] = stamp;
+        searchDist[startPos] = 0;
+        firstMove[startPos] = -1;
+        int pos = startPos;
+        while (true) {
+            int x = pos % width;
+            int y = pos / width;
+            if (y > 0) relax(pos, pos - width, dist);
+            if (x < width - 1) relax(pos, pos + 1, dist);
+            if (y < height - 1) relax(pos, pos + width, dist);
+            if (x > 0) relax(pos, pos - 1, dist);
+            do {
+                while (minBucket <= maxBucket && buckets[minBucket] == -1) minBucket++;
+                if (minBucket > maxBucket) return -1;
+                int entry = buckets[minBucket];
+                buckets[minBucket] = entryNext[entry];
+                pos = entryPos[entry];
+            } while (closed[pos] == stamp);
+            closed[pos] = stamp;
+            if (dist[pos] == 0) {
+                lastDist = searchDist[pos];
+                return firstMove[pos];
+            }
+        }
+    }
+
+
+    void relax(int parent, int pos, int dist[]) {
+        // positions with no path to the target in the field have none with "ru" either:
+        if (dist[pos] == UNREACHABLE || ruStamp[pos] == stamp || closed[pos] == stamp) return;
+        int g = searchDist[parent] + 1;
+        if (visited[pos] == stamp && searchDist[pos] <= g) return;
+        visited[pos] = stamp;
+        searchDist[pos] = g;
+        firstMove[pos] = (firstMove[parent] == -1 ? pos : firstMove[parent]);
+        int f = g + dist[pos];
+        entryPos[nEntries] = pos;
+        entryNext[nEntries] = buckets[f];
+        buckets[f] = nEntries++;
+        if (f < minBucket) minBucket = f;
+        if (f > maxBucket) maxBucket = f;
+    }
+
+
+    int better(int pos, int best, int dist[]) {
+        if (dist[pos] == UNREACHABLE) return best;
+        if (best < 0) return pos;
+        if (dist[pos] < dist[best]) return pos;
+        if (dist[pos] == dist[best] && ruStamp[best] == stamp && ruStamp[pos] != stamp) return pos;
+        return best;
+    }
+
+
+    boolean inRange(int pos, int target, int range) {
+        int dx = pos % width - target % width;
+        int dy = pos / width - target / width;
+        return dx * dx + dy * dy <= range * range;
+    }
+
+
+    /**
+     * Returns the (valid) field for the given target and range, computing it if needed
+     */
+    DistanceField getField(int target, int range) {
+        Long key = ((long)range << 32) | target;
+        DistanceField field = fields.get(key);
+        if (field == null) {
+            if ((fields.size() + 1) * width * height > MAX_CACHED_POSITIONS) fields.clear();
+            field = new DistanceField(target, range);
+            fields.put(key, field);
+        }
+        if (!field.valid) compute(field);
+        return field;
+    }
+
+
+    /**
+     * Breadth-first search from all the free positions in range of the target
+     */
+    void compute(DistanceField field) {
+        fieldsComputed++;
+        int dist[] = field.dist;
+        Arrays.fill(dist, UNREACHABLE);
+        int tx = field.target % width;
+        int ty = field.target / width;
+        int head = 0, tail = 0;
+        for (int y = Math.max(0, ty - field.range); y <= Math.min(height - 1, ty + field.range); y++) {
+            for (int x = Math.max(0, tx - field.range); x <= Math.min(width - 1, tx + field.range); x++) {
+                int pos = x + y * width;
+                if (!blocked[pos] && inRange(pos, field.target, field.range)) {
+                    dist[pos] = 0;
+                    queue[tail++] = pos;
+                }
+            }
+        }
+        propagate(dist, head, tail);
+        field.valid = true;
+    }
+
+
+    /**
+     * Lowers the distance of the neighbors of the positions in queue[head..tail),
+     * breadth-first, until no distance can be lowered
+     */
+    void propagate(int dist[], int head, int tail) {
+        while (head < tail) {
+            int pos = queue[head++];
+            int d = dist[pos] + 1;
+            int x = pos % width;
+            int y = pos / width;
+            if (y > 0 && !blocked[pos - width] && dist[pos - width] > d) {
+                dist[pos - width] = d;
+                queue[tail++] = pos - width;
+            }
+            if (x < width - 1 && !blocked[pos + 1] && dist[pos + 1] > d) {
+                dist[pos + 1] = d;
+                queue[tail++] = pos + 1;
+            }
+            if (y < height - 1 && !blocked[pos + width] && dist[pos + width] > d) {
+                dist[pos + width] = d;
+                queue[tail++] = pos + width;
+            }
+            if (x > 0 && !blocked[pos - 1] && dist[pos - 1] > d) {
+                dist[pos - 1] = d;
+                queue[tail++] = pos - 1;
+            }
+        }
+    }
+
+
+    /**
+     * Brings "blocked" and the fields up to date with the obstacles in gs
+     */
+    void sync(GameState gs) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        if (pgs.getWidth() != width || pgs.getHeight() != height || pgs.getTerrain() != terrain ||
+            pgs.getTerrainVersion() != terrainVersion) {
+            width = pgs.getWidth();
+            height = pgs.getHeight();
+            terrain = pgs.getTerrain();
+            terrainVersion = pgs.getTerrainVersion();
+            blocked = new boolean[width * height];
+            for (int i = 0; i < width * height; i++) {
+                blocked[i] = (terrain[i] != PhysicalGameState.TERRAIN_NONE);
+            }
+            // a position can be in the queue at most once per distance it gets:
+            queue = new int[width * height * 4];
+            ruStamp = new int[width * height];
+            visited = new int[width * height];
+            searchDist = new int[width * height];
+            firstMove = new int[width * height];
+            closed = new int[width * height];
+            // cost + heuristic is at most 2 * width * height, and each expanded position
+            // adds at most 4 entries:
+            buckets = new int[width * height * 2 + 1];
+            Arrays.fill(buckets, -1);
+            entryPos = new int[width * height * 4];
+            entryNext = new int[width * height * 4];
+            minBucket = maxBucket = 0;
+            stamp = 0;
+            nObstacles = 0;
+            fields.clear();
+        }
+
+        // collect the current obstacles:
+        List<Unit> units = pgs.getUnits();
+        int n = 0;
+        int maxObstacles = units.size() + gs.getUnitActions().size();
+        if (newObstacles.length < maxObstacles) newObstacles = new int[maxObstacles * 2];
+        for (Unit u : units) {
+            newObstacles[n++] = u.getX() + u.getY() * width;
+        }
+        for (UnitActionAssignment uaa : gs.getUnitActions().values()) {
+            int pos = gs.reservedPosition(uaa);
+            if (pos >= 0) newObstacles[n++] = pos;
+        }
+        Arrays.sort(newObstacles, 0, n);
+
+        // count the differences with the previous ones:
+        int changes = 0;
+        int i = 0, j = 0;
+        while (i < nObstacles || j < n) {
+            if (j >= n || (i < nObstacles && obstacles[i] < newObstacles[j])) {
+                changes++;
+                i = skip(obstacles, i, nObstacles);
+            } else if (i >= nObstacles || newObstacles[j] < obstacles[i]) {
+                changes++;
+                j = skip(newObstacles, j, n);
+            } else {
+                i = skip(obstacles, i, nObstacles);
+                j = skip(newObstacles, j, n);
+            }
+        }
+
+        if (changes > 0) {
+            if (changes > MAX_INCREMENTAL_CHANGES) {
+                for (int k = 0; k < nObstacles; k++) blocked[obstacles[k]] = (terrain[obstacles[k]] != PhysicalGameState.TERRAIN_NONE);
+                for (int k = 0; k < n; k++) blocked[newObstacles[k]] = true;
+                for (DistanceField field : fields.values()) field.valid = false;
+            } else {
+                i = 0;
+                j = 0;
+                while (i < nObstacles || j < n) {
+                    if (j >= n || (i < nObstacles && obstacles[i] < newObstacles[j])) {
+                        positionFreed(obstacles[i]);
+                        i = skip(obstacles, i, nObstacles);
+                    } else if (i >= nObstacles || newObstacles[j] < obstacles[i]) {
+                        positionBlocked(newObstacles[j]);
+                        j = skip(newObstacles, j, n);
+                    } else {
+                        i = skip(obstacles, i, nObstacles);
+                        j = skip(newObstacles, j, n);
+                    }
+                }
+            }
+        }
+
+        int tmp[] = obstacles;
+        obstacles = newObstacles;
+        newObstacles = tmp;
+        nObstacles = n;
+    }
+
+
+    /**
+     * Returns the index after the last repetition of a[i] (a is sorted)
+     */
+    int skip(int a[], int i, int n) {
+        int v = a[i];
+        while (i < n && a[i] == v) i++;
+        return i;
+    }
+
+
+    void positionFreed(int pos) {
+        if (terrain[pos] != PhysicalGameState.TERRAIN_NONE) return;
+        blocked[pos] = false;
+        int x = pos % width;
+        int y = pos / width;
+        for (DistanceField field : fields.values()) {
+            if (!field.valid) continue;
+            int dist[] = field.dist;
+            int d = UNREACHABLE;
+            if (inRange(pos, field.target, field.range)) {
+                d = 0;
+            } else {
+                if (y > 0 && dist[pos - width] < d) d = dist[pos - width];
+                if (x < width - 1 && dist[pos + 1] < d) d = dist[pos + 1];
+                if (y < height - 1 && dist[pos + width] < d) d = dist[pos + width];
+                if (x > 0 && dist[pos - 1] < d) d = dist[pos - 1];
+                if (d == UNREACHABLE) continue;
+                d++;
+            }
+            dist[pos] = d;
+            queue[0] = pos;
+            propagate(dist, 0, 1);
+        }
+    }
+
+
+    void positionBlocked(int pos) {
+        blocked[pos] = true;
+        int x = pos % width;
+        int y = pos / width;
+        for (DistanceField field : fields.values()) {
+            if (!field.valid) continue;
+            int dist[] = field.dist;
+            int d = dist[pos];
+            if (d == UNREACHABLE) continue;
+            dist[pos] = UNREACHABLE;
+            // the field is still right if every position that was one step further than
+            // "pos" has another neighbor at the same distance as "pos":
+            if ((y > 0 && !hasOtherParent(dist, pos - width, d)) ||
+                (x < width - 1 && !hasOtherParent(dist, pos + 1, d)) ||
+                (y < height - 1 && !hasOtherParent(dist, pos + width, d)) ||
+                (x > 0 && !hasOtherParent(dist, pos - 1, d))) {
+                field.valid = false;
+            }
+        }
+    }
+
+
+    /**
+     * Returns false if "pos" was at distance d + 1 and none of its neighbors is now at
+     * distance d
+     */
+    boolean hasOtherParent(int dist[], int pos, int d) {
+        if (dist[pos] != d + 1) return true;
+        int x = pos % width;
+        int y = pos / width;
+        return (y > 0 && dist[pos - width] == d) ||
+               (x < width - 1 && dist[pos + 1] == d) ||
+               (y < height - 1 && dist[pos + width] == d) ||
+               (x > 0 && dist[pos - 1] == d);
+    }
+}
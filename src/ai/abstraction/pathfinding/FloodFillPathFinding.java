@@ -44,7 +44,6 @@ public class FloodFillPathFinding extends PathFinding {
 	}
 	private void doFloodFill(int x, int y, GameState gs, int finalX, int finalY){
 		assert(distances[x][y]!=Integer.MAX_VALUE);
-		boolean gsFree[][]=gs.getAllFree();
 		int index=0;
 		ArrayList<Pair<Integer,Integer>> fringe= new ArrayList<>(h * w);
 		fringe.add(new Pair<>(x, y));
@@ -57,7 +56,7 @@ public class FloodFillPathFinding extends PathFinding {
 			int nextX=x-1;
 			int nextY=y;
 			if(nextX==finalX&&nextY==finalY)reached=true;
-			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gsFree[nextX][nextY]){
+			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gs.free(nextX,nextY)){
 				distances[nextX][nextY]=distances[x][y]+1;
 				fringe.add(new Pair<>(nextX, nextY));
 			}
@@ -66,7 +65,7 @@ public class FloodFillPathFinding extends PathFinding {
 			nextX=x;
 			nextY=y-1;
 			if(nextX==finalX&&nextY==finalY)reached=true;
-			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gsFree[nextX][nextY]){
+			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gs.free(nextX,nextY)){
 				distances[nextX][nextY]=distances[x][y]+1;
 				fringe.add(new Pair<>(nextX, nextY));
 			}
@@ -75,7 +74,7 @@ public class FloodFillPathFinding extends PathFinding {
 			nextX=x+1;
 			nextY=y;
 			if(nextX==finalX&&nextY==finalY)reached=true;
-			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gsFree[nextX][nextY]){
+			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gs.free(nextX,nextY)){
 				distances[nextX][nextY]=distances[x][y]+1;
 				fringe.add(new Pair<>(nextX, nextY));
 			}
@@ -84,7 +83,7 @@ public class FloodFillPathFinding extends PathFinding {
 			nextX=x;
 			nextY=y+1;
 			if(nextX==finalX&&nextY==finalY)reached=true;
-			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gsFree[nextX][nextY]){
+			if(bounds(nextX,nextY)&&distances[nextX][nextY]==Integer.MAX_VALUE&&free[nextX][nextY]&&gs.free(nextX,nextY)){
 				distances[nextX][nextY]=distances[x][y]+1;
 				fringe.add(new Pair<>(nextX, nextY));
 			}
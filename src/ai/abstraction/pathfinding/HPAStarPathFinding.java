@@ -0,0 +1,519 @@
+package ai.abstraction.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+
+/**
+ * Hierarchical pathfinding (HPA*, Botea, Muller and Schaeffer 2004). The map is divided
+ * in square clusters, and the free stretches of terrain along the border between two
+ * clusters are "entrances", with one or two transitions each (pairs of positions, one
+ * at each side of the border). Transitions are the nodes of an abstract graph, with
+ * edges of cost 1 across the border, and edges with the length of the shortest path
+ * (over the terrain) between the transitions of the same cluster. The abstract graph
+ * only depends on the terrain, which is shared by all the clones of a
+ * PhysicalGameState, so it is built once per map (and again if the terrain is edited).
+ *
+ * A query connects the start and the positions in range of the target to the
+ * transitions of their clusters, and searches the abstract graph, which only has a few
+ * nodes per cluster. Units are not part of the abstract graph: the next step is found by
+ * a regular A* (with units, reservations and the ResourceUsage as obstacles) restricted
+ * to the start cluster and the next cluster in the abstract path. If the target is in
+ * these clusters, it is searched for directly. Since units can block the way to the
+ * target anywhere, the abstract path is only followed after a regular A* over the whole map
+ * has checked that the target can be reached; if the local search fails (e.g., a unit is
+ * blocking the transition), that A* is used to find the next step instead. pathExists and
+ * pathToPositionInRangeExists are answered by the regular A*.
+ *
+ * Paths are not always shortest paths (transitions are not at all the possible border
+ * positions), but they are usually close.
+ */
+public class HPAStarPathFinding extends PathFinding {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 10;
+    public static final int MAX_SINGLE_TRANSITION_ENTRANCE = 5;  // longer entrances get two transitions, at both ends
+
+    public static int abstractSearches = 0;   // this is a debugging variable
+    public static int fallbacks = 0;          // this is a debugging variable
+
+    int clusterSize = DEFAULT_CLUSTER_SIZE;
+
+    // abstract graph (for the terrain "terrain", at version "terrainVersion"):
+    int terrain[] = null;
+    int terrainVersion = 0;
+    int width = 0, height = 0;
+    int clustersW = 0, clustersH = 0;
+    int nNodes = 0;
+    int nodePos[];          // position of each node
+    int nodeCluster[];      // cluster of each node
+    int edges[][];          // neighbors of each node
+    int edgeCosts[][];
+    int clusterNodes[][];   // nodes of each cluster
+
+    // search buffers:
+    int stamp = 0;
+    int bfsStamp[];         // positions reached by the current breadth-first search
+    int bfsDist[];
+    int bfsQueue[];
+    int nodeStamp[];        // nodes reached by the current abstract search
+    int nodeClosed[];       // nodes expanded by the current abstract search
+    int nodeCost[];
+    int nodeParent[];       // previous node in the abstract path (-1 if it comes from the start)
+    int goalStamp[];        // nodes connected to the target in the current abstract search
+    int goalCost[];
+    int heapNodes[];        // open list of the abstract search (a binary heap, by "heapKeys")
+    int heapKeys[];
+    int heapSize = 0;
+
+    BucketAStarPathFinding local = new BucketAStarPathFinding();
+
+
+    public HPAStarPathFinding() {
+    }
+
+
+    public HPAStarPathFinding(int a_clusterSize) {
+        clusterSize = a_clusterSize;
+    }
+
+
+    public PathFinding clone() {
+        return new HPAStarPathFinding(clusterSize);
+    }
+
+
+    public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 0, gs, ru);
+    }
+
+
+    public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        if (pgs.getTerrain() != terrain || pgs.getTerrainVersion() != terrainVersion ||
+            pgs.getWidth() != width || pgs.getHeight() != height) {
+            buildAbstractGraph(pgs);
+        }
+        int sx = start.getX();
+        int sy = start.getY();
+        int tx = targetpos % width;
+        int ty = targetpos / width;
+        if ((sx - tx) * (sx - tx) + (sy - ty) * (sy - ty) <= range * range) return null;
+
+        // clusters with positions in range of the target:
+        int gcx0 = Math.max(0, tx - range) / clusterSize;
+        int gcy0 = Math.max(0, ty - range) / clusterSize;
+        int gcx1 = Math.min(width - 1, tx + range) / clusterSize;
+        int gcy1 = Math.min(height - 1, ty + range) / clusterSize;
+        int scx = sx / clusterSize;
+        int scy = sy / clusterSize;
+
+        // if the target is close, try to get there directly:
+        if (scx >= gcx0 - 1 && scx <= gcx1 + 1 && scy >= gcy0 - 1 && scy <= gcy1 + 1) {
+            UnitAction action = localSearch(start, targetpos, range, gs, ru,
+                                            Math.min(scx, gcx0), Math.min(scy, gcy0),
+                                            Math.max(scx, gcx1), Math.max(scy, gcy1));
+            if (action != null) return action;
+        }
+
+        int next = abstractSearch(sx, sy, tx, ty, range, gcx0, gcy0, gcx1, gcy1);
+        if (next == -1) {
+            // not even the terrain lets the unit get there
+            return null;
+        }
+        // the abstract graph does not know about the units, which may have walled off the
+        // target, so before following it, check that the target can be reached:
+        if (!local.pathToPositionInRangeExists(start, targetpos, range, gs, ru)) return null;
+        if (next >= 0) {
+            // go to the first transition out of the start cluster:
+            int ncx = (nodePos[next] % width) / clusterSize;
+            int ncy = (nodePos[next] / width) / clusterSize;
+            UnitAction action = localSearch(start, nodePos[next], 0, gs, ru,
+                                            Math.min(scx, ncx), Math.min(scy, ncy),
+                                            Math.max(scx, ncx), Math.max(scy, ncy));
+            if (action != null) return action;
+        }
+        fallbacks++;
+        return local.findPathToPositionInRange(start, targetpos, range, gs, ru);
+    }
+
+
+    public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return findPathToPositionInRange(start, targetpos, 1, gs, ru);
+    }
+
+
+    /*
+     * The abstract graph only has the terrain, so whether a path exists (given the units)
+     * is answered by the regular A*
+     */
+    public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return local.pathExists(start, targetpos, gs, ru);
+    }
+
+
+    public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        return local.pathToPositionInRangeExists(start, targetpos, range, gs, ru);
+    }
+
+
+    /**
+     * A* search restricted to the clusters from (cx0, cy0) to (cx1, cy1)
+     */
+    UnitAction localSearch(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru,
+                           int cx0, int cy0, int cx1, int cy1) {
+        return local.findPathToPositionInRange(start, targetpos, range, gs, ru,
+                                               cx0 * clusterSize, cy0 * clusterSize,
+                                               Math.min(width, (cx1 + 1) * clusterSize) - 1,
+                                               Math.min(height, (cy1 + 1) * clusterSize) - 1);
+    }
+
+
+    /**
+     * Searches the abstract graph from (sx, sy) to the positions in range of (tx, ty),
+     * which are in the clusters from (gcx0, gcy0) to (gcx1, gcy1). Returns the first node
+     * of the path that is not in the start cluster, -1 if there is no path, or -2 if the
+     * path does not leave the start cluster
+     */
+    int abstractSearch(int sx, int sy, int tx, int ty, int range, int gcx0, int gcy0, int gcx1, int gcy1) {
+        abstractSearches++;
+        int startCluster = (sx / clusterSize) + (sy / clusterSize) * clustersW;
+        int sq_range = range * range;
+
+        // connect the target to the transitions of its clusters:
+        newStamp();
+        int directCost = -1;
+        for (int cy = gcy0; cy <= gcy1; cy++) {
+            for (int cx = gcx0; cx <= gcx1; cx++) {
+                int x0 = cx * clusterSize, y0 = cy * clusterSize;
+                int x1 = Math.min(width, x0 + clusterSize) - 1, y1 = Math.min(height, y0 + clusterSize) - 1;
+                int n = 0;
+                for (int y = Math.max(y0, ty - range); y <= Math.min(y1, ty + range); y++) {
+                    for (int x = Math.max(x0, tx - range); x <= Math.min(x1, tx + range); x++) {
+                        int pos = x + y * width;
+                        if (terrain[pos] == PhysicalGameState.TERRAIN_NONE &&
+                            (x - tx) * (x - tx) + (y - ty) * (y - ty) <= sq_range) {
+                            bfsStamp[pos] = stamp;
+                            bfsDist[pos] = 0;
+                            bfsQueue[n++] = pos;
+                        }
+                    }
+                }
+                if (n == 0) continue;
+                bfs(n, x0, y0, x1, y1);
+                int cluster = cx + cy * clustersW;
+                for (int node : clusterNodes[cluster]) {
+                    if (bfsStamp[nodePos[node]] == stamp) {
+                        goalStamp[node] = stamp;
+                        goalCost[node] = bfsDist[nodePos[node]];
+                    }
+                }
+                if (cluster == startCluster && bfsStamp[sx + sy * width] == stamp) {
+                    directCost = bfsDist[sx + sy * width];
+                }
+            }
+        }
+        int goalSearchStamp = stamp;
+
+        // connect the start to the transitions of its cluster:
+        newStamp();
+        int x0 = (sx / clusterSize) * clusterSize, y0 = (sy / clusterSize) * clusterSize;
+        bfsStamp[sx + sy * width] = stamp;
+        bfsDist[sx + sy * width] = 0;
+        bfsQueue[0] = sx + sy * width;
+        bfs(1, x0, y0, Math.min(width, x0 + clusterSize) - 1, Math.min(height, y0 + clusterSize) - 1);
+        heapSize = 0;
+        for (int node : clusterNodes[startCluster]) {
+            if (bfsStamp[nodePos[node]] == stamp) {
+                nodeStamp[node] = stamp;
+                nodeCost[node] = bfsDist[nodePos[node]];
+                nodeParent[node] = -1;
+                push(node, nodeCost[node] + heuristic(node, tx, ty, range));
+            }
+        }
+
+        // A* over the abstract graph:
+        int bestGoal = -1;
+        int bestGoalCost = directCost;
+        while (heapSize > 0) {
+            int f = heapKeys[0];
+            int node = pop();
+            if (bestGoalCost >= 0 && f >= bestGoalCost) break;
+            if (nodeClosed[node] == stamp) continue;
+            nodeClosed[node] = stamp;
+            int g = nodeCost[node];
+            if (goalStamp[node] == goalSearchStamp && (bestGoalCost < 0 || g + goalCost[node] < bestGoalCost)) {
+                bestGoal = node;
+                bestGoalCost = g + goalCost[node];
+            }
+            for (int i = 0; i < edges[node].length; i++) {
+                int next = edges[node][i];
+                int cost = g + edgeCosts[node][i];
+                if (nodeStamp[next] == stamp && nodeCost[next] <= cost) continue;
+                nodeStamp[next] = stamp;
+                nodeCost[next] = cost;
+                nodeParent[next] = node;
+                push(next, cost + heuristic(next, tx, ty, range));
+            }
+        }
+        if (bestGoalCost < 0) return -1;
+        if (bestGoal < 0) return -2;
+
+        // find the first node out of the start cluster:
+        int first = -2;
+        for (int node = bestGoal; node != -1; node = nodeParent[node]) {
+            if (nodeCluster[node] != startCluster) first = node;
+        }
+        return first;
+    }
+
+
+    /**
+     * A lower bound of the moves from a node to a position in range of (tx, ty): positions
+     * in range are at most 2 * range away from it in Manhattan distance
+     */
+    int heuristic(int node, int tx, int ty, int range) {
+        int pos = nodePos[node];
+        return Math.max(0, Math.abs(pos % width - tx) + Math.abs(pos / width - ty) - 2 * range);
+    }
+
+
+    /**
+     * Breadth-first search over the terrain from the n positions in bfsQueue, without
+     * leaving the rectangle from (minx, miny) to (maxx, maxy). The positions reached are
+     * marked in bfsStamp with the current stamp, and their distance is left in bfsDist
+     */
+    void bfs(int n, int minx, int miny, int maxx, int maxy) {
+        int head = 0, tail = n;
+        while (head < tail) {
+            int pos = bfsQueue[head++];
+            int x = pos % width;
+            int y = pos / width;
+            int d = bfsDist[pos] + 1;
+            if (y > miny) tail = bfsVisit(pos - width, d, tail);
+            if (x < maxx) tail = bfsVisit(pos + 1, d, tail);
+            if (y < maxy) tail = bfsVisit(pos + width, d, tail);
+            if (x > minx) tail = bfsVisit(pos - 1, d, tail);
+        }
+    }
+
+
+    int bfsVisit(int pos, int d, int tail) {
+        if (bfsStamp[pos] == stamp || terrain[pos] != PhysicalGameState.TERRAIN_NONE) return tail;
+        bfsStamp[pos] = stamp;
+        bfsDist[pos] = d;
+        bfsQueue[tail++] = pos;
+        return tail;
+    }
+
+
+    void newStamp() {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(bfsStamp, 0);
+            Arrays.fill(nodeStamp, 0);
+            Arrays.fill(nodeClosed, 0);
+            Arrays.fill(goalStamp, 0);
+            stamp = 1;
+        }
+    }
+
+
+    void push(int node, int key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heapKeys[parent] <= key) break;
+            heapNodes[i] = heapNodes[parent];
+            heapKeys[i] = heapKeys[parent];
+            i = parent;
+        }
+        heapNodes[i] = node;
+        heapKeys[i] = key;
+    }
+
+
+    int pop() {
+        int top = heapNodes[0];
+        heapSize--;
+        int node = heapNodes[heapSize];
+        int key = heapKeys[heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (key <= heapKeys[child]) break;
+            heapNodes[i] = heapNodes[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapNodes[i] = node;
+        heapKeys[i] = key;
+        return top;
+    }
+
+
+    /**
+     * Finds the entrances between clusters and the shortest paths between the transitions
+     * of each cluster
+     */
+    void buildAbstractGraph(PhysicalGameState pgs) {
+        terrain = pgs.getTerrain();
+        terrainVersion = pgs.getTerrainVersion();
+        width = pgs.getWidth();
+        height = pgs.getHeight();
+        clustersW = (width + clusterSize - 1) / clusterSize;
+        clustersH = (height + clusterSize - 1) / clusterSize;
+        bfsStamp = new int[width * height];
+        bfsDist = new int[width * height];
+        bfsQueue = new int[width * height];
+        stamp = 0;
+
+        int nodeAt[] = new int[width * height];
+        Arrays.fill(nodeAt, -1);
+        List<Integer> positions = new ArrayList<>();
+        List<List<int[]>> edgeList = new ArrayList<>();
+
+        // entrances between horizontally adjacent clusters:
+        for (int cy = 0; cy < clustersH; cy++) {
+            for (int cx = 0; cx < clustersW - 1; cx++) {
+                int x = (cx + 1) * clusterSize - 1;
+                int y0 = cy * clusterSize;
+                int y1 = Math.min(height, y0 + clusterSize) - 1;
+                int first = -1;
+                for (int y = y0; y <= y1 + 1; y++) {
+                    boolean free = y <= y1 &&
+                                   terrain[x + y * width] == PhysicalGameState.TERRAIN_NONE &&
+                                   terrain[x + 1 + y * width] == PhysicalGameState.TERRAIN_NONE;
+                    if (free && first == -1) first = y;
+                    if (!free && first != -1) {
+                        int last = y - 1;
+                        for (int ty : transitions(first, last)) {
+                            addTransition(x + ty * width, x + 1 + ty * width, nodeAt, positions, edgeList);
+                        }
+                        first = -1;
+                    }
+                }
+            }
+        }
+        // entrances between vertically adjacent clusters:
+        for (int cy = 0; cy < clustersH - 1; cy++) {
+            for (int cx = 0; cx < clustersW; cx++) {
+                int y = (cy + 1) * clusterSize - 1;
+                int x0 = cx * clusterSize;
+                int x1 = Math.min(width, x0 + clusterSize) - 1;
+                int first = -1;
+                for (int x = x0; x <= x1 + 1; x++) {
+                    boolean free = x <= x1 &&
+                                   terrain[x + y * width] == PhysicalGameState.TERRAIN_NONE &&
+                                   terrain[x + (y + 1) * width] == PhysicalGameState.TERRAIN_NONE;
+                    if (free && first == -1) first = x;
+                    if (!free && first != -1) {
+                        int last = x - 1;
+                        for (int tx : transitions(first, last)) {
+                            addTransition(tx + y * width, tx + (y + 1) * width, nodeAt, positions, edgeList);
+                        }
+                        first = -1;
+                    }
+                }
+            }
+        }
+
+        nNodes = positions.size();
+        nodePos = new int[nNodes];
+        nodeCluster = new int[nNodes];
+        List<List<Integer>> nodesOfCluster = new ArrayList<>();
+        for (int i = 0; i < clustersW * clustersH; i++) nodesOfCluster.add(new ArrayList<>());
+        for (int i = 0; i < nNodes; i++) {
+            int pos = positions.get(i);
+            nodePos[i] = pos;
+            nodeCluster[i] = ((pos % width) / clusterSize) + ((pos / width) / clusterSize) * clustersW;
+            nodesOfCluster.get(nodeCluster[i]).add(i);
+        }
+        clusterNodes = new int[clustersW * clustersH][];
+        for (int c = 0; c < clusterNodes.length; c++) {
+            List<Integer> l = nodesOfCluster.get(c);
+            clusterNodes[c] = new int[l.size()];
+            for (int i = 0; i < l.size(); i++) clusterNodes[c][i] = l.get(i);
+        }
+
+        // paths between the transitions of each cluster:
+        for (int c = 0; c < clusterNodes.length; c++) {
+            int x0 = (c % clustersW) * clusterSize;
+            int y0 = (c / clustersW) * clusterSize;
+            int x1 = Math.min(width, x0 + clusterSize) - 1;
+            int y1 = Math.min(height, y0 + clusterSize) - 1;
+            for (int n1 : clusterNodes[c]) {
+                newStamp();
+                bfsStamp[nodePos[n1]] = stamp;
+                bfsDist[nodePos[n1]] = 0;
+                bfsQueue[0] = nodePos[n1];
+                bfs(1, x0, y0, x1, y1);
+                for (int n2 : clusterNodes[c]) {
+                    if (n2 != n1 && bfsStamp[nodePos[n2]] == stamp) {
+                        edgeList.get(n1).add(new int[]{n2, bfsDist[nodePos[n2]]});
+                    }
+                }
+            }
+        }
+
+        edges = new int[nNodes][];
+        edgeCosts = new int[nNodes][];
+        int nEdges = 0;
+        for (int i = 0; i < nNodes; i++) {
+            List<int[]> l = edgeList.get(i);
+            edges[i] = new int[l.size()];
+            edgeCosts[i] = new int[l.size()];
+            for (int j = 0; j < l.size(); j++) {
+                edges[i][j] = l.get(j)[0];
+                edgeCosts[i][j] = l.get(j)[1];
+            }
+            nEdges += l.size();
+        }
+
+        nodeStamp = new int[nNodes];
+        nodeClosed = new int[nNodes];
+        nodeCost = new int[nNodes];
+        nodeParent = new int[nNodes];
+        goalStamp = new int[nNodes];
+        goalCost = new int[nNodes];
+        heapNodes = new int[nEdges + nNodes + 1];
+        heapKeys = new int[nEdges + nNodes + 1];
+    }
+
+
+    /**
+     * Positions of the transitions of an entrance from "first" to "last" (both included)
+     */
+    int[] transitions(int first, int last) {
+        if (last - first + 1 <= MAX_SINGLE_TRANSITION_ENTRANCE) return new int[]{(first + last) / 2};
+        return new int[]{first, last};
+    }
+
+
+    void addTransition(int pos1, int pos2, int nodeAt[], List<Integer> positions, List<List<int[]>> edgeList) {
+        int n1 = node(pos1, nodeAt, positions, edgeList);
+        int n2 = node(pos2, nodeAt, positions, edgeList);
+        edgeList.get(n1).add(new int[]{n2, 1});
+        edgeList.get(n2).add(new int[]{n1, 1});
+    }
+
+
+    int node(int pos, int nodeAt[], List<Integer> positions, List<List<int[]>> edgeList) {
+        if (nodeAt[pos] == -1) {
+            nodeAt[pos] = positions.size();
+            positions.add(pos);
+            edgeList.add(new ArrayList<>());
+        }
+        return nodeAt[pos];
+    }
+}
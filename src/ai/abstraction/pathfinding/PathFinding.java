@@ -20,6 +20,20 @@ public abstract class PathFinding {
     public abstract UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru);
     public abstract UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru);
 
+    /**
+     * Returns a new path finder of the same class. Path finders keep search buffers and 
+     * caches between calls, so AIs that might run at the same time (e.g., in parallel 
+     * tournaments) cannot share them: AI.clone() should use this.
+     * @return
+     */
+    public PathFinding clone() {
+        try {
+            return getClass().getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(getClass().getSimpleName() + " cannot be cloned", e);
+        }
+    }
+
     public String toString() {
         return getClass().getSimpleName();
     }
@@ -0,0 +1,56 @@
+package ai.abstraction.pathfinding;
+
+import rts.GameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+
+/**
+ * A path finder that can be used from several threads at the same time: each
+ * thread gets its own clone of the given path finder (which keeps its search
+ * buffers and caches), created the first time that thread uses it.
+ */
+public class ThreadLocalPathFinding extends PathFinding {
+    PathFinding pf;
+    ThreadLocal<PathFinding> local;
+
+    public ThreadLocalPathFinding(PathFinding a_pf) {
+        pf = a_pf;
+        local = ThreadLocal.withInitial(() -> pf.clone());
+    }
+
+    /**
+     * @return the path finder this one clones for each thread
+     */
+    public PathFinding getPathFinding() {
+        return pf;
+    }
+
+    public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return local.get().pathExists(start, targetpos, gs, ru);
+    }
+
+    public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        return local.get().pathToPositionInRangeExists(start, targetpos, range, gs, ru);
+    }
+
+    public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return local.get().findPath(start, targetpos, gs, ru);
+    }
+
+    public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        return local.get().findPathToPositionInRange(start, targetpos, range, gs, ru);
+    }
+
+    public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru) {
+        return local.get().findPathToAdjacentPosition(start, targetpos, gs, ru);
+    }
+
+    public PathFinding clone() {
+        return new ThreadLocalPathFinding(pf.clone());
+    }
+
+    public String toString() {
+        return pf.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package ai.core;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads of an AI that runs parts of its search in parallel. They are
+ * daemon threads named after the AI, created when needed, and they end after
+ * KEEP_ALIVE ms without tasks, so an AI that is dropped without calling
+ * {@link #shutdown()} (e.g., a clone used for one match of a tournament) does
+ * not keep them alive. AIs should still call shutdown() from reset() and
+ * gameOver(), to release them as soon as the game is over.
+ */
+public class SearchThreadPool {
+    public static final long KEEP_ALIVE = 1000;
+
+    String name;
+    ThreadPoolExecutor executor = null;
+    int size = 0;
+
+
+    /**
+     * @param a_name the name of the threads
+     */
+    public SearchThreadPool(String a_name) {
+        name = a_name;
+    }
+
+
+    /**
+     * Runs the tasks in nThreads threads, waiting for all of them to finish. If
+     * a task throws an exception, it is thrown again here (once all have finished)
+     * @param tasks
+     * @param nThreads
+     * @throws Exception
+     */
+    public void run(List<Callable<Object>> tasks, int nThreads) throws Exception {
+        if (executor == null || size != nThreads) {
+            shutdown();
+            executor = new ThreadPoolExecutor(nThreads, nThreads, KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            size = nThreads;
+        }
+        for (Future<Object> f : executor.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof Exception) throw (Exception) t;
+                if (t instanceof Error) throw (Error) t;
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * Ends the threads (new ones are created if run is called again)
+     */
+    public void shutdown() {
+        if (executor != null) executor.shutdown();
+        executor = null;
+        size = 0;
+    }
+}
@@ -0,0 +1,129 @@
+package ai.core;
+
+/**
+ * A bounded transposition table, to share results between the nodes of a
+ * search that correspond to the same game state (see
+ * {@link rts.GameState#getHash()}), reached through different sequences of
+ * actions.
+ *
+ * The table has a fixed number of buckets (a power of two), with two entries
+ * each: the first one is replaced only by results of searches at least as deep
+ * (or if it was stored during a previous search, see {@link #newSearch()}),
+ * and the second one is always replaced. So, deep results are kept while
+ * there is still room for recent ones.
+ *
+ * It is synchronized, so it can be shared by several threads.
+ *
+ * @param <T> the type of the stored values
+ */
+public class TranspositionTable<T> {
+
+    long keys[];
+    Object values[];
+    int depths[];
+    int generations[];
+    boolean used[];
+    int mask;
+    int generation = 0;
+
+    long lookups = 0, hits = 0;
+
+    /**
+     * Creates a table with room for (at least) "size" entries
+     * @param size
+     */
+    public TranspositionTable(int size) {
+        int buckets = 1;
+        while (buckets * 2 < size && buckets < (1 << 29)) buckets *= 2;
+        mask = buckets - 1;
+        keys = new long[buckets * 2];
+        values = new Object[buckets * 2];
+        depths = new int[buckets * 2];
+        generations = new int[buckets * 2];
+        used = new boolean[buckets * 2];
+    }
+
+    /**
+     * Returns the number of entries of the table
+     * @return
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the value stored for a hash, or null if there is none
+     * @param hash
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T get(long hash) {
+        lookups++;
+        int i = bucket(hash);
+        if (used[i] && keys[i] == hash) {
+            hits++;
+            return (T) values[i];
+        }
+        if (used[i + 1] && keys[i + 1] == hash) {
+            hits++;
+            return (T) values[i + 1];
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value for a hash
+     * @param hash
+     * @param value
+     * @param depth how deep the search that produced the value was (larger values
+     * are more valuable, and are kept for longer)
+     */
+    public synchronized void put(long hash, T value, int depth) {
+        int i = bucket(hash);
+        if (used[i + 1] && keys[i + 1] == hash) {
+            if (!used[i] || generations[i] != generation || depth >= depths[i]) {
+                // promote it to the depth-preferred entry:
+                used[i + 1] = false;
+                values[i + 1] = null;
+            } else {
+                i++;
+            }
+        } else if (used[i] && keys[i] != hash && generations[i] == generation && depth < depths[i]) {
+            i++;
+        }
+        keys[i] = hash;
+        values[i] = value;
+        depths[i] = depth;
+        generations[i] = generation;
+        used[i] = true;
+    }
+
+    /**
+     * Indicates that a new search starts: the stored entries are still returned by
+     * {@link #get(long)}, but they will be replaced by any new ones
+     */
+    public synchronized void newSearch() {
+        generation++;
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            used[i] = false;
+            values[i] = null;
+        }
+        lookups = hits = 0;
+    }
+
+    int bucket(long hash) {
+        // the high bits of the Zobrist hash are as good as the low ones:
+        return ((int) (hash ^ (hash >>> 32)) & mask) * 2;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TranspositionTable(" + capacity() + " entries, " + hits + "/" + lookups + " hits)";
+    }
+}
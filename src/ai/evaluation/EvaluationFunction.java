@@ -16,6 +16,20 @@ public abstract class EvaluationFunction {
     public abstract float evaluate(int maxplayer, int minplayer, GameState gs);
     public abstract float upperBound(GameState gs);
     
+    /**
+     * Returns a new evaluation function of the same class, so that AIs that might run 
+     * at the same time (e.g., in parallel tournaments) do not share one: AI.clone() 
+     * should use this. Subclasses with fields have to override it
+     * @return
+     */
+    public EvaluationFunction clone() {
+        try {
+            return getClass().getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(getClass().getSimpleName() + " cannot be cloned", e);
+        }
+    }
+    
     public String toString() {
         return getClass().getSimpleName();
     }
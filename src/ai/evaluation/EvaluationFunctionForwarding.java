@@ -30,4 +30,8 @@ public class EvaluationFunctionForwarding extends EvaluationFunction {
     public float upperBound(GameState gs) {
         return baseFunction.upperBound(gs)*1.5f;
     }
+    
+    public EvaluationFunction clone() {
+        return new EvaluationFunctionForwarding(baseFunction.clone());
+    }
 }
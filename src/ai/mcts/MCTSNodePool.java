@@ -0,0 +1,319 @@
+package ai.mcts;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for the nodes of an MCTS tree: instead of one object per node
+ * (with its own GameState, and lists of actions and children), each node is an
+ * index into a set of parallel arrays, which are allocated once and reused by
+ * all the searches. The children of a node are a linked list (firstChild and
+ * nextSibling), and the action that leads to a node is kept as a number (for
+ * example, its index in a PlayerActionGenerator), so a node with no state or
+ * data uses about BYTES_PER_NODE bytes.
+ *
+ * Keeping the state of each node is optional: the AI can keep it only for some
+ * nodes (at least the root), and compute the state of the others from the
+ * closest ancestor that has one, issuing the actions along the path.
+ *
+ * The pool holds at most maxNodes nodes. When it is full, {@link #prune(int, double)}
+ * frees the least recently used nodes: each node stores the last iteration
+ * that went through it ({@link #touch(int)}), and since an iteration that goes
+ * through a node also goes through its parent, the nodes not used since a given
+ * iteration are whole subtrees, which are freed together. A node that loses
+ * some of its children is marked as pruned, and has to generate its actions
+ * again (skipping the ones that still have a child), since otherwise the
+ * actions of the freed children would not be tried again.
+ */
+public class MCTSNodePool {
+    public static final int NONE = -1;
+    public static final int BYTES_PER_NODE = 5*4 + 2 + 4*8 + 2*4;
+
+    public static final int INITIAL_CAPACITY = 1024;
+
+    // the node structure:
+    public int parent[];
+    public int firstChild[];
+    public int nextSibling[];     // also links the free nodes
+    public int depth[];
+    public byte type[];          // 0 : max, 1 : min, -1: Game-over
+
+    // the statistics:
+    public int visit_count[];
+    public double accum_evaluation[];
+    public long lastUsed[];       // the last iteration that went through the node
+
+    // the actions:
+    public long action[];         // the action that leads to the node from its parent
+    public long nextAction[];     // the next action to expand (or -1 if there are no more)
+    public boolean pruned[];      // whether some children were freed since the node was expanded
+
+    // optional objects:
+    public Object state[];        // the state of the node (or null if it is not kept)
+    public Object data[];         // anything else the AI needs (e.g., the move generator)
+
+    int maxNodes;
+    int capacity = 0;
+    int size = 0;               // nodes ever allocated (the rest of the arrays is unused)
+    int free = NONE;            // first free node
+    int nFree = 0;
+    long iteration = 0;
+    long prunedNodes = 0;
+    long scratch[] = null;
+    int stack[] = null;
+
+
+    /**
+     * @param a_maxNodes the maximum number of nodes (the arrays start small, and grow up to this size)
+     */
+    public MCTSNodePool(int a_maxNodes) {
+        maxNodes = a_maxNodes;
+        grow(Math.min(INITIAL_CAPACITY, maxNodes));
+    }
+
+
+    /**
+     * Frees all the nodes (keeping the arrays)
+     */
+    public void clear() {
+        Arrays.fill(state, 0, size, null);
+        Arrays.fill(data, 0, size, null);
+        size = 0;
+        free = NONE;
+        nFree = 0;
+    }
+
+
+    /**
+     * Allocates a node, as the first child of "a_parent" (or as a root if it is NONE)
+     * @param a_parent
+     * @param a_type
+     * @param a_action the action that leads to the node
+     * @return the node, or NONE if the pool is full
+     */
+    public int newNode(int a_parent, int a_type, long a_action) {
+        int n;
+        if (free != NONE) {
+            n = free;
+            free = nextSibling[n];
+            nFree--;
+        } else {
+            if (size >= maxNodes) return NONE;
+            if (size >= capacity) grow(Math.min(capacity*2, maxNodes));
+            n = size++;
+        }
+        parent[n] = a_parent;
+        firstChild[n] = NONE;
+        type[n] = (byte)a_type;
+        visit_count[n] = 0;
+        accum_evaluation[n] = 0;
+        lastUsed[n] = iteration;
+        action[n] = a_action;
+        nextAction[n] = 0;
+        pruned[n] = false;
+        state[n] = null;
+        data[n] = null;
+        if (a_parent == NONE) {
+            depth[n] = 0;
+            nextSibling[n] = NONE;
+        } else {
+            depth[n] = depth[a_parent] + 1;
+            nextSibling[n] = firstChild[a_parent];
+            firstChild[a_parent] = n;
+        }
+        return n;
+    }
+
+
+    /**
+     * Starts a new iteration of the search (see {@link #touch(int)})
+     */
+    public void nextIteration() {
+        iteration++;
+    }
+
+
+    /**
+     * Marks the node as used in the current iteration
+     * @param node
+     */
+    public void touch(int node) {
+        lastUsed[node] = iteration;
+    }
+
+
+    /**
+     * Adds the result of a playout to a node and all its ancestors
+     * @param node
+     * @param evaluation
+     */
+    public void backup(int node, double evaluation) {
+        while(node != NONE) {
+            accum_evaluation[node] += evaluation;
+            visit_count[node]++;
+            node = parent[node];
+        }
+    }
+
+
+    /**
+     * Frees (at least) the given fraction of the nodes under "root" that were used
+     * least recently. The nodes that lose any of their children are reset (nextAction
+     * to 0, and data to null), so that they generate their actions again, but keep
+     * their statistics and the children not freed. The ones that keep some children
+     * are marked as pruned, so that the AI skips the actions of those children when
+     * generating the actions again. The root is never freed
+     * @param root
+     * @param fraction
+     * @return the number of nodes freed
+     */
+    public int prune(int root, double fraction) {
+        int used = size - nFree;
+        if (used <= 1) return 0;
+        if (scratch == null || scratch.length < used) scratch = new long[capacity];
+        if (stack == null || stack.length < capacity) stack = new int[capacity];
+
+        // the iteration that separates the nodes to free from the rest:
+        int n = 0;
+        int top = 0;
+        for (int child = firstChild[root]; child != NONE; child = nextSibling[child]) stack[top++] = child;
+        while(top > 0) {
+            int node = stack[--top];
+            scratch[n++] = lastUsed[node];
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) stack[top++] = child;
+        }
+        if (n == 0) return 0;
+        Arrays.sort(scratch, 0, n);
+        long threshold = scratch[Math.min(n - 1, (int)(n * fraction))];
+
+        int freed = 0;
+        top = 0;
+        stack[top++] = root;
+        while(top > 0) {
+            int node = stack[--top];
+            int previous = NONE;
+            boolean lostChildren = false;
+            for (int child = firstChild[node]; child != NONE; ) {
+                int next = nextSibling[child];
+                if (lastUsed[child] <= threshold) {
+                    if (previous == NONE) firstChild[node] = next;
+                                     else nextSibling[previous] = next;
+                    freed += freeSubtree(child);
+                    lostChildren = true;
+                } else {
+                    previous = child;
+                    stack[top++] = child;
+                }
+                child = next;
+            }
+            if (lostChildren) {
+                nextAction[node] = 0;
+                data[node] = null;
+                pruned[node] = (firstChild[node] != NONE);
+            }
+        }
+        prunedNodes += freed;
+        return freed;
+    }
+
+
+    /**
+     * Frees a node and all its descendants (the node must have been unlinked from its parent)
+     * @param node
+     * @return the number of nodes freed
+     */
+    int freeSubtree(int node) {
+        int freed = 0;
+        // the nodes to free are linked through nextSibling as they are visited:
+        int pending = node;
+        nextSibling[node] = NONE;
+        while(pending != NONE) {
+            int n = pending;
+            pending = nextSibling[n];
+            for (int child = firstChild[n]; child != NONE; ) {
+                int next = nextSibling[child];
+                nextSibling[child] = pending;
+                pending = child;
+                child = next;
+            }
+            nodeFreed(n);
+            state[n] = null;
+            data[n] = null;
+            firstChild[n] = NONE;
+            parent[n] = NONE;
+            nextSibling[n] = free;
+            free = n;
+            nFree++;
+            freed++;
+        }
+        return freed;
+    }
+
+
+    /**
+     * Called for each node freed by {@link #prune(int, double)}, before its fields are
+     * cleared, so that the AI can drop anything it keeps about the node outside of
+     * the pool (the node index will be reused)
+     * @param node
+     */
+    protected void nodeFreed(int node) {
+    }
+
+
+    void grow(int newCapacity) {
+        parent = Arrays.copyOf(parent == null ? new int[0] : parent, newCapacity);
+        firstChild = Arrays.copyOf(firstChild == null ? new int[0] : firstChild, newCapacity);
+        nextSibling = Arrays.copyOf(nextSibling == null ? new int[0] : nextSibling, newCapacity);
+        depth = Arrays.copyOf(depth == null ? new int[0] : depth, newCapacity);
+        type = Arrays.copyOf(type == null ? new byte[0] : type, newCapacity);
+        visit_count = Arrays.copyOf(visit_count == null ? new int[0] : visit_count, newCapacity);
+        accum_evaluation = Arrays.copyOf(accum_evaluation == null ? new double[0] : accum_evaluation, newCapacity);
+        lastUsed = Arrays.copyOf(lastUsed == null ? new long[0] : lastUsed, newCapacity);
+        action = Arrays.copyOf(action == null ? new long[0] : action, newCapacity);
+        nextAction = Arrays.copyOf(nextAction == null ? new long[0] : nextAction, newCapacity);
+        pruned = Arrays.copyOf(pruned == null ? new boolean[0] : pruned, newCapacity);
+        state = Arrays.copyOf(state == null ? new Object[0] : state, newCapacity);
+        data = Arrays.copyOf(data == null ? new Object[0] : data, newCapacity);
+        capacity = newCapacity;
+    }
+
+
+    /**
+     * Returns whether a new node can be allocated without pruning
+     * @return
+     */
+    public boolean isFull() {
+        return nFree == 0 && size >= maxNodes;
+    }
+
+
+    /**
+     * Returns the number of nodes in use
+     * @return
+     */
+    public int getNodes() {
+        return size - nFree;
+    }
+
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+
+    /**
+     * Returns the number of nodes freed by {@link #prune(int, double)} so far
+     * @return
+     */
+    public long getPrunedNodes() {
+        return prunedNodes;
+    }
+
+
+    /**
+     * Returns the memory used by the arrays (not counting the states and data objects)
+     * @return
+     */
+    public long getArrayBytes() {
+        return (long)capacity * BYTES_PER_NODE;
+    }
+}
@@ -50,7 +50,7 @@ public class BS2_NaiveMCTS extends NaiveMCTS implements AIWithBelieveState {
 
     @Override
     public AI clone() {
-        return new BS2_NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy, ef, forceExplorationOfNonSampledActions);
+        return new BS2_NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef.clone(), forceExplorationOfNonSampledActions);
     }
 
    @Override
@@ -55,7 +55,7 @@ public class BS3_NaiveMCTS extends NaiveMCTS implements AIWithBelieveState {
 
     @Override
     public AI clone() {
-        return new BS3_NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy, ef, forceExplorationOfNonSampledActions);
+        return new BS3_NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef.clone(), forceExplorationOfNonSampledActions);
     }
 
     @Override
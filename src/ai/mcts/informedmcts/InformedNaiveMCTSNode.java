@@ -329,12 +329,12 @@ public class InformedNaiveMCTSNode extends MCTSNode {
             int idx = children.indexOf(child);
             PlayerAction pa = actions.get(idx);
 
-            for (Pair<Unit, UnitAction> ua : pa.getActions()) {
-                InformedUnitActionTableEntry actionTable = getActionTableEntry(ua.m_a);
-                idx = actionTable.actions.indexOf(ua.m_b);
+            for (int i = 0; i < pa.size(); i++) {
+                InformedUnitActionTableEntry actionTable = getActionTableEntry(pa.getUnit(i));
+                idx = actionTable.actions.indexOf(pa.getUnitAction(i));
 
                 if (idx==-1) {
-                    System.out.println("Looking for action: " + ua.m_b);
+                    System.out.println("Looking for action: " + pa.getUnitAction(i));
                     System.out.println("Available actions are: " + actionTable.actions);
                 }
                 
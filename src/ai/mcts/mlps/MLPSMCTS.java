@@ -79,7 +79,7 @@ public class MLPSMCTS extends AIWithComputationBudget implements InterruptibleAI
         
     
     public AI clone() {
-        return new MLPSMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, C, randomAI, ef);
+        return new MLPSMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, C, randomAI.clone(), ef.clone());
     }    
     
     
@@ -8,11 +8,13 @@ import ai.*;
 import ai.core.AI;
 import ai.core.AIWithComputationBudget;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import rts.ArrayGameState;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
@@ -33,9 +35,18 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     protected GameState gs_to_start_from;
     protected NaiveMCTSNode tree;
     protected int current_iteration = 0;
+    protected ArrayGameState playoutState = null;   // reused by the playouts of RandomBiasedAI
             
     public int MAXSIMULATIONTIME = 1024;
     public int MAX_TREE_DEPTH = 10;
+    // if larger than 0, the search is done in a DAG, where the nodes with the same state are
+    // shared, using a transposition table with this number of entries:
+    public int TT_SIZE = 0;
+    protected TranspositionTable<NaiveMCTSNode> transpositions = null;
+    // if larger than 0, each search starts from the subtree of the previous one for
+    // the current state (if any), keeping at most this number of its nodes (only 
+    // in a tree, so not with a transposition table):
+    public int REUSED_TREE_SIZE = 0;
     
     protected int player;
     
@@ -60,6 +71,7 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     public long total_cycles_executed = 0;
     public long total_actions_issued = 0;
     public long total_time = 0;
+    public long total_reused_runs = 0;    // runs of previous searches in the reused subtrees
     
     
     public NaiveMCTS(UnitTypeTable utt) {
@@ -128,12 +140,16 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         total_cycles_executed = 0;
         total_actions_issued = 0;
         total_time = 0;
+        total_reused_runs = 0;
         current_iteration = 0;
     }    
         
     
     public AI clone() {
-        return new NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy, ef, forceExplorationOfNonSampledActions);
+        NaiveMCTS clone = new NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef.clone(), forceExplorationOfNonSampledActions);
+        clone.TT_SIZE = TT_SIZE;
+        clone.REUSED_TREE_SIZE = REUSED_TREE_SIZE;
+        return clone;
     }    
     
     
@@ -150,9 +166,33 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     
     
     public void startNewComputation(int a_player, GameState gs) throws Exception {
+        NaiveMCTSNode reused = null;
+        if (REUSED_TREE_SIZE>0 && TT_SIZE<=0 && tree!=null && a_player==player) {
+            reused = tree.findDescendant(gs);
+        }
         player = a_player;
-        current_iteration = 0;
-        tree = new NaiveMCTSNode(player, 1-player, gs, null, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions);
+        if (reused!=null) {
+            // the creation IDs keep increasing, since the nodes of the subtree keep theirs:
+            tree = reused;
+            tree.makeRoot(REUSED_TREE_SIZE);
+            total_reused_runs += tree.visit_count;
+        } else {
+            current_iteration = 0;
+            tree = new NaiveMCTSNode(player, 1-player, gs, null, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions);
+        }
+        if (TT_SIZE>0) {
+            // the nodes of previous searches cannot be reused, since they belong to another tree:
+            if (transpositions==null || transpositions.capacity()<TT_SIZE) {
+                transpositions = new TranspositionTable<>(TT_SIZE);
+            } else {
+                transpositions.clear();
+            }
+            tree.transpositions = transpositions;
+            // the hash is then updated incrementally in the states of the rest of the nodes:
+            tree.gs.getHash();
+        } else {
+            transpositions = null;
+        }
         
         if (tree.moveGenerator==null) {
             max_actions_so_far = 0;
@@ -197,8 +237,13 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         NaiveMCTSNode leaf = tree.selectLeaf(player, 1-player, epsilon_l, epsilon_g, epsilon_0, global_strategy, MAX_TREE_DEPTH, current_iteration++);
 
         if (leaf!=null) {            
-            GameState gs2 = leaf.gs.clone();
-            simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
+            GameState gs2;
+            if (playoutPolicy.getClass()==RandomBiasedAI.class) {
+                gs2 = simulateWithArrays(leaf.gs, leaf.gs.getTime() + MAXSIMULATIONTIME);
+            } else {
+                gs2 = leaf.gs.clone();
+                simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
+            }
 
             int time = gs2.getTime() - gs_to_start_from.getTime();
             double evaluation = ef.evaluate(player, 1-player, gs2)*Math.pow(0.99,time/10.0);
@@ -232,7 +277,10 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
             NaiveMCTSNode best = (NaiveMCTSNode) tree.children.get(idx);
             System.out.println("NaiveMCTS selected children " + tree.actions.get(idx) + " explored " + best.visit_count + " Avg evaluation: " + (best.accum_evaluation/((double)best.visit_count)));
         }
-        return tree.actions.get(idx);
+        PlayerAction pa = tree.actions.get(idx);
+        // a reused root has its own copy of the state:
+        if (tree.gs!=gs_to_start_from) pa = pa.translate(tree.gs, gs_to_start_from);
+        return pa;
     }
     
     
@@ -298,7 +346,8 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
 
         do{
             if (gs.isComplete()) {
-                gameover = gs.cycle();
+                // skips the cycles until some unit needs an action:
+                gameover = gs.cycleUntilNextEvent(time);
             } else {
                 gs.issue(playoutPolicy.getAction(0, gs));
                 gs.issue(playoutPolicy.getAction(1, gs));
@@ -306,6 +355,45 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         }while(!gameover && gs.getTime()<time);   
     }
     
+    
+    /**
+     * Same as simulate, but running the playout in an ArrayGameState, which 
+     * is much faster. Only for RandomBiasedAI playout policies
+     * @param gs the state to start from (it is not modified)
+     * @param time
+     * @return the state at the end of the playout
+     */
+    public GameState simulateWithArrays(GameState gs, int time) {
+        if (playoutState==null) {
+            playoutState = new ArrayGameState(gs);
+        } else {
+            playoutState.load(gs);
+        }
+        return simulateWithArrays(playoutState, (RandomBiasedAI)playoutPolicy, time);
+    }
+    
+    
+    /**
+     * Runs a playout from the state already loaded in an ArrayGameState
+     * @param ags
+     * @param policy
+     * @param time
+     * @return the state at the end of the playout
+     */
+    public GameState simulateWithArrays(ArrayGameState ags, RandomBiasedAI policy, int time) {
+        boolean gameover = false;
+
+        do{
+            if (ags.isComplete()) {
+                gameover = ags.cycleUntilNextEvent(time);
+            } else {
+                policy.issueAction(0, ags);
+                policy.issueAction(1, ags);
+            }
+        }while(!gameover && ags.getTime()<time);
+        return ags.toGameState();
+    }
+    
     public NaiveMCTSNode getTree() {
         return tree;
     }
@@ -326,6 +414,7 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
                ", runs per action: " + (total_runs/(float)total_actions_issued) + 
                ", runs per cycle: " + (total_runs/(float)total_cycles_executed) + 
                ", average time per cycle: " + (total_time/(float)total_cycles_executed) + 
+               ", reused runs per action: " + (total_reused_runs/(float)total_actions_issued) + 
                ", max branching factor: " + max_actions_so_far;
     }
     
@@ -350,6 +439,8 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
 
         parameters.add(new ParameterSpecification("ForceExplorationOfNonSampledActions",boolean.class,true));
+        parameters.add(new ParameterSpecification("TranspositionTableSize",int.class,0));
+        parameters.add(new ParameterSpecification("ReusedTreeSize",int.class,0));
         
         return parameters;
     }    
@@ -463,4 +554,24 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     {
         forceExplorationOfNonSampledActions = fensa;
     }    
+    
+    
+    public int getTranspositionTableSize() {
+        return TT_SIZE;
+    }
+    
+    
+    public void setTranspositionTableSize(int a_size) {
+        TT_SIZE = a_size;
+    }
+    
+    
+    public int getReusedTreeSize() {
+        return REUSED_TREE_SIZE;
+    }
+    
+    
+    public void setReusedTreeSize(int a_size) {
+        REUSED_TREE_SIZE = a_size;
+    }
 }
@@ -4,6 +4,7 @@
  */
 package ai.mcts.naivemcts;
 
+import ai.core.TranspositionTable;
 import ai.mcts.MCTSNode;
 import java.math.BigInteger;
 import java.util.*;
@@ -33,13 +34,21 @@ public class NaiveMCTSNode extends MCTSNode {
     public List<UnitActionTableEntry> unitActionTable;
     double evaluation_bound;    // this is the maximum positive value that the evaluation function can return
     public BigInteger multipliers[];
+    // If not null, the search is done in a DAG instead of a tree: nodes with the same state
+    // (see GameState.getHash) are shared, no matter the order of the actions that led to them.
+    // It is set in the root, and inherited by the rest of the nodes:
+    public TranspositionTable<NaiveMCTSNode> transpositions = null;
 
 
     public NaiveMCTSNode(int maxplayer, int minplayer, GameState a_gs, NaiveMCTSNode a_parent, double a_evaluation_bound, int a_creation_ID, boolean fensa) throws Exception {
         parent = a_parent;
         gs = a_gs;
-        if (parent==null) depth = 0;
-                     else depth = parent.depth+1;     
+        if (parent==null) {
+            depth = 0;
+        } else {
+            depth = parent.depth+1;
+            transpositions = a_parent.transpositions;
+        }
         evaluation_bound = a_evaluation_bound;
         creation_ID = a_creation_ID;
         forceExplorationOfNonSampledActions = fensa;
@@ -133,6 +142,7 @@ public class NaiveMCTSNode extends MCTSNode {
             NaiveMCTSNode selected = null;
             if (global_strategy==E_GREEDY) selected = selectFromAlreadySampledEpsilonGreedy(epsilon_g);
             else if (global_strategy==UCB1) selected = selectFromAlreadySampledUCB1(C);
+            if (transpositions!=null) selected.reachedFrom(this);
             return selected.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
         }  else {
             // sample from the local MABs (this might recursively call "selectLeaf" internally):
@@ -315,16 +325,112 @@ public class NaiveMCTSNode extends MCTSNode {
         if (pate==null) {
             actions.add(pa2);            
             GameState gs2 = gs.cloneIssue(pa2);
+            if (transpositions!=null) {
+                // look for a node with the same state reached through other actions:
+                gs2 = gs2.clone();
+                while (gs2.winner() == -1 &&
+                       !gs2.gameover() &&
+                       !gs2.canExecuteAnyAction(maxplayer) &&
+                       !gs2.canExecuteAnyAction(minplayer)) {
+                    gs2.cycle();
+                }
+                // the time is part of the key, so no node can be its own descendant:
+                long key = gs2.getHash(1);
+                NaiveMCTSNode node = transpositions.get(key);
+                if (node!=null) {
+                    node.reachedFrom(this);
+                    childrenMap.put(actionCode,node);
+                    children.add(node);
+                    return node.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
+                }
+                node = new NaiveMCTSNode(maxplayer, minplayer, gs2, this, evaluation_bound, a_creation_ID, forceExplorationOfNonSampledActions);
+                // nodes closer to the root are kept for longer:
+                transpositions.put(key, node, max_depth - node.depth);
+                childrenMap.put(actionCode,node);
+                children.add(node);          
+                return node;                
+            }
             NaiveMCTSNode node = new NaiveMCTSNode(maxplayer, minplayer, gs2.clone(), this, evaluation_bound, a_creation_ID, forceExplorationOfNonSampledActions);
             childrenMap.put(actionCode,node);
             children.add(node);          
             return node;                
         }
 
+        if (transpositions!=null) pate.reachedFrom(this);
         return pate.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
     }
     
     
+    /**
+     * In a DAG, a node can have several parents: this makes "a_parent" the one the
+     * evaluation of the current iteration is propagated to (the one it was reached from)
+     * @param a_parent
+     */
+    void reachedFrom(NaiveMCTSNode a_parent) {
+        parent = a_parent;
+        depth = a_parent.depth+1;
+    }
+    
+    
+    /**
+     * Looks in the subtree of this node (in a tree, not a DAG) for a max node
+     * whose state is equal to a_gs (see GameState.equals), so that it can be
+     * the root of the search for a_gs. If there are several, it returns the most
+     * visited one
+     * @param a_gs
+     * @return the node, or null if there is none
+     */
+    public NaiveMCTSNode findDescendant(GameState a_gs) {
+        NaiveMCTSNode found = null;
+        LinkedList<NaiveMCTSNode> open = new LinkedList<>();
+        open.add(this);
+        while(!open.isEmpty()) {
+            NaiveMCTSNode node = open.removeFirst();
+            if (node.children==null) continue;
+            for(MCTSNode child:node.children) {
+                // the time of the states does not decrease as we go down the tree:
+                if (child.gs.getTime()>a_gs.getTime()) continue;
+                if (child.type==0 && child.gs.equals(a_gs)) {
+                    if (found==null || child.visit_count>found.visit_count) found = (NaiveMCTSNode)child;
+                } else {
+                    open.add((NaiveMCTSNode)child);
+                }
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Turns this node into the root of the tree, keeping at most maxNodes nodes
+     * of its subtree: the children of the most visited nodes are kept first, and
+     * the nodes whose children do not fit lose them (but keep their statistics,
+     * and those of their unit actions)
+     * @param maxNodes
+     */
+    public void makeRoot(int maxNodes) {
+        int rootDepth = depth;
+        int nodes = 1;
+        parent = null;
+        PriorityQueue<NaiveMCTSNode> open = new PriorityQueue<>((n1, n2) -> Integer.compare(n2.visit_count, n1.visit_count));
+        open.add(this);
+        while(!open.isEmpty()) {
+            NaiveMCTSNode node = open.poll();
+            node.depth -= rootDepth;
+            if (node.children==null || node.children.isEmpty()) continue;
+            if (nodes + node.children.size() <= maxNodes) {
+                nodes += node.children.size();
+                for(MCTSNode child:node.children) open.add((NaiveMCTSNode)child);
+            } else {
+                node.children.clear();
+                node.actions.clear();
+                node.childrenMap.clear();
+                node.best_child_so_far = -1;
+            }
+        }
+    }
+
+
     public UnitActionTableEntry getActionTableEntry(Unit u) {
         for(UnitActionTableEntry e:unitActionTable) {
             if (e.u == u) return e;
@@ -344,12 +450,12 @@ public class NaiveMCTSNode extends MCTSNode {
             int idx = children.indexOf(child);
             PlayerAction pa = actions.get(idx);
 
-            for (Pair<Unit, UnitAction> ua : pa.getActions()) {
-                UnitActionTableEntry actionTable = getActionTableEntry(ua.m_a);
-                idx = actionTable.actions.indexOf(ua.m_b);
+            for (int i = 0; i < pa.size(); i++) {
+                UnitActionTableEntry actionTable = getActionTableEntry(pa.getUnit(i));
+                idx = actionTable.actions.indexOf(pa.getUnitAction(i));
 
                 if (idx==-1) {
-                    System.out.println("Looking for action: " + ua.m_b);
+                    System.out.println("Looking for action: " + pa.getUnitAction(i));
                     System.out.println("Available actions are: " + actionTable.actions);
                 }
                 
@@ -363,6 +469,39 @@ public class NaiveMCTSNode extends MCTSNode {
         }
     }
 
+
+    /**
+     * Adds "n" virtual losses to the path from the root to this node (for
+     * tree parallelization): each node counts "n" extra visits, and each
+     * child gets the worst possible evaluation from the point of view of the
+     * player choosing it, so that other threads are steered away from the
+     * path while a playout from it is running. Calling it again with "-n"
+     * removes them.
+     * @param n
+     * @param child
+     */
+    public void addVirtualLoss(int n, NaiveMCTSNode child) {
+        visit_count += n;
+
+        if (child != null) {
+            double loss = n * (type==0 ? -evaluation_bound : evaluation_bound);
+            child.accum_evaluation += loss;
+
+            int idx = children.indexOf(child);
+            PlayerAction pa = actions.get(idx);
+            for (int i = 0; i < pa.size(); i++) {
+                UnitActionTableEntry actionTable = getActionTableEntry(pa.getUnit(i));
+                idx = actionTable.actions.indexOf(pa.getUnitAction(i));
+                actionTable.accum_evaluation[idx] += loss;
+                actionTable.visit_count[idx] += n;
+            }
+        }
+
+        if (parent != null) {
+            ((NaiveMCTSNode)parent).addVirtualLoss(n, this);
+        }
+    }
+
     public void printUnitActionTable() {
         for (UnitActionTableEntry uat : unitActionTable) {
             System.out.println("Actions for unit " + uat.u);
@@ -0,0 +1,333 @@
+package ai.mcts.naivemcts;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import ai.core.SearchThreadPool;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import rts.ArrayGameState;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * NaiveMCTS running its iterations in several threads, in one of two ways:
+ *
+ * - ROOT: each thread builds its own independent tree from the current state,
+ *   and the action played is the one with the most visits added over all the
+ *   trees.
+ * - TREE: all the threads share a single tree. Selection, expansion and
+ *   backpropagation are done holding a lock, and only the playouts run in
+ *   parallel. While a playout is running, its path counts as a loss
+ *   ("virtual loss", see {@link NaiveMCTSNode#addVirtualLoss(int, NaiveMCTSNode)}),
+ *   so that the other threads explore other parts of the tree.
+ *
+ * The tree of the previous search (see NaiveMCTS.REUSED_TREE_SIZE) is only
+ * reused with TREE.
+ *
+ * Each thread gets its own clone of the playout policy, but the evaluation
+ * function is shared, so it must not keep any state (the default one does not).
+ */
+public class ParallelNaiveMCTS extends NaiveMCTS {
+
+    public enum Parallelization {ROOT, TREE};
+
+    int nThreads = 4;
+    Parallelization parallelization = Parallelization.ROOT;
+
+    SearchThreadPool pool = new SearchThreadPool("ParallelNaiveMCTS");
+
+    // one per thread: in ROOT mode they run the search, in TREE mode they just
+    // hold the playout policy and the playout state of their thread:
+    NaiveMCTS workers[] = null;
+    AI workersPolicy = null;   // the playoutPolicy the workers were created from
+
+    final Object lock = new Object();
+
+
+    public ParallelNaiveMCTS(UnitTypeTable utt) {
+        this(100,-1,100,10,
+             0.3f, 0.0f, 0.4f,
+             new RandomBiasedAI(),
+             new SimpleSqrtEvaluationFunction3(), true,
+             4, Parallelization.ROOT);
+    }
+
+
+    public ParallelNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth,
+                               float e_l, float discout_l,
+                               float e_g, float discout_g,
+                               float e_0, float discout_0,
+                               AI policy, EvaluationFunction a_ef,
+                               boolean fensa,
+                               int threads, Parallelization a_parallelization) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, discout_l, e_g, discout_g, e_0, discout_0, policy, a_ef, fensa);
+        nThreads = threads;
+        parallelization = a_parallelization;
+    }
+
+
+    public ParallelNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth, float e_l, float e_g, float e_0, AI policy, EvaluationFunction a_ef, boolean fensa,
+                               int threads, Parallelization a_parallelization) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, e_g, e_0, policy, a_ef, fensa);
+        nThreads = threads;
+        parallelization = a_parallelization;
+    }
+
+
+    @Override
+    public AI clone() {
+        ParallelNaiveMCTS clone = new ParallelNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef.clone(), forceExplorationOfNonSampledActions, nThreads, parallelization);
+        clone.global_strategy = global_strategy;
+        clone.TT_SIZE = TT_SIZE;
+        clone.REUSED_TREE_SIZE = REUSED_TREE_SIZE;
+        return clone;
+    }
+
+
+    @Override
+    public void startNewComputation(int a_player, GameState gs) throws Exception {
+        createWorkers();
+        if (parallelization == Parallelization.ROOT) {
+            // the budget is split among the trees:
+            int time = TIME_BUDGET;
+            int iterations = (ITERATIONS_BUDGET < 0 ? ITERATIONS_BUDGET : (ITERATIONS_BUDGET + nThreads - 1) / nThreads);
+            for (int i = 0; i < nThreads; i++) {
+                NaiveMCTS w = workers[i];
+                w.setTimeBudget(time);
+                w.setIterationsBudget(iterations);
+                w.MAXSIMULATIONTIME = MAXSIMULATIONTIME;
+                w.MAX_TREE_DEPTH = MAX_TREE_DEPTH;
+                w.initial_epsilon_l = initial_epsilon_l;
+                w.initial_epsilon_g = initial_epsilon_g;
+                w.initial_epsilon_0 = initial_epsilon_0;
+                w.discount_l = discount_l;
+                w.discount_g = discount_g;
+                w.discount_0 = discount_0;
+                w.global_strategy = global_strategy;
+                w.forceExplorationOfNonSampledActions = forceExplorationOfNonSampledActions;
+                w.TT_SIZE = TT_SIZE;
+                w.ef = ef;
+                // each tree needs its own copy of the state, since the units are the keys of its actions:
+                w.startNewComputation(a_player, i == 0 ? gs : gs.clone());
+            }
+            player = a_player;
+            tree = workers[0].tree;
+            gs_to_start_from = gs;
+            max_actions_so_far = Math.max(max_actions_so_far, workers[0].max_actions_so_far);
+        } else {
+            super.startNewComputation(a_player, gs);
+            // the shared tree is not turned into a DAG, since the parent nodes change when nodes
+            // are reached from different paths, and that would break the virtual losses of the
+            // iterations running in other threads:
+            tree.transpositions = null;
+        }
+    }
+
+
+    @Override
+    public void resetSearch() {
+        super.resetSearch();
+        if (workers != null) {
+            for (NaiveMCTS w : workers) w.resetSearch();
+        }
+    }
+
+
+    @Override
+    public void computeDuringOneGameFrame() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Callable<Object>> tasks = new ArrayList<>();
+        if (parallelization == Parallelization.ROOT) {
+            for (final NaiveMCTS w : workers) {
+                tasks.add(() -> {
+                    w.computeDuringOneGameFrame();
+                    return null;
+                });
+            }
+            pool.run(tasks, tasks.size());
+            for (NaiveMCTS w : workers) {
+                total_runs += w.total_runs;
+                w.total_runs = 0;
+            }
+        } else {
+            final AtomicLong count = new AtomicLong(0);
+            for (int i = 0; i < nThreads; i++) {
+                final NaiveMCTS w = workers[i];
+                tasks.add(() -> {
+                    while (ITERATIONS_BUDGET < 0 || count.getAndIncrement() < ITERATIONS_BUDGET) {
+                        if (!iteration(player, w)) break;
+                        if (TIME_BUDGET >= 0 && (System.currentTimeMillis() - start) >= TIME_BUDGET) break;
+                    }
+                    return null;
+                });
+            }
+            pool.run(tasks, tasks.size());
+        }
+        total_time += (System.currentTimeMillis() - start);
+        total_cycles_executed++;
+    }
+
+
+    /**
+     * One iteration of tree parallelization, run by the thread that uses the
+     * playout policy and state of "w"
+     * @param player
+     * @param w
+     * @return false if there are no leaves to explore
+     * @throws Exception
+     */
+    public boolean iteration(int player, NaiveMCTS w) throws Exception {
+        NaiveMCTSNode leaf;
+        GameState gs2 = null;
+        boolean arrays = w.playoutPolicy.getClass() == RandomBiasedAI.class;
+
+        synchronized (lock) {
+            leaf = tree.selectLeaf(player, 1 - player, epsilon_l, epsilon_g, epsilon_0, global_strategy, MAX_TREE_DEPTH, current_iteration++);
+            if (leaf == null) {
+                System.err.println(this.getClass().getSimpleName() + ": claims there are no more leafs to explore...");
+                return false;
+            }
+            leaf.addVirtualLoss(1, null);
+            // copying the state of the leaf can build its lazy indexes, so it is also done holding the lock:
+            if (arrays) {
+                if (w.playoutState == null) {
+                    w.playoutState = new ArrayGameState(leaf.gs);
+                } else {
+                    w.playoutState.load(leaf.gs);
+                }
+            } else {
+                gs2 = leaf.gs.clone();
+            }
+        }
+
+        if (arrays) {
+            gs2 = w.simulateWithArrays(w.playoutState, (RandomBiasedAI) w.playoutPolicy, leaf.gs.getTime() + MAXSIMULATIONTIME);
+        } else {
+            w.simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
+        }
+        int time = gs2.getTime() - gs_to_start_from.getTime();
+        double evaluation = ef.evaluate(player, 1 - player, gs2) * Math.pow(0.99, time / 10.0);
+
+        synchronized (lock) {
+            leaf.addVirtualLoss(-1, null);
+            leaf.propagateEvaluation(evaluation, null);
+
+            // update the epsilon values:
+            epsilon_0 *= discount_0;
+            epsilon_l *= discount_l;
+            epsilon_g *= discount_g;
+            total_runs++;
+        }
+        return true;
+    }
+
+
+    @Override
+    public PlayerAction getBestActionSoFar() {
+        if (parallelization == Parallelization.TREE) return super.getBestActionSoFar();
+
+        // add up the visits of each action over all the trees (actions are identified by
+        // the same code in all of them, since they were all created from the same state):
+        total_actions_issued++;
+        Map<BigInteger, Integer> visits = new HashMap<>();
+        BigInteger best = null;
+        for (NaiveMCTS w : workers) {
+            if (w.tree == null || w.tree.childrenMap == null) continue;
+            for (Map.Entry<BigInteger, NaiveMCTSNode> entry : w.tree.childrenMap.entrySet()) {
+                int v = visits.getOrDefault(entry.getKey(), 0) + entry.getValue().visit_count;
+                visits.put(entry.getKey(), v);
+                if (best == null || v > visits.get(best)) best = entry.getKey();
+            }
+        }
+        if (best == null) {
+            if (DEBUG >= 1) System.out.println("ParallelNaiveMCTS no children selected. Returning an empty action");
+            return new PlayerAction();
+        }
+        if (DEBUG >= 1) System.out.println("ParallelNaiveMCTS selected action visited " + visits.get(best) + " times over " + nThreads + " trees");
+        for (NaiveMCTS w : workers) {
+            NaiveMCTSNode child = (w.tree == null || w.tree.childrenMap == null ? null : w.tree.childrenMap.get(best));
+            if (child != null) return w.tree.actions.get(w.tree.children.indexOf(child));
+        }
+        return new PlayerAction();
+    }
+
+
+    /**
+     * Creates the per-thread NaiveMCTS instances if the number of threads or
+     * the playout policy changed
+     */
+    void createWorkers() {
+        if (workers != null && workers.length == nThreads && workersPolicy == playoutPolicy) return;
+        workers = new NaiveMCTS[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            workers[i] = new NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH,
+                                       initial_epsilon_l, discount_l, initial_epsilon_g, discount_g, initial_epsilon_0, discount_0,
+                                       playoutPolicy.clone(), ef, forceExplorationOfNonSampledActions);
+        }
+        workersPolicy = playoutPolicy;
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        pool.shutdown();
+    }
+
+
+    @Override
+    public void gameOver(int winner) throws Exception {
+        super.gameOver(winner);
+        pool.shutdown();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + MAXSIMULATIONTIME + "," + MAX_TREE_DEPTH + "," + epsilon_l + ", " + discount_l + ", " + epsilon_g + ", " + discount_g + ", " + epsilon_0 + ", " + discount_0 + ", " + playoutPolicy + ", " + ef + ", " + nThreads + ", " + parallelization + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,4));
+
+        ParameterSpecification ps_p = new ParameterSpecification("Parallelization",Parallelization.class,Parallelization.ROOT);
+        ps_p.addPossibleValue(Parallelization.ROOT);
+        ps_p.addPossibleValue(Parallelization.TREE);
+        parameters.add(ps_p);
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_threads) {
+        nThreads = a_threads;
+    }
+
+
+    public Parallelization getParallelization() {
+        return parallelization;
+    }
+
+
+    public void setParallelization(Parallelization a_parallelization) {
+        parallelization = a_parallelization;
+    }
+}
@@ -130,7 +130,7 @@ public class TwoPhaseNaiveMCTSPerNode extends AIWithComputationBudget implements
         return new TwoPhaseNaiveMCTSPerNode(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, 
                                              phase1_epsilon_l, phase1_epsilon_g, phase1_epsilon_0,
                                              phase2_epsilon_l, phase2_epsilon_g, phase2_epsilon_0,
-                                             phase1_budget, randomAI, ef, forceExplorationOfNonSampledActions);
+                                             phase1_budget, randomAI.clone(), ef.clone(), forceExplorationOfNonSampledActions);
     }    
     
     
@@ -77,7 +77,7 @@ public class DownsamplingUCT extends AIWithComputationBudget implements Interrup
         
     
     public AI clone() {
-        return new DownsamplingUCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, MAX_TREE_DEPTH, randomAI, ef);
+        return new DownsamplingUCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, MAX_TREE_DEPTH, randomAI.clone(), ef.clone());
     }  
     
     
@@ -0,0 +1,529 @@
+package ai.mcts.uct;
+
+import ai.core.AI;
+import ai.RandomBiasedAI;
+import ai.core.AIWithComputationBudget;
+import ai.core.ParameterSpecification;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.MCTSNodePool;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.PlayerActionGenerator;
+import rts.units.UnitTypeTable;
+import ai.core.InterruptibleAI;
+
+/**
+ * UCT with its tree kept in an MCTSNodePool instead of UCTNode objects, so that
+ * the memory used by the search is bounded (by MAX_TREE_NODES nodes) and mostly
+ * allocated once for the whole game:
+ * - When the pool is full, the least recently used quarter of the tree is freed
+ *   before the next playout (see MCTSNodePool.prune). The nodes that lost some
+ *   children expand their actions again, skipping the ones that still have one.
+ * - The action leading to each node is its index in the (shuffled) move
+ *   generator of its parent. The move generators are created again from the
+ *   state of the node when needed, with the same shuffle.
+ * - If STORE_STATES is false, only the root (and the few nodes whose actions
+ *   cannot be indexed, when the number of actions of the parent overflows a
+ *   long) keep their state, and the state of the rest is computed during the
+ *   descent by issuing the actions from the closest ancestor with a state.
+ *   This uses much less memory (and so, less time in the garbage collector),
+ *   but each step down the tree costs a move generator and a forward model
+ *   step. Since the game is deterministic, the computed states are the same
+ *   as the stored ones (except for the IDs of the units created in them).
+ */
+public class PooledUCT extends AIWithComputationBudget implements InterruptibleAI {
+    public static int DEBUG = 0;
+    public static final double PRUNE_FRACTION = 0.25;
+    EvaluationFunction ef;
+
+    Random r = new Random();
+    AI randomAI = new RandomBiasedAI();
+
+    GameState gs_to_start_from;
+    public MCTSNodePool pool;
+    int root = MCTSNodePool.NONE;
+    // the actions of the nodes that cannot be indexed (see createNode):
+    HashMap<Integer,PlayerAction> unindexedActions = new HashMap<>();
+    long salt = 0;      // seed of the shuffle of the move generators of this search
+
+    // statistics:
+    public long total_runs = 0;
+    public long total_cycles_executed = 0;
+    public long total_actions_issued = 0;
+
+    long total_runs_this_move = 0;
+
+    int MAXSIMULATIONTIME = 1024;
+    int MAX_TREE_DEPTH = 10;
+    int MAX_TREE_NODES = 100000;
+    boolean STORE_STATES = false;
+
+    int playerForThisComputation;
+    float evaluation_bound = 0;
+
+
+    public PooledUCT(UnitTypeTable utt) {
+        this(100,-1,100,10,
+             new RandomBiasedAI(),
+             new SimpleSqrtEvaluationFunction3(),
+             100000, false);
+    }
+
+
+    public PooledUCT(int available_time, int max_playouts, int lookahead, int max_depth, AI policy, EvaluationFunction a_ef,
+                     int max_nodes, boolean store_states) {
+        super(available_time, max_playouts);
+        MAXSIMULATIONTIME = lookahead;
+        randomAI = policy;
+        MAX_TREE_DEPTH = max_depth;
+        ef = a_ef;
+        MAX_TREE_NODES = max_nodes;
+        STORE_STATES = store_states;
+    }
+
+
+    public String statisticsString() {
+        return "Average runs per cycle: " + ((double)total_runs)/total_cycles_executed +
+               ", Average runs per action: " + ((double)total_runs)/total_actions_issued +
+               ", Average pruned nodes per action: " + (pool == null ? 0 : ((double)pool.getPrunedNodes())/total_actions_issued);
+    }
+
+
+    public void printStats() {
+        if (total_cycles_executed>0 && total_actions_issued>0) {
+            System.out.println("Average runs per cycle: " + ((double)total_runs)/total_cycles_executed);
+            System.out.println("Average runs per action: " + ((double)total_runs)/total_actions_issued);
+        }
+    }
+
+
+    public void reset() {
+        gs_to_start_from = null;
+        clearTree();
+        total_runs_this_move = 0;
+    }
+
+
+    public AI clone() {
+        return new PooledUCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI.clone(), ef.clone(), MAX_TREE_NODES, STORE_STATES);
+    }
+
+
+    public PlayerAction getAction(int player, GameState gs) throws Exception
+    {
+        if (gs.canExecuteAnyAction(player)) {
+            startNewComputation(player,gs.clone());
+            computeDuringOneGameFrame();
+            return getBestActionSoFar();
+        } else {
+            return new PlayerAction();
+        }
+    }
+
+
+    public void startNewComputation(int a_player, GameState gs) throws Exception {
+        playerForThisComputation = a_player;
+        evaluation_bound = ef.upperBound(gs);
+        if (pool == null || pool.getMaxNodes() != Math.max(2, MAX_TREE_NODES)) {
+            pool = new MCTSNodePool(Math.max(2, MAX_TREE_NODES)) {
+                @Override
+                protected void nodeFreed(int node) {
+                    if (action[node]<0) unindexedActions.remove(node);
+                }
+            };
+        }
+        clearTree();
+        salt = r.nextLong();
+        root = createNode(MCTSNodePool.NONE, -1, null, gs);
+        gs_to_start_from = gs;
+        total_runs_this_move = 0;
+    }
+
+
+    public void resetSearch() {
+        if (DEBUG>=2) System.out.println("Resetting search...");
+        clearTree();
+        gs_to_start_from = null;
+        total_runs_this_move = 0;
+    }
+
+
+    void clearTree() {
+        if (pool != null) pool.clear();
+        unindexedActions.clear();
+        root = MCTSNodePool.NONE;
+    }
+
+
+    public void computeDuringOneGameFrame() throws Exception {
+        if (DEBUG>=2) System.out.println("Search...");
+        long start = System.currentTimeMillis();
+        int nPlayouts = 0;
+        long cutOffTime = start + TIME_BUDGET;
+        if (TIME_BUDGET<=0) cutOffTime = 0;
+
+        while(true) {
+            if (cutOffTime>0 && System.currentTimeMillis() > cutOffTime) break;
+            if (ITERATIONS_BUDGET>0 && nPlayouts>ITERATIONS_BUDGET) break;
+            monteCarloRun(playerForThisComputation, cutOffTime);
+            nPlayouts++;
+        }
+
+        total_cycles_executed++;
+    }
+
+
+    public double monteCarloRun(int player, long cutOffTime) throws Exception {
+        pool.nextIteration();
+        if (pool.isFull()) pool.prune(root, PRUNE_FRACTION);
+
+        // tree policy (as UCTNode.UCTSelectLeaf), keeping the state of the current node:
+        int node = root;
+        GameState gs = (GameState)pool.state[root];
+        while(true) {
+            pool.touch(node);
+            // Cut the tree policy at a predefined depth
+            if (pool.depth[node]>=MAX_TREE_DEPTH || pool.type[node]==-1) break;
+
+            // if non visited children, visit:
+            if (pool.nextAction[node]>=0 && !pool.isFull()) {
+                PlayerActionGenerator generator = generator(node, gs);
+                int choice[] = new int[generator.getChoiceUnits().length];
+                boolean indexed = generator.getSize()!=Long.MAX_VALUE;
+                boolean found;
+                do {
+                    found = generator.nextChoice(choice, cutOffTime);
+                } while(found && pool.pruned[node] && hasChild(node, generator, choice, indexed));
+                if (found) {
+                    if (indexed) pool.nextAction[node] = generator.getNextIndex();
+                            else pool.nextAction[node] = (generator.getNextIndex()<0 ? -1 : 0);
+                    PlayerAction a = generator.toPlayerAction(choice);
+                    GameState gs2 = gs.cloneIssue(a).clone();
+                    node = createNode(node, indexed ? generator.rank(choice) : -1, a, gs2);
+                    gs = gs2;
+                    break;
+                } else {
+                    pool.nextAction[node] = -1;
+                    pool.pruned[node] = false;
+                }
+            }
+
+            // Bandit policy:
+            double best_score = 0;
+            int best = MCTSNodePool.NONE;
+            for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+                double tmp = childValue(node, child);
+                if (best==MCTSNodePool.NONE || tmp>best_score) {
+                    best = child;
+                    best_score = tmp;
+                }
+            }
+            if (best==MCTSNodePool.NONE) break;
+            if (pool.state[best]!=null) {
+                gs = (GameState)pool.state[best];
+            } else {
+                gs = childState(node, best, gs);
+            }
+            node = best;
+        }
+
+        GameState gs2 = gs.clone();
+        simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
+
+        int time = gs2.getTime() - gs_to_start_from.getTime();
+        double evaluation = ef.evaluate(player, 1-player, gs2)*Math.pow(0.99,time/10.0);
+
+        pool.backup(node, evaluation);
+        total_runs++;
+        total_runs_this_move++;
+        return evaluation;
+    }
+
+
+    /**
+     * Adds a node to the tree (as UCTNode's constructor), moving gs forward
+     * until some player can issue an action
+     * @param parent
+     * @param index the index of the action in the move generator of the parent
+     * (or -1 if it cannot be indexed, because the number of actions overflowed)
+     * @param a the action
+     * @param gs the state after the action, which the node keeps if STORE_STATES
+     * is true, if it is the root, or if its actions cannot be indexed
+     * @return the node
+     */
+    int createNode(int parent, long index, PlayerAction a, GameState gs) throws Exception {
+        advance(gs);
+        int type;
+        if (gs.winner()!=-1 || gs.gameover()) {
+            type = -1;
+        } else if (gs.canExecuteAnyAction(playerForThisComputation)) {
+            type = 0;
+        } else {
+            type = 1;
+        }
+        int node = pool.newNode(parent, type, index);
+        if (index<0 && parent!=MCTSNodePool.NONE) unindexedActions.put(node, a);
+        boolean store = STORE_STATES || index<0;
+        if (type!=-1) {
+            PlayerActionGenerator generator = newGenerator(node, gs);
+            if (generator.getSize()==Long.MAX_VALUE) store = true;
+            if (store) pool.data[node] = generator;
+        } else {
+            pool.nextAction[node] = -1;
+        }
+        if (store) pool.state[node] = gs;
+        return node;
+    }
+
+
+    /**
+     * Cycles the state until some player can issue an action (or the game is over)
+     * @param gs
+     */
+    void advance(GameState gs) {
+        while(gs.winner()==-1 &&
+              !gs.gameover() &&
+              !gs.canExecuteAnyAction(playerForThisComputation) &&
+              !gs.canExecuteAnyAction(1-playerForThisComputation)) gs.cycle();
+    }
+
+
+    /**
+     * Returns the move generator of a node: the one it keeps (if it keeps its
+     * state), or a new one positioned at its next action to expand
+     * @param node
+     * @param gs the state of the node
+     * @return
+     */
+    PlayerActionGenerator generator(int node, GameState gs) throws Exception {
+        PlayerActionGenerator generator = (PlayerActionGenerator)pool.data[node];
+        if (generator==null) {
+            generator = newGenerator(node, gs);
+            if (pool.nextAction[node]>0) generator.setNextIndex(pool.nextAction[node]);
+            if (pool.state[node]!=null) pool.data[node] = generator;
+        }
+        return generator;
+    }
+
+
+    PlayerActionGenerator newGenerator(int node, GameState gs) throws Exception {
+        int player = (pool.type[node]==0 ? playerForThisComputation : 1-playerForThisComputation);
+        PlayerActionGenerator generator = new PlayerActionGenerator(gs, player);
+        generator.randomizeOrder(new Random(salt + node));
+        return generator;
+    }
+
+
+    /**
+     * Returns whether a node already has a child for a choice of its move generator
+     * (only needed for the nodes that lost some children when the tree was pruned)
+     * @param node
+     * @param generator
+     * @param choice
+     * @param indexed whether the actions of the children are indexed
+     * @return
+     */
+    boolean hasChild(int node, PlayerActionGenerator generator, int choice[], boolean indexed) {
+        if (indexed) {
+            long index = generator.rank(choice);
+            for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+                if (pool.action[child]==index) return true;
+            }
+        } else {
+            PlayerAction a = generator.toPlayerAction(choice);
+            for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+                if (pool.action[child]<0 && a.equals(unindexedActions.get(child))) return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the action that leads from a node to one of its children
+     * @param node
+     * @param child
+     * @param gs the state of the node
+     * @return
+     */
+    PlayerAction action(int node, int child, GameState gs) throws Exception {
+        if (pool.action[child]<0) return unindexedActions.get(child);
+        PlayerActionGenerator generator = generator(node, gs);
+        int choice[] = new int[generator.getChoiceUnits().length];
+        generator.unrank(pool.action[child], choice);
+        return generator.toPlayerAction(choice);
+    }
+
+
+    /**
+     * Computes the state of a child of a node from the state of the node (even
+     * if the child keeps its state), issuing the action that leads to it
+     * @param node
+     * @param child
+     * @param gs the state of the node (it is not modified)
+     * @return
+     */
+    public GameState childState(int node, int child, GameState gs) throws Exception {
+        GameState gs2 = gs.cloneIssue(action(node, child, gs)).clone();
+        advance(gs2);
+        return gs2;
+    }
+
+
+    /**
+     * Returns the root of the tree of the current search
+     * @return
+     */
+    public int getRoot() {
+        return root;
+    }
+
+
+    /**
+     * Returns the number of nodes whose action cannot be indexed (see createNode)
+     * @return
+     */
+    public int getUnindexedActions() {
+        return unindexedActions.size();
+    }
+
+
+    public double childValue(int node, int child) {
+        double exploitation = pool.accum_evaluation[child] / pool.visit_count[child];
+        double exploration = Math.sqrt(Math.log((double)pool.visit_count[node])/pool.visit_count[child]);
+        if (pool.type[node]==0) {
+            // max node:
+            exploitation = (evaluation_bound + exploitation)/(2*evaluation_bound);
+        } else {
+            exploitation = (evaluation_bound - exploitation)/(2*evaluation_bound);
+        }
+
+        return UCTNode.C*exploitation + exploration;
+    }
+
+
+    public PlayerAction getBestActionSoFar() throws Exception {
+        total_actions_issued++;
+
+        int mostVisited = MCTSNodePool.NONE;
+        for (int child = pool.firstChild[root]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+            if (mostVisited == MCTSNodePool.NONE || pool.visit_count[child]>pool.visit_count[mostVisited] ||
+                (pool.visit_count[child]==pool.visit_count[mostVisited] &&
+                 pool.accum_evaluation[child] > pool.accum_evaluation[mostVisited])) {
+                mostVisited = child;
+            }
+        }
+
+        if (DEBUG>=1) System.out.println(this.getClass().getSimpleName() + " performed " + total_runs_this_move + " playouts, with " + pool.getNodes() + " nodes.");
+
+        if (mostVisited==MCTSNodePool.NONE) {
+            if (DEBUG>=1) System.out.println(this.getClass().getSimpleName() + " no children selected. Returning an empty asction");
+            return new PlayerAction();
+        }
+        return action(root, mostVisited, gs_to_start_from);
+    }
+
+
+    public void simulate(GameState gs, int time) throws Exception {
+        boolean gameover = false;
+
+        do{
+            if (gs.isComplete()) {
+                // skips the cycles until some unit needs an action:
+                gameover = gs.cycleUntilNextEvent(time);
+            } else {
+                gs.issue(randomAI.getAction(0, gs));
+                gs.issue(randomAI.getAction(1, gs));
+            }
+        }while(!gameover && gs.getTime()<time);
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + MAXSIMULATIONTIME + ", " + MAX_TREE_DEPTH + ", " + randomAI + ", " + ef + ", " + MAX_TREE_NODES + ", " + STORE_STATES + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = new ArrayList<>();
+
+        parameters.add(new ParameterSpecification("TimeBudget",int.class,100));
+        parameters.add(new ParameterSpecification("IterationsBudget",int.class,-1));
+        parameters.add(new ParameterSpecification("PlayoutLookahead",int.class,100));
+        parameters.add(new ParameterSpecification("MaxTreeDepth",int.class,10));
+
+        parameters.add(new ParameterSpecification("DefaultPolicy",AI.class, randomAI));
+        parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("MaxTreeNodes",int.class,100000));
+        parameters.add(new ParameterSpecification("StoreStates",boolean.class,false));
+
+        return parameters;
+    }
+
+
+    public int getPlayoutLookahead() {
+        return MAXSIMULATIONTIME;
+    }
+
+
+    public void setPlayoutLookahead(int a_pola) {
+        MAXSIMULATIONTIME = a_pola;
+    }
+
+
+    public int getMaxTreeDepth() {
+        return MAX_TREE_DEPTH;
+    }
+
+
+    public void setMaxTreeDepth(int a_mtd) {
+        MAX_TREE_DEPTH = a_mtd;
+    }
+
+
+    public AI getDefaultPolicy() {
+        return randomAI;
+    }
+
+
+    public void setDefaultPolicy(AI a_dp) {
+        randomAI = a_dp;
+    }
+
+
+    public EvaluationFunction getEvaluationFunction() {
+        return ef;
+    }
+
+
+    public void setEvaluationFunction(EvaluationFunction a_ef) {
+        ef = a_ef;
+    }
+
+
+    public int getMaxTreeNodes() {
+        return MAX_TREE_NODES;
+    }
+
+
+    public void setMaxTreeNodes(int a_mtn) {
+        MAX_TREE_NODES = a_mtn;
+    }
+
+
+    public boolean getStoreStates() {
+        return STORE_STATES;
+    }
+
+
+    public void setStoreStates(boolean a_ss) {
+        STORE_STATES = a_ss;
+    }
+}
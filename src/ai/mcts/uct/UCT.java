@@ -37,11 +37,15 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     public long total_runs = 0;
     public long total_cycles_executed = 0;
     public long total_actions_issued = 0;
+    public long total_reused_runs = 0;    // runs of previous searches in the reused subtrees
     
     long total_runs_this_move = 0;
         
     int MAXSIMULATIONTIME = 1024;
     int MAX_TREE_DEPTH = 10;
+    // if larger than 0, each search starts from the subtree of the previous one for
+    // the current state (if any), keeping at most this number of its nodes:
+    int REUSED_TREE_SIZE = 0;
     
     int playerForThisComputation;
     
@@ -64,7 +68,8 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     public String statisticsString() {
         return "Average runs per cycle: " + ((double)total_runs)/total_cycles_executed +
-               ", Average runs per action: " + ((double)total_runs)/total_actions_issued;
+               ", Average runs per action: " + ((double)total_runs)/total_actions_issued +
+               ", Average reused runs per action: " + ((double)total_reused_runs)/total_actions_issued;
 
     }
     
@@ -84,7 +89,9 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     
     public AI clone() {
-        return new UCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI, ef);
+        UCT clone = new UCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI.clone(), ef.clone());
+        clone.REUSED_TREE_SIZE = REUSED_TREE_SIZE;
+        return clone;
     }  
     
     
@@ -101,9 +108,19 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     
     public void startNewComputation(int a_player, GameState gs) throws Exception {
-        float evaluation_bound = ef.upperBound(gs);
+        UCTNode reused = null;
+        if (REUSED_TREE_SIZE>0 && tree!=null && a_player==playerForThisComputation) {
+            reused = tree.findDescendant(gs);
+        }
         playerForThisComputation = a_player;
-        tree = new UCTNode(playerForThisComputation, 1-playerForThisComputation, gs, null, evaluation_bound);
+        if (reused!=null) {
+            tree = reused;
+            tree.makeRoot(playerForThisComputation, 1-playerForThisComputation, REUSED_TREE_SIZE);
+            total_reused_runs += tree.visit_count;
+        } else {
+            float evaluation_bound = ef.upperBound(gs);
+            tree = new UCTNode(playerForThisComputation, 1-playerForThisComputation, gs, null, evaluation_bound);
+        }
         gs_to_start_from = gs;
         total_runs_this_move = 0;
 //        System.out.println(evaluation_bound);
@@ -195,7 +212,10 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
         
         if (mostVisitedIdx==-1) return new PlayerAction();
         
-        return tree.actions.get(mostVisitedIdx);
+        PlayerAction pa = tree.actions.get(mostVisitedIdx);
+        // a reused root has its own copy of the state:
+        if (tree.gs!=gs_to_start_from) pa = pa.translate(tree.gs, gs_to_start_from);
+        return pa;
     }
     
     
@@ -225,7 +245,8 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
 
         do{
             if (gs.isComplete()) {
-                gameover = gs.cycle();
+                // skips the cycles until some unit needs an action:
+                gameover = gs.cycleUntilNextEvent(time);
             } else {
                 gs.issue(randomAI.getAction(0, gs));
                 gs.issue(randomAI.getAction(1, gs));
@@ -251,6 +272,7 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
         
         parameters.add(new ParameterSpecification("DefaultPolicy",AI.class, randomAI));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("ReusedTreeSize",int.class,0));
 
         return parameters;
     }      
@@ -294,4 +316,14 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }
+    
+    
+    public int getReusedTreeSize() {
+        return REUSED_TREE_SIZE;
+    }
+    
+    
+    public void setReusedTreeSize(int a_size) {
+        REUSED_TREE_SIZE = a_size;
+    }
 }
@@ -82,7 +82,7 @@ public class UCTFirstPlayUrgency extends AIWithComputationBudget implements Inte
     
     
     public AI clone() {
-        return new UCTFirstPlayUrgency(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI, ef, FPUvalue);
+        return new UCTFirstPlayUrgency(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI.clone(), ef.clone(), FPUvalue);
     }  
      
     
@@ -5,7 +5,9 @@
 package ai.mcts.uct;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
 import rts.GameState;
 import rts.PlayerAction;
@@ -127,6 +129,67 @@ public class UCTNode {
     }
     
     
+    /**
+     * Looks in the subtree of this node for a max node whose state is equal to
+     * a_gs (see GameState.equals), so that it can be the root of the search for
+     * a_gs. If there are several, it returns the most visited one
+     * @param a_gs
+     * @return the node, or null if there is none
+     */
+    public UCTNode findDescendant(GameState a_gs) {
+        UCTNode found = null;
+        LinkedList<UCTNode> open = new LinkedList<>();
+        open.add(this);
+        while(!open.isEmpty()) {
+            UCTNode node = open.removeFirst();
+            if (node.children==null) continue;
+            for(UCTNode child:node.children) {
+                // the time of the states does not decrease as we go down the tree:
+                if (child.gs.getTime()>a_gs.getTime()) continue;
+                if (child.type==0 && child.gs.equals(a_gs)) {
+                    if (found==null || child.visit_count>found.visit_count) found = child;
+                } else {
+                    open.add(child);
+                }
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Turns this node into the root of the tree, keeping at most maxNodes nodes
+     * of its subtree: the children of the most visited nodes are kept first, and
+     * the nodes whose children do not fit lose them (but keep their statistics,
+     * and generate their actions again)
+     * @param maxplayer
+     * @param minplayer
+     * @param maxNodes
+     */
+    public void makeRoot(int maxplayer, int minplayer, int maxNodes) throws Exception {
+        int rootDepth = depth;
+        int nodes = 1;
+        parent = null;
+        PriorityQueue<UCTNode> open = new PriorityQueue<>((n1, n2) -> Integer.compare(n2.visit_count, n1.visit_count));
+        open.add(this);
+        while(!open.isEmpty()) {
+            UCTNode node = open.poll();
+            node.depth -= rootDepth;
+            if (node.children==null || node.children.isEmpty()) continue;
+            if (nodes + node.children.size() <= maxNodes) {
+                nodes += node.children.size();
+                open.addAll(node.children);
+            } else {
+                node.children.clear();
+                node.actions.clear();
+                node.moveGenerator = new PlayerActionGenerator(node.gs, node.type==0 ? maxplayer : minplayer);
+                node.moveGenerator.randomizeOrder();
+                node.hasMoreActions = true;
+            }
+        }
+    }
+    
+    
     public void showNode(int depth, int maxdepth) {
         int mostVisitedIdx = -1;
         UCTNode mostVisited = null;
@@ -75,7 +75,7 @@ public class UCTUnitActions extends AIWithComputationBudget implements Interrupt
     
     
     public AI clone() {
-        return new UCTUnitActions(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI, ef);
+        return new UCTUnitActions(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI.clone(), ef.clone());
     }  
     
     
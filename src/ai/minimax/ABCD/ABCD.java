@@ -16,6 +16,7 @@ import java.util.List;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
+import rts.UndoLog;
 import rts.units.UnitTypeTable;
 
 /**
@@ -69,7 +70,7 @@ public class ABCD extends AI {
     }
     
     public AI clone() {
-        return new ABCD(MAXDEPTH, playoutAI, maxPlayoutTime, ef);
+        return new ABCD(MAXDEPTH, playoutAI.clone(), maxPlayoutTime, ef.clone());
     }     
     
     public PlayerAction getAction(int player, GameState gs) throws Exception {
@@ -152,8 +153,13 @@ public class ABCD extends AI {
             do{
                 next = actions.getNextAction(-1);
                 if (next!=null) {
-                    GameState gs2 = gs.cloneIssue(next);
-                    MiniMaxResult tmp = ABCD(gs2, maxplayer, minplayer, alpha, beta, depthLeft-1, nextPlayerInSimultaneousNode);
+                    UndoLog log = gs.issueWithUndo(next);
+                    MiniMaxResult tmp;
+                    try {
+                        tmp = ABCD(gs, maxplayer, minplayer, alpha, beta, depthLeft-1, nextPlayerInSimultaneousNode);
+                    } finally {
+                        gs.undo(log);
+                    }
                     alpha = Math.max(alpha,tmp.evaluation);
                     if (best==null || tmp.evaluation>best.evaluation) {
                         best = tmp;
@@ -172,8 +178,13 @@ public class ABCD extends AI {
             do{
                 next = actions.getNextAction(-1);
                 if (next!=null) {
-                    GameState gs2 = gs.cloneIssue(next);
-                    MiniMaxResult tmp = ABCD(gs2, maxplayer, minplayer, alpha, beta, depthLeft-1, nextPlayerInSimultaneousNode);
+                    UndoLog log = gs.issueWithUndo(next);
+                    MiniMaxResult tmp;
+                    try {
+                        tmp = ABCD(gs, maxplayer, minplayer, alpha, beta, depthLeft-1, nextPlayerInSimultaneousNode);
+                    } finally {
+                        gs.undo(log);
+                    }
                     beta = Math.min(beta,tmp.evaluation);
                     if (best==null || tmp.evaluation<best.evaluation) {
                         best = tmp;
@@ -184,12 +195,17 @@ public class ABCD extends AI {
             }while(next!=null);
             return best;
         } else {
-            GameState gs2 = gs.clone();
-            while(gs2.winner()==-1 && 
-                  !gs2.gameover() && 
-                  !gs2.canExecuteAnyAction(maxplayer) && 
-                  !gs2.canExecuteAnyAction(minplayer)) gs2.cycle();
-            return ABCD(gs2, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+            // the state is searched in place, and the cycles are undone afterwards:
+            UndoLog log = null;
+            try {
+                while(gs.winner()==-1 && 
+                      !gs.gameover() && 
+                      !gs.canExecuteAnyAction(maxplayer) && 
+                      !gs.canExecuteAnyAction(minplayer)) log = gs.cycleWithUndo(log);
+                return ABCD(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+            } finally {
+                if (log!=null) gs.undo(log);
+            }
         }
     }       
     
@@ -21,13 +21,17 @@ public class ABCDNode {
     public float alpha, beta;
     public Pair<PlayerAction,Float> best;
     public int nextPlayerInSimultaneousNode = 0;
+    // the window the node was created with (alpha and beta change during the search),
+    // and its key in the transposition table (if any):
+    public float originalAlpha, originalBeta;
+    public long hash = 0;
     
     public ABCDNode(int a_type, int a_depth, GameState a_gs, float a_alpha, float a_beta, int npsn) {
         type = a_type;
         depth = a_depth;
         gs = a_gs;
-        alpha = a_alpha;
-        beta = a_beta;
+        alpha = originalAlpha = a_alpha;
+        beta = originalBeta = a_beta;
         nextPlayerInSimultaneousNode = npsn;
     }
 }
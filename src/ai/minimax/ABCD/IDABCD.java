@@ -9,14 +9,17 @@ import ai.abstraction.pathfinding.AStarPathFinding;
 import ai.core.AI;
 import ai.core.AIWithComputationBudget;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.minimax.TranspositionEntry;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
+import rts.Zobrist;
 import rts.units.UnitTypeTable;
 import util.Pair;
 import ai.core.InterruptibleAI;
@@ -61,6 +64,10 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
     int maxPlayoutTime = 100;
     EvaluationFunction ef;
     boolean performGreedyActionScan = false;
+    
+    // number of entries of the transposition table (0 to not use one):
+    int TT_SIZE = 0;
+    TranspositionTable<TranspositionEntry> tt = null;
 
     int max_consecutive_frames_searching_so_far = 0;
 
@@ -92,11 +99,29 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
 
     
     public IDABCD(int tpc, int ppc, AI a_playoutAI, int a_maxPlayoutTime, EvaluationFunction a_ef, boolean a_performGreedyActionScan) {
+        this(tpc, ppc, a_playoutAI, a_maxPlayoutTime, a_ef, a_performGreedyActionScan, 0);
+    }
+
+    
+    /**
+     * @param tpc time budget
+     * @param ppc iterations budget
+     * @param a_playoutAI
+     * @param a_maxPlayoutTime
+     * @param a_ef
+     * @param a_performGreedyActionScan
+     * @param ttSize number of entries of the transposition table, where the values of the 
+     * nodes (and of the playouts) are stored, so that states reached through different 
+     * orders of the same actions (or again in the next iteration of iterative deepening)
+     * are not searched again (0 to not use one)
+     */
+    public IDABCD(int tpc, int ppc, AI a_playoutAI, int a_maxPlayoutTime, EvaluationFunction a_ef, boolean a_performGreedyActionScan, int ttSize) {
         super(tpc, ppc);
         playoutAI = a_playoutAI;
         maxPlayoutTime = a_maxPlayoutTime;
         ef = a_ef;
         performGreedyActionScan = a_performGreedyActionScan;
+        TT_SIZE = ttSize;
     }
 
 
@@ -131,11 +156,13 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
         max_potential_branching_so_far = 0;
         avg_potential_branching_so_far = 0;
         count_potential_branching_so_far = 0;        
+        
+        if (tt!=null) tt.clear();
     }
 
 
     public AI clone() {
-        return new IDABCD(TIME_BUDGET, ITERATIONS_BUDGET, playoutAI, maxPlayoutTime, ef, performGreedyActionScan);
+        return new IDABCD(TIME_BUDGET, ITERATIONS_BUDGET, playoutAI.clone(), maxPlayoutTime, ef.clone(), performGreedyActionScan, TT_SIZE);
     }
     
 
@@ -162,6 +189,12 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
         gs_to_start_from = gs;
         playerForThisComputation = a_player;
         bestMove = null;
+        if (TT_SIZE<=0) {
+            tt = null;
+        } else {
+            if (tt==null || tt.capacity()<TT_SIZE) tt = new TranspositionTable<>(TT_SIZE);
+            tt.newSearch();
+        }
     }
     
 
@@ -311,9 +344,29 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
             head = stack.get(stack.size()-1);
 //            System.out.println("searchOutsideStack: head type " + head.type);
         }
+        searchStack(initial_gs, maxplayer, minplayer, depth, cutOffTime, maxPlayouts);
+
+        if (stack.isEmpty()) {
+//            System.out.println("searchOutsideStack: stack is empty, returning last result.");
+            return lastResult.m_a;
+        }
+//        System.out.println("searchOutsideStack: stack is not empty.");
+        if (needAResult) {
+            if (head.best!=null) return head.best.m_a;
+            return head.actions.getRandom();
+        }
+        return null;
+    }
+
+
+    /**
+     * Searches the nodes in the stack until it is empty (leaving the value of the 
+     * first node added to it in lastResult), or until the budget is over
+     */
+    void searchStack(GameState initial_gs, int maxplayer, int minplayer, int depth, long cutOffTime, int maxPlayouts) throws Exception {
         while(!stack.isEmpty()) {
             if (cutOffTime>0 && System.currentTimeMillis()>=cutOffTime) break;
-            if (maxPlayouts>0 && nPlayouts>=maxPlayouts) break;
+            if (playoutsOver(maxPlayouts)) break;
 
 //            System.out.print("Stack: [ ");
 //            for(RTMiniMaxNode n:stack) System.out.print(" " + n.type + "(" + n.gs.getTime() + ") ");
@@ -329,6 +382,16 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
             switch(current.type) {
                 case -1: // unknown node:
                         {
+                            if (tt!=null) {
+                                current.hash = nodeHash(current, maxplayer, minplayer);
+                                // the root is always searched, since its best action is needed:
+                                TranspositionEntry entry = (current.depth>0 ? tt.get(current.hash) : null);
+                                if (entry!=null && entry.cutsOff(current.alpha, current.beta, depth - current.depth)) {
+                                    lastResult = new Pair<>(null, entry.value);
+                                    stack.remove(0);
+                                    break;
+                                }
+                            }
                             int winner = current.gs.winner();
                             boolean gameover = current.gs.gameover();
                             if (current.depth>=depth || winner != -1 || gameover) {
@@ -362,6 +425,11 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                                 lastResult = new Pair<>(null, ef.evaluate(maxplayer, minplayer, gs2));
 //                                System.out.println("last result from -1 node");
                                 stack.remove(0);
+                                if (tt!=null) {
+                                    // the value of a state where the game is over does not depend on the depth:
+                                    int height = (winner != -1 || current.gs.gameover() ? MAX_DEPTH : 0);
+                                    tt.put(current.hash, new TranspositionEntry(lastResult.m_b, TranspositionEntry.EXACT, height, -1), height);
+                                }
                             } else {
                                 current.type = 2;
                                 if (current.gs.canExecuteAnyAction(maxplayer)) {
@@ -383,7 +451,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                         nNodes++;
                         if (current.actions == null) {
                             current.actions = new PlayerActionGenerator(current.gs, maxplayer);
-                            current.actions.randomizeOrder();
+                            shuffle(current.actions);
                             long l = current.actions.getSize();
                             if (DEBUG>=2) {
                                 for(int i = 0;i<current.depth;i++) System.out.print(" ");
@@ -416,6 +484,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             if (current.beta <= current.alpha || next == null) {
                                 lastResult = current.best;
                                 stack.remove(0);
+                                store(current, depth, cutOffTime);
                                 if (current.actions.getGenerated() > max_branching_so_far) {
                                     max_branching_so_far = current.actions.getGenerated();
                                 }
@@ -431,7 +500,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                         nNodes++;
                         if (current.actions == null) {
                             current.actions = new PlayerActionGenerator(current.gs, minplayer);
-                            current.actions.randomizeOrder();
+                            shuffle(current.actions);
                             long l = current.actions.getSize();
                             if (DEBUG>=2) {
                                 for(int i = 0;i<current.depth;i++) System.out.print(" ");
@@ -460,6 +529,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             if (current.beta <= current.alpha || next == null) {
                                 lastResult = current.best;
                                 stack.remove(0);
+                                store(current, depth, cutOffTime);
                                 if (current.actions.getGenerated() > max_branching_so_far) {
                                     max_branching_so_far = current.actions.getGenerated();
                                 }
@@ -485,17 +555,57 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                         break;
             }
         }
+    }
 
-        if (stack.isEmpty()) {
-//            System.out.println("searchOutsideStack: stack is empty, returning last result.");
-            return lastResult.m_a;
-        }
-//        System.out.println("searchOutsideStack: stack is not empty.");
-        if (needAResult) {
-            if (head.best!=null) return head.best.m_a;
-            return head.actions.getRandom();
+
+    /**
+     * Shuffles the actions of a max/min node before searching them
+     * @param actions
+     */
+    void shuffle(PlayerActionGenerator actions) {
+        actions.randomizeOrder();
+    }
+
+
+    /**
+     * Returns whether the search has to stop because of the iterations budget
+     * @param maxPlayouts
+     * @return
+     */
+    boolean playoutsOver(int maxPlayouts) {
+        return maxPlayouts>0 && nPlayouts>=maxPlayouts;
+    }
+
+
+    /**
+     * Returns the key of a node in the transposition table: the hash of its state, and
+     * which player moves first if both can
+     * @param node
+     * @param maxplayer
+     * @param minplayer
+     * @return
+     */
+    long nodeHash(ABCDNode node, int maxplayer, int minplayer) {
+        int salt = maxplayer;
+        if (node.gs.canExecuteAnyAction(maxplayer) && node.gs.canExecuteAnyAction(minplayer)) {
+            salt += 2 * (1 + node.nextPlayerInSimultaneousNode);
         }
-        return null;
+        return node.gs.getHash(1) ^ Zobrist.saltKey(salt);
+    }
+    
+    
+    /**
+     * Stores the result of a max/min node in the transposition table (unless the 
+     * generation of its actions was interrupted because time was over)
+     * @param node
+     * @param depth
+     * @param cutOffTime
+     */
+    void store(ABCDNode node, int depth, long cutOffTime) {
+        if (tt==null) return;
+        if (cutOffTime>0 && System.currentTimeMillis()>cutOffTime) return;
+        int height = depth - node.depth;
+        tt.put(node.hash, TranspositionEntry.create(node.best.m_b, node.originalAlpha, node.originalBeta, height, -1), height);
     }
 
 
@@ -532,6 +642,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
         parameters.add(new ParameterSpecification("PlayoutLookahead",int.class,100));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
         parameters.add(new ParameterSpecification("PerformGreedyActionScan",boolean.class,true));
+        parameters.add(new ParameterSpecification("TranspositionTableSize",int.class,0));
         
         return parameters;
     }  
@@ -575,4 +686,22 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
     public void setPerformGreedyActionScan(boolean a_pgas) {
         performGreedyActionScan = a_pgas;
     }
+
+
+    public int getTranspositionTableSize() {
+        return TT_SIZE;
+    }
+    
+    
+    public void setTranspositionTableSize(int a_size) {
+        TT_SIZE = a_size;
+    }
+    
+    
+    /**
+     * @return the deepest search completed since the last reset
+     */
+    public int getMaxDepth() {
+        return max_depth_so_far;
+    }
 }
@@ -0,0 +1,283 @@
+package ai.minimax.ABCD;
+
+import ai.abstraction.WorkerRush;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import ai.core.SearchThreadPool;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.PlayerActionGenerator;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * IDABCD searching the children of the root in several threads, following
+ * "Young Brothers Wait": at each depth of the iterative deepening, the first
+ * action of the root (the eldest brother) is searched alone, and then the rest
+ * are searched in batches of BATCH_SIZE actions, all the actions of a batch at
+ * the same time, with the alpha bound obtained from the previous ones. The
+ * value and action of the root are then the same as if the children had been
+ * searched one after another, but the batches are searched in the time of the
+ * slowest action of each one.
+ *
+ * The result does not depend on the number of threads or on their timing: each
+ * child is searched with its own random number generator (to shuffle the
+ * actions of its nodes), seeded from the one of this AI, and an iteration of the
+ * iterative deepening is used only if it completed within the budget. So, with
+ * an iterations budget (and no time budget), the action returned depends only
+ * on the seed of the random number generator, as long as the playout AI is
+ * deterministic (like the default WorkerRush) and no transposition table is
+ * used (the table is shared by all the threads, so what each finds there
+ * depends on the others).
+ *
+ * Each child gets its own clone of the game state, and the playout AI is cloned
+ * for every playout (as in IDABCD), but the evaluation function is shared, so it
+ * must not keep any state (the default one does not).
+ */
+public class ParallelIDABCD extends IDABCD {
+
+    public static final int BATCH_SIZE = 16;
+
+    int nThreads = 4;
+
+    SearchThreadPool pool = new SearchThreadPool("ParallelIDABCD");
+
+    Random r = new Random();
+
+
+    public ParallelIDABCD(UnitTypeTable utt) {
+        this(100, -1,
+             new WorkerRush(utt, new AStarPathFinding()), 100,
+             new SimpleSqrtEvaluationFunction3(), true, 0, 4);
+    }
+
+
+    /**
+     * @param tpc time budget
+     * @param ppc iterations budget
+     * @param a_playoutAI
+     * @param a_maxPlayoutTime
+     * @param a_ef
+     * @param a_performGreedyActionScan
+     * @param ttSize number of entries of the transposition table (0 to not use one)
+     * @param threads
+     */
+    public ParallelIDABCD(int tpc, int ppc, AI a_playoutAI, int a_maxPlayoutTime, EvaluationFunction a_ef, boolean a_performGreedyActionScan, int ttSize, int threads) {
+        super(tpc, ppc, a_playoutAI, a_maxPlayoutTime, a_ef, a_performGreedyActionScan, ttSize);
+        nThreads = threads;
+    }
+
+
+    @Override
+    public AI clone() {
+        return new ParallelIDABCD(TIME_BUDGET, ITERATIONS_BUDGET, playoutAI.clone(), maxPlayoutTime, ef.clone(), performGreedyActionScan, TT_SIZE, nThreads);
+    }
+
+
+    /**
+     * Searches the tree up to the given depth (starting again if a previous call
+     * did not complete it)
+     * @return the best action, or null if the search could not be completed
+     * within the budget (and needAResult is false)
+     */
+    @Override
+    public PlayerAction searchOutsideStack(GameState initial_gs, int maxplayer, int minplayer, int depth, long cutOffTime, int maxPlayouts, boolean needAResult) throws Exception {
+        if (nThreads <= 1 ||
+            initial_gs.winner() != -1 || initial_gs.gameover() ||
+            !initial_gs.canExecuteAnyAction(maxplayer)) {
+            return super.searchOutsideStack(initial_gs, maxplayer, minplayer, depth, cutOffTime, maxPlayouts, needAResult);
+        }
+
+        // the root is a max node (see IDABCD.searchOutsideStack):
+        ABCDNode head = new ABCDNode(0, 0, initial_gs, -EvaluationFunction.VICTORY, EvaluationFunction.VICTORY, 0);
+        int nextPlayer = (initial_gs.canExecuteAnyAction(minplayer) ? 1 : 0);
+        if (tt != null) head.hash = nodeHash(head, maxplayer, minplayer);
+        stack = new LinkedList<>();
+        stack.add(head);
+        nLeaves = 0;
+        nNodes = 1;
+        time_depth = 0;
+        treeIsComplete = true;
+
+        head.actions = new PlayerActionGenerator(initial_gs, maxplayer);
+        head.actions.randomizeOrder(r);
+        long l = head.actions.getSize();
+        if (l > max_potential_branching_so_far) max_potential_branching_so_far = l;
+        avg_potential_branching_so_far += l;
+        count_potential_branching_so_far++;
+
+        AtomicInteger playouts = new AtomicInteger(nPlayouts);
+        long seed = r.nextLong();
+        int nChildren = 0;
+        boolean complete = true;
+        PlayerAction next = head.actions.getNextAction(cutOffTime);
+        while (next != null && head.alpha < head.beta) {
+            // the eldest brother alone, and then the young ones in batches:
+            List<PlayerAction> batch = new ArrayList<>();
+            while (next != null && batch.size() < (nChildren == 0 ? 1 : BATCH_SIZE)) {
+                batch.add(next);
+                next = head.actions.getNextAction(cutOffTime);
+            }
+            Searcher searchers[] = new Searcher[batch.size()];
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Searcher searcher = new Searcher(this, new Random(seed + nChildren + i), playouts);
+                // a clone, so that the searches do not clone the same state:
+                GameState gs2 = initial_gs.cloneIssue(batch.get(i)).clone();
+                ABCDNode child = new ABCDNode(-1, 1, gs2, head.alpha, head.beta, nextPlayer);
+                searchers[i] = searcher;
+                tasks.add(() -> {
+                    searcher.search(child, initial_gs, maxplayer, minplayer, depth, cutOffTime, maxPlayouts);
+                    return null;
+                });
+            }
+            pool.run(tasks, nThreads);
+            nChildren += batch.size();
+
+            for (Searcher searcher : searchers) {
+                addStatistics(searcher);
+                if (!searcher.complete) complete = false;
+            }
+            if (!complete) break;
+            for (int i = 0; i < batch.size() && head.alpha < head.beta; i++) {
+                float value = searchers[i].lastResult.m_b;
+                head.alpha = Math.max(head.alpha, value);
+                if (head.best == null || value > head.best.m_b) {
+                    head.best = new Pair<>(batch.get(i), value);
+                }
+            }
+        }
+        if (head.best == null ||
+            (cutOffTime > 0 && System.currentTimeMillis() >= cutOffTime) ||
+            (maxPlayouts > 0 && nPlayouts > maxPlayouts)) {
+            complete = false;
+        }
+
+        if (head.actions.getGenerated() > max_branching_so_far) {
+            max_branching_so_far = head.actions.getGenerated();
+        }
+        avg_branching_so_far += head.actions.getGenerated();
+        count_branching_so_far++;
+
+        if (complete) {
+            stack.clear();
+            lastResult = head.best;
+            store(head, depth, cutOffTime);
+            return lastResult.m_a;
+        }
+        // the stack is left with the root, so that the iteration is not considered complete:
+        if (needAResult) {
+            if (head.best != null) return head.best.m_a;
+            return head.actions.getRandom();
+        }
+        return null;
+    }
+
+
+    void addStatistics(Searcher searcher) {
+        nLeaves += searcher.nLeaves;
+        nNodes += searcher.nNodes;
+        nPlayouts += searcher.nPlayouts;
+        if (searcher.time_depth > time_depth) time_depth = searcher.time_depth;
+        if (!searcher.treeIsComplete) treeIsComplete = false;
+        if (searcher.max_branching_so_far > max_branching_so_far) max_branching_so_far = searcher.max_branching_so_far;
+        avg_branching_so_far += searcher.avg_branching_so_far;
+        count_branching_so_far += searcher.count_branching_so_far;
+        if (searcher.max_potential_branching_so_far > max_potential_branching_so_far) max_potential_branching_so_far = searcher.max_potential_branching_so_far;
+        avg_potential_branching_so_far += searcher.avg_potential_branching_so_far;
+        count_potential_branching_so_far += searcher.count_potential_branching_so_far;
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        pool.shutdown();
+    }
+
+
+    @Override
+    public void gameOver(int winner) throws Exception {
+        super.gameOver(winner);
+        pool.shutdown();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + playoutAI + ", " + maxPlayoutTime + ", " + ef + ", " + performGreedyActionScan + ", " + nThreads + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,4));
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_threads) {
+        nThreads = a_threads;
+    }
+
+
+    /**
+     * Searches the subtree of one child of the root, with its own stack and
+     * statistics, and its own random number generator
+     */
+    static class Searcher extends IDABCD {
+        Random random;
+        // the playouts of all the searchers of an iteration, and the ones of this
+        // one already added to it:
+        AtomicInteger playouts;
+        int playoutsAdded = 0;
+        boolean complete = false;
+
+        Searcher(IDABCD parent, Random a_random, AtomicInteger a_playouts) {
+            super(parent.getTimeBudget(), parent.getIterationsBudget(), parent.playoutAI, parent.maxPlayoutTime, parent.ef, false, 0);
+            MAX_DEPTH = parent.MAX_DEPTH;
+            tt = parent.tt;
+            random = a_random;
+            playouts = a_playouts;
+        }
+
+        void search(ABCDNode node, GameState initial_gs, int maxplayer, int minplayer, int depth, long cutOffTime, int maxPlayouts) throws Exception {
+            stack = new LinkedList<>();
+            stack.add(node);
+            searchStack(initial_gs, maxplayer, minplayer, depth, cutOffTime, maxPlayouts);
+            complete = stack.isEmpty();
+        }
+
+        @Override
+        void shuffle(PlayerActionGenerator actions) {
+            actions.randomizeOrder(random);
+        }
+
+        @Override
+        boolean playoutsOver(int maxPlayouts) {
+            // the iteration is discarded if it needs more playouts than the budget,
+            // so the searches stop only when they are over it (and not when they
+            // reach it), and the result does not depend on which finishes first:
+            playouts.addAndGet(nPlayouts - playoutsAdded);
+            playoutsAdded = nPlayouts;
+            return maxPlayouts>0 && playouts.get()>maxPlayouts;
+        }
+    }
+}
@@ -29,9 +29,9 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     public static int DEBUG = 0;
     
     // reset at each execution of minimax:
-    static int minCT = -1;
-    static int maxCT = -1;
-    static int nLeaves = 0;
+    int minCT = -1;
+    int maxCT = -1;
+    int nLeaves = 0;
     
     public long max_branching_so_far = 0;
     public long max_leaves_so_far = 0;
@@ -82,7 +82,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     
     @Override
     public AI clone() {
-        return new IDRTMinimax(TIME_BUDGET, ef);
+        return new IDRTMinimax(TIME_BUDGET, ef.clone());
     }  
     
     
@@ -182,6 +182,22 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
             if (stack.isEmpty()) return lastResult.m_a;
             head = stack.get(stack.size()-1);
         } 
+        searchStack(initial_gs, maxplayer, minplayer, lookAhead, cutOffTime);
+        
+        if (stack.isEmpty()) return lastResult.m_a;
+        if (needAResult) {
+            if (head.best!=null) return head.best.m_a;
+            return head.actions.getRandom();
+        }
+        return null;
+    }    
+    
+    
+    /**
+     * Searches the nodes in the stack until it is empty (leaving the value of the 
+     * first node added to it in lastResult), or until time is over
+     */
+    void searchStack(GameState initial_gs, int maxplayer, int minplayer, int lookAhead, long cutOffTime) throws Exception {
         while(!stack.isEmpty() && System.currentTimeMillis()<cutOffTime){
             
 //            System.out.print("Stack: [ ");
@@ -285,14 +301,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                         break;
             }
         }
-        
-        if (stack.isEmpty()) return lastResult.m_a;
-        if (needAResult) {
-            if (head.best!=null) return head.best.m_a;
-            return head.actions.getRandom();
-        }
-        return null;
-    }    
+    }
     
     
     public PlayerAction greedyActionScan(GameState gs, int player, long cutOffTime) throws Exception {        
@@ -353,4 +362,12 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }    
+    
+    
+    /**
+     * @return the longest lookahead of a completed search
+     */
+    public int getMaxDepth() {
+        return max_depth_so_far;
+    }
 }
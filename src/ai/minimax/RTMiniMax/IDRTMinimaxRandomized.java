@@ -39,7 +39,7 @@ public class IDRTMinimaxRandomized extends IDRTMinimax {
 
     
     public AI clone() {
-        return new IDRTMinimaxRandomized(TIME_BUDGET, m_repeats, ef);
+        return new IDRTMinimaxRandomized(TIME_BUDGET, m_repeats, ef.clone());
     }
 
 
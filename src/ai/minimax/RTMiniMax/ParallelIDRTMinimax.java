@@ -0,0 +1,187 @@
+package ai.minimax.RTMiniMax;
+
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import ai.core.SearchThreadPool;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.EvaluationFunctionForwarding;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.PlayerActionGenerator;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * IDRTMinimax searching the children of the root in several threads, following
+ * "Young Brothers Wait" (as ParallelIDABCD): at each lookahead of the iterative
+ * deepening, the first action of the root is searched alone, and then the rest
+ * are searched in batches of BATCH_SIZE actions, all the actions of a batch at
+ * the same time, with the alpha bound obtained from the previous ones. So, the
+ * value and action of the root are the same as those of IDRTMinimax for each
+ * lookahead, and only the lookahead reached within the time budget changes.
+ *
+ * Each child gets its own clone of the game state, but the evaluation function
+ * is shared, so it must not keep any state (the default one does not).
+ */
+public class ParallelIDRTMinimax extends IDRTMinimax {
+
+    public static final int BATCH_SIZE = 16;
+
+    int nThreads = 4;
+
+    SearchThreadPool pool = new SearchThreadPool("ParallelIDRTMinimax");
+
+
+    public ParallelIDRTMinimax(UnitTypeTable utt) {
+        this(100, new SimpleSqrtEvaluationFunction3(), 4);
+    }
+
+
+    public ParallelIDRTMinimax(int available_time, EvaluationFunction a_ef, int threads) {
+        super(available_time, a_ef);
+        nThreads = threads;
+    }
+
+
+    @Override
+    public AI clone() {
+        return new ParallelIDRTMinimax(TIME_BUDGET, ef.clone(), nThreads);
+    }
+
+
+    /**
+     * Searches the tree up to the given lookahead (starting again if a previous
+     * call did not complete it)
+     * @return the best action, or null if the search could not be completed
+     * within the time budget (and needAResult is false)
+     */
+    @Override
+    public PlayerAction timeBoundedRealTimeMinimaxABOutsideStack(GameState initial_gs, int maxplayer, int minplayer, int lookAhead, long cutOffTime, boolean needAResult) throws Exception {
+        if (nThreads <= 1 ||
+            initial_gs.getTime() >= lookAhead || initial_gs.winner() != -1 ||
+            !initial_gs.canExecuteAnyAction(maxplayer)) {
+            return super.timeBoundedRealTimeMinimaxABOutsideStack(initial_gs, maxplayer, minplayer, lookAhead, cutOffTime, needAResult);
+        }
+
+        // the root is a max node (see IDRTMinimax.timeBoundedRealTimeMinimaxABOutsideStack):
+        RTMiniMaxNode head = new RTMiniMaxNode(0, initial_gs, -EvaluationFunctionForwarding.VICTORY, EvaluationFunctionForwarding.VICTORY);
+        stack = new LinkedList<>();
+        stack.add(head);
+        minCT = -1;
+        maxCT = -1;
+        nLeaves = 0;
+
+        head.actions = new PlayerActionGenerator(initial_gs, maxplayer);
+        long l = head.actions.getSize();
+        if (l > max_potential_branching_so_far) max_potential_branching_so_far = l;
+
+        int nChildren = 0;
+        boolean complete = true;
+        PlayerAction next = head.actions.getNextAction(cutOffTime);
+        while (next != null && head.alpha < head.beta) {
+            // the eldest brother alone, and then the young ones in batches:
+            List<PlayerAction> batch = new ArrayList<>();
+            while (next != null && batch.size() < (nChildren == 0 ? 1 : BATCH_SIZE)) {
+                batch.add(next);
+                next = head.actions.getNextAction(cutOffTime);
+            }
+            IDRTMinimax searchers[] = new IDRTMinimax[batch.size()];
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                IDRTMinimax searcher = new IDRTMinimax(TIME_BUDGET, ef);
+                // a clone, so that the searches do not clone the same state:
+                GameState gs2 = initial_gs.cloneIssue(batch.get(i)).clone();
+                searcher.stack = new LinkedList<>();
+                searcher.stack.add(new RTMiniMaxNode(-1, gs2, head.alpha, head.beta));
+                searchers[i] = searcher;
+                tasks.add(() -> {
+                    searcher.searchStack(initial_gs, maxplayer, minplayer, lookAhead, cutOffTime);
+                    return null;
+                });
+            }
+            pool.run(tasks, nThreads);
+            nChildren += batch.size();
+
+            for (IDRTMinimax searcher : searchers) {
+                addStatistics(searcher);
+                if (!searcher.stack.isEmpty()) complete = false;
+            }
+            if (!complete) break;
+            for (int i = 0; i < batch.size() && head.alpha < head.beta; i++) {
+                float value = searchers[i].lastResult.m_b;
+                head.alpha = Math.max(head.alpha, value);
+                if (head.best == null || value > head.best.m_b) {
+                    head.best = new Pair<>(batch.get(i), value);
+                }
+            }
+        }
+        if (head.best == null || System.currentTimeMillis() >= cutOffTime) complete = false;
+        if (head.actions.getGenerated() > max_branching_so_far) max_branching_so_far = head.actions.getGenerated();
+
+        if (complete) {
+            stack.clear();
+            lastResult = head.best;
+            return lastResult.m_a;
+        }
+        // the stack is left with the root, so that the search is not considered complete:
+        if (needAResult) {
+            if (head.best != null) return head.best.m_a;
+            return head.actions.getRandom();
+        }
+        return null;
+    }
+
+
+    void addStatistics(IDRTMinimax searcher) {
+        if (searcher.minCT != -1 && (minCT == -1 || searcher.minCT < minCT)) minCT = searcher.minCT;
+        if (searcher.maxCT != -1 && (maxCT == -1 || searcher.maxCT > maxCT)) maxCT = searcher.maxCT;
+        nLeaves += searcher.nLeaves;
+        if (searcher.max_branching_so_far > max_branching_so_far) max_branching_so_far = searcher.max_branching_so_far;
+        if (searcher.max_potential_branching_so_far > max_potential_branching_so_far) max_potential_branching_so_far = searcher.max_potential_branching_so_far;
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        pool.shutdown();
+    }
+
+
+    @Override
+    public void gameOver(int winner) throws Exception {
+        super.gameOver(winner);
+        pool.shutdown();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + ef + ", " + nThreads + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,4));
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_threads) {
+        nThreads = a_threads;
+    }
+}
@@ -6,14 +6,18 @@ package ai.minimax.RTMiniMax;
 
 import ai.core.AI;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import ai.minimax.MiniMaxResult;
+import ai.minimax.TranspositionEntry;
 import java.util.ArrayList;
 import java.util.List;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
+import rts.UndoLog;
+import rts.Zobrist;
 import rts.units.UnitTypeTable;
 
 /**
@@ -35,6 +39,10 @@ public class RTMinimax extends AI {
     
     EvaluationFunction ef;
     
+    // number of entries of the transposition table (0 to not use one):
+    int TT_SIZE = 0;
+    TranspositionTable<TranspositionEntry> tt = null;
+    
     
     public RTMinimax(UnitTypeTable utt) {
         this(50, new SimpleSqrtEvaluationFunction3());
@@ -42,19 +50,32 @@ public class RTMinimax extends AI {
 
     
     public RTMinimax(int la, EvaluationFunction a_ef) {
+        this(la, a_ef, 0);
+    }
+            
+    
+    /**
+     * @param la lookahead
+     * @param a_ef evaluation function
+     * @param ttSize number of entries of the transposition table, used to avoid searching
+     * again the states reached through different orders of the same actions (0 to not use one)
+     */
+    public RTMinimax(int la, EvaluationFunction a_ef, int ttSize) {
         LOOKAHEAD = la;
         ef = a_ef;
+        TT_SIZE = ttSize;
     }
             
     
     @Override
     public void reset() {
+        if (tt!=null) tt.clear();
     }
     
 
     @Override
     public AI clone() {
-        return new RTMinimax(LOOKAHEAD, ef);
+        return new RTMinimax(LOOKAHEAD, ef.clone(), TT_SIZE);
     }     
 
     
@@ -83,8 +104,13 @@ public class RTMinimax extends AI {
         do{
             pa = pag.getNextAction(cutOffTime);
             if (pa!=null) {
-                GameState gs2 = gs.cloneIssue(pa);
-                float score = ef.evaluate(player, 1 - player, gs2);
+                UndoLog log = gs.issueWithUndo(pa);
+                float score;
+                try {
+                    score = ef.evaluate(player, 1 - player, gs);
+                } finally {
+                    gs.undo(log);
+                }
                 if (best==null || score>bestScore) {
                     best = pa;
                     bestScore = score; 
@@ -107,6 +133,12 @@ public class RTMinimax extends AI {
         minCT = -1;
         maxCT = -1;
         nLeaves = 0;
+        if (TT_SIZE<=0) {
+            tt = null;
+        } else {
+            if (tt==null || tt.capacity()<TT_SIZE) tt = new TranspositionTable<>(TT_SIZE);
+            tt.newSearch();
+        }
         MiniMaxResult bestMove = realTimeMinimaxAB(gs, maxplayer, minplayer, alpha, beta, gs.getTime() + lookAhead, 0);
         System.out.println("realTimeMinimax: " + bestMove + " in " + (System.currentTimeMillis()-start));
         return bestMove.action;
@@ -124,24 +156,49 @@ public class RTMinimax extends AI {
             nLeaves++;
 //            System.out.println("Eval (at " + gs.getTime() + "): " + EvaluationFunction.evaluate(maxplayer, minplayer, gs));
 //            System.out.println(gs);
-            return new MiniMaxResult(null,ef.evaluate(maxplayer, minplayer, gs), gs);
+            // gs is searched in place (and undone afterwards), so it is not kept in the result:
+            return new MiniMaxResult(null,ef.evaluate(maxplayer, minplayer, gs), null);
         }
 
-        if (gs.canExecuteAnyAction(maxplayer)) {
+        boolean maxNode = gs.canExecuteAnyAction(maxplayer);
+        long key = 0;
+        int height = lookAhead - gs.getTime();
+        int first = 0;
+        if (tt!=null && (maxNode || gs.canExecuteAnyAction(minplayer))) {
+            key = gs.getHash(1) ^ Zobrist.saltKey(maxplayer);
+            TranspositionEntry entry = tt.get(key);
+            if (entry!=null) {
+                // the root is always searched, since its best action is needed:
+                if (depth>0 && entry.cutsOff(alpha, beta, height)) return new MiniMaxResult(null, entry.value, null);
+                first = entry.bestAction;
+            }
+        }
+        float alpha0 = alpha, beta0 = beta;
+
+        if (maxNode) {
             List<PlayerAction> actions_max = gs.getPlayerActions(maxplayer);
             int l = actions_max.size();
             if (l>max_branching_so_far) max_branching_so_far = l;
             MiniMaxResult best = null;
+            int bestIdx = 0;
 //            System.out.println("realTimeMinimaxAB.max: " + actions_max.size());
-            for(PlayerAction action_max:actions_max) {
-                GameState gs2 = gs.cloneIssue(action_max);
+            for(int k = 0;k<l;k++) {
+                int idx = searchOrder(k, first, l);
+                PlayerAction action_max = actions_max.get(idx);
+                UndoLog log = gs.issueWithUndo(action_max);
 //                System.out.println("action_max: " + action_max);
-                MiniMaxResult tmp = realTimeMinimaxAB(gs2, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+                MiniMaxResult tmp;
+                try {
+                    tmp = realTimeMinimaxAB(gs, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+                } finally {
+                    gs.undo(log);
+                }
 //                System.out.println(action_max + " -> " + tmp.evaluation);
                 alpha = Math.max(alpha,tmp.evaluation);
                 if (best==null || tmp.evaluation>best.evaluation) {
                     best = tmp;
                     best.action = action_max;
+                    bestIdx = idx;
                 }
                 
 //                if (depth==0) {
@@ -149,36 +206,66 @@ public class RTMinimax extends AI {
 //                    System.out.println(tmp.gs);
 //                }
                 
-                if (beta<=alpha) return best;
+                if (beta<=alpha) break;
             }
+            if (tt!=null) tt.put(key, TranspositionEntry.create(best.evaluation, alpha0, beta0, height, bestIdx), height);
             return best;
         } else if (gs.canExecuteAnyAction(minplayer)) {
             List<PlayerAction> actions_min = gs.getPlayerActions(minplayer);
             int l = actions_min.size();
             if (l>max_branching_so_far) max_branching_so_far = l;
             MiniMaxResult best = null;
+            int bestIdx = 0;
 //            System.out.println("realTimeMinimaxAB.min: " + actions_min.size());
-            for(PlayerAction action_min:actions_min) {
-                GameState gs2 = gs.cloneIssue(action_min);
+            for(int k = 0;k<l;k++) {
+                int idx = searchOrder(k, first, l);
+                PlayerAction action_min = actions_min.get(idx);
+                UndoLog log = gs.issueWithUndo(action_min);
 //                System.out.println("action_min: " + action_min);
-                MiniMaxResult tmp = realTimeMinimaxAB(gs2, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+                MiniMaxResult tmp;
+                try {
+                    tmp = realTimeMinimaxAB(gs, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+                } finally {
+                    gs.undo(log);
+                }
                 beta = Math.min(beta,tmp.evaluation);
                 if (best==null || tmp.evaluation<best.evaluation) {
                     best = tmp;
                     best.action = action_min;
+                    bestIdx = idx;
                 }
-                if (beta<=alpha) return best;
+                if (beta<=alpha) break;
             }
+            if (tt!=null) tt.put(key, TranspositionEntry.create(best.evaluation, alpha0, beta0, height, bestIdx), height);
             return best;
         } else {
-            GameState gs2 = gs.clone();
-            while(gs2.winner()==-1 && 
-                  !gs2.gameover() &&
-                  !gs2.canExecuteAnyAction(maxplayer) && 
-                  !gs2.canExecuteAnyAction(minplayer)) gs2.cycle();
-            return realTimeMinimaxAB(gs2, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+            UndoLog log = null;
+            try {
+                while(gs.winner()==-1 && 
+                      !gs.gameover() &&
+                      !gs.canExecuteAnyAction(maxplayer) && 
+                      !gs.canExecuteAnyAction(minplayer)) log = gs.cycleWithUndo(log);
+                return realTimeMinimaxAB(gs, maxplayer, minplayer, alpha, beta, lookAhead, depth+1);
+            } finally {
+                if (log!=null) gs.undo(log);
+            }
         }
     }    
+    
+    
+    /**
+     * Returns the index of the k-th action to search, when the action at index "first" 
+     * (e.g., the best one in a previous search) is searched before the others
+     * @param k
+     * @param first
+     * @param n number of actions
+     * @return
+     */
+    public static int searchOrder(int k, int first, int n) {
+        if (first<=0 || first>=n) return k;
+        if (k==0) return first;
+        return (k<=first ? k-1 : k);
+    }
 
 
     public String toString() {
@@ -193,6 +280,7 @@ public class RTMinimax extends AI {
         
         parameters.add(new ParameterSpecification("LookAhead",int.class,50));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("TranspositionTableSize",int.class,0));
         
         return parameters;
     }    
@@ -217,4 +305,14 @@ public class RTMinimax extends AI {
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }    
+    
+    
+    public int getTranspositionTableSize() {
+        return TT_SIZE;
+    }
+    
+    
+    public void setTranspositionTableSize(int a_size) {
+        TT_SIZE = a_size;
+    }    
 }
@@ -0,0 +1,75 @@
+package ai.minimax;
+
+/**
+ * The result of searching a node with alpha-beta, as stored in an
+ * {@link ai.core.TranspositionTable}: the value found, whether it is exact or
+ * just a bound (when the search of the node was cut off), how deep the
+ * search below the node was, and which of its actions was the best one
+ * (to try it first the next time the node is searched).
+ */
+public class TranspositionEntry {
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;   // the value is at least "value"
+    public static final int UPPER_BOUND = 2;   // the value is at most "value"
+
+    public float value;
+    public int bound;
+    public int height;
+    public int bestAction;
+
+    public TranspositionEntry(float a_value, int a_bound, int a_height, int a_bestAction) {
+        value = a_value;
+        bound = a_bound;
+        height = a_height;
+        bestAction = a_bestAction;
+    }
+
+    /**
+     * Creates an entry, deriving the type of bound from the window the node was
+     * searched with
+     *
+     * @param value
+     * @param alpha the alpha the node was searched with
+     * @param beta the beta the node was searched with
+     * @param height
+     * @param bestAction
+     * @return
+     */
+    public static TranspositionEntry create(float value, float alpha, float beta, int height, int bestAction) {
+        int bound = EXACT;
+        if (value <= alpha) {
+            bound = UPPER_BOUND;
+        } else if (value >= beta) {
+            bound = LOWER_BOUND;
+        }
+        return new TranspositionEntry(value, bound, height, bestAction);
+    }
+
+    /**
+     * Returns whether this entry determines the value of a node searched at least
+     * "height" deep with the window [alpha, beta], so it does not need to be
+     * searched again
+     *
+     * @param alpha
+     * @param beta
+     * @param a_height
+     * @return
+     */
+    public boolean cutsOff(float alpha, float beta, int a_height) {
+        if (height < a_height) return false;
+        switch (bound) {
+            case EXACT:
+                return true;
+            case LOWER_BOUND:
+                return value >= beta;
+            case UPPER_BOUND:
+                return value <= alpha;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "TranspositionEntry(" + value + ", " + bound + ", " + height + ", " + bestAction + ")";
+    }
+}
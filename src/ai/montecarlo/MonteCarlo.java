@@ -94,7 +94,7 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
     }    
     
     public AI clone() {
-        return new MonteCarlo(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, randomAI, ef);
+        return new MonteCarlo(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, randomAI.clone(), ef.clone());
     }
     
     
@@ -226,7 +226,8 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
 
         do{
             if (gs.isComplete()) {
-                gameover = gs.cycle();
+                // skips the cycles until some unit needs an action:
+                gameover = gs.cycleUntilNextEvent(time);
             } else {
                 gs.issue(randomAI.getAction(0, gs));
                 gs.issue(randomAI.getAction(1, gs));
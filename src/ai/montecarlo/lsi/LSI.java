@@ -63,7 +63,7 @@ public class LSI extends AIWithComputationBudget {
     private int nofPlayedUnits = 0;
     private int nofActions = 0;
 
-    private Sampling sampling;
+    Sampling sampling;
 
     private LinkedHashMap<PlayerAction, Pair<Double, Integer>> elitePlayerActions = new LinkedHashMap<>();
     private Set<Unit> nextEpochUnits = new HashSet<>();
@@ -113,7 +113,7 @@ public class LSI extends AIWithComputationBudget {
     public AI clone() {
         return new LSI(ITERATIONS_BUDGET, lookAhead, split,
                 estimateType, estimateReuseType, generateType, agentOrderingType, evaluateType,
-                eliteReuse, relaxationType, relaxationLimit, epochal, simulationAi, evalFunction);
+                eliteReuse, relaxationType, relaxationLimit, epochal, simulationAi.clone(), evalFunction.clone());
     }
 
     public PlayerAction getAction(int player, GameState gameState) throws Exception {
@@ -232,7 +232,7 @@ public class LSI extends AIWithComputationBudget {
                 case POST_RANDOM:
                     List<Integer> indices = getRelaxedAgentIndicesRandom(unitActionTable);
                     for (Integer index : indices) {
-                        playerAction.getActions().remove((int) index);
+                        playerAction.remove(index);
                     }
                     break;
 
@@ -314,7 +314,7 @@ public class LSI extends AIWithComputationBudget {
 
                         });
                         for (Pair<Integer, Double> index : evaluatedIndices) {
-                            playerAction.getActions().remove((int) index.m_a);
+                            playerAction.remove(index.m_a);
                         }
                     }
                     break;
@@ -324,8 +324,8 @@ public class LSI extends AIWithComputationBudget {
         // epochal unit subselections
         if (epochal) {
             // remove used units from current epoch
-            for (Pair<Unit, UnitAction> actionPair : playerAction.getActions()) {
-                epochUnits.remove(actionPair.m_a);
+            for (int i = 0; i < playerAction.size(); i++) {
+                epochUnits.remove(playerAction.getUnit(i));
             }
             // if there are no more units in this epoch use the next one
             if (epochUnits.isEmpty()) {
@@ -353,7 +353,7 @@ public class LSI extends AIWithComputationBudget {
         for (UnitActionTableEntry entry : unitActionTable) {
             for (UnitAction action : entry.actions) {
                 PlayerAction neighbourPA = currentPA.clone();
-                neighbourPA.getActions().set(i, new Pair<>(entry.u, action));
+                neighbourPA.set(i, entry.u, action);
                 if (!isPlayerActionValid(gameState, neighbourPA)) {
                     reducedActionCount--;
                 }
@@ -370,7 +370,7 @@ public class LSI extends AIWithComputationBudget {
             double min = Double.POSITIVE_INFINITY;
             for (UnitAction action : entry.actions) {
                 PlayerAction neighbourPA = currentPA.clone();
-                neighbourPA.getActions().set(i, new Pair<>(entry.u, action));
+                neighbourPA.set(i, entry.u, action);
 
                 if (isPlayerActionValid(gameState, neighbourPA)) {
                     double eval = sampling.evaluatePlayerAction(player, gameState, neighbourPA,
@@ -424,13 +424,21 @@ public class LSI extends AIWithComputationBudget {
             }
         }
 
+        int roundSize = 0;
+        for (UnitActionTableEntry entry : unitActionTable) {
+            roundSize += entry.nactions;
+        }
+        PlayerAction[] roundActions = new PlayerAction[roundSize];
+        int[] roundAgents = new int[roundSize];
+
         int sample = 0;
         boolean completeOnce = false;
-        // round-robin
-        roundrobin:
+        // round-robin (the player actions of each round are generated first, and then evaluated together)
         while (true) {
+            int n = 0;
             // over all agents
             int agentIndex = 0;
+            roundrobin:
             for (UnitActionTableEntry entry : unitActionTable) {
                 // over all actions of the agent
                 int actionIndex = 0;
@@ -457,9 +465,9 @@ public class LSI extends AIWithComputationBudget {
                     // reorder the actions in neighbourPA to be the same as in unitActionTable
                     PlayerAction orderedNeighbourPA = new PlayerAction();
                     for (UnitActionTableEntry agentTableEntry : unitActionTable) {
-                        for (Pair<Unit, UnitAction> neighbourPair : neighbourPA.getActions()) {
-                            if (neighbourPair.m_a.equals(agentTableEntry.u)) {
-                                orderedNeighbourPA.addUnitAction(neighbourPair.m_a, neighbourPair.m_b);
+                        for (int i = 0; i < neighbourPA.size(); i++) {
+                            if (neighbourPA.getUnit(i).equals(agentTableEntry.u)) {
+                                orderedNeighbourPA.addUnitAction(neighbourPA.getUnit(i), neighbourPA.getUnitAction(i));
                             }
                         }
                     }
@@ -470,21 +478,9 @@ public class LSI extends AIWithComputationBudget {
                         throw new RuntimeException("Should generate only valid combinations!");
                     }
 
-                    // evaluate & store
-                    double eval = sampling.evaluatePlayerAction(player, gameState, neighbourPA, 1);
-
-                    switch (estimateReuseType) {
-                    case SINGLE:
-                        // depends on actions in playerAction in the same order as in unitActionTable
-                        updateActionEvalSingle(unitActionTable, neighbourPA, agentIndex, eval);
-                        break;
-                    case ALL:
-                        // depends on actions in playerAction in the same order as in unitActionTable
-                        updateActionEvalAll(unitActionTable, neighbourPA, agentIndex, eval);
-                        break;
-                    default:
-                        throw new RuntimeException("Unknown EstimateReusingType");
-                    }
+                    roundActions[n] = neighbourPA;
+                    roundAgents[n] = agentIndex;
+                    n++;
                     sample++;
 
                     if (sample >= ITERATIONS_BUDGET * split) {
@@ -495,6 +491,27 @@ public class LSI extends AIWithComputationBudget {
                 }
                 agentIndex++;
             }
+
+            // evaluate & store
+            double[] evals = evaluatePlayerActions(player, gameState, roundActions, n, 1);
+            for (int i = 0; i < n; i++) {
+                switch (estimateReuseType) {
+                case SINGLE:
+                    // depends on actions in playerAction in the same order as in unitActionTable
+                    updateActionEvalSingle(unitActionTable, roundActions[i], roundAgents[i], evals[i]);
+                    break;
+                case ALL:
+                    // depends on actions in playerAction in the same order as in unitActionTable
+                    updateActionEvalAll(unitActionTable, roundActions[i], roundAgents[i], evals[i]);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown EstimateReusingType");
+                }
+            }
+
+            if (sample >= ITERATIONS_BUDGET * split) {
+                break;
+            }
             completeOnce = true;
         }
         //System.out.println("  G: " + sample);
@@ -559,7 +576,7 @@ public class LSI extends AIWithComputationBudget {
                     for (UnitActionTableEntry rndEntry : unitActionTable) {
                         neighbourPA.addUnitAction(rndEntry.u, rndEntry.actions.get(rnd.nextInt(rndEntry.nactions)));
                     }
-                    neighbourPA.getActions().set(agentIndex, new Pair<>(entry.u, action));
+                    neighbourPA.set(agentIndex, entry.u, action);
 
                     if (isPlayerActionValid(gameState, neighbourPA)) {
                         sample++;
@@ -616,7 +633,7 @@ public class LSI extends AIWithComputationBudget {
         int actionIndex = 0;
         UnitActionTableEntry agentEntry = unitActionTable.get(agentIndex);
         for (UnitAction unitAction : agentEntry.actions) {
-            if (unitAction.equals(playerAction.getActions().get(agentIndex).m_b)) {
+            if (unitAction.equals(playerAction.getUnitAction(agentIndex))) {
                 agentEntry.accum_evaluation[actionIndex] =
                         (agentEntry.accum_evaluation[actionIndex] * agentEntry.visit_count[actionIndex] + eval)
                         / (agentEntry.visit_count[actionIndex] + 1);
@@ -632,7 +649,7 @@ public class LSI extends AIWithComputationBudget {
         for (UnitActionTableEntry agentEntry : unitActionTable) {
             int actionIndex = 0;
             for (UnitAction unitAction : agentEntry.actions) {
-                if (unitAction.equals(playerAction.getActions().get(agentIndex).m_b)) {
+                if (unitAction.equals(playerAction.getUnitAction(agentIndex))) {
                     agentEntry.accum_evaluation[actionIndex] =
                             (agentEntry.accum_evaluation[actionIndex] * agentEntry.visit_count[actionIndex] + eval)
                             / (agentEntry.visit_count[actionIndex] + 1);
@@ -793,12 +810,12 @@ public class LSI extends AIWithComputationBudget {
     private PlayerAction stageEvaluateHalvingFill(Set<PlayerAction> actionSet, int player, GameState gameState) throws Exception {
         int budget = (int) (ITERATIONS_BUDGET * (1 - split));
 
-        List<Pair<PlayerAction, Double>> actionList = new LinkedList<>();
-        for (PlayerAction playerAction : actionSet) {
-            actionList.add(new Pair<>(playerAction, 0.0));
-        }
+        // the actions still being evaluated are the first n, sorted by their evaluations after each layer
+        PlayerAction[] actions = actionSet.toArray(new PlayerAction[actionSet.size()]);
+        double[] evaluations = new double[actions.length];
+        int n = actions.length;
 
-        actionCount = actionList.size();
+        actionCount = n;
         int noOfLayers = log2int(actionCount);
         int residueActionCount = actionCount;
         int residueSampleCount = 0;
@@ -811,15 +828,53 @@ public class LSI extends AIWithComputationBudget {
 
         int sampleCountSum = 0;
         for (int r = 0; r < noOfLayers; r++) {
-            int sampleCount = (int) (budget / actionList.size() / noOfLayers);
-            sampleCount += residue / actionList.size();
-            residue -= residue / actionList.size() * actionList.size();
-            actionList = sampling.halvedOriginalSamplingFill(actionList, gameState, player, sampleCount, sampleCountSum);
+            int sampleCount = (int) (budget / n / noOfLayers);
+            sampleCount += residue / n;
+            residue -= residue / n * n;
+            double[] evals = evaluatePlayerActions(player, gameState, actions, n, sampleCount);
+            for (int i = 0; i < n; i++) {
+                evaluations[i] = (evaluations[i] * sampleCountSum + evals[i] * sampleCount) / (sampleCountSum + sampleCount);
+            }
+            sortByEvaluation(actions, evaluations, n);
+            n /= 2;
             sampleCountSum += sampleCount;
         }
 
-        if (DEBUG>=1) System.out.println("GEMC H " + ITERATIONS_BUDGET + " " + actionList.get(0).m_b + " " + sampleCountSum);
-        return actionList.get(0).m_a;
+        if (DEBUG>=1) System.out.println("GEMC H " + ITERATIONS_BUDGET + " " + evaluations[0] + " " + sampleCountSum);
+        return actions[0];
+    }
+
+    /**
+     * Sorts the first n actions from the highest to the lowest evaluation
+     * (keeping the order of the actions with the same evaluation)
+     */
+    private void sortByEvaluation(PlayerAction[] actions, double[] evaluations, int n) {
+        for (int i = 1; i < n; i++) {
+            PlayerAction action = actions[i];
+            double evaluation = evaluations[i];
+            int j = i - 1;
+            while (j >= 0 && Double.compare(evaluations[j], evaluation) < 0) {
+                actions[j + 1] = actions[j];
+                evaluations[j + 1] = evaluations[j];
+                j--;
+            }
+            actions[j + 1] = action;
+            evaluations[j + 1] = evaluation;
+        }
+    }
+
+    /**
+     * Evaluates the first n player actions, each with numEval simulations (see
+     * {@link Sampling#evaluatePlayerAction(int, GameState, PlayerAction, int)})
+     *
+     * @return the mean evaluation of each action
+     */
+    protected double[] evaluatePlayerActions(int player, GameState gameState, PlayerAction[] actions, int n, int numEval) throws Exception {
+        double[] evals = new double[n];
+        for (int i = 0; i < n; i++) {
+            evals[i] = sampling.evaluatePlayerAction(player, gameState, actions[i], numEval);
+        }
+        return evals;
     }
 
     private PlayerAction stageEvaluateEliteHalving(Set<PlayerAction> actionSet, int player, GameState gameState) throws Exception {
@@ -939,7 +994,7 @@ public class LSI extends AIWithComputationBudget {
         nofPlays++;
         nofNoops += playerAction.hasNamNoneActions();
         nofSamples += sampling.getSimulationCount();
-        nofPlayedUnits += playerAction.getActions().size();
+        nofPlayedUnits += playerAction.size();
         for (UnitActionTableEntry actionTableEntry : unitActionTableEntry) {
             nofActions += actionTableEntry.nactions;
         }
@@ -963,8 +1018,8 @@ public class LSI extends AIWithComputationBudget {
         }
 
         ResourceUsage actionResourceUsage = new ResourceUsage();
-        for (Pair<Unit, UnitAction> element : playerAction.getActions()) {
-            ResourceUsage resourceUsage = element.m_b.resourceUsage(element.m_a, pgs);
+        for (int i = 0; i < playerAction.size(); i++) {
+            ResourceUsage resourceUsage = playerAction.getUnitAction(i).resourceUsage(playerAction.getUnit(i), pgs);
             actionResourceUsage.merge(resourceUsage);
         }
         playerAction.setResourceUsage(actionResourceUsage);
@@ -1120,6 +1175,7 @@ public class LSI extends AIWithComputationBudget {
     
     public void setPlayoutLookahead(int a_pola) {
         lookAhead = a_pola;
+        sampling = new Sampling(agentOrderingType, lookAhead, simulationAi, evalFunction);
     }
     
     
@@ -1170,6 +1226,7 @@ public class LSI extends AIWithComputationBudget {
     
     public void setAgentOrderingType(AgentOrderingType a) {
         agentOrderingType = a;
+        sampling = new Sampling(agentOrderingType, lookAhead, simulationAi, evalFunction);
     }
     
     
@@ -1230,6 +1287,7 @@ public class LSI extends AIWithComputationBudget {
     
     public void setSimulationAI(AI a) {
         simulationAi = a;
+        sampling = new Sampling(agentOrderingType, lookAhead, simulationAi, evalFunction);
     }    
     
 
@@ -1240,6 +1298,7 @@ public class LSI extends AIWithComputationBudget {
     
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         evalFunction = a_ef;
+        sampling = new Sampling(agentOrderingType, lookAhead, simulationAi, evalFunction);
     }    
     
     
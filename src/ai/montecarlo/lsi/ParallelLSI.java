@@ -0,0 +1,202 @@
+package ai.montecarlo.lsi;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import ai.core.SearchThreadPool;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.montecarlo.lsi.Sampling.AgentOrderingType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * LSI running the simulations of its generate (RANDOM_TAIL) and evaluate
+ * (HALVING) phases in several threads: all the simulations of a round-robin
+ * round of the generate phase, or of a layer of the halving, are split among
+ * the threads, and their evaluations are then added up in the main thread.
+ * The rest of the search (and the other estimate and evaluate types) is the
+ * same as in LSI, which is run with the same simulation budget.
+ *
+ * Each thread gets its own clone of the simulation AI (and so, of its random
+ * number generator) and of the game state, but the evaluation function is
+ * shared, so it must not keep any state (the default one does not).
+ */
+public class ParallelLSI extends LSI {
+
+    int nThreads = 4;
+
+    SearchThreadPool pool = new SearchThreadPool("ParallelLSI");
+
+    // one per thread:
+    Sampling workers[] = null;
+    AI workersAi = null;   // the simulation AI the workers were created from
+    int workersLookAhead = 0;
+    GameState workerStates[] = null;
+    GameState workerStatesSource = null;   // the state the worker states were cloned from
+
+
+    public ParallelLSI(UnitTypeTable utt) {
+        this(100, 100, 0.25,
+             LSI.EstimateType.RANDOM_TAIL, LSI.EstimateReuseType.ALL,
+             LSI.GenerateType.PER_AGENT, Sampling.AgentOrderingType.ENTROPY,
+             LSI.EvaluateType.HALVING, false,
+             LSI.RelaxationType.NONE, 2,
+             false,
+             new RandomBiasedAI(),
+             new SimpleSqrtEvaluationFunction3(),
+             4);
+    }
+
+
+    public ParallelLSI(int availableSimulationCount, int lookAhead, double split,
+            EstimateType estimateType, EstimateReuseType estimateReuseType, GenerateType generateType,
+            AgentOrderingType agentOrderingType, EvaluateType evaluateType, boolean eliteReuse,
+            RelaxationType relaxationType, int relaxationLimit, boolean epochal,
+            AI simulationAi, EvaluationFunction evalFunction, int threads) {
+        super(availableSimulationCount, lookAhead, split, estimateType, estimateReuseType, generateType,
+              agentOrderingType, evaluateType, eliteReuse, relaxationType, relaxationLimit, epochal,
+              simulationAi, evalFunction);
+        nThreads = threads;
+    }
+
+
+    @Override
+    public AI clone() {
+        return new ParallelLSI(ITERATIONS_BUDGET, getPlayoutLookahead(), getSplit(),
+                getEstimateType(), getEstimateReuseType(), getGenerateType(), getAgentOrderingType(), getEvaluateType(),
+                getEliteReuse(), getRelaxationType(), getRelaxationLimit(), getEpochal(), getSimulationAI().clone(), getEvaluationFunction().clone(),
+                nThreads);
+    }
+
+
+    @Override
+    public PlayerAction getAction(int player, GameState gameState) throws Exception {
+        try {
+            return super.getAction(player, gameState);
+        } finally {
+            workerStates = null;
+            workerStatesSource = null;
+        }
+    }
+
+
+    @Override
+    protected double[] evaluatePlayerActions(int player, GameState gameState, PlayerAction[] actions, int n, int numEval) throws Exception {
+        int total = n * numEval;
+        if (nThreads <= 1 || total <= 1) return super.evaluatePlayerActions(player, gameState, actions, n, numEval);
+
+        createWorkers();
+        if (workerStatesSource != gameState) {
+            // the actions are translated to the units of these clones:
+            workerStates = new GameState[nThreads];
+            for (int i = 0; i < nThreads; i++) workerStates[i] = gameState.clone();
+            workerStatesSource = gameState;
+        }
+
+        // the simulations (numEval per action, one after another) are split in
+        // consecutive blocks, one per thread:
+        int nTasks = Math.min(nThreads, total);
+        double sums[][] = new double[nTasks][n];
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int t = 0; t < nTasks; t++) {
+            int task = t;
+            int first = (int)((long)total * t / nTasks);
+            int last = (int)((long)total * (t + 1) / nTasks);
+            tasks.add(() -> {
+                Sampling worker = workers[task];
+                GameState gs = workerStates[task];
+                double sum[] = sums[task];
+                PlayerAction translated = null;
+                int translatedIndex = -1;
+                for (int i = first; i < last; i++) {
+                    int actionIndex = i / numEval;
+                    if (actionIndex != translatedIndex) {
+                        translated = translate(actions[actionIndex], gs);
+                        translatedIndex = actionIndex;
+                    }
+                    sum[actionIndex] += worker.evaluatePlayerAction(player, gs, translated, 1);
+                }
+                return null;
+            });
+        }
+        pool.run(tasks, nThreads);
+        sampling.increaseSimulationCount(total);
+
+        double evals[] = new double[n];
+        for (int t = 0; t < nTasks; t++) {
+            for (int i = 0; i < n; i++) evals[i] += sums[t][i];
+        }
+        for (int i = 0; i < n; i++) evals[i] /= numEval;
+        return evals;
+    }
+
+
+    /**
+     * Returns the same player action, for the units with the same IDs in gs
+     */
+    static PlayerAction translate(PlayerAction pa, GameState gs) {
+        PlayerAction pa2 = new PlayerAction();
+        for (int i = 0; i < pa.size(); i++) {
+            pa2.addUnitAction(gs.getUnit(pa.getUnit(i).getID()), pa.getUnitAction(i));
+        }
+        return pa2;
+    }
+
+
+    void createWorkers() {
+        if (workers != null && workers.length == nThreads && workersAi == getSimulationAI() &&
+            workersLookAhead == getPlayoutLookahead()) return;
+        workers = new Sampling[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            workers[i] = new Sampling(getAgentOrderingType(), getPlayoutLookahead(), getSimulationAI().clone(), getEvaluationFunction());
+        }
+        workersAi = getSimulationAI();
+        workersLookAhead = getPlayoutLookahead();
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        pool.shutdown();
+    }
+
+
+    @Override
+    public void gameOver(int winner) throws Exception {
+        super.gameOver(winner);
+        pool.shutdown();
+    }
+
+
+    @Override
+    public String toString() {
+        String s = super.toString();
+        return s.substring(0, s.length() - 1) + ", " + nThreads + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,4));
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_threads) {
+        nThreads = a_threads;
+    }
+}
@@ -149,9 +149,9 @@ public class Sampling {
         // reorder the actions in neighbourPA to be the same as in unitActionTable
         PlayerAction orderedPA = new PlayerAction();
         for (UnitActionTableEntry agentTableEntry : unitActionTable) {
-            for (Pair<Unit, UnitAction> pair : pa.getActions()) {
-                if (pair.m_a.equals(agentTableEntry.u)) {
-                    orderedPA.addUnitAction(pair.m_a, pair.m_b);
+            for (int i = 0; i < pa.size(); i++) {
+                if (pa.getUnit(i).equals(agentTableEntry.u)) {
+                    orderedPA.addUnitAction(pa.getUnit(i), pa.getUnitAction(i));
                 }
             }
         }
@@ -388,10 +388,10 @@ public class Sampling {
     }
 
     public double difference(List<UnitActionTableEntry> unitActionTable, List<double[]> distributions, PlayerAction playerAction, int agentIndex) {
-        Pair<Unit, UnitAction> ute = playerAction.getActions().get(agentIndex);
+        UnitAction agentAction = playerAction.getUnitAction(agentIndex);
         int j = 0;
         for (UnitAction ua : unitActionTable.get(agentIndex).actions) {
-            if (ute.m_b.equals(ua)){
+            if (agentAction.equals(ua)){
                 break;
             }
             j++;
@@ -193,7 +193,9 @@ public class PortfolioAI extends AIWithComputationBudget implements Interruptibl
     
     @Override
     public AI clone() {
-        return new PortfolioAI(strategies, deterministic, TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, evaluation);
+        AI strategiesClone[] = new AI[strategies.length];
+        for(int i = 0;i<strategies.length;i++) strategiesClone[i] = strategies[i].clone();
+        return new PortfolioAI(strategiesClone, deterministic, TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, evaluation.clone());
     }
     
     
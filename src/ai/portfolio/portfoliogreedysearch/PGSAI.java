@@ -221,14 +221,13 @@ public class PGSAI extends AIWithComputationBudget {
                 double bestEvaluation = 0;
                 UnitScript bestScript = null;
                 List<UnitScript> candidates = scripts.get(unit.getType());
-                for(UnitScript us:candidates) {
-                    UnitScript s = us.instantiate(unit, gs);
-                    if (s!=null) {
-                        scriptsToImprove[u] = s;
-                        double e = playout(player, scriptsToImprove, units, otherScripts, otherUnits, gs);
-                        if (DEBUG>=2) System.out.println("  " + unit + " -> " + s.getClass().toString() + " -> " + e);
+                double evaluations[] = evaluateCandidates(player, u, candidates, scriptsToImprove, units, otherScripts, otherUnits, gs);
+                for(int j = 0;j<candidates.size();j++) {
+                    double e = evaluations[j];
+                    if (!Double.isNaN(e)) {
+                        if (DEBUG>=2) System.out.println("  " + unit + " -> " + candidates.get(j).getClass().toString() + " -> " + e);
                         if (bestScript==null || e>bestEvaluation) {
-                            bestScript = us;
+                            bestScript = candidates.get(j);
                             bestEvaluation = e;
                             if (DEBUG>=2) System.out.println("    new best: " + e);
                         }
@@ -240,12 +239,48 @@ public class PGSAI extends AIWithComputationBudget {
     }
 
 
+    /**
+     * Evaluates each of the candidate scripts for unit u with a playout
+     * @return the evaluation of each candidate (NaN for the candidates that
+     * cannot be instantiated for the unit)
+     */
+    public double[] evaluateCandidates(int player, int u, List<UnitScript> candidates,
+                                       UnitScript scriptsToImprove[], List<Unit> units,
+                                       UnitScript otherScripts[], List<Unit> otherUnits, GameState gs) throws Exception {
+        double evaluations[] = new double[candidates.size()];
+        Unit unit = units.get(u);
+        for(int j = 0;j<candidates.size();j++) {
+            UnitScript s = candidates.get(j).instantiate(unit, gs);
+            if (s!=null) {
+                scriptsToImprove[u] = s;
+                evaluations[j] = playout(player, scriptsToImprove, units, otherScripts, otherUnits, gs);
+            } else {
+                evaluations[j] = Double.NaN;
+            }
+        }
+        return evaluations;
+    }
+
+
     public double playout(int player,
                           UnitScript scripts1[], List<Unit> units1,
                           UnitScript scripts2[], List<Unit> units2, GameState gs) throws Exception {
 //        if (DEBUG>=1) System.out.println("  playout... " + LOOKAHEAD);
         nplayouts++;
+        double e = simulate(player, scripts1, units1, scripts2, units2, gs);
+//        if (DEBUG>=1) System.out.println("  done: " + e);
+        return e;
+    }
 
+
+    /**
+     * Plays the scripts from a clone of gs for LOOKAHEAD cycles (without
+     * counting it as a playout)
+     * @return the evaluation of the resulting state for player
+     */
+    double simulate(int player,
+                    UnitScript scripts1[], List<Unit> units1,
+                    UnitScript scripts2[], List<Unit> units2, GameState gs) throws Exception {
         AI ai1 = new UnitScriptsAI(scripts1, units1, scripts, defaultScript);
         AI ai2 = new UnitScriptsAI(scripts2, units2, scripts, defaultScript);
 
@@ -262,15 +297,13 @@ public class PGSAI extends AIWithComputationBudget {
                 gs2.issue(ai2.getAction(1-player, gs2));
             }
         }        
-        double e = evaluation.evaluate(player, 1-player, gs2);
-//        if (DEBUG>=1) System.out.println("  done: " + e);
-        return e;
+        return evaluation.evaluate(player, 1-player, gs2);
     }
 
 
     @Override
     public AI clone() {
-        return new PGSAI(TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, I, R, evaluation, utt, pf);
+        return new PGSAI(TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, I, R, evaluation.clone(), utt, pf.clone());
     }
     
     
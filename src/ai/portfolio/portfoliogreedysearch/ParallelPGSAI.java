@@ -0,0 +1,156 @@
+package ai.portfolio.portfoliogreedysearch;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import ai.abstraction.pathfinding.ThreadLocalPathFinding;
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import ai.core.SearchThreadPool;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Portfolio Greedy Search evaluating the candidate scripts of each unit in
+ * parallel: the playouts of the candidates are independent of each other, so
+ * they run at the same time in a pool of threads, and the units are then
+ * improved one after another as in PGSAI (so, the scripts selected are the same
+ * as those of PGSAI with the same iterations budget). The time and iterations
+ * budgets are checked before each unit, as in PGSAI, and count the playouts of
+ * all the threads.
+ *
+ * Each thread gets its own clone of the path finder (see
+ * {@link ThreadLocalPathFinding}) and of the game state, but the evaluation
+ * function is shared, so it must not keep any state (the default one does not).
+ */
+public class ParallelPGSAI extends PGSAI {
+
+    int nThreads = 4;
+
+    SearchThreadPool pool = new SearchThreadPool("ParallelPGSAI");
+
+    // one clone of the state being searched per candidate, so that the playouts
+    // running at the same time do not clone the same state:
+    GameState baseStates[] = null;
+
+
+    public ParallelPGSAI(UnitTypeTable utt) {
+        this(100, -1, 100, 1, 1,
+             new SimpleSqrtEvaluationFunction3(),
+             utt,
+             new AStarPathFinding(),
+             4);
+    }
+
+
+    public ParallelPGSAI(int time, int max_playouts, int la, int a_I, int a_R, EvaluationFunction e, UnitTypeTable a_utt, PathFinding a_pf, int threads) {
+        super(time, max_playouts, la, a_I, a_R, e, a_utt,
+              (a_pf instanceof ThreadLocalPathFinding ? a_pf : new ThreadLocalPathFinding(a_pf)));
+        nThreads = threads;
+    }
+
+
+    @Override
+    public PlayerAction getAction(int player, GameState gs) throws Exception {
+        try {
+            return super.getAction(player, gs);
+        } finally {
+            baseStates = null;
+        }
+    }
+
+
+    @Override
+    public double[] evaluateCandidates(int player, int u, List<UnitScript> candidates,
+                                       UnitScript scriptsToImprove[], List<Unit> units,
+                                       UnitScript otherScripts[], List<Unit> otherUnits, GameState gs) throws Exception {
+        if (nThreads <= 1) return super.evaluateCandidates(player, u, candidates, scriptsToImprove, units, otherScripts, otherUnits, gs);
+
+        double evaluations[] = new double[candidates.size()];
+        Unit unit = units.get(u);
+        if (baseStates == null || baseStates.length < candidates.size()) {
+            GameState tmp[] = new GameState[candidates.size()];
+            if (baseStates != null) System.arraycopy(baseStates, 0, tmp, 0, baseStates.length);
+            baseStates = tmp;
+        }
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for(int j = 0;j<candidates.size();j++) {
+            UnitScript s = candidates.get(j).instantiate(unit, gs);
+            if (s!=null) {
+                if (baseStates[j] == null) baseStates[j] = gs.clone();
+                UnitScript scripts1[] = scriptsToImprove.clone();
+                scripts1[u] = s;
+                UnitScript scripts2[] = otherScripts.clone();
+                GameState base = baseStates[j];
+                int candidate = j;
+                tasks.add(() -> {
+                    evaluations[candidate] = simulate(player, scripts1, units, scripts2, otherUnits, base);
+                    return null;
+                });
+            } else {
+                evaluations[j] = Double.NaN;
+            }
+        }
+        pool.run(tasks, nThreads);
+        nplayouts += tasks.size();
+        return evaluations;
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        pool.shutdown();
+    }
+
+
+    @Override
+    public void gameOver(int winner) throws Exception {
+        super.gameOver(winner);
+        pool.shutdown();
+    }
+
+
+    @Override
+    public AI clone() {
+        return new ParallelPGSAI(TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, I, R, evaluation.clone(), utt, pf.clone(), nThreads);
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + LOOKAHEAD + ", " + I + ", " + R + ", " + evaluation + ", " + pf + ", " + nThreads + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,4));
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_threads) {
+        nThreads = a_threads;
+    }
+
+
+    @Override
+    public void setPathFinding(PathFinding a_pf) {
+        super.setPathFinding(a_pf instanceof ThreadLocalPathFinding ? a_pf : new ThreadLocalPathFinding(a_pf));
+    }
+}
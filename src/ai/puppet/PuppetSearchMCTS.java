@@ -113,7 +113,7 @@ public class PuppetSearchMCTS extends PuppetBase {
 	public AI clone() {
 		PuppetSearchMCTS clone = new PuppetSearchMCTS(TIME_BUDGET,ITERATIONS_BUDGET,
 				PLAN_TIME, PLAN_PLAYOUTS, STEP_PLAYOUT_TIME, EVAL_PLAYOUT_TIME,
-				policy1.clone(),script.clone(), eval);
+				policy1.clone(),script.clone(), eval.clone());
 		clone.currentPlan = currentPlan;
 		clone.lastSearchFrame = lastSearchFrame;
 		clone.lastSearchTime = lastSearchTime;
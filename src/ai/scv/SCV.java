@@ -289,7 +289,9 @@ public class SCV extends AIWithComputationBudget {
 
     @Override
     public AI clone() {
-        return new SCV(strategies, TIME_BUDGET, ITERATIONS_BUDGET, localUtt);
+        AI strategiesClone[] = new AI[strategies.length];
+        for(int i = 0;i<strategies.length;i++) strategiesClone[i] = strategies[i].clone();
+        return new SCV(strategiesClone, TIME_BUDGET, ITERATIONS_BUDGET, localUtt);
     }
 
     @Override
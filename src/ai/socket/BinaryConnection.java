@@ -0,0 +1,143 @@
+package ai.socket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages of {@link SocketAI#LANGUAGE_BINARY}. Each message is sent as an
+ * int with its length in bytes, followed by a byte with its type and the
+ * contents for that type (numbers are big-endian, as written by
+ * {@link DataOutputStream}):
+ * - WELCOME (server): text
+ * - BUDGET (client): int time budget, int iterations budget
+ * - UTT (client): the unit type table as JSON text
+ * - GET_ACTION (client): byte player, and the game state
+ * - PRE_GAME_ANALYSIS (client): long milliseconds, text with the read/write
+ *   folder ("" for none), and the game state
+ * - GAME_OVER (client): byte winner
+ * - ACK (server): nothing
+ * - ACTION (server): a player action, see {@link rts.PlayerAction#toBinary(java.io.DataOutput)}
+ * Texts are an int with their length in bytes followed by their UTF-8 bytes,
+ * and game states are written with a {@link rts.BinaryStateEncoder}: the one
+ * sent with PRE_GAME_ANALYSIS is always a snapshot, and the ones sent with
+ * GET_ACTION are the differences with the previous state sent (a snapshot
+ * for the first one after UTT).
+ */
+class BinaryConnection {
+    static final int WELCOME = 0;
+    static final int BUDGET = 1;
+    static final int UTT = 2;
+    static final int GET_ACTION = 3;
+    static final int PRE_GAME_ANALYSIS = 4;
+    static final int GAME_OVER = 5;
+    static final int ACK = 6;
+    static final int ACTION = 7;
+
+    DataInputStream in;
+    DataOutputStream out;
+
+    // the message being written, and the last one read:
+    ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+    DataOutputStream outMessage = new DataOutputStream(outBytes);
+    MessageBytes inBytes = new MessageBytes();
+    DataInputStream inMessage = new DataInputStream(inBytes);
+
+    BinaryConnection(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Starts a new message
+     * @param type
+     * @return the stream to write the contents of the message to
+     * @throws IOException
+     */
+    DataOutputStream start(int type) throws IOException {
+        outBytes.reset();
+        outMessage.writeByte(type);
+        return outMessage;
+    }
+
+    /**
+     * Sends the message started with {@link #start(int)}
+     * @throws IOException
+     */
+    void send() throws IOException {
+        out.writeInt(outBytes.size());
+        outBytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Sends a message without contents
+     * @param type
+     * @throws IOException
+     */
+    void send(int type) throws IOException {
+        start(type);
+        send();
+    }
+
+    /**
+     * Waits for the next message
+     * @return its type (its contents can then be read from {@link #inMessage})
+     * @throws IOException
+     */
+    int receive() throws IOException {
+        inBytes.read(in, in.readInt());
+        return inMessage.readByte();
+    }
+
+    /**
+     * Waits for the next message, which has to be of the given type
+     * @param type
+     * @return the stream to read the contents of the message from
+     * @throws IOException if the message is of another type
+     */
+    DataInputStream receive(int type) throws IOException {
+        int received = receive();
+        if (received != type) {
+            throw new IOException("BinaryConnection: expected message " + type + ", but received " + received);
+        }
+        return inMessage;
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte bytes[] = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        byte bytes[] = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bytes of the last message read, reusing the buffer between messages
+     */
+    static class MessageBytes extends ByteArrayInputStream {
+        MessageBytes() {
+            super(new byte[1024]);
+        }
+
+        void read(DataInputStream in, int length) throws IOException {
+            if (length < 1) throw new IOException("BinaryConnection: invalid message length " + length);
+            if (buf.length < length) buf = new byte[Math.max(length, buf.length * 2)];
+            in.readFully(buf, 0, length);
+            pos = 0;
+            count = length;
+            mark = 0;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ai.socket;
+
+import ai.abstraction.WorkerRush;
+import ai.core.AIWithComputationBudget;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import rts.BinaryStateDecoder;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Server for the {@link SocketAI#LANGUAGE_BINARY} protocol (see
+ * {@link BinaryConnection} for the messages), and reference implementation of
+ * it for AIs written in other languages.
+ *
+ * The game states given to the AI are rebuilt from the differences received,
+ * so, the game states of consecutive calls to getAction share their units,
+ * which are updated when the next game state is received.
+ */
+public class BinarySocketWrapperAI {
+    public static int DEBUG = 0;
+
+
+    public static void main(String[] args) throws Exception {
+        DEBUG = 1;
+        runServer(new WorkerRush(new UnitTypeTable()), 9898);
+    }
+
+
+    public static void runServer(AIWithComputationBudget ai, int socket) throws Exception {
+        if (DEBUG>=1) System.out.println("BinarySocketWrapperAI server is running.");
+        int clientNumber = 0;
+        ServerSocket listener = new ServerSocket(socket);
+        try {
+            while (true) {
+                new SocketWrapperAI(listener.accept(), clientNumber++, ai).start();
+            }
+        } finally {
+            listener.close();
+        }
+    }
+
+
+    private static class SocketWrapperAI extends Thread {
+        Socket socket;
+        int clientNumber = 0;
+        UnitTypeTable utt = new UnitTypeTable();
+        AIWithComputationBudget ai;
+
+
+        public SocketWrapperAI(Socket socket, int clientNumber, AIWithComputationBudget a_ai) {
+            this.socket = socket;
+            this.clientNumber = clientNumber;
+            ai = a_ai;
+            if (DEBUG>=1) System.out.println("New connection with client# " + clientNumber + " at " + socket);
+        }
+
+
+        public void run() {
+            try {
+                BinaryConnection connection = new BinaryConnection(socket);
+                BinaryStateDecoder decoder = new BinaryStateDecoder(utt);
+
+                // Send a welcome message to the client.
+                BinaryConnection.writeText(connection.start(BinaryConnection.WELCOME),
+                                           "BinarySocketWrapperAI: you are client #" + clientNumber);
+                connection.send();
+
+                while (true) {
+                    int type;
+                    try {
+                        type = connection.receive();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    DataInputStream message = connection.inMessage;
+
+                    if (type == BinaryConnection.BUDGET) {
+                        int time_budget = message.readInt();
+                        int iterations_budget = message.readInt();
+                        if (DEBUG>=1) System.out.println("setting the budget to: " + time_budget  + ", " + iterations_budget);
+
+                        // reset the AI:
+                        ai.reset();
+                        ai.setTimeBudget(time_budget);
+                        ai.setIterationsBudget(iterations_budget);
+                        connection.send(BinaryConnection.ACK);
+                    } else if (type == BinaryConnection.UTT) {
+                        String json = BinaryConnection.readText(message);
+                        if (DEBUG>=1) System.out.println("setting the utt to: " + json);
+                        utt = UnitTypeTable.fromJSON(json);
+                        decoder.setUnitTypeTable(utt);
+                        ai.reset(utt);
+                        connection.send(BinaryConnection.ACK);
+                    } else if (type == BinaryConnection.GET_ACTION) {
+                        int player = message.readByte();
+                        GameState gs = decoder.read(message);
+                        if (DEBUG>=1) System.out.println("getAction for player " + player + " with game state:\n" + gs);
+
+                        // generate an action and send it through the socket:
+                        PlayerAction pa = ai.getAction(player, gs);
+                        pa.toBinary(connection.start(BinaryConnection.ACTION));
+                        connection.send();
+                        if (DEBUG>=1) System.out.println("action sent!");
+                    } else if (type == BinaryConnection.PRE_GAME_ANALYSIS) {
+                        long milliseconds = message.readLong();
+                        String readWriteFolder = BinaryConnection.readText(message);
+                        GameState gs = decoder.read(message);
+                        if (DEBUG>=1) System.out.println("preGameAnalysis with game state:\n" + gs);
+
+                        if (readWriteFolder.isEmpty()) {
+                            ai.preGameAnalysis(gs, milliseconds);
+                        } else {
+                            ai.preGameAnalysis(gs, milliseconds, readWriteFolder);
+                        }
+                        connection.send(BinaryConnection.ACK);
+                    } else if (type == BinaryConnection.GAME_OVER) {
+                        int winner = message.readByte();
+                        if (DEBUG>=1) System.out.println("gameOver " + winner);
+                        ai.gameOver(winner);
+                        connection.send(BinaryConnection.ACK);
+                    } else {
+                        throw new IOException("unknown message type " + type);
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("Error handling client# " + clientNumber + ": " + e);
+                e.printStackTrace();
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.out.println("Connection with client# " + clientNumber + " closed");
+            }
+        }
+    }
+
+}
@@ -9,14 +9,17 @@ import ai.core.AI;
 import ai.core.AIWithComputationBudget;
 import ai.core.ParameterSpecification;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
+import rts.BinaryStateEncoder;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
@@ -31,6 +34,12 @@ public class SocketAI extends AIWithComputationBudget {
     
     public static final int LANGUAGE_XML = 1;
     public static final int LANGUAGE_JSON = 2;
+    /**
+     * Length-prefixed binary messages, sending only the differences between the
+     * game states of consecutive calls to getAction (see {@link BinaryConnection}
+     * and {@link BinarySocketWrapperAI})
+     */
+    public static final int LANGUAGE_BINARY = 3;
 
     private boolean includeConstants = true, compressTerrain = false;
     
@@ -42,6 +51,8 @@ public class SocketAI extends AIWithComputationBudget {
     Socket socket;
     BufferedReader in_pipe;
     PrintWriter out_pipe;
+    BinaryConnection connection;
+    BinaryStateEncoder encoder = new BinaryStateEncoder();
     
     public SocketAI(UnitTypeTable a_utt) {
         super(100,-1);
@@ -76,16 +87,7 @@ public class SocketAI extends AIWithComputationBudget {
         this.compressTerrain = compressTerrain;
         try {
             this.socket = socket;
-            in_pipe = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out_pipe = new PrintWriter(socket.getOutputStream(), true);
-
-            // Consume the initial welcoming messages from the server
-            while(!in_pipe.ready());
-            while(in_pipe.ready()) in_pipe.readLine();
-
-            if (DEBUG >= 1) {
-                System.out.println("SocketAI: welcome message received");
-            }
+            openStreams();
             reset();
         } catch (Exception e) {
             e.printStackTrace();
@@ -114,21 +116,34 @@ public class SocketAI extends AIWithComputationBudget {
     public void connectToServer() throws Exception {
         // Make connection and initialize streams
         socket = new Socket(serverAddress, serverPort);
-        in_pipe = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out_pipe = new PrintWriter(socket.getOutputStream(), true);
+        openStreams();
+        reset();
+    }
+
+
+    private void openStreams() throws Exception {
+        if (communication_language == LANGUAGE_BINARY) {
+            connection = new BinaryConnection(socket);
+            connection.receive(BinaryConnection.WELCOME);
+        } else {
+            in_pipe = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out_pipe = new PrintWriter(socket.getOutputStream(), true);
 
-        // Consume the initial welcoming messages from the server
-        while(!in_pipe.ready());
-        while(in_pipe.ready()) in_pipe.readLine();
+            // Consume the initial welcoming messages from the server
+            while(!in_pipe.ready());
+            while(in_pipe.ready()) in_pipe.readLine();
+        }
 
         if (DEBUG>=1) System.out.println("SocketAI: welcome message received");
-            
-        reset();
     }
     
     
     @Override
     public void reset() {
+        if (communication_language == LANGUAGE_BINARY) {
+            resetBinary();
+            return;
+        }
         try {
             // set the game parameters:
             out_pipe.append("budget ").append(String.valueOf(TIME_BUDGET)).append(" ").append(String.valueOf(ITERATIONS_BUDGET)).append("\n");
@@ -172,8 +187,42 @@ public class SocketAI extends AIWithComputationBudget {
     }
     
 
+    private void resetBinary() {
+        try {
+            DataOutputStream message = connection.start(BinaryConnection.BUDGET);
+            message.writeInt(TIME_BUDGET);
+            message.writeInt(ITERATIONS_BUDGET);
+            connection.send();
+            connection.receive(BinaryConnection.ACK);
+            if (DEBUG>=1) System.out.println("SocketAI: budget sent and acknowledged");
+
+            StringWriter json = new StringWriter();
+            utt.toJSON(json);
+            BinaryConnection.writeText(connection.start(BinaryConnection.UTT), json.toString());
+            connection.send();
+            connection.receive(BinaryConnection.ACK);
+            if (DEBUG>=1) System.out.println("SocketAI: UTT sent and acknowledged");
+
+            // the next state is sent completely:
+            encoder.reset();
+        }catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+
     @Override
     public PlayerAction getAction(int player, GameState gs) throws Exception {
+        if (communication_language == LANGUAGE_BINARY) {
+            DataOutputStream message = connection.start(BinaryConnection.GET_ACTION);
+            message.writeByte(player);
+            encoder.write(gs, message);
+            connection.send();
+            PlayerAction pa = PlayerAction.fromBinary(connection.receive(BinaryConnection.ACTION), gs, utt);
+            pa.fillWithNones(gs, player, 10);
+            return pa;
+        }
+
         // send the game state:
         out_pipe.append("getAction ").append(String.valueOf(player)).append("\n");
         if (communication_language == LANGUAGE_XML) {
@@ -225,6 +274,15 @@ public class SocketAI extends AIWithComputationBudget {
     @Override
     public void preGameAnalysis(GameState gs, long milliseconds, String readWriteFolder)
         throws Exception {
+        if (communication_language == LANGUAGE_BINARY) {
+            DataOutputStream message = connection.start(BinaryConnection.PRE_GAME_ANALYSIS);
+            message.writeLong(milliseconds);
+            BinaryConnection.writeText(message, readWriteFolder == null ? "" : readWriteFolder);
+            encoder.writeSnapshot(gs, message);
+            connection.send();
+            connection.receive(BinaryConnection.ACK);
+            return;
+        }
         out_pipe.append("preGameAnalysis ").append(String.valueOf(milliseconds));
         if (readWriteFolder != null) {
             out_pipe.append("  \"").append(readWriteFolder).append("\"");
@@ -260,6 +318,12 @@ public class SocketAI extends AIWithComputationBudget {
     @Override
     public void gameOver(int winner) throws Exception
     {
+        if (communication_language == LANGUAGE_BINARY) {
+            connection.start(BinaryConnection.GAME_OVER).writeByte(winner);
+            connection.send();
+            connection.receive(BinaryConnection.ACK);
+            return;
+        }
         // send the game state:
         out_pipe.append("gameOver ").append(String.valueOf(winner)).append("\n");
         out_pipe.flush();
@@ -31,8 +31,11 @@ import ai.abstraction.partialobservability.PORangedRush;
 import ai.abstraction.partialobservability.POWorkerRush;
 import ai.abstraction.pathfinding.AStarPathFinding;
 import ai.abstraction.pathfinding.BFSPathFinding;
+import ai.abstraction.pathfinding.BucketAStarPathFinding;
+import ai.abstraction.pathfinding.DistanceFieldPathFinding;
 import ai.abstraction.pathfinding.FloodFillPathFinding;
 import ai.abstraction.pathfinding.GreedyPathFinding;
+import ai.abstraction.pathfinding.HPAStarPathFinding;
 import ai.abstraction.pathfinding.PathFinding;
 import ai.ahtn.AHTNAI;
 import ai.core.ParameterSpecification;
@@ -45,16 +48,22 @@ import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import ai.mcts.informedmcts.InformedNaiveMCTS;
 import ai.mcts.mlps.MLPSMCTS;
 import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.naivemcts.ParallelNaiveMCTS;
 import ai.mcts.uct.UCT;
+import ai.mcts.uct.PooledUCT;
 import ai.mcts.uct.UCTFirstPlayUrgency;
 import ai.mcts.uct.UCTUnitActions;
 import ai.minimax.ABCD.IDABCD;
+import ai.minimax.ABCD.ParallelIDABCD;
 import ai.minimax.RTMiniMax.IDRTMinimax;
 import ai.minimax.RTMiniMax.IDRTMinimaxRandomized;
+import ai.minimax.RTMiniMax.ParallelIDRTMinimax;
 import ai.montecarlo.MonteCarlo;
 import ai.montecarlo.lsi.LSI;
+import ai.montecarlo.lsi.ParallelLSI;
 import ai.portfolio.PortfolioAI;
 import ai.portfolio.portfoliogreedysearch.PGSAI;
+import ai.portfolio.portfoliogreedysearch.ParallelPGSAI;
 import ai.puppet.PuppetSearchMCTS;
 import ai.stochastic.UnitActionProbabilityDistribution;
 import gui.MouseController;
@@ -146,16 +155,22 @@ public class FEStatePane extends JPanel {
                    CRush_V2.class,
                    PortfolioAI.class,
                    PGSAI.class,
+                   ParallelPGSAI.class,
                    IDRTMinimax.class,
                    IDRTMinimaxRandomized.class,
+                   ParallelIDRTMinimax.class,
                    IDABCD.class,
+                   ParallelIDABCD.class,
                    MonteCarlo.class,
                    LSI.class,
+                   ParallelLSI.class,
                    UCT.class,
                    UCTUnitActions.class,
                    UCTFirstPlayUrgency.class,
                    DownsamplingUCT.class, 
+                   PooledUCT.class,
                    NaiveMCTS.class,
+                   ParallelNaiveMCTS.class,
                    BS3_NaiveMCTS.class,
                    MLPSMCTS.class,
                    AHTNAI.class,
@@ -175,6 +190,9 @@ public class FEStatePane extends JPanel {
                   };
     
     PathFinding pathFinders[] = {new AStarPathFinding(),
+                                 new BucketAStarPathFinding(),
+                                 new DistanceFieldPathFinding(),
+                                 new HPAStarPathFinding(),
                                  new BFSPathFinding(),
                                  new GreedyPathFinding(),
                                  new FloodFillPathFinding()};
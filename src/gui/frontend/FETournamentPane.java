@@ -67,6 +67,7 @@ public class FETournamentPane extends JPanel {
     private JFormattedTextField timeBudgetField;
     private JFormattedTextField iterationsBudgetField;
     private JFormattedTextField preAnalysisTimeField;
+    private JFormattedTextField threadsField;
     
     private JComboBox unitTypeTableBox;
     private JCheckBox fullObservabilityCheckBox;
@@ -323,6 +324,7 @@ public class FETournamentPane extends JPanel {
                 timeBudgetField = FEStatePane.addTextField(p2left,"Time Budget:", "100", 5);
                 iterationsBudgetField = FEStatePane.addTextField(p2left,"Iterations Budget:", "-1", 8);
                 preAnalysisTimeField = FEStatePane.addTextField(p2left,"pre-Analisys time budget:", "1000", 8);
+                threadsField = FEStatePane.addTextField(p2left,"Parallel matches:", "1", 4);
                 p2left.setMaximumSize(new Dimension(1000,1000));    // something sufficiently big for all these options
                 p2.add(p2left);            
             }            
@@ -400,6 +402,7 @@ public class FETournamentPane extends JPanel {
                     int timeBudget = Integer.parseInt(timeBudgetField.getText());
                     int iterationsBudget = Integer.parseInt(iterationsBudgetField.getText());
                     int preAnalysisBudget = Integer.parseInt(preAnalysisTimeField.getText());
+                    int threads = Integer.parseInt(threadsField.getText());
                     
                     boolean fullObservability = fullObservabilityCheckBox.isSelected();
                     boolean selfMatches = selfMatchesCheckBox.isSelected();
@@ -439,7 +442,7 @@ public class FETournamentPane extends JPanel {
                                                                                fullObservability, selfMatches, timeOutCheck, gcCheck, preGameAnalysis, 
                                                                                utt, tracesFolder,
                                                                                writer, writerProgress,
-                                                                               tournamentfolder);
+                                                                               tournamentfolder, threads);
                                             writer.close();
                                         } catch(Exception e2) {
                                             e2.printStackTrace();
@@ -471,7 +474,7 @@ public class FETournamentPane extends JPanel {
                                                                                fullObservability, timeOutCheck, gcCheck, preGameAnalysis, 
                                                                                utt, tracesFolder,
                                                                                writer, writerProgress,
-                                                                               tournamentfolder);
+                                                                               tournamentfolder, threads);
                                             writer.close();
                                         } catch(Exception e2) {
                                             e2.printStackTrace();
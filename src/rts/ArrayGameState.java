@@ -0,0 +1,899 @@
+package rts;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * A compact copy of a {@link GameState} meant for fast playouts. Units are
+ * stored as a struct of primitive arrays (one slot per unit) and action
+ * assignments as per-slot fields, so that issuing actions and running cycles
+ * does not create any objects. It follows exactly the same rules as
+ * GameState: the same {@link UnitTypeTable}, the same conflict resolution in
+ * {@link #issue(PlayerAction)}, the same execution order in {@link #cycle()}
+ * and the same effects as {@link UnitAction#execute(Unit, GameState)}.
+ *
+ * Slots follow the order of the units list of the GameState it was loaded
+ * from, and new units get new slots at the end. Removed units stay in their
+ * slot (marked as dead) until the next {@link #load(GameState)}, since actions
+ * that were ready to execute in the same cycle are still executed, like in
+ * GameState.
+ *
+ * Use {@link #toGameState()} to get a regular GameState back (e.g. to
+ * evaluate the result of a playout).
+ */
+public class ArrayGameState {
+
+    static final int NO_ASSIGNMENT = -1;
+    static final int NO_UNIT = -1;
+    static final int NO_POSITION = -1;
+
+    UnitTypeTable utt;
+    UnitType types[];       // unit types by ID
+    int width, height;
+    int terrain[];          // shared with the PhysicalGameState it was loaded from
+    int time;
+    int unitCancelationCounter;
+    int resources[];        // of each player
+
+    // units:
+    int nUnits;
+    long id[];
+    int type[];             // UnitType.ID
+    int player[];
+    int x[], y[];
+    int hitpoints[];
+    int carried[];          // resources
+    boolean alive[];
+    int unitAt[];           // slot of the unit in each position (x + y * width), or NO_UNIT
+
+    // action assignments (aType is NO_ASSIGNMENT for units without one):
+    int aType[], aParameter[], aX[], aY[], aUnitType[], aTime[];
+    int aPosition[], aCost[], aEnd[];   // position and resources used by the action, and the time it is ready
+    int assigned[];         // slots with an assignment, in the order they were issued
+    int nAssigned;
+
+    // scratch space for cycle() and issueRandomActions():
+    int ready[], rType[], rParameter[], rX[], rY[], rUnitType[];
+    int gType[], gParameter[], gX[], gY[], gUnitType[];
+    int reserved[];         // positions reserved in the current issueRandomActions call (== reservedStamp)
+    int reservedStamp = 0;
+    int reservedResources[];
+
+    /**
+     * Creates a compact copy of a game state
+     *
+     * @param gs
+     */
+    public ArrayGameState(GameState gs) {
+        load(gs);
+    }
+
+    /**
+     * Replaces the contents of this state with a copy of a game state, reusing
+     * the arrays whenever they are large enough
+     *
+     * @param gs
+     */
+    public void load(GameState gs) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        if (utt != gs.getUnitTypeTable()) {
+            utt = gs.getUnitTypeTable();
+            int maxID = 0;
+            for (UnitType ut : utt.getUnitTypes()) {
+                maxID = Math.max(maxID, ut.ID);
+            }
+            types = new UnitType[maxID + 1];
+            for (UnitType ut : utt.getUnitTypes()) {
+                types[ut.ID] = ut;
+            }
+        }
+        if (unitAt == null || width != pgs.getWidth() || height != pgs.getHeight()) {
+            width = pgs.getWidth();
+            height = pgs.getHeight();
+            unitAt = new int[width * height];
+            Arrays.fill(unitAt, NO_UNIT);
+            reserved = new int[width * height];
+            reservedStamp = 0;
+        } else {
+            for (int i = 0; i < nUnits; i++) {
+                if (alive[i] && isInside(x[i], y[i])) {
+                    unitAt[x[i] + y[i] * width] = NO_UNIT;
+                }
+            }
+        }
+        terrain = pgs.terrain;
+        time = gs.time;
+        unitCancelationCounter = gs.unitCancelationCounter;
+
+        List<Player> players = pgs.getPlayers();
+        if (resources == null || resources.length != players.size()) {
+            resources = new int[players.size()];
+            reservedResources = new int[players.size()];
+        }
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] = players.get(i).getResources();
+        }
+
+        List<Unit> units = pgs.getUnits();
+        nUnits = 0;
+        ensureCapacity(units.size());
+        for (Unit u : units) {
+            int s = nUnits++;
+            id[s] = u.getID();
+            type[s] = u.getType().ID;
+            player[s] = u.getPlayer();
+            x[s] = u.getX();
+            y[s] = u.getY();
+            hitpoints[s] = u.getHitPoints();
+            carried[s] = u.getResources();
+            alive[s] = true;
+            aType[s] = NO_ASSIGNMENT;
+            // like in PhysicalGameState, the first unit in a position is the one found there:
+            if (isInside(x[s], y[s]) && unitAt[x[s] + y[s] * width] == NO_UNIT) {
+                unitAt[x[s] + y[s] * width] = s;
+            }
+        }
+
+        nAssigned = 0;
+        for (UnitActionAssignment uaa : gs.unitActions.values()) {
+            int s = pgs.indexOf(uaa.unit);
+            if (s < 0) {
+                throw new IllegalArgumentException("ArrayGameState.load: action assigned to a unit that is not in the map: " + uaa.unit);
+            }
+            UnitAction ua = uaa.action;
+            setAssignment(s, ua.type, ua.parameter, ua.x, ua.y, (ua.unitType == null ? -1 : ua.unitType.ID), uaa.time);
+        }
+    }
+
+    /**
+     * Creates a regular GameState equivalent to this one (with the same unit
+     * IDs, and the action assignments in the same order)
+     *
+     * @return
+     */
+    public GameState toGameState() {
+        PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);
+        for (int i = 0; i < resources.length; i++) {
+            pgs.players.add(new Player(i, resources[i]));
+        }
+        Unit units[] = new Unit[nUnits];
+        for (int s = 0; s < nUnits; s++) {
+            if (alive[s]) {
+                Unit u = new Unit(id[s], player[s], types[type[s]], x[s], y[s], carried[s]);
+                u.setHitPoints(hitpoints[s]);
+                units[s] = u;
+                pgs.units.add(u);
+            }
+        }
+        GameState gs = new GameState(pgs, utt);
+        gs.time = time;
+        gs.unitCancelationCounter = unitCancelationCounter;
+        for (int i = 0; i < nAssigned; i++) {
+            int s = assigned[i];
+            UnitAction ua = new UnitAction(aType[s], aParameter[s]);
+            ua.x = aX[s];
+            ua.y = aY[s];
+            ua.unitType = (aUnitType[s] == -1 ? null : types[aUnitType[s]]);
+            gs.unitActions.put(units[s], new UnitActionAssignment(units[s], ua, aTime[s]));
+        }
+        return gs;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * @see PhysicalGameState#gameover()
+     * @return
+     */
+    public boolean gameover() {
+        int unitcounts[] = new int[resources.length];
+        int totalunits = 0;
+        for (int s = 0; s < nUnits; s++) {
+            if (alive[s] && player[s] >= 0) {
+                unitcounts[player[s]]++;
+                totalunits++;
+            }
+        }
+        if (totalunits == 0) {
+            return true;
+        }
+        int winner = -1;
+        for (int i = 0; i < unitcounts.length; i++) {
+            if (unitcounts[i] > 0) {
+                if (winner == -1) {
+                    winner = i;
+                } else {
+                    return false;
+                }
+            }
+        }
+        return winner != -1;
+    }
+
+    /**
+     * @see PhysicalGameState#winner()
+     * @return
+     */
+    public int winner() {
+        int unitcounts[] = new int[resources.length];
+        for (int s = 0; s < nUnits; s++) {
+            if (alive[s] && player[s] >= 0) {
+                unitcounts[player[s]]++;
+            }
+        }
+        int winner = -1;
+        for (int i = 0; i < unitcounts.length; i++) {
+            if (unitcounts[i] > 0) {
+                if (winner == -1) {
+                    winner = i;
+                } else {
+                    return -1;
+                }
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * @see GameState#isComplete()
+     * @return
+     */
+    public boolean isComplete() {
+        for (int s = 0; s < nUnits; s++) {
+            if (alive[s] && player[s] != -1 && aType[s] == NO_ASSIGNMENT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see GameState#canExecuteAnyAction(int)
+     * @param pID
+     * @return
+     */
+    public boolean canExecuteAnyAction(int pID) {
+        for (int s = 0; s < nUnits; s++) {
+            if (alive[s] && player[s] == pID && aType[s] == NO_ASSIGNMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Issues a player action, like {@link GameState#issue(PlayerAction)}. The
+     * units of the player action are matched to the ones of this state by
+     * their position
+     *
+     * @param pa
+     * @return "true" is any action different from NONE was issued
+     */
+    public boolean issue(PlayerAction pa) {
+        boolean returnValue = false;
+        for (int i = 0; i < pa.size(); i++) {
+            Unit u = pa.getUnit(i);
+            int s = getUnitAt(u.getX(), u.getY());
+            if (s == NO_UNIT) {
+                throw new IllegalArgumentException("ArrayGameState.issue: no unit in the position of " + u);
+            }
+            UnitAction ua = pa.getUnitAction(i);
+            if (issue(s, ua.type, ua.parameter, ua.x, ua.y, (ua.unitType == null ? -1 : ua.unitType.ID))) {
+                returnValue = true;
+            }
+        }
+        return returnValue;
+    }
+
+    /**
+     * Issues an action to the unit in a given slot, resolving conflicts with
+     * the existing assignments in the same way as GameState
+     *
+     * @return whether the action issued (after resolving conflicts) is not NONE
+     */
+    boolean issue(int s, int a_type, int a_parameter, int a_x, int a_y, int a_unitType) {
+        int pos = positionUsed(s, a_type, a_parameter);
+        int cost = (a_type == UnitAction.TYPE_PRODUCE ? types[a_unitType].cost : 0);
+        // actions that use no position nor resources cannot conflict with others:
+        int n = (pos == NO_POSITION && cost == 0 ? 0 : nAssigned);
+        for (int i = 0; i < n; i++) {
+            int o = assigned[i];
+            if (!consistent(aPosition[o], player[o], aCost[o], pos, player[s], cost)) {
+                if (aTime[o] == time) {
+                    boolean cancel_old = false;
+                    boolean cancel_new = false;
+                    switch (utt.getMoveConflictResolutionStrategy()) {
+                        default:
+                        case UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH:
+                            cancel_old = cancel_new = true;
+                            break;
+                        case UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_RANDOM:
+                            if (GameState.r.nextInt(2) == 0) cancel_new = true;
+                                                         else cancel_old = true;
+                            break;
+                        case UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_ALTERNATING:
+                            if ((unitCancelationCounter % 2) == 0) cancel_new = true;
+                                                              else cancel_old = true;
+                            unitCancelationCounter++;
+                            break;
+                    }
+                    int duration = Math.min(ETA(o, aType[o], aParameter[o], aUnitType[o]),
+                                            ETA(s, a_type, a_parameter, a_unitType));
+                    if (cancel_old) {
+                        setAction(o, UnitAction.TYPE_NONE, duration, 0, 0, -1);
+                    }
+                    if (cancel_new) {
+                        a_type = UnitAction.TYPE_NONE;
+                        a_parameter = duration;
+                        a_x = a_y = 0;
+                        a_unitType = -1;
+                    }
+                } else {
+                    // a bug in some AI (see GameState.issue), only the new action is cancelled:
+                    System.err.println("Inconsistent actions were executed! (unit " + id[s] + " at time " + time + ")");
+                    a_type = UnitAction.TYPE_NONE;
+                    a_parameter = UnitAction.DIRECTION_NONE;
+                    a_x = a_y = 0;
+                    a_unitType = -1;
+                }
+            }
+        }
+        setAssignment(s, a_type, a_parameter, a_x, a_y, a_unitType, time);
+        return a_type != UnitAction.TYPE_NONE;
+    }
+
+    /**
+     * Issues a random action to each unit of a player that does not have an
+     * assignment, in the same way as {@link ai.RandomBiasedAI} does: actions
+     * are sampled with a weight that depends on their type, and the ones that
+     * conflict with the existing assignments or with the ones sampled before
+     * are replaced by NONE.
+     *
+     * @param pID the player
+     * @param weights the weight of each action type (indexed by
+     * UnitAction.TYPE_*)
+     * @param noneDuration the duration of the NONE actions
+     * @param r
+     */
+    public void issueRandomActions(int pID, double weights[], int noneDuration, Random r) {
+        if (!canExecuteAnyAction(pID)) return;
+
+        // the positions and resources used by the current assignments:
+        if (++reservedStamp == 0) {
+            Arrays.fill(reserved, 0);
+            reservedStamp = 1;
+        }
+        Arrays.fill(reservedResources, 0);
+        for (int i = 0; i < nAssigned; i++) {
+            int o = assigned[i];
+            reserve(aPosition[o]);
+            reservedResources[player[o]] += aCost[o];
+        }
+
+        for (int s = 0; s < nUnits; s++) {
+            if (!alive[s] || player[s] != pID || aType[s] != NO_ASSIGNMENT) continue;
+            int n = generateActions(s, noneDuration);
+            double total = 0, accum = 0;
+            for (int i = 0; i < n; i++) {
+                total += weights[gType[i]];
+            }
+            double tmp = r.nextDouble() * total;
+            int k = n - 1;
+            for (int i = 0; i < n; i++) {
+                accum += weights[gType[i]];
+                if (accum >= tmp) {
+                    k = i;
+                    break;
+                }
+            }
+
+            int pos = positionUsed(s, gType[k], gParameter[k]);
+            int cost = (gType[k] == UnitAction.TYPE_PRODUCE ? types[gUnitType[k]].cost : 0);
+            boolean consistent = (pos == NO_POSITION || !isReserved(pos));
+            for (int i = 0; i < resources.length && consistent; i++) {
+                if (reservedResources[i] == 0) continue;
+                int used = reservedResources[i] + (i == player[s] ? cost : 0);
+                if (used > 0 && used > resources[i]) consistent = false;
+            }
+            if (consistent) {
+                reserve(pos);
+                reservedResources[player[s]] += cost;
+            } else {
+                k = n - 1;  // NONE is always the last action
+            }
+            // generating actions does not depend on the assignments, so they can be issued right away:
+            issue(s, gType[k], gParameter[k], gX[k], gY[k], gUnitType[k]);
+        }
+    }
+
+    /**
+     * Runs a game cycle, like {@link GameState#cycle()}
+     *
+     * @return whether the game is over
+     */
+    public boolean cycle() {
+        time++;
+
+        // the actions ready to execute are removed from the assignments before executing any of them:
+        int nReady = 0;
+        int n = 0;
+        for (int i = 0; i < nAssigned; i++) {
+            int s = assigned[i];
+            if (aEnd[s] <= time) {
+                ready[nReady] = s;
+                rType[nReady] = aType[s];
+                rParameter[nReady] = aParameter[s];
+                rX[nReady] = aX[s];
+                rY[nReady] = aY[s];
+                rUnitType[nReady] = aUnitType[s];
+                nReady++;
+                aType[s] = NO_ASSIGNMENT;
+            } else {
+                assigned[n++] = s;
+            }
+        }
+        nAssigned = n;
+
+        for (int i = 0; i < nReady; i++) {
+            execute(ready[i], rType[i], rParameter[i], rX[i], rY[i], rUnitType[i]);
+        }
+
+        return gameover();
+    }
+
+    /**
+     * Runs game cycles until a player can issue actions, the game is over, or
+     * "maxTime" is reached, skipping the cycles in which no action completes, like
+     * {@link GameState#cycleUntilNextEvent(int)}
+     *
+     * @param maxTime
+     * @return whether the game is over
+     */
+    public boolean cycleUntilNextEvent(int maxTime) {
+        boolean gameover;
+        boolean complete = isComplete();
+        do {
+            if (complete && nAssigned > 0) {
+                // nothing happens until the next action completes:
+                int next = maxTime;
+                for (int i = 0; i < nAssigned; i++) {
+                    next = Math.min(next, aEnd[assigned[i]]);
+                }
+                if (next > time + 1) time = next - 1;
+            }
+            gameover = cycle();
+        } while (!gameover && time < maxTime && (complete = isComplete()));
+        return gameover;
+    }
+
+    /**
+     * Executes an action, like {@link UnitAction#execute(Unit, GameState)}.
+     * The unit might have been removed earlier in the same cycle
+     */
+    void execute(int s, int a_type, int a_parameter, int a_x, int a_y, int a_unitType) {
+        switch (a_type) {
+            case UnitAction.TYPE_MOVE:
+                switch (a_parameter) {
+                    case UnitAction.DIRECTION_UP:
+                        moveUnit(s, x[s], y[s] - 1);
+                        break;
+                    case UnitAction.DIRECTION_RIGHT:
+                        moveUnit(s, x[s] + 1, y[s]);
+                        break;
+                    case UnitAction.DIRECTION_DOWN:
+                        moveUnit(s, x[s], y[s] + 1);
+                        break;
+                    case UnitAction.DIRECTION_LEFT:
+                        moveUnit(s, x[s] - 1, y[s]);
+                        break;
+                }
+                break;
+
+            case UnitAction.TYPE_ATTACK_LOCATION: {
+                int other = getUnitAt(a_x, a_y);
+                if (other != NO_UNIT) {
+                    UnitType t = types[type[s]];
+                    int damage;
+                    if (t.minDamage == t.maxDamage) {
+                        damage = t.minDamage;
+                    } else {
+                        damage = t.minDamage + UnitAction.r.nextInt(1 + (t.maxDamage - t.minDamage));
+                    }
+                    hitpoints[other] -= damage;
+                    if (hitpoints[other] <= 0) {
+                        removeUnit(other);
+                    }
+                }
+            }
+            break;
+
+            case UnitAction.TYPE_HARVEST: {
+                int maybeAResource = neighbor(s, a_parameter);
+                UnitType t = types[type[s]];
+                if (maybeAResource != NO_UNIT && types[type[maybeAResource]].isResource && t.canHarvest && carried[s] == 0) {
+                    carried[maybeAResource] -= t.harvestAmount;
+                    if (carried[maybeAResource] <= 0) {
+                        removeUnit(maybeAResource);
+                    }
+                    carried[s] = t.harvestAmount;
+                }
+            }
+            break;
+
+            case UnitAction.TYPE_RETURN: {
+                int base = neighbor(s, a_parameter);
+                if (base != NO_UNIT && types[type[base]].isStockpile && carried[s] > 0) {
+                    resources[player[s]] += carried[s];
+                    carried[s] = 0;
+                }
+            }
+            break;
+
+            case UnitAction.TYPE_PRODUCE: {
+                int targetx = x[s];
+                int targety = y[s];
+                switch (a_parameter) {
+                    case UnitAction.DIRECTION_UP:
+                        targety--;
+                        break;
+                    case UnitAction.DIRECTION_RIGHT:
+                        targetx++;
+                        break;
+                    case UnitAction.DIRECTION_DOWN:
+                        targety++;
+                        break;
+                    case UnitAction.DIRECTION_LEFT:
+                        targetx--;
+                        break;
+                }
+                long newID = Unit.newID();    // like creating the Unit in UnitAction.execute
+                UnitType t = types[a_unitType];
+                if (resources[player[s]] - t.cost >= 0) {
+                    addUnit(newID, player[s], t, targetx, targety);
+                    resources[player[s]] -= t.cost;
+                } else {
+                    System.err.println("Illegal action attempted (produce " + t.name + ")! "
+                            + "Resources of player " + player[s] + " would have been negative!");
+                }
+            }
+            break;
+        }
+    }
+
+    /**
+     * Returns the slot of the (alive) unit in a position, or NO_UNIT
+     *
+     * @param a_x
+     * @param a_y
+     * @return
+     */
+    int getUnitAt(int a_x, int a_y) {
+        return isInside(a_x, a_y) ? unitAt[a_x + a_y * width] : NO_UNIT;
+    }
+
+    boolean isInside(int a_x, int a_y) {
+        return a_x >= 0 && a_x < width && a_y >= 0 && a_y < height;
+    }
+
+    int neighbor(int s, int direction) {
+        switch (direction) {
+            case UnitAction.DIRECTION_UP:
+                return getUnitAt(x[s], y[s] - 1);
+            case UnitAction.DIRECTION_RIGHT:
+                return getUnitAt(x[s] + 1, y[s]);
+            case UnitAction.DIRECTION_DOWN:
+                return getUnitAt(x[s], y[s] + 1);
+            case UnitAction.DIRECTION_LEFT:
+                return getUnitAt(x[s] - 1, y[s]);
+        }
+        return NO_UNIT;
+    }
+
+    void moveUnit(int s, int a_x, int a_y) {
+        if (alive[s]) {
+            if (getUnitAt(x[s], y[s]) == s) {
+                unitAt[x[s] + y[s] * width] = NO_UNIT;
+            }
+            if (getUnitAt(a_x, a_y) == NO_UNIT && isInside(a_x, a_y)) {
+                unitAt[a_x + a_y * width] = s;
+            }
+        }
+        x[s] = a_x;
+        y[s] = a_y;
+    }
+
+    void addUnit(long a_id, int a_player, UnitType t, int a_x, int a_y) {
+        if (getUnitAt(a_x, a_y) != NO_UNIT) {
+            throw new IllegalArgumentException(
+                    "ArrayGameState.addUnit: added two units in position: (" + a_x + ", " + a_y + ")");
+        }
+        ensureCapacity(nUnits + 1);
+        int s = nUnits++;
+        id[s] = a_id;
+        type[s] = t.ID;
+        player[s] = a_player;
+        x[s] = a_x;
+        y[s] = a_y;
+        hitpoints[s] = t.hp;
+        carried[s] = 0;
+        alive[s] = true;
+        aType[s] = NO_ASSIGNMENT;
+        if (isInside(a_x, a_y)) {
+            unitAt[a_x + a_y * width] = s;
+        }
+    }
+
+    /**
+     * Removes a unit and its action assignment (like
+     * {@link GameState#removeUnit(Unit)}). Its slot is kept
+     *
+     * @param s
+     */
+    void removeUnit(int s) {
+        alive[s] = false;
+        if (getUnitAt(x[s], y[s]) == s) {
+            unitAt[x[s] + y[s] * width] = NO_UNIT;
+        }
+        if (aType[s] != NO_ASSIGNMENT) {
+            aType[s] = NO_ASSIGNMENT;
+            int n = 0;
+            for (int i = 0; i < nAssigned; i++) {
+                if (assigned[i] != s) assigned[n++] = assigned[i];
+            }
+            nAssigned = n;
+        }
+    }
+
+    void setAssignment(int s, int a_type, int a_parameter, int a_x, int a_y, int a_unitType, int a_time) {
+        // replacing an assignment keeps its place in the order, like in a LinkedHashMap:
+        if (aType[s] == NO_ASSIGNMENT) {
+            assigned[nAssigned++] = s;
+        }
+        aTime[s] = a_time;
+        setAction(s, a_type, a_parameter, a_x, a_y, a_unitType);
+    }
+
+    /**
+     * Changes the action of an assignment (keeping the time it was issued at)
+     */
+    void setAction(int s, int a_type, int a_parameter, int a_x, int a_y, int a_unitType) {
+        aType[s] = a_type;
+        aParameter[s] = a_parameter;
+        aX[s] = a_x;
+        aY[s] = a_y;
+        aUnitType[s] = a_unitType;
+        // units do not move while they have an assignment, so these do not change:
+        aPosition[s] = positionUsed(s, a_type, a_parameter);
+        aCost[s] = (a_type == UnitAction.TYPE_PRODUCE ? types[a_unitType].cost : 0);
+        aEnd[s] = aTime[s] + ETA(s, a_type, a_parameter, a_unitType);
+    }
+
+    /**
+     * The position used by an action (see
+     * {@link UnitAction#resourceUsage(Unit, PhysicalGameState)}), or
+     * NO_POSITION
+     */
+    int positionUsed(int s, int a_type, int a_parameter) {
+        if (a_type != UnitAction.TYPE_MOVE && a_type != UnitAction.TYPE_PRODUCE) {
+            return NO_POSITION;
+        }
+        int pos = x[s] + y[s] * width;
+        switch (a_parameter) {
+            case UnitAction.DIRECTION_UP:
+                pos -= width;
+                break;
+            case UnitAction.DIRECTION_RIGHT:
+                pos++;
+                break;
+            case UnitAction.DIRECTION_DOWN:
+                pos += width;
+                break;
+            case UnitAction.DIRECTION_LEFT:
+                pos--;
+                break;
+        }
+        return pos;
+    }
+
+    /**
+     * Same as {@link ResourceUsage#consistentWith(ResourceUsage, GameState)}
+     * for the usage of an existing action (pos1, player1, cost1) and the
+     * usage of a new one (pos2, player2, cost2)
+     */
+    boolean consistent(int pos1, int player1, int cost1, int pos2, int player2, int cost2) {
+        if (pos2 != NO_POSITION && pos2 == pos1) return false;
+        if (cost2 != 0) {
+            int used = cost2 + (player1 == player2 ? cost1 : 0);
+            if (used > 0 && used > resources[player2]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @see UnitAction#ETA(Unit)
+     */
+    int ETA(int s, int a_type, int a_parameter, int a_unitType) {
+        switch (a_type) {
+            case UnitAction.TYPE_NONE:
+                return a_parameter;
+            case UnitAction.TYPE_MOVE:
+                return types[type[s]].moveTime;
+            case UnitAction.TYPE_ATTACK_LOCATION:
+                return types[type[s]].attackTime;
+            case UnitAction.TYPE_HARVEST:
+                return types[type[s]].harvestTime;
+            case UnitAction.TYPE_RETURN:
+                return types[type[s]].moveTime;
+            case UnitAction.TYPE_PRODUCE:
+                return types[a_unitType].produceTime;
+        }
+        return 0;
+    }
+
+    void reserve(int pos) {
+        if (pos >= 0 && pos < reserved.length) reserved[pos] = reservedStamp;
+    }
+
+    boolean isReserved(int pos) {
+        return pos >= 0 && pos < reserved.length && reserved[pos] == reservedStamp;
+    }
+
+    int getTerrain(int a_x, int a_y) {
+        return terrain[a_x + a_y * width];
+    }
+
+    /**
+     * Generates the actions of a unit in the g* arrays, in the same order as
+     * {@link Unit#getUnitActions(GameState, int)}
+     *
+     * @return the number of actions (the last one is always NONE)
+     */
+    int generateActions(int s, int noneDuration) {
+        UnitType t = types[type[s]];
+        int ux = x[s], uy = y[s], p = player[s];
+        int n = 0;
+        int capacity = 5 + 4 * (t.produces.size() + 2) + (t.attackRange > 1 ? nUnits : 4);
+        if (gType == null || gType.length < capacity) {
+            gType = new int[capacity];
+            gParameter = new int[capacity];
+            gX = new int[capacity];
+            gY = new int[capacity];
+            gUnitType = new int[capacity];
+        }
+
+        int uup = getUnitAt(ux, uy - 1);
+        int uright = getUnitAt(ux + 1, uy);
+        int udown = getUnitAt(ux, uy + 1);
+        int uleft = getUnitAt(ux - 1, uy);
+
+        if (t.canAttack) {
+            if (t.attackRange == 1) {
+                if (uup != NO_UNIT && player[uup] != p && player[uup] >= 0) {
+                    n = addAction(n, UnitAction.TYPE_ATTACK_LOCATION, UnitAction.DIRECTION_NONE, x[uup], y[uup], -1);
+                }
+                if (uright != NO_UNIT && player[uright] != p && player[uright] >= 0) {
+                    n = addAction(n, UnitAction.TYPE_ATTACK_LOCATION, UnitAction.DIRECTION_NONE, x[uright], y[uright], -1);
+                }
+                if (udown != NO_UNIT && player[udown] != p && player[udown] >= 0) {
+                    n = addAction(n, UnitAction.TYPE_ATTACK_LOCATION, UnitAction.DIRECTION_NONE, x[udown], y[udown], -1);
+                }
+                if (uleft != NO_UNIT && player[uleft] != p && player[uleft] >= 0) {
+                    n = addAction(n, UnitAction.TYPE_ATTACK_LOCATION, UnitAction.DIRECTION_NONE, x[uleft], y[uleft], -1);
+                }
+            } else {
+                int sqrange = t.attackRange * t.attackRange;
+                for (int o = 0; o < nUnits; o++) {
+                    if (!alive[o] || player[o] < 0 || player[o] == p) continue;
+                    int dx = x[o] - ux, dy = y[o] - uy;
+                    if (dx * dx + dy * dy <= sqrange) {
+                        n = addAction(n, UnitAction.TYPE_ATTACK_LOCATION, UnitAction.DIRECTION_NONE, x[o], y[o], -1);
+                    }
+                }
+            }
+        }
+
+        if (t.canHarvest) {
+            if (carried[s] == 0) {
+                if (uup != NO_UNIT && types[type[uup]].isResource) {
+                    n = addAction(n, UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_UP, 0, 0, -1);
+                }
+                if (uright != NO_UNIT && types[type[uright]].isResource) {
+                    n = addAction(n, UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_RIGHT, 0, 0, -1);
+                }
+                if (udown != NO_UNIT && types[type[udown]].isResource) {
+                    n = addAction(n, UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_DOWN, 0, 0, -1);
+                }
+                if (uleft != NO_UNIT && types[type[uleft]].isResource) {
+                    n = addAction(n, UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_LEFT, 0, 0, -1);
+                }
+            }
+            if (carried[s] > 0) {
+                if (uup != NO_UNIT && types[type[uup]].isStockpile && player[uup] == p) {
+                    n = addAction(n, UnitAction.TYPE_RETURN, UnitAction.DIRECTION_UP, 0, 0, -1);
+                }
+                if (uright != NO_UNIT && types[type[uright]].isStockpile && player[uright] == p) {
+                    n = addAction(n, UnitAction.TYPE_RETURN, UnitAction.DIRECTION_RIGHT, 0, 0, -1);
+                }
+                if (udown != NO_UNIT && types[type[udown]].isStockpile && player[udown] == p) {
+                    n = addAction(n, UnitAction.TYPE_RETURN, UnitAction.DIRECTION_DOWN, 0, 0, -1);
+                }
+                if (uleft != NO_UNIT && types[type[uleft]].isStockpile && player[uleft] == p) {
+                    n = addAction(n, UnitAction.TYPE_RETURN, UnitAction.DIRECTION_LEFT, 0, 0, -1);
+                }
+            }
+        }
+
+        boolean fup = uy > 0 && getTerrain(ux, uy - 1) == PhysicalGameState.TERRAIN_NONE && uup == NO_UNIT;
+        boolean fright = ux < width - 1 && getTerrain(ux + 1, uy) == PhysicalGameState.TERRAIN_NONE && uright == NO_UNIT;
+        boolean fdown = uy < height - 1 && getTerrain(ux, uy + 1) == PhysicalGameState.TERRAIN_NONE && udown == NO_UNIT;
+        boolean fleft = ux > 0 && getTerrain(ux - 1, uy) == PhysicalGameState.TERRAIN_NONE && uleft == NO_UNIT;
+
+        for (UnitType ut : t.produces) {
+            if (resources[p] >= ut.cost) {
+                if (fup) n = addAction(n, UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_UP, 0, 0, ut.ID);
+                if (fright) n = addAction(n, UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_RIGHT, 0, 0, ut.ID);
+                if (fdown) n = addAction(n, UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_DOWN, 0, 0, ut.ID);
+                if (fleft) n = addAction(n, UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_LEFT, 0, 0, ut.ID);
+            }
+        }
+
+        if (t.canMove) {
+            if (fup) n = addAction(n, UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP, 0, 0, -1);
+            if (fright) n = addAction(n, UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT, 0, 0, -1);
+            if (fdown) n = addAction(n, UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN, 0, 0, -1);
+            if (fleft) n = addAction(n, UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT, 0, 0, -1);
+        }
+
+        return addAction(n, UnitAction.TYPE_NONE, noneDuration, 0, 0, -1);
+    }
+
+    private int addAction(int n, int a_type, int a_parameter, int a_x, int a_y, int a_unitType) {
+        gType[n] = a_type;
+        gParameter[n] = a_parameter;
+        gX[n] = a_x;
+        gY[n] = a_y;
+        gUnitType[n] = a_unitType;
+        return n + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (id != null && id.length >= capacity) return;
+        int newCapacity = Math.max(capacity, (id == null ? 16 : id.length * 2));
+        id = (id == null ? new long[newCapacity] : Arrays.copyOf(id, newCapacity));
+        type = grow(type, newCapacity);
+        player = grow(player, newCapacity);
+        x = grow(x, newCapacity);
+        y = grow(y, newCapacity);
+        hitpoints = grow(hitpoints, newCapacity);
+        carried = grow(carried, newCapacity);
+        alive = (alive == null ? new boolean[newCapacity] : Arrays.copyOf(alive, newCapacity));
+        aType = grow(aType, newCapacity);
+        aParameter = grow(aParameter, newCapacity);
+        aX = grow(aX, newCapacity);
+        aY = grow(aY, newCapacity);
+        aUnitType = grow(aUnitType, newCapacity);
+        aTime = grow(aTime, newCapacity);
+        aPosition = grow(aPosition, newCapacity);
+        aCost = grow(aCost, newCapacity);
+        aEnd = grow(aEnd, newCapacity);
+        assigned = grow(assigned, newCapacity);
+        ready = grow(ready, newCapacity);
+        rType = grow(rType, newCapacity);
+        rParameter = grow(rParameter, newCapacity);
+        rX = grow(rX, newCapacity);
+        rY = grow(rY, newCapacity);
+        rUnitType = grow(rUnitType, newCapacity);
+    }
+
+    private static int[] grow(int a[], int capacity) {
+        return (a == null ? new int[capacity] : Arrays.copyOf(a, capacity));
+    }
+}
@@ -0,0 +1,134 @@
+package rts;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.HashMap;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Reads the game states written by a {@link BinaryStateEncoder}, keeping the
+ * last state read to apply the differences to.
+ *
+ * Every state read is returned as a new GameState, but all of them share the
+ * same PhysicalGameState (and units), which is updated by the next state read
+ * (like the state of a game is updated from one cycle to the next).
+ */
+public class BinaryStateDecoder {
+    UnitTypeTable utt;
+    PhysicalGameState pgs = null;
+    HashMap<Long, Unit> units = new HashMap<>();
+    // action code and time of the assignments, indexed by unit ID:
+    HashMap<Long, int[]> assignments = new HashMap<>();
+
+    public BinaryStateDecoder(UnitTypeTable a_utt) {
+        utt = a_utt;
+    }
+
+    /**
+     * Changes the unit type table of the states read from now on
+     * @param a_utt
+     */
+    public void setUnitTypeTable(UnitTypeTable a_utt) {
+        utt = a_utt;
+    }
+
+    /**
+     * Reads a state
+     * @param in
+     * @return
+     * @throws IOException if the state is a delta, but no snapshot was read before
+     */
+    public GameState read(DataInput in) throws IOException {
+        int kind = in.readByte();
+        int time = in.readInt();
+        if (kind == BinaryStateEncoder.SNAPSHOT) {
+            int width = in.readShort();
+            int height = in.readShort();
+            pgs = new PhysicalGameState(width, height);
+            int terrain[] = new int[width * height];
+            for (int i = 0; i < terrain.length; i += 8) {
+                int bits = in.readByte();
+                for (int j = 0; j < 8 && i + j < terrain.length; j++) {
+                    if ((bits & (1 << j)) != 0) terrain[i + j] = PhysicalGameState.TERRAIN_WALL;
+                }
+            }
+            pgs.setTerrain(terrain);
+            units.clear();
+            assignments.clear();
+        } else if (pgs == null) {
+            throw new IOException("BinaryStateDecoder: received a delta before any snapshot");
+        }
+
+        int nPlayers = in.readByte();
+        for (int i = 0; i < nPlayers; i++) {
+            int resources = in.readInt();
+            if (i < pgs.players.size()) {
+                pgs.players.get(i).setResources(resources);
+            } else {
+                pgs.addPlayer(new Player(i, resources));
+            }
+        }
+
+        // units (the removed ones first, and the new ones last, so that they never
+        // share their position with another unit):
+        if (kind == BinaryStateEncoder.DELTA) {
+            int removed = in.readInt();
+            for (int i = 0; i < removed; i++) {
+                Unit u = units.remove(in.readLong());
+                if (u != null) pgs.removeUnit(u);
+            }
+        }
+        int n = in.readInt();
+        Unit added[] = null;
+        int nAdded = 0;
+        for (int i = 0; i < n; i++) {
+            long ID = in.readLong();
+            UnitType type = utt.getUnitType(in.readShort());
+            int player = in.readByte();
+            int x = in.readShort();
+            int y = in.readShort();
+            int hitpoints = in.readInt();
+            int resources = in.readInt();
+            Unit u = units.get(ID);
+            if (u != null && (u.getType() != type || u.getPlayer() != player)) {
+                pgs.removeUnit(u);
+                u = null;
+            }
+            if (u == null) {
+                u = new Unit(ID, player, type, x, y, resources);
+                units.put(ID, u);
+                if (added == null) added = new Unit[n];
+                added[nAdded++] = u;
+            } else if (u.getX() != x || u.getY() != y) {
+                pgs.moveUnit(u, x, y);
+            }
+            u.setHitPoints(hitpoints);
+            u.setResources(resources);
+        }
+        for (int i = 0; i < nAdded; i++) pgs.addUnit(added[i]);
+
+        // assignments:
+        if (kind == BinaryStateEncoder.DELTA) {
+            int removed = in.readInt();
+            for (int i = 0; i < removed; i++) assignments.remove(in.readLong());
+        }
+        n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            long ID = in.readLong();
+            int code = in.readInt();
+            int issued = in.readInt();
+            assignments.put(ID, new int[]{code, issued});
+        }
+
+        GameState gs = new GameState(pgs, utt);
+        gs.time = time;
+        UnitActionTable table = utt.getUnitActionTable();
+        for (Unit u : pgs.units) {
+            int a[] = assignments.get(u.getID());
+            if (a != null) gs.unitActions.put(u, new UnitActionAssignment(u, table.decode(a[0]), a[1]));
+        }
+        return gs;
+    }
+}
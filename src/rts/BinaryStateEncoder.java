@@ -0,0 +1,196 @@
+package rts;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import rts.units.Unit;
+
+/**
+ * Writes game states in a compact binary format, for sending them through a
+ * socket (see {@link ai.socket.SocketAI#LANGUAGE_BINARY}). The first state is
+ * written completely (a "snapshot"), and then only the differences with the
+ * previously written state (units and action assignments added, changed or
+ * removed, and the resources of the players), as most units do not change from
+ * one game cycle to the next. {@link BinaryStateDecoder} reads them back.
+ *
+ * Format (all numbers big-endian, as written by {@link DataOutput}):
+ * - byte: {@link #SNAPSHOT} or {@link #DELTA}
+ * - int: game time
+ * - snapshot only: short width, short height, and the terrain, one bit per
+ *   cell (1 for walls), row by row
+ * - byte: number of players, and an int with the resources of each
+ * - delta only: int number of units removed, and their IDs (long)
+ * - int: number of units (added or changed in deltas), and for each: long ID,
+ *   short unit type ID, byte player, short x, short y, int hit points, int
+ *   resources
+ * - delta only: int number of assignments removed, and the IDs of their units
+ * - int: number of action assignments (added or changed in deltas), and for
+ *   each: long unit ID, int action code (see {@link UnitActionTable#encode(UnitAction)}),
+ *   int time it was issued
+ */
+public class BinaryStateEncoder {
+    public static final int SNAPSHOT = 0;
+    public static final int DELTA = 1;
+
+    // the units and assignments last written, indexed by unit ID. Units: type, player,
+    // x, y, hit points, resources, and the frame they were last seen in. Assignments:
+    // action code, time, and frame:
+    HashMap<Long, int[]> units = new HashMap<>();
+    HashMap<Long, int[]> assignments = new HashMap<>();
+    int frame = 0;
+    PhysicalGameState lastMap = null;
+    int lastTerrain[] = null;
+
+    /**
+     * Forgets the previously written state, so that the next one is written as a
+     * snapshot
+     */
+    public void reset() {
+        units.clear();
+        assignments.clear();
+        lastMap = null;
+        lastTerrain = null;
+    }
+
+    /**
+     * Writes a state as a snapshot
+     * @param gs
+     * @param out
+     * @throws IOException
+     */
+    public void writeSnapshot(GameState gs, DataOutput out) throws IOException {
+        reset();
+        write(gs, out);
+    }
+
+    /**
+     * Writes a state: as the differences with the previous one written, or as a
+     * snapshot if there is no previous one or the map changed
+     * @param gs
+     * @param out
+     * @throws IOException
+     */
+    public void write(GameState gs, DataOutput out) throws IOException {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        boolean snapshot = lastTerrain == null || pgs.width * pgs.height != lastTerrain.length
+                        || (pgs != lastMap && !Arrays.equals(pgs.terrain, lastTerrain));
+        if (snapshot) {
+            units.clear();
+            assignments.clear();
+            lastTerrain = pgs.terrain.clone();
+        }
+        lastMap = pgs;
+        frame++;
+
+        out.writeByte(snapshot ? SNAPSHOT : DELTA);
+        out.writeInt(gs.getTime());
+        if (snapshot) {
+            out.writeShort(pgs.width);
+            out.writeShort(pgs.height);
+            int bits = 0;
+            int n = 0;
+            for (int i = 0; i < pgs.terrain.length; i++) {
+                if (pgs.terrain[i] == PhysicalGameState.TERRAIN_WALL) bits |= 1 << n;
+                if (++n == 8) {
+                    out.writeByte(bits);
+                    bits = n = 0;
+                }
+            }
+            if (n > 0) out.writeByte(bits);
+        }
+        out.writeByte(pgs.players.size());
+        for (Player p : pgs.players) out.writeInt(p.getResources());
+
+        // units:
+        int changed = 0;
+        for (Unit u : pgs.units) {
+            int record[] = units.get(u.getID());
+            if (record == null) {
+                record = new int[7];
+                units.put(u.getID(), record);
+                changed++;
+            } else if (record[0] != u.getType().ID || record[1] != u.getPlayer() || record[2] != u.getX() ||
+                       record[3] != u.getY() || record[4] != u.getHitPoints() || record[5] != u.getResources()) {
+                changed++;
+            } else {
+                record[6] = frame;
+                continue;
+            }
+            record[0] = u.getType().ID;
+            record[1] = u.getPlayer();
+            record[2] = u.getX();
+            record[3] = u.getY();
+            record[4] = u.getHitPoints();
+            record[5] = u.getResources();
+            record[6] = -frame;     // changed in this frame
+        }
+        if (!snapshot) writeRemoved(units, out);
+        out.writeInt(changed);
+        for (Unit u : pgs.units) {
+            int record[] = units.get(u.getID());
+            if (record[6] != -frame) continue;
+            record[6] = frame;
+            out.writeLong(u.getID());
+            out.writeShort(record[0]);
+            out.writeByte(record[1]);
+            out.writeShort(record[2]);
+            out.writeShort(record[3]);
+            out.writeInt(record[4]);
+            out.writeInt(record[5]);
+        }
+
+        // assignments:
+        changed = 0;
+        for (UnitActionAssignment uaa : gs.unitActions.values()) {
+            int code = UnitActionTable.encode(uaa.action);
+            int record[] = assignments.get(uaa.unit.getID());
+            if (record == null) {
+                record = new int[3];
+                assignments.put(uaa.unit.getID(), record);
+            } else if (record[0] == code && record[1] == uaa.time) {
+                record[2] = frame;
+                continue;
+            }
+            record[0] = code;
+            record[1] = uaa.time;
+            record[2] = -frame;
+            changed++;
+        }
+        if (!snapshot) writeRemoved(assignments, out);
+        out.writeInt(changed);
+        for (UnitActionAssignment uaa : gs.unitActions.values()) {
+            int record[] = assignments.get(uaa.unit.getID());
+            if (record[2] != -frame) continue;
+            record[2] = frame;
+            out.writeLong(uaa.unit.getID());
+            out.writeInt(record[0]);
+            out.writeInt(record[1]);
+        }
+    }
+
+    /**
+     * Writes (and forgets) the IDs of the entries not seen in the current frame
+     * (the frame is the last element of each record)
+     */
+    void writeRemoved(HashMap<Long, int[]> records, DataOutput out) throws IOException {
+        int removed = 0;
+        for (int record[] : records.values()) {
+            int seen = record[record.length - 1];
+            if (seen != frame && seen != -frame) removed++;
+        }
+        out.writeInt(removed);
+        if (removed == 0) return;
+        Iterator<Map.Entry<Long, int[]>> it = records.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, int[]> e = it.next();
+            int seen = e.getValue()[e.getValue().length - 1];
+            if (seen != frame && seen != -frame) {
+                out.writeLong(e.getKey());
+                it.remove();
+            }
+        }
+    }
+}
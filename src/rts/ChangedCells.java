@@ -0,0 +1,54 @@
+package rts;
+
+/**
+ * The set of cells of a map whose contents (units or their actions) changed
+ * since some information derived from them (e.g., a vector observation, see
+ * {@link GameState#getVectorObservation(int)}) was last computed, so that only
+ * those cells need to be recomputed.
+ */
+class ChangedCells {
+
+    int cells[];
+    boolean marked[];
+    int size = 0;
+    // whether all the cells have to be recomputed (e.g., they were never computed):
+    boolean all = true;
+    // number of units when the cells were last computed (if it differs, units were
+    // added or removed without going through GameState, and all are recomputed):
+    int units = -1;
+
+    ChangedCells(int nCells) {
+        cells = new int[nCells];
+        marked = new boolean[nCells];
+    }
+
+    /**
+     * Marks a cell as changed
+     *
+     * @param cell
+     */
+    void add(int cell) {
+        if (all || marked[cell]) return;
+        marked[cell] = true;
+        cells[size++] = cell;
+    }
+
+    /**
+     * Indicates that all the cells have been recomputed
+     *
+     * @param nUnits the current number of units
+     */
+    void clear(int nUnits) {
+        for (int i = 0; i < size; i++) marked[cells[i]] = false;
+        size = 0;
+        all = false;
+        units = nUnits;
+    }
+
+    /**
+     * Marks all the cells as changed
+     */
+    void invalidate() {
+        all = true;
+    }
+}
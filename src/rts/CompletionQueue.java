@@ -0,0 +1,122 @@
+package rts;
+
+import java.util.Map;
+import rts.units.Unit;
+
+/**
+ * A priority queue (binary min-heap) of the times at which the unit action
+ * assignments of a {@link GameState} will complete, so that the next time
+ * something happens in the game can be found without scanning all the
+ * assignments.
+ *
+ * Assignments are added when they are issued, but they are not removed when
+ * they are executed, cancelled or replaced: entries are discarded when they
+ * reach the top of the heap and the assignment is no longer in the state (or
+ * would complete at a different time).
+ */
+class CompletionQueue {
+
+    int times[];
+    UnitActionAssignment assignments[];
+    int size = 0;
+    // number of assignments of the state accounted for (if it differs from the number
+    // of assignments, the state was modified directly, and the queue is rebuilt):
+    int count = 0;
+
+    CompletionQueue(int capacity) {
+        capacity = Math.max(capacity, 8);
+        times = new int[capacity];
+        assignments = new UnitActionAssignment[capacity];
+    }
+
+    /**
+     * Creates the queue of all the assignments of a state
+     *
+     * @param unitActions
+     */
+    CompletionQueue(Map<Unit, UnitActionAssignment> unitActions) {
+        this(unitActions.size() * 2);
+        for (UnitActionAssignment uaa : unitActions.values()) {
+            times[size] = completionTime(uaa);
+            assignments[size] = uaa;
+            size++;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) siftDown(i);
+        count = unitActions.size();
+    }
+
+    static int completionTime(UnitActionAssignment uaa) {
+        return uaa.time + uaa.action.ETA(uaa.unit);
+    }
+
+    /**
+     * Adds an assignment (or an assignment whose action changed)
+     *
+     * @param uaa
+     */
+    void add(UnitActionAssignment uaa) {
+        if (size == times.length) {
+            int tmp[] = new int[size * 2];
+            System.arraycopy(times, 0, tmp, 0, size);
+            times = tmp;
+            UnitActionAssignment tmp2[] = new UnitActionAssignment[size * 2];
+            System.arraycopy(assignments, 0, tmp2, 0, size);
+            assignments = tmp2;
+        }
+        times[size] = completionTime(uaa);
+        assignments[size] = uaa;
+        siftUp(size);
+        size++;
+    }
+
+    /**
+     * Returns the earliest time at which one of the assignments will complete
+     * (-1 if there are none), discarding the entries of assignments no longer
+     * in the state
+     *
+     * @param unitActions the assignments of the state
+     * @return
+     */
+    int peekTime(Map<Unit, UnitActionAssignment> unitActions) {
+        while (size > 0) {
+            UnitActionAssignment uaa = assignments[0];
+            if (unitActions.get(uaa.unit) == uaa && completionTime(uaa) == times[0]) return times[0];
+            size--;
+            times[0] = times[size];
+            assignments[0] = assignments[size];
+            assignments[size] = null;
+            if (size > 0) siftDown(0);
+        }
+        return -1;
+    }
+
+    void siftUp(int i) {
+        int t = times[i];
+        UnitActionAssignment uaa = assignments[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (times[parent] <= t) break;
+            times[i] = times[parent];
+            assignments[i] = assignments[parent];
+            i = parent;
+        }
+        times[i] = t;
+        assignments[i] = uaa;
+    }
+
+    void siftDown(int i) {
+        int t = times[i];
+        UnitActionAssignment uaa = assignments[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && times[child + 1] < times[child]) child++;
+            if (times[child] >= t) break;
+            times[i] = times[child];
+            assignments[i] = assignments[child];
+            i = child;
+        }
+        times[i] = t;
+        assignments[i] = uaa;
+    }
+}
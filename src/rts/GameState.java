@@ -1,9 +1,12 @@
 package rts;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -24,7 +27,6 @@ import com.eclipsesource.json.JsonValue;
 import rts.units.Unit;
 import rts.units.UnitType;
 import rts.units.UnitTypeTable;
-import util.Pair;
 import util.XMLWriter;
 
 /**
@@ -42,8 +44,33 @@ public class GameState {
     protected HashMap<Unit,UnitActionAssignment> unitActions = new LinkedHashMap<>();
     protected UnitTypeTable utt;
 
+    // For each position (x + y * width) that a MOVE/PRODUCE assignment will use, the index in
+    // pgs.getUnits() of the unit executing it. Built lazily, kept in sync by issue, cycle and
+    // removeUnit, and shared with clones until one of them modifies it:
+    PositionMap reservations = null;
+    // number of entries of unitActions that "reservations" accounts for (if it
+    // differs from unitActions.size(), the map was modified directly and it is rebuilt):
+    int reservationsCount = 0;
+
+    // The times at which the assignments in unitActions will complete. Built the first time
+    // cycleUntilNextEvent or getNextChangeTime need it, and then kept up to date by issue,
+    // cycle and removeUnit (but not shared with clones):
+    CompletionQueue completions = null;
+
+    // The log being recorded by issueWithUndo/cycleWithUndo (null the rest of the time):
+    UndoLog undoLog = null;
+
+    // Zobrist hash of the state (see getHash). Computed the first time it is requested,
+    // and then kept up to date by issue, cycle, removeUnit and undo:
+    long hash = 0;
+    boolean hashValid = false;
+    // units whose key is not in "hash" while an action is being executed by cycle:
+    Unit hashDetached1 = null, hashDetached2 = null;
+
     // [player][feature map][Y][X] --> Note: feature maps not yet binarised here!
     protected int [][][][] vectorObservation;
+    // [player] cells whose vector observation changed since it was last computed:
+    ChangedCells vectorObservationChanges[] = null;
     
     // Feature maps:
     // 1: hit points
@@ -77,8 +104,33 @@ public class GameState {
      * @param u
      */
     public void removeUnit(Unit u) {
+        if (vectorObservationChanges!=null) cellChanged(u);
+        int idx = pgs.indexOf(u);
         pgs.removeUnit(u);
-        unitActions.remove(u);
+        UnitActionAssignment uaa = unitActions.remove(u);
+        if (hashValid) {
+            if (idx!=-1 && u!=hashDetached1 && u!=hashDetached2) hash ^= Zobrist.unitKey(u);
+            if (uaa!=null) hash ^= Zobrist.assignmentKey(uaa);
+        }
+        if (uaa!=null && completions!=null) completions.count--;
+        if (undoLog!=null) {
+            if (idx!=-1) undoLog.unitRemoved(u, idx);
+            if (uaa!=null) undoLog.assignmentRemoved(uaa);
+        }
+        if (reservations==null) return;
+        if (idx==-1) {
+            if (uaa!=null) reservations = null;
+            return;
+        }
+        PositionMap r = reservations.writable();
+        if (uaa!=null) {
+            int pos = reservedPosition(uaa);
+            if (pos>=0) r.remove(pos, idx);
+            reservationsCount--;
+        }
+        // the units after the removed one are now one position earlier in the list:
+        r.shiftValues(idx+1, -1);
+        reservations = r;
     }
     
     /**
@@ -190,18 +242,29 @@ public class GameState {
      */
     public boolean free(int x, int y) {
         if (pgs.getTerrain(x, y)!=PhysicalGameState.TERRAIN_NONE) return false;
-        for(Unit u:pgs.units) {
-            if (u.getX()==x && u.getY()==y) return false;
-        }
-        for(UnitActionAssignment ua:unitActions.values()) {
-            if (ua.action.type==UnitAction.TYPE_MOVE ||
-                ua.action.type==UnitAction.TYPE_PRODUCE) {
-                Unit u = ua.unit;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_UP && u.getX()==x && u.getY()==y+1) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_RIGHT && u.getX()==x-1 && u.getY()==y) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_DOWN && u.getX()==x && u.getY()==y-1) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_LEFT && u.getX()==x+1 && u.getY()==y) return false;
-            }
+        if (pgs.getUnitAt(x, y)!=null) return false;
+        return !isReserved(x, y);
+    }
+    
+    
+    /**
+     * Returns true if some unit is executing a move or produce action that will use 
+     * the specified position
+     * @param x coordinate of the position
+     * @param y coordinate of the position
+     * @return
+     */
+    public boolean isReserved(int x, int y) {
+        if (!pgs.isInside(x, y)) return false;
+        int pos = x + y * pgs.getWidth();
+        int idx = getReservations().get(pos);
+        if (idx==PositionMap.EMPTY) return false;
+        List<Unit> units = pgs.getUnits();
+        UnitActionAssignment uaa = (idx<units.size() ? unitActions.get(units.get(idx)) : null);
+        if (uaa==null || reservedPosition(uaa)!=pos) {
+            // the assignment was changed/removed without going through this class:
+            reservations = null;
+            return getReservations().get(pos)!=PositionMap.EMPTY;
         }
         return true;
     }
@@ -209,25 +272,106 @@ public class GameState {
    
     /**
      * Returns a boolean array with true if there is no unit in 
-     * the specified position and no unit is executing an action that will use that position
+     * the specified position and no unit is executing an action that will use that position.
+     * A new array is allocated on each call, use {@link #free(int, int)} if you only need to 
+     * query some positions
      * @return
      */
     public boolean[][] getAllFree() {
     	
     	boolean free[][]=pgs.getAllFree();
-        for(UnitActionAssignment ua:unitActions.values()) {
-            if (ua.action.type==UnitAction.TYPE_MOVE ||
-                ua.action.type==UnitAction.TYPE_PRODUCE) {
-                Unit u = ua.unit;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_UP ) free[u.getX()][u.getY()-1]=false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_RIGHT) free[u.getX()+1][u.getY()]=false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_DOWN ) free[u.getX()][u.getY()+1]=false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_LEFT) free[u.getX()-1][u.getY()]=false;
+        for(int x = 0;x<pgs.getWidth();x++) {
+            for(int y = 0;y<pgs.getHeight();y++) {
+                if (free[x][y] && isReserved(x, y)) free[x][y]=false;
             }
         }
         return free;
     }
     
+    
+    /**
+     * Returns the position (x + y * width) that will be used by the action in a
+     * {@link UnitActionAssignment} (moves and produces), or -1 if it does not use any
+     * @param uaa
+     * @return
+     */
+    public int reservedPosition(UnitActionAssignment uaa) {
+        if (uaa.action.type!=UnitAction.TYPE_MOVE &&
+            uaa.action.type!=UnitAction.TYPE_PRODUCE) return -1;
+        int direction = uaa.action.getDirection();
+        if (direction<0 || direction>=UnitAction.DIRECTION_OFFSET_X.length) return -1;
+        int x = uaa.unit.getX() + UnitAction.DIRECTION_OFFSET_X[direction];
+        int y = uaa.unit.getY() + UnitAction.DIRECTION_OFFSET_Y[direction];
+        if (!pgs.isInside(x, y)) return -1;
+        return x + y * pgs.getWidth();
+    }
+    
+    
+    /**
+     * Returns the reserved positions, rebuilding them from the action assignments if they 
+     * are missing or out of sync
+     * @return
+     */
+    PositionMap getReservations() {
+        if (reservations==null || reservationsCount!=unitActions.size()) {
+            reservations = new PositionMap(unitActions.size());
+            for(UnitActionAssignment uaa:unitActions.values()) {
+                int pos = reservedPosition(uaa);
+                if (pos<0) continue;
+                int idx = pgs.indexOf(uaa.unit);
+                if (idx>=0) reservations.put(pos, idx);
+            }
+            reservationsCount = unitActions.size();
+        }
+        return reservations;
+    }
+    
+    
+    /**
+     * Updates the reserved positions after an assignment was put in unitActions
+     * @param replaced the assignment previously associated to the unit (or null)
+     * @param uaa
+     */
+    private void reservationAdded(UnitActionAssignment replaced, UnitActionAssignment uaa) {
+        if (reservations==null) return;
+        if (replaced!=null) {
+            clearReservation(replaced);
+        } else {
+            reservationsCount++;
+        }
+        int pos = reservedPosition(uaa);
+        if (pos<0) return;
+        int idx = pgs.indexOf(uaa.unit);
+        if (idx>=0) {
+            reservations = reservations.writable();
+            reservations.put(pos, idx);
+        } else {
+            reservations = null;
+        }
+    }
+
+    
+    /**
+     * Updates the reserved positions after an assignment was removed from unitActions
+     * @param uaa
+     */
+    private void reservationRemoved(UnitActionAssignment uaa) {
+        if (reservations==null) return;
+        clearReservation(uaa);
+        reservationsCount--;
+    }
+    
+    
+    private void clearReservation(UnitActionAssignment uaa) {
+        int pos = reservedPosition(uaa);
+        if (pos<0) return;
+        int idx = pgs.indexOf(uaa.unit);
+        if (idx>=0 && reservations.get(pos)==idx) {
+            reservations = reservations.writable();
+            reservations.remove(pos, idx);
+        }
+    }
+    
 
     /**
      * Returns whether the cell is observable.
@@ -249,17 +393,20 @@ public class GameState {
     public boolean issue(PlayerAction pa) {
         boolean returnValue = false;
         
-        for(Pair<Unit,UnitAction> p:pa.actions) {
-//            if (p.m_a==null) {
+        for(int i = 0;i<pa.size;i++) {
+            Unit u = pa.units[i];
+            UnitAction a = pa.unitActions[i];
+            boolean cancelled = false;  // whether "a" was cancelled by a conflict in the same cycle
+//            if (u==null) {
 //                System.err.println("Issuing an action to a null unit!!!");
 //                System.exit(1);
 //            }
-//            if (unitActions.get(p.m_a)!=null) {
+//            if (unitActions.get(u)!=null) {
 //                System.err.println("Issuing an action to a unit with another action!");
 //            } else 
 //            {
                 // check for conflicts:
-                ResourceUsage ru = p.m_b.resourceUsage(p.m_a, pgs);
+                ResourceUsage ru = a.resourceUsage(u, pgs);
                 for(UnitActionAssignment uaa:unitActions.values()) {
                     if (!uaa.action.resourceUsage(uaa.unit, pgs).consistentWith(ru, this)) {
                         // conflicting actions:
@@ -286,14 +433,21 @@ public class GameState {
                                     break;
                             }
                             int duration1 = uaa.action.ETA(uaa.unit);
-                            int duration2 = p.m_b.ETA(p.m_a);
+                            int duration2 = a.ETA(u);
                             if (cancel_old) {
 //                                System.out.println("Old action canceled: " + uaa.unit.getID() + ", " + uaa.action);
-                                uaa.action = new UnitAction(UnitAction.TYPE_NONE,Math.min(duration1,duration2));
+                                if (reservations!=null) clearReservation(uaa);
+                                if (undoLog!=null) undoLog.actionChanged(uaa);
+                                if (hashValid) hash ^= Zobrist.assignmentKey(uaa);
+                                if (vectorObservationChanges!=null) cellChanged(uaa.unit);
+                                uaa.action = utt.getUnitActionTable().none(Math.min(duration1,duration2));
+                                if (hashValid) hash ^= Zobrist.assignmentKey(uaa);
+                                if (completions!=null) completions.add(uaa);
                             }
                             if (cancel_new) {
-//                                System.out.println("New action canceled: " + p.m_a.getID() + ", " + p.m_b);
-                                p = new Pair<>(p.m_a, new UnitAction(UnitAction.TYPE_NONE,Math.min(duration1,duration2)));
+//                                System.out.println("New action canceled: " + u.getID() + ", " + a);
+                                a = utt.getUnitActionTable().none(Math.min(duration1,duration2));
+                                cancelled = true;
                             }
                         } else {
                             // This is more a problem, since it means there is a bug somewhere...
@@ -301,7 +455,7 @@ public class GameState {
                             System.err.println("Inconsistent actions were executed!");
                             System.err.println(uaa);
                             System.err.println("  Resources: " + uaa.action.resourceUsage(uaa.unit, pgs));
-                            System.err.println(p.m_a + " assigned action " + p.m_b + " at time " + time);
+                            System.err.println(u + " assigned action " + a + " at time " + time);
                             System.err.println("  Resources: " + ru);
                             System.err.println("Player resources: " + pgs.getPlayer(0).getResources() + ", " + pgs.getPlayer(1).getResources());
                             System.err.println("Resource Consistency: " + uaa.action.resourceUsage(uaa.unit, pgs).consistentWith(ru, this));
@@ -313,15 +467,28 @@ public class GameState {
                             }
                             
                             // only the newly issued action is cancelled, since it's the problematic one...
-                            p.m_b = new UnitAction(UnitAction.TYPE_NONE);
+                            a = utt.getUnitActionTable().none(UnitAction.DIRECTION_NONE);
                         }
                     }
                 }
                 
-                UnitActionAssignment uaa = new UnitActionAssignment(p.m_a, p.m_b, time);
-                unitActions.put(p.m_a,uaa);
-                if (p.m_b.type!=UnitAction.TYPE_NONE) returnValue = true;
-//                System.out.println("Issuing action " + p.m_b + " to " + p.m_a);                
+                UnitActionAssignment uaa = new UnitActionAssignment(u, a, time);
+                UnitActionAssignment replaced = unitActions.put(u,uaa);
+                if (undoLog!=null) undoLog.assignmentPut(u, replaced, uaa);
+                if (hashValid) {
+                    if (replaced!=null) hash ^= Zobrist.assignmentKey(replaced);
+                    hash ^= Zobrist.assignmentKey(uaa);
+                }
+                if (completions!=null) {
+                    completions.add(uaa);
+                    if (replaced==null) completions.count++;
+                }
+                if (vectorObservationChanges!=null) cellChanged(u);
+                reservationAdded(replaced, uaa);
+                if (a.type!=UnitAction.TYPE_NONE) returnValue = true;
+                // actions cancelled because of an inconsistency are also replaced in the PlayerAction:
+                if (!cancelled && a!=pa.unitActions[i]) pa.set(i, u, a);
+//                System.out.println("Issuing action " + a + " to " + u);                
 //            }
         }
         return returnValue;
@@ -338,33 +505,35 @@ public class GameState {
     public boolean issueSafe(PlayerAction pa) {
         if (!pa.integrityCheck()) throw new Error("PlayerAction inconsistent before 'issueSafe'");
         if (!integrityCheck()) throw new Error("GameState inconsistent before 'issueSafe'");
-        for(Pair<Unit,UnitAction> p:pa.actions) {
-            if (p.m_a==null) {
+        for(int i = 0;i<pa.size;i++) {
+            Unit unit = pa.units[i];
+            UnitAction action = pa.unitActions[i];
+            if (unit==null) {
                 System.err.println("Issuing an action to a null unit!!!");
                 System.exit(1);
             }
             
-            if (!p.m_a.canExecuteAction(p.m_b, this)) {
+            if (!unit.canExecuteAction(action, this)) {
                 if (REPORT_ILLEGAL_ACTIONS) {
-                    System.err.println("Issuing a non legal action to unit " + p.m_a + "!! Ignoring it...");
+                    System.err.println("Issuing a non legal action to unit " + unit + "!! Ignoring it...");
                 }
                 // replace the action by a NONE action of the same duration:
-                int l = p.m_b.ETA(p.m_a);
-                p.m_b = new UnitAction(UnitAction.TYPE_NONE, l);
+                int l = action.ETA(unit);
+                action = new UnitAction(UnitAction.TYPE_NONE, l);
             }
             
             // get the unit that corresponds to that action (since the state might have been cloned):
             boolean foundRealUnit = false;
             Unit substituteUnit = null;
             for (final Unit u : pgs.units) {
-            	if (u.equals(p.m_a)) {
+            	if (u.equals(unit)) {
             		foundRealUnit = true;
             		break;
             	}
             	
             	if (substituteUnit == null) {
-            		// TODO should we also compare u.getType() to p.m_a.getType()?
-            		if (u.getX() == p.m_a.getX() && u.getY() == p.m_a.getY()) {
+            		// TODO should we also compare u.getType() to unit.getType()?
+            		if (u.getX() == unit.getX() && u.getY() == unit.getY()) {
             			substituteUnit = u;
             		}
             	}
@@ -374,32 +543,32 @@ public class GameState {
             	if (substituteUnit == null) {
             		System.err.println("Inconsistent order: " + pa);
                     System.err.println(this);
-                    System.err.println("The problem was with unit " + p.m_a);
+                    System.err.println("The problem was with unit " + unit);
             	}
             	else {
-            		p.m_a = substituteUnit;
+            		unit = substituteUnit;
             	}
             }
 
             {
                 // check to see if the action is legal!
-                ResourceUsage r = p.m_b.resourceUsage(p.m_a, pgs);
+                ResourceUsage r = action.resourceUsage(unit, pgs);
                 for(int position:r.getPositionsUsed()) {
                     int y = position/pgs.getWidth();
                     int x = position%pgs.getWidth();
                     if (pgs.getTerrain(x, y) != PhysicalGameState.TERRAIN_NONE ||
                         pgs.getUnitAt(x, y) != null) {
-                        UnitAction new_ua = new UnitAction(UnitAction.TYPE_NONE, p.m_b.ETA(p.m_a));
-                        System.err.println("Player " + p.m_a.getPlayer() + " issued an illegal move action (to "+x+","+y+") to unit "+p.m_a.getID()+" at time "+getTime()+", cancelling and replacing by " + new_ua);
-                        System.err.println("    Action: " + p.m_b);
+                        UnitAction new_ua = new UnitAction(UnitAction.TYPE_NONE, action.ETA(unit));
+                        System.err.println("Player " + unit.getPlayer() + " issued an illegal move action (to "+x+","+y+") to unit "+unit.getID()+" at time "+getTime()+", cancelling and replacing by " + new_ua);
+                        System.err.println("    Action: " + action);
                         System.err.println("    Resources used by the action: " + r);
                         System.err.println("    Unit at that coordinate " + pgs.getUnitAt(x, y));
-                        p.m_b = new_ua;
+                        action = new_ua;
                     }
                 }
             }
             
-            
+            if (unit!=pa.units[i] || action!=pa.unitActions[i]) pa.set(i, unit, action);
         }
                 
         boolean returnValue = issue(pa);
@@ -530,20 +699,26 @@ public class GameState {
      * @return
      */
     public int getNextChangeTime() {
-        int nextChangeTime = -1;
-        
-        for(Player player:pgs.players) {
-            if (canExecuteAnyAction(player.ID)) return time;
-        }
-        
-        for(UnitActionAssignment uaa:unitActions.values()) {
-            int t = uaa.time + uaa.action.ETA(uaa.unit);
-            if (nextChangeTime == -1 || t < nextChangeTime) nextChangeTime = t;
-        }
+        // a player can act if any of its units has no action:
+        if (!isComplete()) return time;
         
+        int nextChangeTime = nextCompletionTime();
         if (nextChangeTime == -1) return time;
         return nextChangeTime;
     }
+    
+    
+    /**
+     * Returns the earliest time at which one of the assigned actions will complete, or
+     * -1 if there are no assigned actions
+     * @return
+     */
+    public int nextCompletionTime() {
+        if (completions==null || completions.count!=unitActions.size()) {
+            completions = new CompletionQueue(unitActions);
+        }
+        return completions.peekTime(unitActions);
+    }
         
     
     /**
@@ -553,39 +728,295 @@ public class GameState {
     public boolean cycle() {
         time++;
         
+        if (completions!=null && completions.count==unitActions.size()) {
+            // no need to look for the actions to execute if none completes yet:
+            int next = completions.peekTime(unitActions);
+            if (next==-1 || next>time) return gameover();
+        }
+        
         List<UnitActionAssignment> readyToExecute = new LinkedList<>();
         for(UnitActionAssignment uaa:unitActions.values()) {
             if (uaa.action.ETA(uaa.unit)+uaa.time<=time) readyToExecute.add(uaa);
         }
                 
+        if (undoLog!=null && undoLog.assignments==null && !readyToExecute.isEmpty()) {
+            // the assignments (and their order) are only recorded before the first cycle that
+            // changes them (cycles can remove assignments, but not add new ones):
+            undoLog.assignments = unitActions.values().toArray(new UnitActionAssignment[unitActions.size()]);
+            undoLog.removedAssignments = new ArrayList<>();
+        }
+        
+        boolean updateHash = hashValid && !readyToExecute.isEmpty();
+        if (updateHash) {
+            for(Player p:pgs.players) hash ^= Zobrist.playerKey(p);
+        }
+        
         // execute the actions:
         for(UnitActionAssignment uaa:readyToExecute) {
-            unitActions.remove(uaa.unit);
+            if (unitActions.remove(uaa.unit)!=null) {
+                reservationRemoved(uaa);
+                if (undoLog!=null) undoLog.assignmentRemoved(uaa);
+                if (hashValid) hash ^= Zobrist.assignmentKey(uaa);
+                if (completions!=null) completions.count--;
+            }
             
 //            System.out.println("Executing action for " + u + " issued at time " + uaa.time + " with duration " + uaa.action.ETA(uaa.unit));
             
-            uaa.action.execute(uaa.unit,this);
+            int n = 0;
+            if (vectorObservationChanges!=null) {
+                // the cells of the units affected before the action (the ones after it are
+                // marked below, or by removeUnit):
+                cellChanged(uaa.unit);
+                Unit other = uaa.action.affectedUnit(uaa.unit, pgs);
+                if (other!=null) cellChanged(other);
+                n = pgs.getUnits().size();
+            }
+            
+            if (hashValid) {
+                executeUpdatingHash(uaa);
+            } else if (undoLog==null) {
+                uaa.action.execute(uaa.unit,this);
+            } else {
+                executeWithUndo(uaa);
+            }
+            
+            if (vectorObservationChanges!=null) {
+                cellChanged(uaa.unit);
+                // produced units are added at the end of the list:
+                List<Unit> units = pgs.getUnits();
+                if (units.size()>n) cellChanged(units.get(units.size()-1));
+            }
+        }
+        
+        if (updateHash) {
+            for(Player p:pgs.players) hash ^= Zobrist.playerKey(p);
         }
         
         return gameover();
     }
     
     
+    /**
+     * Runs game cycles, like {@link #cycle()}, until a player can issue actions, the game
+     * is over, or "maxTime" is reached (at least one cycle is always run). The cycles
+     * in which no action completes are skipped, just advancing the time, so this is 
+     * much faster than calling cycle() in a loop when actions take several cycles (e.g., 
+     * in playouts), but the resulting state is the same.
+     * @param maxTime
+     * @return whether the game was over
+     */
+    public boolean cycleUntilNextEvent(int maxTime) {
+        boolean gameover;
+        boolean complete = isComplete();
+        do {
+            if (complete) {
+                // nothing happens until the next action completes:
+                int next = nextCompletionTime();
+                if (next>maxTime) next = maxTime;
+                if (next>time+1) time = next-1;
+            }
+            gameover = cycle();
+        } while(!gameover && time<maxTime && (complete = isComplete()));
+        return gameover;
+    }
+    
+    
+    /**
+     * Runs game cycles until a player can issue actions or the game is over
+     * (see {@link #cycleUntilNextEvent(int)})
+     * @return whether the game was over
+     */
+    public boolean cycleUntilNextEvent() {
+        return cycleUntilNextEvent(Integer.MAX_VALUE);
+    }
+    
+    
+    /**
+     * Executes an action assignment, recording in undoLog the state of the units it affects
+     * @param uaa
+     */
+    private void executeWithUndo(UnitActionAssignment uaa) {
+        undoLog.unitChanged(uaa.unit);
+        Unit other = uaa.action.affectedUnit(uaa.unit, pgs);
+        if (other!=null) undoLog.unitChanged(other);
+        List<Unit> units = pgs.getUnits();
+        int n = units.size();
+        uaa.action.execute(uaa.unit,this);
+        // produced units are added at the end of the list:
+        if (units.size()>n) undoLog.unitAdded(units.get(units.size()-1));
+    }
+    
+    
+    /**
+     * Executes an action assignment, updating the hash with the changes to the units it
+     * affects (the ones that can change are the same ones executeWithUndo records)
+     * @param uaa
+     */
+    private void executeUpdatingHash(UnitActionAssignment uaa) {
+        Unit u = uaa.unit;
+        Unit other = uaa.action.affectedUnit(u, pgs);
+        if (other==u) other = null;
+        // while the action executes, removeUnit does not remove the key of these units:
+        if (pgs.indexOf(u)!=-1) {
+            hash ^= Zobrist.unitKey(u);
+            hashDetached1 = u;
+        }
+        if (other!=null && pgs.indexOf(other)!=-1) {
+            hash ^= Zobrist.unitKey(other);
+            hashDetached2 = other;
+        }
+        List<Unit> units = pgs.getUnits();
+        int n = units.size();
+        if (undoLog==null) {
+            uaa.action.execute(u,this);
+        } else {
+            executeWithUndo(uaa);
+        }
+        if (hashDetached1!=null && pgs.indexOf(u)!=-1) hash ^= Zobrist.unitKey(u);
+        if (hashDetached2!=null && pgs.indexOf(other)!=-1) hash ^= Zobrist.unitKey(other);
+        hashDetached1 = hashDetached2 = null;
+        // produced units are added at the end of the list:
+        if (units.size()>n) hash ^= Zobrist.unitKey(units.get(units.size()-1));
+    }
+    
+    
+    /**
+     * Issues a player action like {@link #issue(PlayerAction)}, returning a log that
+     * can be passed to {@link #undo(UndoLog)} to revert it
+     * @param pa
+     * @return
+     */
+    public UndoLog issueWithUndo(PlayerAction pa) {
+        UndoLog log = new UndoLog(this, true);
+        undoLog = log;
+        try {
+            issue(pa);
+        } finally {
+            undoLog = null;
+        }
+        return log;
+    }
+    
+    
+    /**
+     * Runs a game cycle like {@link #cycle()}, returning a log that can be passed 
+     * to {@link #undo(UndoLog)} to revert it. Use {@link #gameover()} to know whether
+     * the game is over after it
+     * @return
+     */
+    public UndoLog cycleWithUndo() {
+        return cycleWithUndo(null);
+    }
+    
+    
+    /**
+     * Runs a game cycle, adding its changes to a log returned by a previous call to 
+     * cycleWithUndo (and with no issueWithUndo in between), so that a sequence of cycles 
+     * can be undone at once
+     * @param log the log to add the changes to, or null to create a new one
+     * @return the log
+     */
+    public UndoLog cycleWithUndo(UndoLog log) {
+        if (log==null) {
+            log = new UndoLog(this, false);
+        } else if (log.gs!=this || log.issue) {
+            throw new IllegalArgumentException("GameState.cycleWithUndo: the log was not created by cycleWithUndo on this state");
+        }
+        undoLog = log;
+        try {
+            cycle();
+        } finally {
+            undoLog = null;
+        }
+        return log;
+    }
+    
+    
+    /**
+     * Reverts the changes recorded in a log returned by {@link #issueWithUndo(PlayerAction)}
+     * or {@link #cycleWithUndo()}. Logs have to be undone in the reverse order they were
+     * created in (the last one first)
+     * @param log
+     */
+    public void undo(UndoLog log) {
+        if (log.gs!=this) throw new IllegalArgumentException("GameState.undo: the log was recorded in another state");
+        for(int i = log.changes.size()-1;i>=0;i--) {
+            UndoLog.Change c = log.changes.get(i);
+            switch(c.type) {
+                case UndoLog.UNIT_CHANGED:
+                    if (c.unit.getX()!=c.a || c.unit.getY()!=c.b) pgs.moveUnit(c.unit, c.a, c.b);
+                    c.unit.setHitPoints(c.c);
+                    c.unit.setResources(c.d);
+                    break;
+                case UndoLog.UNIT_ADDED:
+                    removeUnit(c.unit);
+                    break;
+                case UndoLog.UNIT_REMOVED:
+                    pgs.insertUnit(c.a, c.unit);
+                    if (reservations!=null) {
+                        reservations = reservations.writable();
+                        reservations.shiftValues(c.a, 1);
+                    }
+                    break;
+                case UndoLog.ASSIGNMENT_PUT:
+                    if (c.old==null) {
+                        unitActions.remove(c.unit);
+                        reservationRemoved(c.uaa);
+                    } else {
+                        reservationAdded(unitActions.put(c.unit, c.old), c.old);
+                    }
+                    break;
+                case UndoLog.ACTION_CHANGED:
+                    if (reservations!=null) clearReservation(c.uaa);
+                    c.uaa.action = c.action;
+                    reservationAdded(c.uaa, c.uaa);
+                    break;
+            }
+        }
+        if (log.assignments!=null) {
+            // the assignments are put back in their original order, since it is the execution order:
+            unitActions.clear();
+            for(UnitActionAssignment uaa:log.assignments) unitActions.put(uaa.unit, uaa);
+            for(UnitActionAssignment uaa:log.removedAssignments) reservationAdded(null, uaa);
+        }
+        time = log.time;
+        unitCancelationCounter = log.unitCancelationCounter;
+        // the entries of the assignments put back might have been discarded from the queue:
+        completions = null;
+        hash = log.hash;
+        hashValid = log.hashValid;
+        invalidateVectorObservation();
+        if (log.playerResources!=null) {
+            for(int i = 0;i<log.playerResources.length;i++) {
+                pgs.getPlayer(i).setResources(log.playerResources[i]);
+            }
+        }
+    }
+    
+    
     /**
      * Forces the execution of all assigned actions
      */
     public void forceExecuteAllActions() {
+        hashValid = false;
+        completions = null;
+        invalidateVectorObservation();
         List<UnitActionAssignment> readyToExecute = new LinkedList<>(unitActions.values());
                 
         // execute all the actions:
         for(UnitActionAssignment uaa:readyToExecute) {
-            unitActions.remove(uaa.unit);
+            if (unitActions.remove(uaa.unit)!=null) reservationRemoved(uaa);
             uaa.action.execute(uaa.unit,this);
         }
     }
     
-    /* 
-     * @see java.lang.Object#clone()
+    /**
+     * Clones the game state. The units are deep-copied: they are mutable, and
+     * their identity is what unitActions and PlayerAction are keyed by (AIs
+     * issue actions for the units of the state they were given), so they are
+     * not shared with the clone. Only the occupancy index and the reserved
+     * positions, which refer to units by their index, are shared
+     * copy-on-write with the clone
      */
     @Override
 	public GameState clone() {
@@ -593,8 +1024,9 @@ public class GameState {
         gs.time = time;
         gs.unitCancelationCounter = unitCancelationCounter;
         for(UnitActionAssignment uaa:unitActions.values()) {
-            Unit u = uaa.unit;
-            int idx = pgs.getUnits().indexOf(u);
+            // the units of the clone are in the same order, and pgs.indexOf finds them in constant
+            // time through the occupancy index (which the clone shares):
+            int idx = pgs.indexOf(uaa.unit);
             if (idx==-1) {
                 System.out.println("Problematic game state:");
                 System.out.println(this);
@@ -606,6 +1038,13 @@ public class GameState {
                 gs.unitActions.put(u2,new UnitActionAssignment(u2, uaa.action, uaa.time));
             }                
         }
+        // the reserved positions refer to units by their index, so they are valid in the clone too:
+        if (reservations!=null && reservationsCount==unitActions.size()) {
+            gs.reservations = reservations.share();
+            gs.reservationsCount = reservationsCount;
+        }
+        gs.hash = hash;
+        gs.hashValid = hashValid;
         return gs;
     }
     
@@ -620,6 +1059,8 @@ public class GameState {
         gs.time = time;
         gs.unitCancelationCounter = unitCancelationCounter;
         gs.unitActions.putAll(unitActions);
+        gs.hash = hash;
+        gs.hashValid = hashValid;
         gs.issue(pa);
         return gs;        
     }
@@ -634,6 +1075,7 @@ public class GameState {
     {
         GameState gs = clone();
         gs.utt = new_utt;
+        gs.hashValid = false;
         for(Unit u:gs.getUnits()) {
             UnitType new_type = new_utt.getUnitType(u.getType().name);
             if (new_type == null) return null;
@@ -644,6 +1086,53 @@ public class GameState {
     }
     
     
+    /**
+     * Returns a Zobrist hash of the state: of its units (type, owner, position, hit
+     * points and resources, but not their IDs), of the actions assigned to them (and
+     * when they will complete) and of the resources of the players. The game time is
+     * not included (see {@link #getHash(int)}).
+     * 
+     * The hash is computed the first time it is requested, and then updated 
+     * incrementally by issue, cycle, removeUnit and undo (and copied by clone and
+     * cloneIssue). If the state is modified in any other way (e.g., changing units
+     * directly), call {@link #invalidateHash()} afterwards.
+     * @return
+     */
+    public long getHash() {
+        if (!hashValid) {
+            long h = 0;
+            for(Unit u:pgs.getUnits()) h ^= Zobrist.unitKey(u);
+            for(UnitActionAssignment uaa:unitActions.values()) h ^= Zobrist.assignmentKey(uaa);
+            for(Player p:pgs.players) h ^= Zobrist.playerKey(p);
+            hash = h;
+            hashValid = true;
+        }
+        return hash;
+    }
+    
+    
+    /**
+     * Returns the Zobrist hash of the state (see {@link #getHash()}) combined with
+     * the game time divided by "timeBucket" (so, with timeBucket = 1, states at
+     * different times never share a hash, and with larger buckets, equal states 
+     * reached at similar times do)
+     * @param timeBucket
+     * @return
+     */
+    public long getHash(int timeBucket) {
+        return getHash() ^ Zobrist.timeKey(time / timeBucket);
+    }
+    
+    
+    /**
+     * Forces the hash to be recomputed the next time it is requested. Needed only after
+     * modifying the state other than through issue, cycle, removeUnit or undo
+     */
+    public void invalidateHash() {
+        hashValid = false;
+    }
+    
+    
     /**
      * Returns the resources being used for all actions issued
      * in current cycle
@@ -770,18 +1259,22 @@ public class GameState {
      * @param w
      */
     public void toxml(XMLWriter w, boolean includeConstants, boolean compressTerrain) {
-        w.tagWithAttributes(this.getClass().getName(), "time=\"" + time + "\"");
+        String tagname = this.getClass().getName();
+        w.startTagWithAttributes(tagname);
+        w.attribute("time", time);
+        w.endAttributes();
         pgs.toxml(w, includeConstants, compressTerrain);
         w.tag("actions");
-        for (Unit u : unitActions.keySet()) {
-            UnitActionAssignment uaa = unitActions.get(u);
-            w.tagWithAttributes("unitAction",
-                "ID=\"" + uaa.unit.getID() + "\" time=\"" + uaa.time + "\"");
+        for (UnitActionAssignment uaa : unitActions.values()) {
+            w.startTagWithAttributes("unitAction");
+            w.attribute("ID", uaa.unit.getID());
+            w.attribute("time", uaa.time);
+            w.endAttributes();
             uaa.action.toxml(w);
-            w.tag("/unitAction");
+            w.closeTag("unitAction");
         }
-        w.tag("/actions");
-        w.tag("/" + this.getClass().getName());
+        w.closeTag("actions");
+        w.closeTag(tagname);
     }
 
     /**
@@ -791,7 +1284,7 @@ public class GameState {
      */
     public void toxml(String path) {
     	try {
-			XMLWriter dumper = new XMLWriter(new FileWriter(path));
+			XMLWriter dumper = new XMLWriter(new BufferedWriter(new FileWriter(path)));
 			this.toxml(dumper);
 			dumper.close();
 		} catch (IOException e) {
@@ -817,23 +1310,26 @@ public class GameState {
      * @throws Exception
      */
     public void toJSON(Writer w, boolean includeConstants, boolean compressTerrain) throws Exception {
-        w.write("{");
-        w.write("\"time\":" + time + ",\"pgs\":");
+        w.write("{\"time\":");
+        w.write(String.valueOf(time));
+        w.write(",\"pgs\":");
         pgs.toJSON(w, includeConstants, compressTerrain);
         w.write(",\"actions\":[");
         boolean first = true;
-        for (Unit u : unitActions.keySet()) {
+        for (UnitActionAssignment uaa : unitActions.values()) {
             if (!first) {
-                w.write(",");
+                w.write(',');
             }
             first = false;
-            UnitActionAssignment uaa = unitActions.get(u);
-            w.write("{\"ID\":" + uaa.unit.getID() + ", \"time\":" + uaa.time + ", \"action\":");
+            w.write("{\"ID\":");
+            w.write(String.valueOf(uaa.unit.getID()));
+            w.write(", \"time\":");
+            w.write(String.valueOf(uaa.time));
+            w.write(", \"action\":");
             uaa.action.toJSON(w);
-            w.write("}");
+            w.write('}');
         }
-        w.write("]");
-        w.write("}");
+        w.write("]}");
     }
     
     /**
@@ -915,56 +1411,275 @@ public class GameState {
     }
 
     /**
-     * Constructs a vector observation for a player
+     * Constructs a vector observation for a player.
+     * 
+     * The observation is stored in the state, and only the cells that changed since
+     * the previous call (the ones with units moved, created, damaged, removed or
+     * whose actions changed through issue, cycle or removeUnit) are recomputed. If the
+     * state is modified in any other way (e.g., changing units directly, or through
+     * another state that shares its units, like the ones returned by 
+     * {@link #cloneIssue(PlayerAction)}), call {@link #invalidateVectorObservation()}
+     * afterwards.
      * @param player
-     * @return a vector observation for the specified player
+     * @return a vector observation for the specified player (the returned arrays are
+     * reused by the following calls)
      */
     public int [][][] getVectorObservation(final int player){
         if (vectorObservation == null) {
             vectorObservation = new int[2][NUM_VECTOR_OBSERVATION_FEATURE_MAPS][pgs.height][pgs.width]; 
         }
-        // hitpointsMatrix is vectorObservation[player][0]
-        // resourcesMatrix is vectorObservation[player][1]
-        // playersMatrix is vectorObservation[player][2]
-        // unitTypesMatrix is vectorObservation[player][3]
-        // unitActionMatrix is vectorObservation[player][4]
-        // wallMatrix is vectorObservation[player][5]
+        updateVectorObservation(player);
+        return vectorObservation[player];
+    }
+
 
-        for (int i=0; i<vectorObservation[player][0].length; i++) {
-            Arrays.fill(vectorObservation[player][0][i], 0);
-            Arrays.fill(vectorObservation[player][1][i], 0);
-            Arrays.fill(vectorObservation[player][2][i], 0);
-            Arrays.fill(vectorObservation[player][3][i], 0);
-            Arrays.fill(vectorObservation[player][4][i], 0);
-            Arrays.fill(vectorObservation[player][5][i], 0);
+    /**
+     * Brings the first six feature maps of the vector observation of a player
+     * (vectorObservation[player], which has to be already allocated) up to date
+     * @param player
+     * @return whether any cell changed
+     */
+    protected boolean updateVectorObservation(final int player) {
+        if (vectorObservationChanges == null) vectorObservationChanges = new ChangedCells[2];
+        ChangedCells changes = vectorObservationChanges[player];
+        if (changes == null) {
+            changes = vectorObservationChanges[player] = new ChangedCells(pgs.width * pgs.height);
         }
+        final int[][][] observation = vectorObservation[player];
+        boolean changed = true;
+
+        if (changes.all || changes.units != pgs.units.size()) {
+            // hitpointsMatrix is vectorObservation[player][0]
+            // resourcesMatrix is vectorObservation[player][1]
+            // playersMatrix is vectorObservation[player][2]
+            // unitTypesMatrix is vectorObservation[player][3]
+            // unitActionMatrix is vectorObservation[player][4]
+            // wallMatrix is vectorObservation[player][5]
+            for (int i=0; i<observation[0].length; i++) {
+                Arrays.fill(observation[0][i], 0);
+                Arrays.fill(observation[1][i], 0);
+                Arrays.fill(observation[2][i], 0);
+                Arrays.fill(observation[3][i], 0);
+                Arrays.fill(observation[4][i], 0);
+                Arrays.fill(observation[5][i], 0);
+            }
 
+            for (final Unit u : pgs.units) {
+                setVectorObservationCell(observation, player, u.getX(), u.getY(), u);
+            }
+
+            // Encode the presence of walls
+            final int[] terrain = pgs.terrain;
+            for (int y = 0; y < pgs.height; ++y) {
+                System.arraycopy(terrain, y * pgs.width, observation[5][y], 0, pgs.width);
+            }
+        } else {
+            for (int i = 0; i < changes.size; i++) {
+                int x = changes.cells[i] % pgs.width;
+                int y = changes.cells[i] / pgs.width;
+                setVectorObservationCell(observation, player, x, y, pgs.getUnitAt(x, y));
+            }
+            changed = changes.size > 0;
+        }
+        changes.clear(pgs.units.size());
+        return changed;
+    }
+
+
+    /**
+     * Sets the first five feature maps of a cell of a vector observation
+     * @param observation
+     * @param player
+     * @param x
+     * @param y
+     * @param u the unit in the cell (or null if it is empty)
+     */
+    private void setVectorObservationCell(int[][][] observation, int player, int x, int y, Unit u) {
+        if (u == null) {
+            for (int f = 0; f < 5; f++) observation[f][y][x] = 0;
+            return;
+        }
+        UnitActionAssignment uaa = unitActions.get(u);
+        observation[0][y][x] = u.getHitPoints();
+        observation[1][y][x] = u.getResources();
+        // Owned by a player, or neutral:
+        observation[2][y][x] = u.getPlayer() >= 0 ? ((u.getPlayer() + player) % 2) + 1 : 0;
+        observation[3][y][x] = u.getType().ID + 1;
+        observation[4][y][x] = uaa != null ? uaa.action.type : 0;
+    }
+
+
+    /**
+     * Marks the cell of a unit as changed for the vector observations
+     * @param u
+     */
+    private void cellChanged(Unit u) {
+        int cell = u.getX() + u.getY() * pgs.width;
+        if (cell < 0 || cell >= pgs.width * pgs.height) return;
+        for (ChangedCells changes : vectorObservationChanges) {
+            if (changes != null) changes.add(cell);
+        }
+    }
+
+
+    /**
+     * Forces the vector observations to be completely recomputed the next time
+     * they are requested. Needed only after modifying the state other than
+     * through issue, cycle or removeUnit
+     */
+    public void invalidateVectorObservation() {
+        if (vectorObservationChanges == null) return;
+        for (ChangedCells changes : vectorObservationChanges) {
+            if (changes != null) changes.invalidate();
+        }
+    }
+
+
+    /**
+     * Fills the action masks of all the cells of the map for a player, in the
+     * layout used by the Gridnet clients (see tests.JNIGridnetClient#getMasks):
+     * for cell (x,y), starting at offset + (y*width + x)*(1 + size of the mask of a
+     * unit), a 1 if the player has a unit without an action assigned there, followed
+     * by the mask of that unit (see {@link #getValidActionMask(Unit, int[], int, int)}).
+     * The masks of the cells without such units are all zeros.
+     * @param player
+     * @param masks
+     * @param offset
+     * @param maxAttackRange the side of the square of attack positions (2 * the
+     * maximum attack range + 1)
+     */
+    public void getValidActionMasks(int player, int[] masks, int offset, int maxAttackRange) {
+        final int cellSize = 1 + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 4 + utt.getUnitTypes().size()
+                           + maxAttackRange * maxAttackRange;
+        Arrays.fill(masks, offset, offset + pgs.width * pgs.height * cellSize, 0);
+        for (Unit u : pgs.units) {
+            if (u.getPlayer() == player && unitActions.get(u) == null) {
+                int cell = offset + (u.getY() * pgs.width + u.getX()) * cellSize;
+                masks[cell] = 1;
+                getValidActionMask(u, masks, cell + 1, maxAttackRange);
+            }
+        }
+    }
+
+
+    /**
+     * Sets to 1 the elements of a mask corresponding to the actions that a unit can
+     * execute (the ones returned by {@link Unit#getUnitActions(GameState)}), in the 
+     * layout read by {@link PlayerAction#fromVectorAction}: starting at "offset",
+     * the 6 action types, the 4 move directions, the 4 harvest directions, the 4 
+     * return directions, the 4 produce directions, the unit types to produce, and 
+     * maxAttackRange x maxAttackRange attack positions centered in the unit.
+     * 
+     * It looks up the neighbors of the unit in the occupancy index of the map, and
+     * does not create any UnitAction. The rest of the mask is not cleared.
+     * @param u
+     * @param mask
+     * @param offset
+     * @param maxAttackRange the side of the square of attack positions (2 * the
+     * maximum attack range + 1)
+     */
+    public void getValidActionMask(Unit u, int[] mask, int offset, int maxAttackRange) {
+        final UnitType type = u.getType();
+        final int x = u.getX();
+        final int y = u.getY();
+        final int player = u.getPlayer();
+        // offsets of the directions of the move, harvest, return and produce actions:
+        final int directions = offset + UnitAction.NUMBER_OF_ACTION_TYPES;
+        final int unitTypes = directions + 4 * 4;
+        final int attacks = unitTypes + utt.getUnitTypes().size();
+
+        // units can always stay idle:
+        mask[offset + UnitAction.TYPE_NONE] = 1;
+
+        if (type.canAttack) {
+            final int range = Math.min(type.attackRange, maxAttackRange / 2);
+            final int center = maxAttackRange / 2;
+            for (int dy = -range; dy <= range; dy++) {
+                for (int dx = -range; dx <= range; dx++) {
+                    if (dx * dx + dy * dy > type.attackRange * type.attackRange) continue;
+                    Unit other = pgs.getUnitAt(x + dx, y + dy);
+                    if (other != null && other.getPlayer() >= 0 && other.getPlayer() != player) {
+                        mask[offset + UnitAction.TYPE_ATTACK_LOCATION] = 1;
+                        mask[attacks + (center + dy) * maxAttackRange + center + dx] = 1;
+                    }
+                }
+            }
+        }
+
+        final int resources = (player >= 0 ? pgs.getPlayer(player).getResources() : 0);
+        for (int d = 0; d < 4; d++) {
+            final int x2 = x + UnitAction.DIRECTION_OFFSET_X[d];
+            final int y2 = y + UnitAction.DIRECTION_OFFSET_Y[d];
+            if (x2 < 0 || x2 >= pgs.width || y2 < 0 || y2 >= pgs.height) continue;
+            Unit other = pgs.getUnitAt(x2, y2);
+            if (other == null) {
+                if (pgs.terrain[x2 + y2 * pgs.width] != PhysicalGameState.TERRAIN_NONE) continue;
+                if (type.canMove) {
+                    mask[offset + UnitAction.TYPE_MOVE] = 1;
+                    mask[directions + d] = 1;
+                }
+                for (int i = 0; i < type.produces.size(); i++) {
+                    UnitType ut = type.produces.get(i);
+                    if (resources >= ut.cost) {
+                        mask[offset + UnitAction.TYPE_PRODUCE] = 1;
+                        mask[directions + 4 * 3 + d] = 1;
+                        mask[unitTypes + ut.ID] = 1;
+                    }
+                }
+            } else if (type.canHarvest) {
+                if (u.getResources() == 0) {
+                    if (other.getType().isResource) {
+                        mask[offset + UnitAction.TYPE_HARVEST] = 1;
+                        mask[directions + 4 + d] = 1;
+                    }
+                } else if (other.getType().isStockpile && other.getPlayer() == player) {
+                    mask[offset + UnitAction.TYPE_RETURN] = 1;
+                    mask[directions + 4 * 2 + d] = 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of feature maps of the vector observations
+     * @return
+     */
+    public int getNumVectorObservationFeatureMaps() {
+        return NUM_VECTOR_OBSERVATION_FEATURE_MAPS;
+    }
+
+    /**
+     * Writes the vector observation for a player (see
+     * {@link #getVectorObservation(int)}) into a flat buffer, without allocating
+     * any array: feature map f of cell (x,y) is written at
+     * offset + (f*height + y)*width + x
+     *
+     * @param player
+     * @param buffer
+     * @param offset the index of the first element to write
+     */
+    public void getVectorObservation(final int player, IntBuffer buffer, int offset) {
+        final int size = pgs.width * pgs.height;
+        for (int i = offset; i < offset + 5 * size; i++) {
+            buffer.put(i, 0);
+        }
         for (final Unit u : pgs.units) {
+            final int cell = offset + u.getY() * pgs.width + u.getX();
+            buffer.put(cell, u.getHitPoints());
+            buffer.put(cell + size, u.getResources());
+            if (u.getPlayer() >= 0) {
+                buffer.put(cell + 2 * size, ((u.getPlayer() + player) % 2) + 1);
+            }
+            buffer.put(cell + 3 * size, u.getType().ID + 1);
             UnitActionAssignment uaa = unitActions.get(u);
-            vectorObservation[player][0][u.getY()][u.getX()] = u.getHitPoints();
-            vectorObservation[player][1][u.getY()][u.getX()] = u.getResources();
-            
-            final int owner = u.getPlayer();
-            if (owner >= 0)		// Owned by a player, not neutral
-            	vectorObservation[player][2][u.getY()][u.getX()] = ((u.getPlayer() + player) % 2) + 1;
-            
-            vectorObservation[player][3][u.getY()][u.getX()] = u.getType().ID + 1;
-            
             if (uaa != null) {
-                vectorObservation[player][4][u.getY()][u.getX()] = uaa.action.type;
-            } else {
-                // Commented line of code is unnecessary: already initialised to 0
-            	//vectorObservation[player][4][u.getY()][u.getX()] = UnitAction.TYPE_NONE;
+                buffer.put(cell + 4 * size, uaa.action.type);
             }
         }
-        
-        // Encode the presence of walls
         final int[] terrain = pgs.terrain;
-        for (int y = 0; y < pgs.height; ++y) {
-        	System.arraycopy(terrain, y * pgs.width, vectorObservation[player][5][y], 0, pgs.width);
+        for (int i = 0; i < size; i++) {
+            buffer.put(offset + 5 * size + i, terrain[i]);
         }
-
-        return vectorObservation[player];
     }
 
 }
@@ -1,5 +1,6 @@
 package rts;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -83,98 +84,90 @@ public class PartiallyObservableGameState extends GameState {
         if (vectorObservation == null) {
             vectorObservation = new int[2][NUM_VECTOR_OBSERVATION_FEATURE_MAPS_PARTIAL_OBS][pgs.height][pgs.width]; 
         }
-        
-        List<int[]> friendlyUnits = new ArrayList<>();
-        List<int[]> enemyUnits = new ArrayList<>();
-        
-        // hitpointsMatrix is vectorObservation[player][0]
-        // resourcesMatrix is vectorObservation[player][1]
-        // playersMatrix is vectorObservation[player][2]
-        // unitTypesMatrix is vectorObservation[player][3]
-        // unitActionMatrix is vectorObservation[player][4]
-        // wallMatrix is vectorObservation[player][5]
-		// myVisibilityMatrix is vectorObservation[player][6]
-        // opponentVisibilityMatrix is vectorObservation[player][7]
+        final int[][][] observation = vectorObservation[player];
 
-        for (int i=0; i<vectorObservation[player][0].length; i++) {
-            Arrays.fill(vectorObservation[player][0][i], 0);
-            Arrays.fill(vectorObservation[player][1][i], 0);
-            Arrays.fill(vectorObservation[player][2][i], 0);
-            Arrays.fill(vectorObservation[player][3][i], 0);
-            Arrays.fill(vectorObservation[player][4][i], 0);
-            Arrays.fill(vectorObservation[player][5][i], 0);
-			Arrays.fill(vectorObservation[player][6][i], 0);
-            Arrays.fill(vectorObservation[player][7][i], 0);
-        }
+        // The units are shared with the state this one was created from, which changes
+        // them without this one knowing, so the observation cannot be updated incrementally:
+        invalidateVectorObservation();
+        updateVectorObservation(player);
 
-        for (int i = 0; i < pgs.units.size(); i++) {
-            Unit u = pgs.units.get(i);
-            UnitActionAssignment uaa = unitActions.get(u);
-            
-            vectorObservation[player][0][u.getY()][u.getX()] = u.getHitPoints();
-            vectorObservation[player][1][u.getY()][u.getX()] = u.getResources();
-            
-            final int owner = u.getPlayer();
-            if (owner >= 0) {		// Owned by a player, not neutral
-            	vectorObservation[player][2][u.getY()][u.getX()] = ((u.getPlayer() + player) % 2) + 1;
-            
-	            // Split units based on owner (used for last two layers of the observation)
-	            if (owner == player)
-	                friendlyUnits.add(new int[]{u.getX(), u.getY(), u.getType().sightRadius});
-	            else
-	                enemyUnits.add(new int[]{u.getX(), u.getY(), u.getType().sightRadius});
+        // Encode visibility
+        // myVisibilityMatrix is vectorObservation[player][6]
+        // opponentVisibilityMatrix is vectorObservation[player][7]
+        for (int y = 0; y < pgs.height; y++) {
+            Arrays.fill(observation[6][y], 0);
+            Arrays.fill(observation[7][y], 0);
+        }
+        for (final Unit u : pgs.units) {
+            if (u.getPlayer() >= 0) {
+                markVisible(observation[u.getPlayer() == player ? 6 : 7], u.getX(), u.getY(), u.getType().sightRadius);
             }
-            
-            vectorObservation[player][3][u.getY()][u.getX()] = u.getType().ID + 1;
-            
-            if (uaa != null) {
-                vectorObservation[player][4][u.getY()][u.getX()] = uaa.action.type;
-            } else {
-                // Commented line of code is unnecessary: already initialised to 0
-            	//vectorObservation[player][4][u.getY()][u.getX()] = UnitAction.TYPE_NONE;
-            } 
         }
-        
-        // Encode the presence of walls
-        final int[] terrain = pgs.terrain;
-        for (int y = 0; y < pgs.height; ++y) {
-        	System.arraycopy(terrain, y * pgs.width, vectorObservation[player][5][y], 0, pgs.width);
+
+        return observation;
+    }
+
+    @Override
+    public int getNumVectorObservationFeatureMaps() {
+        return NUM_VECTOR_OBSERVATION_FEATURE_MAPS_PARTIAL_OBS;
+    }
+
+    @Override
+    public void getVectorObservation(final int player, IntBuffer buffer, int offset) {
+        super.getVectorObservation(player, buffer, offset);
+
+        List<int[]> friendlyUnits = new ArrayList<>();
+        List<int[]> enemyUnits = new ArrayList<>();
+        for (final Unit u : pgs.units) {
+            if (u.getPlayer() == player) {
+                friendlyUnits.add(new int[]{u.getX(), u.getY(), u.getType().sightRadius});
+            } else if (u.getPlayer() >= 0) {
+                enemyUnits.add(new int[]{u.getX(), u.getY(), u.getType().sightRadius});
+            }
         }
-        
-        // Encode visibility
         final int[][] playerVisibility = calculateVisibility(friendlyUnits, pgs.width, pgs.height);
         final int[][] opponentVisibility = calculateVisibility(enemyUnits, pgs.width, pgs.height);
-
+        final int size = pgs.width * pgs.height;
         for (int y = 0; y < pgs.height; y++) {
-            System.arraycopy(playerVisibility[y], 0, vectorObservation[player][6][y], 0, pgs.width);
-            System.arraycopy(opponentVisibility[y], 0, vectorObservation[player][7][y], 0, pgs.width);
+            for (int x = 0; x < pgs.width; x++) {
+                buffer.put(offset + 6 * size + y * pgs.width + x, playerVisibility[y][x]);
+                buffer.put(offset + 7 * size + y * pgs.width + x, opponentVisibility[y][x]);
+            }
         }
-
-        return vectorObservation[player];
     }
-    
+
     private static int[][] calculateVisibility(final List<int[]> units, final int width, final int height) {
         final int[][] visibility = new int[height][width];
         for (final int[] unit : units) {
-            final int ux = unit[0];
-            final int uy = unit[1];
-            final int sightRadius = unit[2];
-            final int sightRadiusSquared = sightRadius * sightRadius;
-    
-            for (int dy = -sightRadius; dy <= sightRadius; dy++) {
-                for (int dx = -sightRadius; dx <= sightRadius; dx++) {
-                    final int x = ux + dx;
-                    final int y = uy + dy;
-                    
-                    if (x >= 0 && x < width && y >= 0 && y < height) {
-                        final int distanceSquared = dx * dx + dy * dy;
-                        if (distanceSquared <= sightRadiusSquared) {
-                            visibility[y][x] = 1;
-                        }
+            markVisible(visibility, unit[0], unit[1], unit[2]);
+        }
+        return visibility;
+    }
+
+    /**
+     * Marks the cells within the sight radius of a unit
+     * @param visibility [Y][X]
+     * @param ux
+     * @param uy
+     * @param sightRadius
+     */
+    private static void markVisible(final int[][] visibility, final int ux, final int uy, final int sightRadius) {
+        final int height = visibility.length;
+        final int width = visibility[0].length;
+        final int sightRadiusSquared = sightRadius * sightRadius;
+
+        for (int dy = -sightRadius; dy <= sightRadius; dy++) {
+            for (int dx = -sightRadius; dx <= sightRadius; dx++) {
+                final int x = ux + dx;
+                final int y = uy + dy;
+                
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    final int distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared <= sightRadiusSquared) {
+                        visibility[y][x] = 1;
                     }
                 }
             }
         }
-        return visibility;
     }
 }
@@ -7,8 +7,11 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -42,8 +45,42 @@ public class PhysicalGameState {
     int width = 8;
     int height = 8;
     int terrain[];
+
+    /**
+     * Number of times the terrain has been changed with setTerrain. The
+     * terrain array can be modified in place, so the caches that depend on
+     * the terrain (e.g., in the pathfinding) compare this besides the array.
+     * Clones that share the terrain start with the same version
+     */
+    int terrainVersion = 0;
+
     List<Player> players = new ArrayList<>();
-    List<Unit> units = new LinkedList<>();
+    List<Unit> units = new ArrayList<>();
+
+    /**
+     * Occupancy index of the map, from positions (x + y * width) to the index
+     * in {@link #units} of the unit in them. It is built lazily and then kept
+     * in sync by {@link #addUnit(Unit)}, {@link #removeUnit(Unit)} and
+     * {@link #moveUnit(Unit, int, int)}. A null value means it needs to be
+     * rebuilt. Clones share it with the original state until one of them
+     * modifies it
+     */
+    PositionMap unitPositions = null;
+
+    /**
+     * Number of units the occupancy index was built/updated for. If it differs
+     * from the size of {@link #units}, the units list was modified directly and
+     * the index is rebuilt
+     */
+    int unitPositionsCount = 0;
+
+    /**
+     * The terrains as written in XML and JSON (plain and compressed), computed
+     * the first time each terrain is written. Terrains are shared by all the
+     * clones of a map, so this is done once per map (arrays are compared by
+     * identity, so the keys are the terrain arrays themselves)
+     */
+    static final Map<int[], String[]> terrainTexts = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * Constructs the game state map from a XML
@@ -116,6 +153,7 @@ public class PhysicalGameState {
      */
     public void setWidth(int w) {
         width = w;
+        unitPositions = null;
     }
 
     /**
@@ -126,6 +164,7 @@ public class PhysicalGameState {
      */
     public void setHeight(int h) {
         height = h;
+        unitPositions = null;
     }
 
     /**
@@ -139,6 +178,16 @@ public class PhysicalGameState {
         return terrain[x + y * width];
     }
 
+    /**
+     * Returns the whole terrain (indexed by x + y * width). The array is
+     * shared by all the clones of this state, so it should not be modified
+     *
+     * @return
+     */
+    public int[] getTerrain() {
+        return terrain;
+    }
+
     /**
      * Puts an entity in a given position of the terrain
      *
@@ -148,6 +197,8 @@ public class PhysicalGameState {
      */
     public void setTerrain(int x, int y, int v) {
         terrain[x + y * width] = v;
+        terrainVersion++;
+        terrainTexts.remove(terrain);
     }
 
     /**
@@ -157,6 +208,17 @@ public class PhysicalGameState {
      */
     public void setTerrain(int t[]) {
         terrain = t;
+        terrainVersion++;
+        unitPositions = null;
+    }
+
+    /**
+     * Returns the number of times the terrain has been changed with setTerrain
+     *
+     * @return
+     */
+    public int getTerrainVersion() {
+        return terrainVersion;
     }
 
     /**
@@ -179,17 +241,21 @@ public class PhysicalGameState {
      * occupied
      */
     public void addUnit(Unit newUnit) throws IllegalArgumentException {
-        for (Unit existingUnit : units) {
-            if (newUnit.getX() == existingUnit.getX() && newUnit.getY() == existingUnit.getY()) {
-                throw new IllegalArgumentException(
-                        "PhysicalGameState.addUnit: added two units in position: (" + newUnit.getX() + ", " + newUnit.getY() + ")");
-            }
+        if (getUnitAt(newUnit.getX(), newUnit.getY()) != null) {
+            throw new IllegalArgumentException(
+                    "PhysicalGameState.addUnit: added two units in position: (" + newUnit.getX() + ", " + newUnit.getY() + ")");
         }
         assert newUnit.getX() >= 0;
         assert newUnit.getX() < this.getWidth();
         assert newUnit.getY() >= 0;
         assert newUnit.getY() < this.getHeight();
+        PositionMap index = getUnitPositions().writable();
+        if (isInside(newUnit.getX(), newUnit.getY())) {
+            index.putIfAbsent(newUnit.getX() + newUnit.getY() * width, units.size());
+        }
         units.add(newUnit);
+        unitPositions = index;
+        unitPositionsCount++;
     }
 
     /**
@@ -198,7 +264,119 @@ public class PhysicalGameState {
      * @param u
      */
     public void removeUnit(Unit u) {
-        units.remove(u);
+        int idx = indexOf(u);
+        if (idx == -1) {
+            return;
+        }
+        units.remove(idx);
+        if (unitPositions != null) {
+            PositionMap index = unitPositions.writable();
+            if (unitPositionsCount == units.size() + 1
+                    && index.remove(u.getX() + u.getY() * width, idx)) {
+                // the units after the removed one are now one position earlier in the list:
+                index.shiftValues(idx + 1, -1);
+                unitPositions = index;
+                unitPositionsCount--;
+            } else {
+                unitPositions = null;
+            }
+        }
+    }
+
+    /**
+     * Inserts a unit at a given index of the units list (used to undo its
+     * removal, see {@link GameState#undo(UndoLog)})
+     *
+     * @param idx
+     * @param u
+     */
+    void insertUnit(int idx, Unit u) {
+        units.add(idx, u);
+        if (unitPositions != null && unitPositionsCount == units.size() - 1 && isInside(u.getX(), u.getY())) {
+            PositionMap index = unitPositions.writable();
+            index.shiftValues(idx, 1);
+            if (index.putIfAbsent(u.getX() + u.getY() * width, idx)) {
+                unitPositions = index;
+                unitPositionsCount++;
+                return;
+            }
+        }
+        unitPositions = null;
+    }
+
+    /**
+     * Moves a unit of this map to a new position, keeping the occupancy index
+     * up to date. Units should be moved through this method rather than with
+     * {@link Unit#setX(int)}/{@link Unit#setY(int)} while they are in a map
+     *
+     * @param u
+     * @param x
+     * @param y
+     */
+    public void moveUnit(Unit u, int x, int y) {
+        if (unitPositions != null) {
+            int oldPos = u.getX() + u.getY() * width;
+            int idx = unitPositions.get(oldPos);
+            if (isInside(x, y) && idx >= 0 && idx < units.size() && units.get(idx) == u) {
+                PositionMap index = unitPositions.writable();
+                index.remove(oldPos, idx);
+                unitPositions = index.putIfAbsent(x + y * width, idx) ? index : null;
+            } else {
+                unitPositions = null;
+            }
+        }
+        u.setX(x);
+        u.setY(y);
+    }
+
+    /**
+     * Returns whether a coordinate is inside the map boundaries
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * Returns the occupancy index, rebuilding it from the units list if it is
+     * missing or out of sync. When two units share a position, the first one
+     * in the units list is kept (the one a linear search would find). The
+     * returned map may be shared with other states, and must not be modified
+     *
+     * @return
+     */
+    PositionMap getUnitPositions() {
+        if (unitPositions == null || unitPositionsCount != units.size()) {
+            unitPositions = new PositionMap(units.size() + 8);
+            for (int i = 0; i < units.size(); i++) {
+                Unit u = units.get(i);
+                if (isInside(u.getX(), u.getY())) {
+                    unitPositions.putIfAbsent(u.getX() + u.getY() * width, i);
+                }
+            }
+            unitPositionsCount = units.size();
+        }
+        return unitPositions;
+    }
+
+    /**
+     * Returns the index of a unit in the units list (or -1 if it is not in
+     * this map), looking it up in the occupancy index first
+     *
+     * @param u
+     * @return
+     */
+    int indexOf(Unit u) {
+        if (isInside(u.getX(), u.getY())) {
+            int idx = getUnitPositions().get(u.getX() + u.getY() * width);
+            if (idx >= 0 && idx < units.size() && units.get(idx) == u) {
+                return idx;
+            }
+        }
+        return units.indexOf(u);
     }
 
     /**
@@ -253,12 +431,22 @@ public class PhysicalGameState {
      * @return
      */
     public Unit getUnitAt(int x, int y) {
-        for (Unit u : units) {
-            if (u.getX() == x && u.getY() == y) {
-                return u;
-            }
+        if (!isInside(x, y)) {
+            return null;
         }
-        return null;
+        int pos = x + y * width;
+        int idx = getUnitPositions().get(pos);
+        if (idx == PositionMap.EMPTY) {
+            return null;
+        }
+        Unit u = (idx < units.size() ? units.get(idx) : null);
+        if (u == null || u.getX() != x || u.getY() != y) {
+            // the units were moved/reordered without going through this class:
+            unitPositions = null;
+            idx = getUnitPositions().get(pos);
+            u = (idx == PositionMap.EMPTY ? null : units.get(idx));
+        }
+        return u;
     }
 
     /**
@@ -284,6 +472,18 @@ public class PhysicalGameState {
      */
     public Collection<Unit> getUnitsAround(int x, int y, int width, int height) {
         List<Unit> closeUnits = new LinkedList<>();
+        if ((2L * width + 1) * (2L * height + 1) < units.size()) {
+            // small area: look up the occupancy index (units are returned in row order)
+            for (int j = Math.max(0, y - height); j <= Math.min(this.height - 1, y + height); j++) {
+                for (int i = Math.max(0, x - width); i <= Math.min(this.width - 1, x + width); i++) {
+                    Unit u = getUnitAt(i, j);
+                    if (u != null) {
+                        closeUnits.add(u);
+                    }
+                }
+            }
+            return closeUnits;
+        }
         for (Unit u : units) {
             if ((Math.abs(u.getX() - x) <= width && Math.abs(u.getY() - y) <= height)) {
                 closeUnits.add(u);
@@ -306,6 +506,18 @@ public class PhysicalGameState {
     	if(width < 1 || height < 1) throw new IllegalArgumentException("Width and height must be >=1");
     	
         List<Unit> unitsInside = new LinkedList<Unit>();
+        if ((long) width * height < units.size()) {
+            // small area: look up the occupancy index (units are returned in row order)
+            for (int j = Math.max(0, y); j < Math.min(this.height, y + height); j++) {
+                for (int i = Math.max(0, x); i < Math.min(this.width, x + width); i++) {
+                    Unit u = getUnitAt(i, j);
+                    if (u != null) {
+                        unitsInside.add(u);
+                    }
+                }
+            }
+            return unitsInside;
+        }
         for (Unit u : units) {
         	//tests for x <= unitX < x+width && y <= unitY < y+height 
         	if(x <= u.getX() && u.getX() < x + width && y <= u.getY() && u.getY() < y+height) {
@@ -378,17 +590,26 @@ public class PhysicalGameState {
         return winner != -1;
     }
 
-    /* (non-Javadoc)
-     * @see java.lang.Object#clone()
+    /**
+     * Clones the physical game state. Players and units are deep-copied (units
+     * are mutable, and are identified by the objects themselves), while the
+     * terrain and, until one of the two states modifies it, the occupancy
+     * index are shared with the clone
+     *
+     * @return
      */
     public PhysicalGameState clone() {
         PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);  // The terrain is shared amongst all instances, since it never changes
+        pgs.terrainVersion = terrainVersion;
         for (Player p : players) {
             pgs.players.add(p.clone());
         }
         for (Unit u : units) {
             pgs.units.add(u.clone());
         }
+        // the units of the clone are in the same order, so it can share the occupancy index:
+        pgs.unitPositions = getUnitPositions().share();
+        pgs.unitPositionsCount = unitPositionsCount;
         return pgs;
     }
 
@@ -400,6 +621,7 @@ public class PhysicalGameState {
      */
     public PhysicalGameState cloneKeepingUnits() {
         PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);  // The terrain is shared amongst all instances, since it never changes
+        pgs.terrainVersion = terrainVersion;
         pgs.players.addAll(players);
         pgs.units.addAll(units);
         return pgs;
@@ -414,6 +636,7 @@ public class PhysicalGameState {
         int new_terrain[] = new int[terrain.length];
         System.arraycopy(terrain, 0, new_terrain, 0, terrain.length);
         PhysicalGameState pgs = new PhysicalGameState(width, height, new_terrain);
+        pgs.terrainVersion = terrainVersion;
         for (Player p : players) {
             pgs.players.add(p.clone());
         }
@@ -536,10 +759,18 @@ public class PhysicalGameState {
      * @return compressed String representation of the terrain vector
      */
     private String compressTerrain() {
+        String texts[] = getTerrainTexts();
+        if (texts[1] == null) {
+            texts[1] = compressTerrain(terrain, height * width);
+        }
+        return texts[1];
+    }
+
+    private static String compressTerrain(int terrain[], int size) {
         StringBuilder strTerrain = new StringBuilder();
 
         int occurrences = 1;
-        for (int i = 1; i < height * width; i++) {
+        for (int i = 1; i < size; i++) {
             if (terrain[i] == terrain[i - 1]) {
                 occurrences++;
             } else {
@@ -553,13 +784,38 @@ public class PhysicalGameState {
             }
         }
 
-        if (occurrences > 1) {
-            strTerrain.append(terrain[terrain.length - 1] == 0 ? 'A' : 'B').append(occurrences);
+        if (size > 0) {
+            strTerrain.append(terrain[size - 1] == 0 ? 'A' : 'B');
+            if (occurrences > 1) {
+                strTerrain.append(occurrences);
+            }
         }
 
         return strTerrain.toString();
     }
 
+    /**
+     * Returns the terrain as a string of digits (one per cell)
+     */
+    private String plainTerrain() {
+        String texts[] = getTerrainTexts();
+        if (texts[0] == null) {
+            char tmp[] = new char[height * width];
+            for (int i = 0; i < tmp.length; i++) {
+                tmp[i] = (char)('0' + terrain[i]);
+            }
+            texts[0] = new String(tmp);
+        }
+        return texts[0];
+    }
+
+    /**
+     * Returns the texts of the terrain: plain and compressed (null until computed)
+     */
+    private String[] getTerrainTexts() {
+        return terrainTexts.computeIfAbsent(terrain, t -> new String[2]);
+    }
+
     /**
      * Create an uncompressed int array from a compressed String representation of
      * the terrain.
@@ -611,30 +867,24 @@ public class PhysicalGameState {
         if (!includeConstants) {
             w.tag(this.getClass().getName());
         } else {
-            w.tagWithAttributes(this.getClass().getName(),
-                "width=\"" + width + "\" height=\"" + height + "\"");
-            if (compressTerrain) {
-                w.tag("terrain", compressTerrain());
-            } else {
-                StringBuilder tmp = new StringBuilder(height * width);
-                for (int i = 0; i < height * width; i++) {
-                    tmp.append(terrain[i]);
-                }
-                w.tag("terrain", tmp.toString());
-            }
+            w.startTagWithAttributes(this.getClass().getName());
+            w.attribute("width", width);
+            w.attribute("height", height);
+            w.endAttributes();
+            w.tag("terrain", compressTerrain ? compressTerrain() : plainTerrain());
         }
 
         w.tag("players");
         for (Player p : players) {
             p.toxml(w);
         }
-        w.tag("/players");
+        w.closeTag("players");
         w.tag("units");
         for (Unit u : units) {
             u.toxml(w);
         }
-        w.tag("/units");
-        w.tag("/" + this.getClass().getName());
+        w.closeTag("units");
+        w.closeTag(this.getClass().getName());
     }
 
     /**
@@ -648,18 +898,15 @@ public class PhysicalGameState {
     }
 
     public void toJSON(Writer w, boolean includeConstants, boolean compressTerrain) throws Exception {
-        w.write("{");
+        w.write('{');
 
         if (includeConstants) {
-            w.write("\"width\":" + width + ",\"height\":" + height+",");
-            if (compressTerrain) {
-                w.write("\"terrain\":\"" + compressTerrain());
-            } else {
-                w.write("\"terrain\":\"");
-                for (int i = 0; i < height * width; i++) {
-                    w.write("" + terrain[i]);
-                }
-            }
+            w.write("\"width\":");
+            w.write(String.valueOf(width));
+            w.write(",\"height\":");
+            w.write(String.valueOf(height));
+            w.write(",\"terrain\":\"");
+            w.write(compressTerrain ? compressTerrain() : plainTerrain());
             w.write("\",");
         }
 
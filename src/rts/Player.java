@@ -74,8 +74,12 @@ public class Player {
      * @param w
      */
     public void toxml(XMLWriter w) {
-       w.tagWithAttributes(this.getClass().getName(), "ID=\"" + ID + "\" resources=\"" + resources  + "\"");
-       w.tag("/" + this.getClass().getName());
+       String tagname = this.getClass().getName();
+       w.startTagWithAttributes(tagname);
+       w.attribute("ID", ID);
+       w.attribute("resources", resources);
+       w.endAttributes();
+       w.closeTag(tagname);
     }
     
     /**
@@ -84,7 +88,11 @@ public class Player {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        w.write("{\"ID\":"+ID+", \"resources\":"+resources+"}");
+        w.write("{\"ID\":");
+        w.write(String.valueOf(ID));
+        w.write(", \"resources\":");
+        w.write(String.valueOf(resources));
+        w.write('}');
     }
     
     /**
@@ -1,6 +1,11 @@
 package rts;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Writer;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -18,13 +23,48 @@ import util.XMLWriter;
 
 /**
  * Stores a collection of pairs({@link Unit}, {@link UnitAction})
+ * 
+ * The pairs are kept in two arrays (units and their actions, in the order they were 
+ * added) instead of a list of Pair objects. For PlayerActions with more than 
+ * INDEX_THRESHOLD units, an open-addressing hash table from unit IDs to positions in 
+ * these arrays is built the first time a unit is looked up, so that 
+ * {@link #getAction(Unit)}, {@link #equals(Object)} or {@link #fillWithNones(GameState, int, int)}
+ * do not need to go through all the units. {@link #getUnit(int)} and
+ * {@link #getUnitAction(int)} access the arrays directly, while {@link #getActions()}
+ * returns a list view of them (which creates the Pair objects as they are accessed).
+ *
+ * Actions are stored as references, not as their int codes in {@link UnitActionTable}:
+ * most actions are the ones interned by the table (e.g., those returned by 
+ * {@link Unit#getUnitActions(GameState)}), so a reference (with the default compressed 
+ * references) takes as much memory as a code, while decoding would need the 
+ * UnitTypeTable of the units (for produce actions), a hash lookup for attack actions, 
+ * and a new UnitAction for long "none" actions, each time an action is accessed.
  * @author santi
  */
 public class PlayerAction {
     /**
-     * A list of unit actions
+     * PlayerActions with at most this number of units are searched linearly
      */
-    List<Pair<Unit,UnitAction>> actions = new LinkedList<>();
+    public static final int INDEX_THRESHOLD = 8;
+    
+    static final Unit NO_UNITS[] = new Unit[0];
+    static final UnitAction NO_ACTIONS[] = new UnitAction[0];
+    
+    /**
+     * The units and their actions
+     */
+    Unit units[] = NO_UNITS;
+    UnitAction unitActions[] = NO_ACTIONS;
+    int size = 0;
+    
+    /**
+     * Hash table from unit IDs to their (first) position in "units": indexSlots[i] 
+     * is that position + 1, or 0 for empty entries. It is null until needed, and 
+     * discarded when units are removed or replaced
+     */
+    long indexIDs[] = null;
+    int indexSlots[] = null;
+    boolean duplicateIDs = false;   // whether some unit ID was found twice when indexing
     
     /**
      * Represents the resources used by the player action
@@ -47,10 +87,20 @@ public class PlayerAction {
         if (!(o instanceof PlayerAction)) return false;
         PlayerAction a = (PlayerAction)o;
 
-        for(Pair<Unit,UnitAction> p:actions) {
-            for(Pair<Unit,UnitAction> p2:a.actions) {
-                if (p.m_a.getID()==p2.m_a.getID() &&
-                    !p.m_b.equals(p2.m_b)) return false;
+        if (size > INDEX_THRESHOLD && indexIDs == null) buildIndex();
+        if (a.size > INDEX_THRESHOLD && a.indexIDs == null) a.buildIndex();
+        if ((size <= INDEX_THRESHOLD && a.size <= INDEX_THRESHOLD) ||
+            (indexIDs != null && duplicateIDs) || (a.indexIDs != null && a.duplicateIDs)) {
+            for(int i = 0;i<size;i++) {
+                for(int j = 0;j<a.size;j++) {
+                    if (units[i].getID()==a.units[j].getID() &&
+                        !unitActions[i].equals(a.unitActions[j])) return false;
+                }
+            }
+        } else {
+            for(int i = 0;i<size;i++) {
+                int j = a.indexOfID(units[i].getID());
+                if (j>=0 && !unitActions[i].equals(a.unitActions[j])) return false;
             }
         }
         return true;
@@ -62,7 +112,33 @@ public class PlayerAction {
      * @return
      */
     public boolean isEmpty() {
-        return actions.isEmpty();
+        return size == 0;
+    }
+    
+    /**
+     * Returns the number of units with an action
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the i-th unit (in the order they were added)
+     * @param i
+     * @return
+     */
+    public Unit getUnit(int i) {
+        return units[i];
+    }
+    
+    /**
+     * Returns the action of the i-th unit (in the order they were added)
+     * @param i
+     * @return
+     */
+    public UnitAction getUnitAction(int i) {
+        return unitActions[i];
     }
 
     /**
@@ -71,8 +147,8 @@ public class PlayerAction {
      * @return
      */
     public boolean hasNonNoneActions() {
-		for (Pair<Unit, UnitAction> ua : actions) {
-			if (ua.m_b.type != UnitAction.TYPE_NONE)
+		for (int i = 0; i < size; i++) {
+			if (unitActions[i].type != UnitAction.TYPE_NONE)
 				return true;
 		}
 		return false;
@@ -85,8 +161,8 @@ public class PlayerAction {
      */
     public int hasNamNoneActions() {
 		int j = 0;
-		for (Pair<Unit, UnitAction> ua : actions) {
-			if (ua.m_b.type != UnitAction.TYPE_NONE)
+		for (int i = 0; i < size; i++) {
+			if (unitActions[i].type != UnitAction.TYPE_NONE)
 				j++;
 		}
 		return j;
@@ -115,7 +191,22 @@ public class PlayerAction {
      * @param a
      */
     public void addUnitAction(Unit u, UnitAction a) {
-        actions.add(new Pair<>(u, a));
+        if (size == units.length) {
+            int capacity = Math.max(4, size * 2);
+            units = Arrays.copyOf(units, capacity);
+            unitActions = Arrays.copyOf(unitActions, capacity);
+        }
+        units[size] = u;
+        unitActions[size] = a;
+        size++;
+        if (indexIDs != null) {
+            if (size * 2 > indexIDs.length) {
+                indexIDs = null;
+                indexSlots = null;
+            } else {
+                addToIndex(size - 1);
+            }
+        }
     }
     
     /**
@@ -124,15 +215,41 @@ public class PlayerAction {
      * @param a
      */
     public void removeUnitAction(Unit u, UnitAction a) {
-		Pair<Unit, UnitAction> found = null;
-		for (Pair<Unit, UnitAction> tmp : actions) {
-			if (tmp.m_a == u && tmp.m_b == a) {
-				found = tmp;
-				break;
+		for (int i = 0; i < size; i++) {
+			if (units[i] == u && unitActions[i] == a) {
+				remove(i);
+				return;
 			}
 		}
-		if (found != null)
-			actions.remove(found);
+    }
+    
+    /**
+     * Removes the i-th pair of Unit and UnitAction
+     * @param i
+     */
+    public void remove(int i) {
+        System.arraycopy(units, i + 1, units, i, size - i - 1);
+        System.arraycopy(unitActions, i + 1, unitActions, i, size - i - 1);
+        size--;
+        units[size] = null;
+        unitActions[size] = null;
+        indexIDs = null;
+        indexSlots = null;
+    }
+    
+    /**
+     * Replaces the i-th pair of Unit and UnitAction
+     * @param i
+     * @param u
+     * @param a
+     */
+    public void set(int i, Unit u, UnitAction a) {
+        if (units[i] != u) {
+            indexIDs = null;
+            indexSlots = null;
+        }
+        units[i] = u;
+        unitActions[i] = a;
     }
     
     
@@ -143,19 +260,70 @@ public class PlayerAction {
      */
     public PlayerAction merge(PlayerAction a) {
         PlayerAction merge = new PlayerAction();
-        merge.actions.addAll(actions);
-        merge.actions.addAll(a.actions);
+        merge.addAll(this);
+        merge.addAll(a);
         merge.r = r.mergeIntoNew(a.r);
         
         return merge;
     }
     
     /**
-     * Returns a list of pairs of units and UnitActions
+     * Adds all the pairs of another PlayerAction
+     * @param a
+     */
+    void addAll(PlayerAction a) {
+        for (int i = 0; i < a.size; i++) {
+            addUnitAction(a.units[i], a.unitActions[i]);
+        }
+    }
+    
+    /**
+     * Returns a list of pairs of units and UnitActions. The list is a view of this
+     * PlayerAction: changes to the list (add, set, remove) change it, but the Pair
+     * objects are created on each access, so modifying their fields does not.
+     * Code that goes through the actions often should use {@link #size()},
+     * {@link #getUnit(int)} and {@link #getUnitAction(int)} instead, which do not
+     * allocate anything
      * @return
      */
     public List<Pair<Unit,UnitAction>> getActions() {
-        return actions;
+        return new AbstractList<Pair<Unit,UnitAction>>() {
+            public Pair<Unit,UnitAction> get(int i) {
+                if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+                return new Pair<>(units[i], unitActions[i]);
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public Pair<Unit,UnitAction> set(int i, Pair<Unit,UnitAction> p) {
+                Pair<Unit,UnitAction> old = get(i);
+                PlayerAction.this.set(i, p.m_a, p.m_b);
+                return old;
+            }
+
+            public void add(int i, Pair<Unit,UnitAction> p) {
+                if (i < 0 || i > size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+                addUnitAction(p.m_a, p.m_b);
+                if (i < size - 1) {
+                    System.arraycopy(units, i, units, i + 1, size - 1 - i);
+                    System.arraycopy(unitActions, i, unitActions, i + 1, size - 1 - i);
+                    units[i] = p.m_a;
+                    unitActions[i] = p.m_b;
+                    indexIDs = null;
+                    indexSlots = null;
+                }
+                modCount++;
+            }
+
+            public Pair<Unit,UnitAction> remove(int i) {
+                Pair<Unit,UnitAction> old = get(i);
+                PlayerAction.this.remove(i);
+                modCount++;
+                return old;
+            }
+        };
     }
     
     /**
@@ -164,11 +332,79 @@ public class PlayerAction {
      * @return
      */
     public UnitAction getAction(Unit u) {
-		for (Pair<Unit, UnitAction> tmp : actions) {
-			if (tmp.m_a == u)
-				return tmp.m_b;
-		}
-		return null;
+        int i = indexOf(u);
+        return (i >= 0 ? unitActions[i] : null);
+    }
+    
+    /**
+     * Returns the position of the first pair with the unit "u" (the same object), or -1
+     * @param u
+     * @return
+     */
+    int indexOf(Unit u) {
+        if (size > INDEX_THRESHOLD) {
+            int i = indexOfID(u.getID());
+            if (i < 0) return -1;
+            if (units[i] == u) return i;
+            // another unit object with the same ID (e.g., from a clone of the game state)
+            // comes first, so the unit has to be searched linearly:
+        }
+        for (int i = 0; i < size; i++) {
+            if (units[i] == u) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the position of the first pair with a unit with the given ID, or -1
+     * @param ID
+     * @return
+     */
+    int indexOfID(long ID) {
+        if (size <= INDEX_THRESHOLD) {
+            for (int i = 0; i < size; i++) {
+                if (units[i].getID() == ID) return i;
+            }
+            return -1;
+        }
+        if (indexIDs == null) buildIndex();
+        int mask = indexIDs.length - 1;
+        int h = hash(ID) & mask;
+        while (indexSlots[h] != 0) {
+            if (indexIDs[h] == ID) return indexSlots[h] - 1;
+            h = (h + 1) & mask;
+        }
+        return -1;
+    }
+    
+    void buildIndex() {
+        int capacity = 16;
+        while (capacity < size * 4) capacity *= 2;
+        indexIDs = new long[capacity];
+        indexSlots = new int[capacity];
+        duplicateIDs = false;
+        for (int i = 0; i < size; i++) addToIndex(i);
+    }
+    
+    void addToIndex(int i) {
+        long ID = units[i].getID();
+        int mask = indexIDs.length - 1;
+        int h = hash(ID) & mask;
+        while (indexSlots[h] != 0) {
+            if (indexIDs[h] == ID) {
+                // only the first pair of each unit is indexed
+                duplicateIDs = true;
+                return;
+            }
+            h = (h + 1) & mask;
+        }
+        indexIDs[h] = ID;
+        indexSlots[h] = i + 1;
+    }
+    
+    static int hash(long ID) {
+        long h = ID * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
     }
     
     /**
@@ -185,7 +421,7 @@ public class PlayerAction {
 			if (r.consistentWith(r2, s)) {
 				PlayerAction a = new PlayerAction();
 				a.r = r.mergeIntoNew(r2);
-				a.actions.addAll(actions);
+				a.addAll(this);
 				a.addUnitAction(u, ua);
 				l.add(a);
 			}
@@ -219,15 +455,8 @@ public class PlayerAction {
 		for (Unit u : pgs.getUnits()) {
 			if (u.getPlayer() == pID) {
 				if (s.unitActions.get(u) == null) {
-					boolean found = false;
-					for (Pair<Unit, UnitAction> pa : actions) {
-						if (pa.m_a == u) {
-							found = true;
-							break;
-						}
-					}
-                    if (!found) {
-                        actions.add(new Pair<>(u, new UnitAction(UnitAction.TYPE_NONE, duration)));
+                    if (indexOf(u) < 0) {
+                        addUnitAction(u, new UnitAction(UnitAction.TYPE_NONE, duration));
                     }
                 }
             }
@@ -243,9 +472,8 @@ public class PlayerAction {
      */
     public boolean integrityCheck() {
         int player = -1;
-//        List<Unit> alreadyUsed = new LinkedList<Unit>();
-		for (Pair<Unit, UnitAction> uaa : actions) {
-			Unit u = uaa.m_a;
+		for (int i = 0; i < size; i++) {
+			Unit u = units[i];
 			if (player == -1) {
 				player = u.getPlayer();
 			} else {
@@ -263,19 +491,42 @@ public class PlayerAction {
      */
     public PlayerAction clone() {
         PlayerAction clone = new PlayerAction();
-        clone.actions = new LinkedList<>();
-        for(Pair<Unit,UnitAction> tmp:actions) {
-            clone.actions.add(new Pair<>(tmp.m_a, tmp.m_b));
-        }
+        clone.units = Arrays.copyOf(units, size);
+        clone.unitActions = Arrays.copyOf(unitActions, size);
+        clone.size = size;
         clone.r = r.clone();
         return clone;
     }
-        
+
+    /**
+     * Returns a copy of this PlayerAction for the units of gs2, a state equal to
+     * gs, the one of its units (see {@link GameState#equals(Object)}). The units
+     * are matched by their position in the list of units of each state, since
+     * the units created in different copies of a game get different IDs
+     * @param gs
+     * @param gs2
+     * @return
+     */
+    public PlayerAction translate(GameState gs, GameState gs2) {
+        PlayerAction pa = new PlayerAction();
+        List<Unit> units1 = gs.getUnits();
+        List<Unit> units2 = gs2.getUnits();
+        for (int i = 0; i < size; i++) {
+            pa.addUnitAction(units2.get(units1.indexOf(units[i])), unitActions[i]);
+        }
+        pa.r = r.clone();
+        return pa;
+    }
+
     /**
      * Resets the PlayerAction
      */
     public void clear() {
-        actions.clear();
+        units = NO_UNITS;
+        unitActions = NO_ACTIONS;
+        size = 0;
+        indexIDs = null;
+        indexSlots = null;
         r = new ResourceUsage();
     }
 
@@ -285,8 +536,8 @@ public class PlayerAction {
      */
     public String toString() {
         StringBuilder tmp = new StringBuilder("{ ");
-        for(Pair<Unit,UnitAction> ua:actions) {
-            tmp.append("(").append(ua.m_a).append(",").append(ua.m_b).append(")");
+        for(int i = 0;i<size;i++) {
+            tmp.append("(").append(units[i]).append(",").append(unitActions[i]).append(")");
         }
         return tmp + " }";
     }    
@@ -298,12 +549,14 @@ public class PlayerAction {
      */
     public void toxml(XMLWriter w) {
         w.tag("PlayerAction");
-        for(Pair<Unit,UnitAction> ua:actions) {
-            w.tagWithAttributes("action", "unitID=\"" + ua.m_a.getID() + "\"");
-            ua.m_b.toxml(w);
-            w.tag("/action");
+        for(int i = 0;i<size;i++) {
+            w.startTagWithAttributes("action");
+            w.attribute("unitID", units[i].getID());
+            w.endAttributes();
+            unitActions[i].toxml(w);
+            w.closeTag("action");
         }
-        w.tag("/PlayerAction");           
+        w.closeTag("PlayerAction");           
     }    
     
 
@@ -315,17 +568,35 @@ public class PlayerAction {
     public void toJSON(Writer w) throws Exception {
         boolean first = true;
         w.write("[");
-        for(Pair<Unit,UnitAction> ua:actions) {
+        for(int i = 0;i<size;i++) {
             if (!first) w.write(" ,");
-            w.write("{\"unitID\":" + ua.m_a.getID() + ", \"unitAction\":");
-            ua.m_b.toJSON(w);
-            w.write("}");
+            w.write("{\"unitID\":");
+            w.write(String.valueOf(units[i].getID()));
+            w.write(", \"unitAction\":");
+            unitActions[i].toJSON(w);
+            w.write('}');
             first = false;
         }
         w.write("]");
     }    
 
 
+    /**
+     * Writes in the binary format of {@link ai.socket.SocketAI#LANGUAGE_BINARY}:
+     * the number of actions, and for each, the ID of the unit (long) and the
+     * action code (int, see {@link UnitActionTable#encode(UnitAction)})
+     * @param out
+     * @throws IOException
+     */
+    public void toBinary(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for(int i = 0;i<size;i++) {
+            out.writeLong(units[i].getID());
+            out.writeInt(UnitActionTable.encode(unitActions[i]));
+        }
+    }
+
+
     /**
      * Creates a PlayerAction from a XML element
      * @param e
@@ -367,6 +638,26 @@ public class PlayerAction {
         return pa;
     }
 
+    /**
+     * Creates a PlayerAction from its binary format (see {@link #toBinary(DataOutput)})
+     * @param in
+     * @param gs
+     * @param utt
+     * @return
+     * @throws IOException
+     */
+    public static PlayerAction fromBinary(DataInput in, GameState gs, UnitTypeTable utt) throws IOException {
+        PlayerAction pa = new PlayerAction();
+        UnitActionTable table = utt.getUnitActionTable();
+        int n = in.readInt();
+        for(int i = 0;i<n;i++) {
+            Unit u = gs.getUnit(in.readLong());
+            UnitAction ua = table.decode(in.readInt());
+            pa.addUnitAction(u, ua);
+        }
+        return pa;
+    }
+
     /**
      * Creates a full assignment of actions to inactive units for a given player
      * from a vector-based action representation.
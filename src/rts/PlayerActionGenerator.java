@@ -1,7 +1,8 @@
 package rts;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
 import rts.units.Unit;
@@ -9,6 +10,16 @@ import util.Pair;
 
 /**
  * Enumerates the PlayerActions for a given game state
+ * 
+ * Besides the list of choices (the actions each unit can execute), the choices are kept in 
+ * arrays (choiceUnits, choiceActions, and the position and resources each action uses), so 
+ * that a joint action can be handled as a vector of indexes ("choice", with one index per 
+ * unit) without creating any object: {@link #nextChoice(int[], long)}, 
+ * {@link #randomChoice(int[], Random)} and {@link #isConsistent(int[])} work on these 
+ * vectors, and {@link #toPlayerAction(int[])} creates the PlayerAction only when needed.
+ * Choice vectors can be converted to and from a single number with {@link #rank(int[])} 
+ * and {@link #unrank(long, int[])} (mixed-radix, with the first unit as the least 
+ * significant digit), which is the same index returned by {@link #getActionIndex(PlayerAction)}.
  * @author santi
  */
 public class PlayerActionGenerator {
@@ -25,6 +36,21 @@ public class PlayerActionGenerator {
     int currentChoice[];
     boolean moreActions = true;
     
+    Unit choiceUnits[];
+    UnitAction choiceActions[][];
+    int choicePositions[][];    // position used by each action (or -1)
+    int choiceCosts[][];        // resources used by each action
+    long multipliers[];         // weight of each unit's index in the rank of a choice vector
+    int basePositions[];        // positions used by the actions already being executed
+    int baseResources[] = new int[2];
+    int playerResources[] = new int[2];
+    int positionMarks[];        // positions used by the choice being checked are marked with "mark"
+    int mark = 0;
+    int usedResources[] = new int[2];
+    int permutation[];          // scratch space to sample actions without replacement
+    int nextChoiceBuffer[];
+    IdentityHashMap<Unit,Integer> unitIndexes = null;
+    
     /**
      * 
      * @return
@@ -95,14 +121,48 @@ public class PlayerActionGenerator {
 			);
 		}
 
-        choiceSizes = new int[choices.size()];
-        currentChoice = new int[choices.size()];
+        int n = choices.size();
+        choiceSizes = new int[n];
+        currentChoice = new int[n];
+        choiceUnits = new Unit[n];
+        choiceActions = new UnitAction[n][];
+        choicePositions = new int[n][];
+        choiceCosts = new int[n][];
+        multipliers = new long[n];
         int i = 0;
+        int maxSize = 0;
+        long multiplier = 1;
         for(Pair<Unit,List<UnitAction>> choice:choices) {
-            choiceSizes[i] = choice.m_b.size();
+            Unit u = choice.m_a;
+            int nactions = choice.m_b.size();
+            choiceSizes[i] = nactions;
             currentChoice[i] = 0;
+            choiceUnits[i] = u;
+            choiceActions[i] = new UnitAction[nactions];
+            choicePositions[i] = new int[nactions];
+            choiceCosts[i] = new int[nactions];
+            for(int j = 0;j<nactions;j++) {
+                UnitAction ua = choice.m_b.get(j);
+                ResourceUsage ru = ua.resourceUsage(u, physicalGameState);
+                choiceActions[i][j] = ua;
+                choicePositions[i][j] = (ru.positionsUsed.isEmpty() ? -1 : ru.positionsUsed.get(0));
+                choiceCosts[i][j] = ru.resourcesUsed[u.getPlayer()];
+            }
+            multipliers[i] = multiplier;
+            multiplier *= nactions;
+            maxSize = Math.max(maxSize, nactions);
             i++;
         }
+        basePositions = new int[base_ru.positionsUsed.size()];
+        i = 0;
+        for(int pos:base_ru.positionsUsed) basePositions[i++] = pos;
+        for(int p = 0;p<2;p++) {
+            baseResources[p] = base_ru.resourcesUsed[p];
+            if (p < physicalGameState.getPlayers().size()) playerResources[p] = gameState.getPlayer(p).getResources();
+        }
+        positionMarks = new int[physicalGameState.getWidth() * physicalGameState.getHeight()];
+        permutation = new int[maxSize];
+        nextChoiceBuffer = new int[n];
     } 
     
     
@@ -115,13 +175,29 @@ public class PlayerActionGenerator {
      * Shuffles the list of choices
      */
     public void randomizeOrder() {
-		for (Pair<Unit, List<UnitAction>> choice : choices) {
-            List<UnitAction> tmp = new LinkedList<>(choice.m_b);
-			choice.m_b.clear();
-			while (!tmp.isEmpty())
-				choice.m_b.add(tmp.remove(r.nextInt(tmp.size())));
-		}
-	}
+        randomizeOrder(r);
+    }
+    
+    /**
+     * Shuffles the list of choices with the given random number generator (so 
+     * that searches running in different threads do not share one)
+     * @param r
+     */
+    public void randomizeOrder(Random r) {
+        for (int i = 0; i < choiceUnits.length; i++) {
+            UnitAction actions[] = choiceActions[i];
+            int positions[] = choicePositions[i];
+            int costs[] = choiceCosts[i];
+            List<UnitAction> l = choices.get(i).m_b;
+            for (int j = actions.length - 1; j > 0; j--) {
+                int k = r.nextInt(j + 1);
+                UnitAction ua = actions[j]; actions[j] = actions[k]; actions[k] = ua;
+                int tmp = positions[j]; positions[j] = positions[k]; positions[k] = tmp;
+                tmp = costs[j]; costs[j] = costs[k]; costs[k] = tmp;
+            }
+            for (int j = 0; j < actions.length; j++) l.set(j, actions[j]);
+        }
+    }
     
     /**
      * Increases the index that tracks the next action to be returned
@@ -149,49 +225,102 @@ public class PlayerActionGenerator {
      * @throws Exception
      */
     public PlayerAction getNextAction(long cutOffTime) throws Exception {
+        if (nextChoice(nextChoiceBuffer, cutOffTime)) {
+            lastAction = materialize(nextChoiceBuffer, true);
+        } else {
+            lastAction = null;
+        }
+        return lastAction;
+    }
+    
+    /**
+     * Like {@link #getNextAction(long)}, but leaves the choice vector of the next consistent 
+     * PlayerAction in "choice" instead of creating it
+     * @param choice an array with one position per unit
+     * @param cutOffTime time to stop generationg the action
+     * @return false if there are no more actions (or the time is over)
+     */
+    public boolean nextChoice(int choice[], long cutOffTime) {
         int count = 0;
         while(moreActions) {
-            boolean consistent = true;
-            PlayerAction pa = new PlayerAction();
-            pa.setResourceUsage(base_ru.clone());
-            int i = choices.size();
-			if (i == 0)
-				throw new Exception("Move generator created with no units that can execute actions!");
-			
-			while (i > 0) {
-				i--;
-				Pair<Unit, List<UnitAction>> unitChoices = choices.get(i);
-				int choice = currentChoice[i];
-				Unit u = unitChoices.m_a;
-				UnitAction ua = unitChoices.m_b.get(choice);
-
-				ResourceUsage r2 = ua.resourceUsage(u, physicalGameState);
-
-				if (pa.getResourceUsage().consistentWith(r2, gameState)) {
-					pa.getResourceUsage().merge(r2);
-					pa.addUnitAction(u, ua);
-				} else {
-					consistent = false;
-					break;
-				}
-			}
-
-			incrementCurrentChoice(i);
-			if (consistent) {
-				lastAction = pa;
-				generated++;
-				return pa;
-			}
+            int i = firstInconsistent(currentChoice);
+            boolean consistent = (i < 0);
+            if (consistent) {
+                System.arraycopy(currentChoice, 0, choice, 0, choice.length);
+                i = 0;
+            }
+            incrementCurrentChoice(i);
+            if (consistent) {
+                generated++;
+                return true;
+            }
             
             // check if we are over time (only check once every 1000 actions, since currenttimeMillis is a slow call):
-			if (cutOffTime > 0 && (count % 1000 == 0) && System.currentTimeMillis() > cutOffTime) {
-				lastAction = null;
-				return null;
-			}
-			count++;
+            if (cutOffTime > 0 && (count % 1000 == 0) && System.currentTimeMillis() > cutOffTime) {
+                return false;
+            }
+            count++;
+        }
+        return false;
+    }
+    
+    /**
+     * Checks the actions of a choice vector from the last unit to the first one, and 
+     * returns the index of the first unit whose action is not consistent with the ones 
+     * checked before (and with the actions being executed), or -1 if all are consistent
+     * @param choice
+     * @return
+     */
+    int firstInconsistent(int choice[]) {
+        startCheck();
+        for (int i = choice.length - 1; i >= 0; i--) {
+            if (!use(i, choice[i])) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns whether the actions of a choice vector can be executed together
+     * @param choice
+     * @return
+     */
+    public boolean isConsistent(int choice[]) {
+        return firstInconsistent(choice) < 0;
+    }
+    
+    /**
+     * Starts a consistency check with the resources used by the actions being executed
+     */
+    void startCheck() {
+        mark++;
+        if (mark == Integer.MAX_VALUE) {
+            Arrays.fill(positionMarks, 0);
+            mark = 1;
+        }
+        for (int pos : basePositions) positionMarks[pos] = mark;
+        usedResources[0] = baseResources[0];
+        usedResources[1] = baseResources[1];
+    }
+    
+    /**
+     * Adds the resources of action j of unit i to the current consistency check, returning 
+     * false (and adding nothing) if it is not consistent with the ones added before (like 
+     * {@link ResourceUsage#consistentWith(ResourceUsage, GameState)})
+     * @param i
+     * @param j
+     * @return
+     */
+    boolean use(int i, int j) {
+        int pos = choicePositions[i][j];
+        if (pos >= 0 && positionMarks[pos] == mark) return false;
+        int cost = choiceCosts[i][j];
+        if (cost != 0) {
+            int player = choiceUnits[i].getPlayer();
+            if (usedResources[player] + cost > 0 && usedResources[player] + cost > playerResources[player]) return false;
+            usedResources[player] += cost;
         }
-        lastAction = null;
-        return null;
+        if (pos >= 0) positionMarks[pos] = mark;
+        return true;
     }
     
     /**
@@ -199,26 +328,139 @@ public class PlayerActionGenerator {
      * @return
      */
     public PlayerAction getRandom() {
-		Random r = new Random();
-		PlayerAction pa = new PlayerAction();
-		pa.setResourceUsage(base_ru.clone());
-		for (Pair<Unit, List<UnitAction>> unitChoices : choices) {
-            List<UnitAction> l = new LinkedList<>(unitChoices.m_b);
-			Unit u = unitChoices.m_a;
-
-			boolean consistent = false;
-			do {
-				UnitAction ua = l.remove(r.nextInt(l.size()));
-				ResourceUsage r2 = ua.resourceUsage(u, physicalGameState);
-
-				if (pa.getResourceUsage().consistentWith(r2, gameState)) {
-					pa.getResourceUsage().merge(r2);
-					pa.addUnitAction(u, ua);
-					consistent = true;
-				}
-			} while (!consistent);
-		}
-		return pa;
+        int choice[] = new int[choiceUnits.length];
+        randomChoice(choice, r);
+        return materialize(choice, false);
+    }
+    
+    /**
+     * Like {@link #getRandom()}, but leaves the choice vector in "choice" instead of creating 
+     * the PlayerAction: for each unit in order, actions are sampled uniformly (without 
+     * replacement) until one is consistent with the ones chosen for the previous units
+     * @param choice an array with one position per unit
+     * @param random
+     * @return false if some unit had no consistent action
+     */
+    public boolean randomChoice(int choice[], Random random) {
+        startCheck();
+        for (int i = 0; i < choiceUnits.length; i++) {
+            int n = choiceSizes[i];
+            for (int j = 0; j < n; j++) permutation[j] = j;
+            boolean consistent = false;
+            while (n > 0 && !consistent) {
+                int k = random.nextInt(n);
+                int j = permutation[k];
+                permutation[k] = permutation[--n];
+                if (use(i, j)) {
+                    choice[i] = j;
+                    consistent = true;
+                }
+            }
+            if (!consistent) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Creates the PlayerAction corresponding to a choice vector
+     * @param choice
+     * @return
+     */
+    public PlayerAction toPlayerAction(int choice[]) {
+        return materialize(choice, true);
+    }
+    
+    /**
+     * Creates the PlayerAction corresponding to a choice vector, adding the actions of the 
+     * units from the last one to the first one (as getNextAction does), or the other way 
+     * around (as getRandom does)
+     */
+    PlayerAction materialize(int choice[], boolean backwards) {
+        PlayerAction pa = new PlayerAction();
+        ResourceUsage ru = base_ru.clone();
+        pa.setResourceUsage(ru);
+        for (int k = 0; k < choice.length; k++) {
+            int i = (backwards ? choice.length - 1 - k : k);
+            Unit u = choiceUnits[i];
+            UnitAction ua = choiceActions[i][choice[i]];
+            ru.merge(ua.resourceUsage(u, physicalGameState));
+            pa.addUnitAction(u, ua);
+        }
+        return pa;
+    }
+    
+    /**
+     * Returns the index (see {@link #rank(int[])}) of the next choice vector that 
+     * {@link #nextChoice(int[], long)} will check, so that the enumeration can be resumed 
+     * later with {@link #setNextIndex(long)} by a generator created for the same state
+     * @return the index, or -1 if there are no more actions
+     */
+    public long getNextIndex() {
+        if (!moreActions) return -1;
+        return rank(currentChoice);
+    }
+    
+    /**
+     * Makes the enumeration continue from the choice vector of a given index (as returned 
+     * by {@link #getNextIndex()}). Only valid if {@link #getSize()} did not overflow
+     * @param index
+     */
+    public void setNextIndex(long index) {
+        unrank(index, currentChoice);
+        moreActions = true;
+    }
+    
+    /**
+     * Returns the index of a choice vector (the mixed-radix number whose digits are the 
+     * indexes in the vector, and whose bases are the number of actions of each unit)
+     * @param choice
+     * @return
+     */
+    public long rank(int choice[]) {
+        long index = 0;
+        for (int i = 0; i < choice.length; i++) {
+            index += choice[i] * multipliers[i];
+        }
+        return index;
+    }
+    
+    /**
+     * Fills "choice" with the choice vector of a given index (the inverse of 
+     * {@link #rank(int[])}). Only valid if {@link #getSize()} did not overflow
+     * @param index
+     * @param choice
+     */
+    public void unrank(long index, int choice[]) {
+        for (int i = 0; i < choice.length; i++) {
+            choice[i] = (int)(index % choiceSizes[i]);
+            index /= choiceSizes[i];
+        }
+    }
+    
+    /**
+     * Fills "choice" with the choice vector of a given PlayerAction (units not in the 
+     * PlayerAction get index 0)
+     * @param a
+     * @param choice
+     * @return false if the PlayerAction has units or actions that are not in the choices
+     */
+    public boolean getChoice(PlayerAction a, int choice[]) {
+        if (unitIndexes == null) {
+            unitIndexes = new IdentityHashMap<>();
+            for (int i = 0; i < choiceUnits.length; i++) unitIndexes.put(choiceUnits[i], i);
+        }
+        Arrays.fill(choice, 0);
+        for (int k = 0; k < a.size(); k++) {
+            Integer i = unitIndexes.get(a.getUnit(k));
+            if (i == null) return false;
+            UnitAction actions[] = choiceActions[i];
+            UnitAction ua = a.getUnitAction(k);
+            int j = 0;
+            while (j < actions.length && !actions[j].equals(ua)) j++;
+            if (j == actions.length) return false;
+            choice[i] = j;
+        }
+        return true;
     }
     
     /**
@@ -226,31 +468,35 @@ public class PlayerActionGenerator {
      * @param a
      * @return
      */
-	public long getActionIndex(PlayerAction a) {
-		int choice[] = new int[choices.size()];
-		for (Pair<Unit, UnitAction> ua : a.actions) {
-			int idx = 0;
-			Pair<Unit, List<UnitAction>> ua_choice = null;
-			for (Pair<Unit, List<UnitAction>> c : choices) {
-				if (ua.m_a == c.m_a) {
-					ua_choice = c;
-					break;
-				}
-				idx++;
-			}
-			if (ua_choice == null)
-				return -1;
-			choice[idx] = ua_choice.m_b.indexOf(ua.m_b);
-
-		}
-		long index = 0;
-		long multiplier = 1;
-		for (int i = 0; i < choice.length; i++) {
-			index += choice[i] * multiplier;
-			multiplier *= choiceSizes[i];
-		}
-		return index;
-	}
+    public long getActionIndex(PlayerAction a) {
+        int choice[] = new int[choiceUnits.length];
+        if (!getChoice(a, choice)) return -1;
+        return rank(choice);
+    }
+    
+    /**
+     * Returns the units that have to be given an action (in the order of the choice vectors)
+     * @return
+     */
+    public Unit[] getChoiceUnits() {
+        return choiceUnits;
+    }
+    
+    /**
+     * Returns the number of actions of each unit
+     * @return
+     */
+    public int[] getChoiceSizes() {
+        return choiceSizes;
+    }
+    
+    /**
+     * Returns the actions of each unit
+     * @return
+     */
+    public UnitAction[][] getChoiceActions() {
+        return choiceActions;
+    }
     
     
     public String toString() {
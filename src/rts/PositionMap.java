@@ -0,0 +1,217 @@
+package rts;
+
+import java.util.Arrays;
+
+/**
+ * A small open-addressing hash map from map positions (x + y * width) to
+ * non-negative integers, used to index the units (and reserved positions) of a
+ * game state by their index in the units list. Its size grows with the number
+ * of entries rather than with the size of the map.
+ *
+ * Since the units list of a cloned state has the same order as the original
+ * one, a map can be shared between a state and its clones: {@link #share()}
+ * marks it as shared, and the owners then copy it before modifying it (see
+ * {@link #writable()}).
+ */
+class PositionMap {
+
+    static final int EMPTY = -1;
+
+    int positions[];
+    int values[];
+    int size = 0;
+    boolean shared = false;
+
+    /**
+     * Creates an empty map with room for the given number of entries
+     *
+     * @param expectedSize
+     */
+    PositionMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        positions = new int[capacity];
+        Arrays.fill(positions, EMPTY);
+        values = new int[capacity];
+    }
+
+    /**
+     * Copies another map. The copy is not shared
+     *
+     * @param other
+     */
+    PositionMap(PositionMap other) {
+        positions = other.positions.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Marks the map as shared between several states, so that none of them
+     * modifies it anymore
+     *
+     * @return this map
+     */
+    PositionMap share() {
+        shared = true;
+        return this;
+    }
+
+    /**
+     * Returns this map if it is not shared, or a copy of it that can be
+     * modified otherwise
+     *
+     * @return
+     */
+    PositionMap writable() {
+        return shared ? new PositionMap(this) : this;
+    }
+
+    /**
+     * Returns the value of a given position, or EMPTY if it has none
+     *
+     * @param position
+     * @return
+     */
+    int get(int position) {
+        int mask = positions.length - 1;
+        for (int i = slot(position, mask);; i = (i + 1) & mask) {
+            int p = positions[i];
+            if (p == position) {
+                return values[i];
+            }
+            if (p == EMPTY) {
+                return EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Associates a value to a position, unless the position already has one
+     *
+     * @param position
+     * @param value
+     * @return false if the position was already taken
+     */
+    boolean putIfAbsent(int position, int value) {
+        if ((size + 1) * 2 > positions.length) {
+            resize(positions.length * 2);
+        }
+        int mask = positions.length - 1;
+        int i = slot(position, mask);
+        while (positions[i] != EMPTY) {
+            if (positions[i] == position) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        positions[i] = position;
+        values[i] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Associates a value to a position, replacing the previous one if any
+     *
+     * @param position
+     * @param value
+     */
+    void put(int position, int value) {
+        if (!putIfAbsent(position, value)) {
+            values[find(position)] = value;
+        }
+    }
+
+    /**
+     * Removes the entry of a position, but only if its value is the given one
+     *
+     * @param position
+     * @param value
+     * @return whether the entry was removed
+     */
+    boolean remove(int position, int value) {
+        int i = find(position);
+        if (i == -1 || values[i] != value) {
+            return false;
+        }
+        // backward shift deletion, so that no tombstones are needed:
+        int mask = positions.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (positions[j] == EMPTY) {
+                break;
+            }
+            int k = slot(positions[j], mask);
+            // move entry j to the hole at i if its home slot k is not in (i, j]:
+            if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+                positions[i] = positions[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        positions[i] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Adds delta to all the values greater or equal than the given one (used
+     * when an element is removed from or inserted in the units list, and the
+     * ones after it shift)
+     *
+     * @param from
+     * @param delta
+     */
+    void shiftValues(int from, int delta) {
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] != EMPTY && values[i] >= from) {
+                values[i] += delta;
+            }
+        }
+    }
+
+    private int find(int position) {
+        int mask = positions.length - 1;
+        for (int i = slot(position, mask);; i = (i + 1) & mask) {
+            int p = positions[i];
+            if (p == position) {
+                return i;
+            }
+            if (p == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int oldPositions[] = positions;
+        int oldValues[] = values;
+        positions = new int[capacity];
+        Arrays.fill(positions, EMPTY);
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] != EMPTY) {
+                int j = slot(oldPositions[i], mask);
+                while (positions[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                positions[j] = oldPositions[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(int position, int mask) {
+        int h = position * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
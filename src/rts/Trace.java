@@ -1,21 +1,19 @@
 package rts;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.jdom.Element;
-import org.jdom.input.SAXBuilder;
 
 import rts.units.Unit;
 import rts.units.UnitTypeTable;
@@ -99,8 +97,8 @@ public class Trace {
         for (TraceEntry te : entries) {
             te.toxml(w);
         }
-        w.tag("/entries");
-        w.tag("/" + this.getClass().getName());
+        w.closeTag("entries");
+        w.closeTag(this.getClass().getName());
     }
     
     /**
@@ -128,7 +126,7 @@ public class Trace {
      */
     public void toxml(String path) {
     	try {
-            XMLWriter dumper = new XMLWriter(new FileWriter(path));
+            XMLWriter dumper = new XMLWriter(new BufferedWriter(new FileWriter(path)));
             this.toxml(dumper);
             dumper.close();
         } catch (IOException e) {
@@ -149,13 +147,10 @@ public class Trace {
             ZipEntry e = new ZipEntry(f.getName());
             out.putNextEntry(e);
 
-            StringWriter xmlStringContainer = new StringWriter();
-            XMLWriter dumper = new XMLWriter(xmlStringContainer);
-            //XMLWriter dumper = new XMLWriter(new FileWriter(path));
+            // the XML is compressed as it is written, rather than building it in memory first:
+            XMLWriter dumper = new XMLWriter(new BufferedWriter(new OutputStreamWriter(out)));
             this.toxml(dumper);
-
-            byte[] data = xmlStringContainer.toString().getBytes();
-            out.write(data, 0, data.length);
+            dumper.flush();
             out.closeEntry();
             out.close();
 
@@ -168,11 +163,18 @@ public class Trace {
         }    	
     }
     
+    /**
+     * Loads a trace written with {@link #toZip(String)}. The entries are read
+     * one by one (see {@link TraceReader}), without building the XML document
+     * of the whole trace
+     * @param path
+     * @return
+     * @throws Exception
+     */
     public static Trace fromZip(String path) throws Exception {
-    	 try (ZipInputStream zis = new ZipInputStream(new FileInputStream(path))) {
-    		 zis.getNextEntry();
-    		 return new Trace(new SAXBuilder().build(zis).getRootElement());
-    	 }
+        try (TraceReader reader = TraceReader.open(path)) {
+            return reader.readTrace();
+        }
     }
 
     /**
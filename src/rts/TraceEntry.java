@@ -49,7 +49,8 @@ public class TraceEntry {
      * @param a
      */
     public void addPlayerAction(PlayerAction a) {
-        for (Pair<Unit, UnitAction> ua : a.actions) {
+        for (int i = 0; i < a.size(); i++) {
+            Pair<Unit, UnitAction> ua = new Pair<>(a.getUnit(i), a.getUnitAction(i));
             if (pgs.getUnit(ua.m_a.getID()) == null) {
                 boolean found = false;
                 for(Unit u:pgs.units) {
@@ -57,6 +58,7 @@ public class TraceEntry {
                         u.getX()==ua.m_a.getX() &&
                         u.getY()==ua.m_a.getY()) {
                         ua.m_a = u;
+                        a.set(i, u, ua.m_b);
                         found = true;
                         break;
                     }
@@ -108,12 +110,14 @@ public class TraceEntry {
         pgs.toxml(w);
         w.tag("actions");
         for (Pair<Unit, UnitAction> ua : actions) {
-            w.tagWithAttributes("action", "unitID=\"" + ua.m_a.getID() + "\"");
+            w.startTagWithAttributes("action");
+            w.attribute("unitID", ua.m_a.getID());
+            w.endAttributes();
             ua.m_b.toxml(w);
-            w.tag("/action");
+            w.closeTag("action");
         }
-        w.tag("/actions");
-        w.tag("/" + this.getClass().getName());
+        w.closeTag("actions");
+        w.closeTag(this.getClass().getName());
     }
 
     /**
@@ -122,17 +126,20 @@ public class TraceEntry {
      * @param w
      */
     public void toJSON(Writer w) throws Exception {
-        w.write("{");
-        w.write("\"time\":" + time + ",\"pgs\":");
+        w.write("{\"time\":");
+        w.write(String.valueOf(time));
+        w.write(",\"pgs\":");
         pgs.toJSON(w);
         w.write(",\"actions\":[");
         boolean first = true;
         for (Pair<Unit, UnitAction> ua : actions) {
             if (!first) w.write(",");
             first = false;
-            w.write("{\"unitID\":" + ua.m_a.getID() +", \"action\":");
+            w.write("{\"unitID\":");
+            w.write(String.valueOf(ua.m_a.getID()));
+            w.write(", \"action\":");
             ua.m_b.toJSON(w);
-            w.write("}");
+            w.write('}');
         }
         w.write("]}");
     }       
@@ -0,0 +1,197 @@
+package rts;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jdom.Element;
+import rts.units.UnitTypeTable;
+
+/**
+ * Reads the entries of a XML trace (as written by {@link Trace#toxml(String)}
+ * or {@link Trace#toZip(String)}) one by one, instead of loading the whole
+ * trace in memory like {@link Trace#fromZip(String)} does. Only the XML of the
+ * entry being read is kept in memory.
+ *
+ * Example:
+ * <pre>
+ * try (TraceReader reader = TraceReader.open("trace.zip")) {
+ *     while (reader.hasNext()) {
+ *         TraceEntry te = reader.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class TraceReader implements Iterator<TraceEntry>, Closeable {
+    InputStream input;
+    XMLStreamReader reader;
+    UnitTypeTable utt;
+    TraceEntry next = null;
+    // number of elements the reader is inside of:
+    int depth = 0;
+
+    /**
+     * Opens a trace file, which can be a XML file, or a zip file with the XML
+     * file as its first entry (as written by {@link Trace#toZip(String)})
+     *
+     * @param path
+     * @return
+     * @throws Exception
+     */
+    public static TraceReader open(String path) throws Exception {
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        if (path.endsWith(".zip")) {
+            ZipInputStream zis = new ZipInputStream(in);
+            zis.getNextEntry();
+            in = zis;
+        }
+        try {
+            return new TraceReader(in);
+        } catch (Exception e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a trace, with the UnitTypeTable stored in it
+     *
+     * @param in
+     * @throws Exception
+     */
+    public TraceReader(InputStream in) throws Exception {
+        this(in, null);
+    }
+
+    /**
+     * Reads a trace, overriding its UnitTypeTable with the one provided (if it
+     * is not null)
+     *
+     * @param in
+     * @param a_utt
+     * @throws Exception
+     */
+    public TraceReader(InputStream in, UnitTypeTable a_utt) throws Exception {
+        input = in;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        reader = factory.createXMLStreamReader(in);
+        utt = a_utt;
+        // the unit type table comes before the entries:
+        while (nextStartElement(2)) {
+            if (reader.getLocalName().equals(UnitTypeTable.class.getName())) {
+                Element utt_e = readElement();
+                if (utt == null) utt = UnitTypeTable.fromXML(utt_e);
+            } else if (reader.getLocalName().equals("entries")) {
+                break;
+            } else {
+                readElement();
+            }
+        }
+        if (utt == null) throw new Exception("TraceReader: no unit type table found in the trace");
+        next = readEntry();
+    }
+
+    public UnitTypeTable getUnitTypeTable() {
+        return utt;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public TraceEntry next() {
+        if (next == null) throw new NoSuchElementException();
+        TraceEntry te = next;
+        try {
+            next = readEntry();
+        } catch (Exception e) {
+            throw new RuntimeException("TraceReader: error reading the trace", e);
+        }
+        return te;
+    }
+
+    /**
+     * Reads all the remaining entries into a Trace
+     *
+     * @return
+     */
+    public Trace readTrace() {
+        Trace trace = new Trace(utt);
+        while (hasNext()) trace.addEntry(next());
+        return trace;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        input.close();
+    }
+
+    TraceEntry readEntry() throws Exception {
+        // entries are the children of "entries", which is a child of the root:
+        if (!nextStartElement(3)) return null;
+        return new TraceEntry(readElement(), utt);
+    }
+
+    /**
+     * Advances to the next element starting at the given depth (1 for the root
+     * element, 2 for its children, etc.)
+     *
+     * @return false if the element containing those elements ended before
+     */
+    boolean nextStartElement(int a_depth) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = advance();
+            if (event == XMLStreamConstants.START_ELEMENT && depth == a_depth) return true;
+            if (event == XMLStreamConstants.END_ELEMENT && depth < a_depth - 1) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Moves the reader to the next event, keeping track of the depth
+     */
+    int advance() throws XMLStreamException {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) depth++;
+        if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        return event;
+    }
+
+    /**
+     * Builds the element the reader is at (and its contents), leaving the reader
+     * at its end
+     */
+    Element readElement() throws XMLStreamException {
+        Element e = new Element(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            e.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        while (true) {
+            int event = advance();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                e.addContent(readElement());
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (!reader.isWhiteSpace()) e.addContent(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rts.units.Unit;
+
+/**
+ * Records the changes made to a {@link GameState} by
+ * {@link GameState#issueWithUndo(PlayerAction)} or
+ * {@link GameState#cycleWithUndo()}, so that they can be reverted with
+ * {@link GameState#undo(UndoLog)}. This lets search algorithms explore a
+ * single mutable state depth-first instead of cloning it at every node.
+ *
+ * Logs must be undone in the reverse order they were recorded in, and the
+ * state must not be modified in any other way in between.
+ */
+public class UndoLog {
+
+    static final int UNIT_CHANGED = 0;      // unit: the unit, a..d: x, y, hit points, resources
+    static final int UNIT_ADDED = 1;        // unit: the unit added at the end of the units list
+    static final int UNIT_REMOVED = 2;      // unit: the unit, a: its index in the units list
+    static final int ASSIGNMENT_PUT = 3;    // unit: the unit, uaa: the new assignment, old: the replaced one (or null)
+    static final int ACTION_CHANGED = 4;    // uaa: the assignment, action: its previous action
+
+    static class Change {
+        int type;
+        Unit unit;
+        int a, b, c, d;
+        UnitActionAssignment uaa, old;
+        UnitAction action;
+
+        Change(int a_type) {
+            type = a_type;
+        }
+    }
+
+    GameState gs;
+    boolean issue;  // whether it was created by issueWithUndo (or by cycleWithUndo)
+    int time;
+    int unitCancelationCounter;
+    long hash;
+    boolean hashValid;
+    int playerResources[] = null;   // only for cycles (issuing actions does not change them)
+    List<Change> changes = new ArrayList<>();
+
+    // only for cycles that execute some action: the assignments before the first such cycle
+    // (in order), and the ones the cycles removed
+    UnitActionAssignment assignments[] = null;
+    List<UnitActionAssignment> removedAssignments = null;
+
+    UndoLog(GameState a_gs, boolean a_issue) {
+        gs = a_gs;
+        issue = a_issue;
+        time = gs.time;
+        unitCancelationCounter = gs.unitCancelationCounter;
+        hash = gs.hash;
+        hashValid = gs.hashValid;
+        if (!issue) {
+            List<Player> players = gs.pgs.getPlayers();
+            playerResources = new int[players.size()];
+            for (int i = 0; i < playerResources.length; i++) {
+                playerResources[i] = players.get(i).getResources();
+            }
+        }
+    }
+
+    /**
+     * Records the current position, hit points and resources of a unit
+     *
+     * @param u
+     */
+    void unitChanged(Unit u) {
+        Change c = new Change(UNIT_CHANGED);
+        c.unit = u;
+        c.a = u.getX();
+        c.b = u.getY();
+        c.c = u.getHitPoints();
+        c.d = u.getResources();
+        changes.add(c);
+    }
+
+    void unitAdded(Unit u) {
+        Change c = new Change(UNIT_ADDED);
+        c.unit = u;
+        changes.add(c);
+    }
+
+    void unitRemoved(Unit u, int index) {
+        Change c = new Change(UNIT_REMOVED);
+        c.unit = u;
+        c.a = index;
+        changes.add(c);
+    }
+
+    void assignmentPut(Unit u, UnitActionAssignment replaced, UnitActionAssignment uaa) {
+        Change c = new Change(ASSIGNMENT_PUT);
+        c.unit = u;
+        c.uaa = uaa;
+        c.old = replaced;
+        changes.add(c);
+    }
+
+    void actionChanged(UnitActionAssignment uaa) {
+        Change c = new Change(ACTION_CHANGED);
+        c.uaa = uaa;
+        c.action = uaa.action;
+        changes.add(c);
+    }
+
+    void assignmentRemoved(UnitActionAssignment uaa) {
+        if (removedAssignments != null) {
+            removedAssignments.add(uaa);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package rts;
 
 import java.io.Writer;
-import java.util.List;
 import java.util.Objects;
 import java.util.Random;
 
@@ -129,6 +128,12 @@ public class UnitAction {
      */
     ResourceUsage r_cache;
 
+    /**
+     * The table this action belongs to, if it is an interned action (which
+     * is shared, so its ResourceUsage is cached in the table instead)
+     */
+    UnitActionTable table;
+
     /**
      * Creates an action with specified type
      *
@@ -247,6 +252,9 @@ public class UnitAction {
         if (r_cache != null) {
             return r_cache;
         }
+        if (table != null) {
+            return table.resourceUsage(this, u, pgs);
+        }
 
         r_cache = new ResourceUsage();
 
@@ -344,16 +352,16 @@ public class UnitAction {
             case TYPE_MOVE: //moves the unit in the intended direction
                 switch (parameter) {
                     case DIRECTION_UP:
-                        u.setY(u.getY() - 1);
+                        pgs.moveUnit(u, u.getX(), u.getY() - 1);
                         break;
                     case DIRECTION_RIGHT:
-                        u.setX(u.getX() + 1);
+                        pgs.moveUnit(u, u.getX() + 1, u.getY());
                         break;
                     case DIRECTION_DOWN:
-                        u.setY(u.getY() + 1);
+                        pgs.moveUnit(u, u.getX(), u.getY() + 1);
                         break;
                     case DIRECTION_LEFT:
-                        u.setX(u.getX() - 1);
+                        pgs.moveUnit(u, u.getX() - 1, u.getY());
                         break;
                 }
                 break;
@@ -465,6 +473,29 @@ public class UnitAction {
     }
 
 
+    /**
+     * Returns the unit, other than u, whose state changes when u executes this
+     * action: the target of an attack or the resource being harvested (null
+     * for other actions, or if there is no such unit)
+     *
+     * @param u
+     * @param pgs
+     * @return
+     */
+    Unit affectedUnit(Unit u, PhysicalGameState pgs) {
+        switch (type) {
+            case TYPE_ATTACK_LOCATION:
+                return pgs.getUnitAt(x, y);
+            case TYPE_HARVEST:
+                if (parameter < 0 || parameter >= DIRECTION_OFFSET_X.length) {
+                    return null;
+                }
+                return pgs.getUnitAt(u.getX() + DIRECTION_OFFSET_X[parameter], u.getY() + DIRECTION_OFFSET_Y[parameter]);
+            default:
+                return null;
+        }
+    }
+
     @Override
     public String toString() {
         String tmp = actionName[type] + "(";
@@ -542,22 +573,21 @@ public class UnitAction {
      * @param w
      */
     public void toxml(XMLWriter w) {
-        String attributes = "type=\"" + type + "\" ";
+        w.startTagWithAttributes("UnitAction");
+        w.attribute("type", type);
         if (type == TYPE_ATTACK_LOCATION) {
-            attributes += "x=\"" + x + "\" y=\"" + y + "\"";
+            w.attribute("x", x);
+            w.attribute("y", y);
         } else {
             if (parameter != DIRECTION_NONE) {
-                attributes += "parameter=\"" + parameter + "\"";
-                if (unitType != null) {
-                    attributes += " ";
-                }
+                w.attribute("parameter", parameter);
             }
             if (unitType != null) {
-                attributes += "unitType=\"" + unitType.name + "\"";
+                w.attribute("unitType", unitType.name);
             }
         }
-        w.tagWithAttributes("UnitAction", attributes);
-        w.tag("/UnitAction");
+        w.endAttributes();
+        w.closeTag("UnitAction");
     }
 
     /**
@@ -567,18 +597,25 @@ public class UnitAction {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        String attributes = "\"type\":" + type + "";
+        w.write("{\"type\":");
+        w.write(String.valueOf(type));
         if (type == TYPE_ATTACK_LOCATION) {
-            attributes += ", \"x\":" + x + ",\"y\":" + y;
+            w.write(", \"x\":");
+            w.write(String.valueOf(x));
+            w.write(",\"y\":");
+            w.write(String.valueOf(y));
         } else {
             if (parameter != DIRECTION_NONE) {
-                attributes += ", \"parameter\":" + parameter;
+                w.write(", \"parameter\":");
+                w.write(String.valueOf(parameter));
             }
             if (unitType != null) {
-                attributes += ", \"unitType\":\"" + unitType.name + "\"";
+                w.write(", \"unitType\":\"");
+                w.write(unitType.name);
+                w.write('"');
             }
         }
-        w.write("{" + attributes + "}");
+        w.write('}');
     }
 
     /**
@@ -708,45 +745,17 @@ public class UnitAction {
         return ua;
     }
 
+    /**
+     * Sets to 1 the elements of a mask corresponding to the actions a unit can
+     * execute (see {@link GameState#getValidActionMask(Unit, int[], int, int)})
+     * @param u
+     * @param gs
+     * @param utt
+     * @param mask
+     * @param maxAttackRange the side of the square of attack positions
+     * @param idxOffset
+     */
     public static void getValidActionArray(Unit u, GameState gs, UnitTypeTable utt, int[] mask, int maxAttackRange, int idxOffset) {
-        final List<UnitAction> uas = u.getUnitActions(gs);
-        int centerCoordinate = maxAttackRange / 2;
-        int numUnitTypes = utt.getUnitTypes().size();
-        for (UnitAction ua:uas) {
-            mask[idxOffset+ua.type] = 1;
-            switch (ua.type) {
-                case TYPE_NONE: {
-                    break;
-                }
-                case TYPE_MOVE: {
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+ua.parameter] = 1;
-                    break;
-                }
-                case TYPE_HARVEST: {
-                	// +4 offset --> slots for movement directions
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+4+ua.parameter] = 1;
-                    break;
-                }
-                case TYPE_RETURN: {
-                	// +4+4 offset --> slots for movement and harvest directions
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+4+4+ua.parameter] = 1;
-                    break;
-                }
-                case TYPE_PRODUCE: {
-                	// +4+4+4 offset --> slots for movement, harvest, and resource-return directions
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+4+4+4+ua.parameter] = 1;
-                    // +4+4+4+4 offset --> slots for movement, harvest, resource-return, and unit-produce directions
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+4+4+4+4+ua.unitType.ID] = 1;
-                    break;
-                }
-                case TYPE_ATTACK_LOCATION: {
-                    int relative_x = ua.x - u.getX();
-                    int relative_y = ua.y - u.getY();
-                    // +4+4+4+4 offset --> slots for movement, harvest, resource-return, and unit-produce directions
-                    mask[idxOffset+NUMBER_OF_ACTION_TYPES+4+4+4+4+numUnitTypes+(centerCoordinate+relative_y)*maxAttackRange+(centerCoordinate+relative_x)] = 1;
-                    break;
-                }
-            }
-        }
+        gs.getValidActionMask(u, mask, idxOffset, maxAttackRange);
     }
 }
@@ -0,0 +1,405 @@
+package rts;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Shared ("interned") instances of the {@link UnitAction}s of a {@link UnitTypeTable},
+ * and an encoding of UnitActions as ints.
+ *
+ * Since there is only a small number of different actions (type x direction x unit
+ * type, plus durations of "none" and positions of "attack"), the engine does not need
+ * to create a new UnitAction each time a unit can execute one: {@link Unit#getUnitActions(GameState)}
+ * and {@link GameState#issue(PlayerAction)} take them from the table of the game's
+ * UnitTypeTable ({@link UnitTypeTable#getUnitActionTable()}). Interned actions cannot
+ * cache their {@link ResourceUsage} (it depends on the position of the unit executing
+ * them), so the table caches it instead, by the position they use. This means that
+ * the ResourceUsage returned by {@link UnitAction#resourceUsage(Unit, PhysicalGameState)}
+ * is shared, and should not be modified (merge it into another one instead).
+ *
+ * The int codes are non-negative, and are laid out as follows (bits 0-2 are the type):
+ * <ul>
+ * <li> TYPE_NONE: bits 3-30 are the duration + 1 (so, durations go from -1 to 2^28-2)
+ * <li> TYPE_MOVE, TYPE_HARVEST, TYPE_RETURN: bits 3-5 are the direction + 1
+ * <li> TYPE_PRODUCE: bits 3-5 are the direction + 1, bits 6-30 are the ID of the unit type + 1
+ * <li> TYPE_ATTACK_LOCATION: bits 3-16 are x, bits 17-30 are y (from 0 to 16383)
+ * </ul>
+ * Two actions have the same code if and only if they are equal.
+ * The table is thread-safe, so games running in parallel can share it.
+ */
+public class UnitActionTable {
+    /**
+     * "none" actions with durations up to this one are created in advance,
+     * longer ones are created when requested (and not interned)
+     */
+    public static final int MAX_INTERNED_DURATION = 256;
+
+    /**
+     * Maximum coordinate of an encoded attack action
+     */
+    public static final int MAX_COORDINATE = (1 << 14) - 1;
+
+    static final int TYPE_BITS = 3;
+    static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    static final int DIRECTION_SHIFT = TYPE_BITS;
+    static final int DIRECTION_MASK = 7;
+    static final int UNIT_TYPE_SHIFT = 6;
+    static final int Y_SHIFT = 17;
+
+    /**
+     * ResourceUsage of the actions that use no positions nor resources
+     */
+    static final ResourceUsage NO_USAGE = new ResourceUsage();
+
+    final UnitTypeTable utt;
+    final int nUnitTypes;
+    final UnitAction none[];              // indexed by duration + 1
+    final UnitAction directional[][];     // indexed by type (move, harvest, return) and direction + 1
+    final UnitAction produce[][];         // indexed by unit type ID and direction + 1
+    final ConcurrentHashMap<Integer, UnitAction> attacks = new ConcurrentHashMap<>();
+
+    volatile UsageCache usageCache = null;
+
+    /**
+     * ResourceUsages of the moves and produce actions on a map of a given size
+     */
+    static class UsageCache {
+        final int width, height;
+        final AtomicReferenceArray<ResourceUsage> moves;   // indexed by the position used
+        final ConcurrentHashMap<Integer, ResourceUsage> produce = new ConcurrentHashMap<>();
+
+        UsageCache(int a_width, int a_height) {
+            width = a_width;
+            height = a_height;
+            moves = new AtomicReferenceArray<>(width * height);
+        }
+    }
+
+
+    /**
+     * Creates the table for the current unit types of utt. Use
+     * {@link UnitTypeTable#getUnitActionTable()} instead of creating new tables.
+     * @param a_utt
+     */
+    public UnitActionTable(UnitTypeTable a_utt) {
+        utt = a_utt;
+        nUnitTypes = utt.getUnitTypes().size();
+        none = new UnitAction[MAX_INTERNED_DURATION + 2];
+        for (int i = 0; i < none.length; i++) {
+            none[i] = intern(new UnitAction(UnitAction.TYPE_NONE, i - 1));
+        }
+        directional = new UnitAction[UnitAction.TYPE_RETURN + 1][5];
+        for (int type = UnitAction.TYPE_MOVE; type <= UnitAction.TYPE_RETURN; type++) {
+            for (int i = 0; i < 5; i++) {
+                directional[type][i] = intern(new UnitAction(type, i - 1));
+            }
+        }
+        produce = new UnitAction[nUnitTypes][5];
+        for (UnitType ut : utt.getUnitTypes()) {
+            for (int i = 0; i < 5; i++) {
+                produce[ut.ID][i] = intern(new UnitAction(UnitAction.TYPE_PRODUCE, i - 1, ut));
+            }
+        }
+    }
+
+    UnitAction intern(UnitAction ua) {
+        ua.table = this;
+        return ua;
+    }
+
+    /**
+     * Returns the UnitTypeTable of this table
+     * @return
+     */
+    public UnitTypeTable getUnitTypeTable() {
+        return utt;
+    }
+
+    /**
+     * Returns the number of unit types when the table was created
+     * @return
+     */
+    public int getNumberOfUnitTypes() {
+        return nUnitTypes;
+    }
+
+
+    /**
+     * Returns a "none" action of the given duration
+     * @param duration
+     * @return
+     */
+    public UnitAction none(int duration) {
+        if (duration >= -1 && duration <= MAX_INTERNED_DURATION) return none[duration + 1];
+        return new UnitAction(UnitAction.TYPE_NONE, duration);
+    }
+
+    /**
+     * Returns a move, harvest or return action in the given direction
+     * @param type
+     * @param direction
+     * @return
+     */
+    public UnitAction directional(int type, int direction) {
+        if (type >= UnitAction.TYPE_MOVE && type <= UnitAction.TYPE_RETURN &&
+            direction >= UnitAction.DIRECTION_NONE && direction <= UnitAction.DIRECTION_LEFT) {
+            return directional[type][direction + 1];
+        }
+        return new UnitAction(type, direction);
+    }
+
+    /**
+     * Returns an action to produce a unit of a given type in the given direction
+     * @param direction
+     * @param ut
+     * @return
+     */
+    public UnitAction produce(int direction, UnitType ut) {
+        if (ut != null && ut.ID >= 0 && ut.ID < nUnitTypes &&
+            direction >= UnitAction.DIRECTION_NONE && direction <= UnitAction.DIRECTION_LEFT) {
+            UnitAction ua = produce[ut.ID][direction + 1];
+            // the unit type might come from another UnitTypeTable:
+            if (ua.unitType == ut) return ua;
+        }
+        return new UnitAction(UnitAction.TYPE_PRODUCE, direction, ut);
+    }
+
+    /**
+     * Returns an action to attack a given position
+     * @param x
+     * @param y
+     * @return
+     */
+    public UnitAction attack(int x, int y) {
+        if (x < 0 || x > MAX_COORDINATE || y < 0 || y > MAX_COORDINATE) {
+            return new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, x, y);
+        }
+        Integer code = (y << Y_SHIFT) | (x << DIRECTION_SHIFT) | UnitAction.TYPE_ATTACK_LOCATION;
+        UnitAction ua = attacks.get(code);
+        if (ua == null) {
+            ua = intern(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, x, y));
+            UnitAction previous = attacks.putIfAbsent(code, ua);
+            if (previous != null) ua = previous;
+        }
+        return ua;
+    }
+
+
+    /**
+     * Returns the interned action equal to ua (or ua itself if it cannot be interned)
+     * @param ua
+     * @return
+     */
+    public UnitAction get(UnitAction ua) {
+        if (ua.table == this) return ua;
+        switch (ua.type) {
+            case UnitAction.TYPE_NONE:
+                return (ua.parameter >= -1 && ua.parameter <= MAX_INTERNED_DURATION ? none[ua.parameter + 1] : ua);
+            case UnitAction.TYPE_MOVE:
+            case UnitAction.TYPE_HARVEST:
+            case UnitAction.TYPE_RETURN:
+                return (ua.parameter >= UnitAction.DIRECTION_NONE && ua.parameter <= UnitAction.DIRECTION_LEFT ?
+                        directional[ua.type][ua.parameter + 1] : ua);
+            case UnitAction.TYPE_PRODUCE: {
+                UnitAction ua2 = produce(ua.parameter, ua.unitType);
+                return (ua2.table == this ? ua2 : ua);
+            }
+            case UnitAction.TYPE_ATTACK_LOCATION: {
+                UnitAction ua2 = attack(ua.x, ua.y);
+                return (ua2.table == this ? ua2 : ua);
+            }
+        }
+        return ua;
+    }
+
+
+    /**
+     * Returns the code of an action
+     * @param ua
+     * @return
+     * @throws IllegalArgumentException if the action cannot be encoded
+     */
+    public static int encode(UnitAction ua) {
+        return encode(ua.type, ua.parameter, ua.x, ua.y, (ua.unitType == null ? -1 : ua.unitType.ID));
+    }
+
+    /**
+     * Returns the code of an action given its fields (the ones not used by
+     * the type of action are ignored)
+     * @param type
+     * @param parameter direction, or duration for "none" actions
+     * @param x
+     * @param y
+     * @param unitTypeID -1 if there is no unit type
+     * @return
+     * @throws IllegalArgumentException if the action cannot be encoded
+     */
+    public static int encode(int type, int parameter, int x, int y, int unitTypeID) {
+        switch (type) {
+            case UnitAction.TYPE_NONE:
+                if (parameter < -1 || parameter > (1 << 28) - 2) break;
+                return ((parameter + 1) << DIRECTION_SHIFT) | type;
+            case UnitAction.TYPE_MOVE:
+            case UnitAction.TYPE_HARVEST:
+            case UnitAction.TYPE_RETURN:
+                if (parameter < UnitAction.DIRECTION_NONE || parameter > UnitAction.DIRECTION_LEFT) break;
+                return ((parameter + 1) << DIRECTION_SHIFT) | type;
+            case UnitAction.TYPE_PRODUCE:
+                if (parameter < UnitAction.DIRECTION_NONE || parameter > UnitAction.DIRECTION_LEFT) break;
+                if (unitTypeID < -1 || unitTypeID > (1 << 25) - 2) break;
+                return ((unitTypeID + 1) << UNIT_TYPE_SHIFT) | ((parameter + 1) << DIRECTION_SHIFT) | type;
+            case UnitAction.TYPE_ATTACK_LOCATION:
+                if (x < 0 || x > MAX_COORDINATE || y < 0 || y > MAX_COORDINATE) break;
+                return (y << Y_SHIFT) | (x << DIRECTION_SHIFT) | type;
+        }
+        throw new IllegalArgumentException("UnitActionTable.encode: cannot encode action of type " + type +
+                                           " (parameter " + parameter + ", x " + x + ", y " + y + ", unit type " + unitTypeID + ")");
+    }
+
+    /**
+     * Returns the (interned, when possible) action with the given code
+     * @param code
+     * @return
+     */
+    public UnitAction decode(int code) {
+        int type = getType(code);
+        switch (type) {
+            case UnitAction.TYPE_NONE:
+                return none(getParameter(code));
+            case UnitAction.TYPE_MOVE:
+            case UnitAction.TYPE_HARVEST:
+            case UnitAction.TYPE_RETURN:
+                return directional[type][((code >>> DIRECTION_SHIFT) & DIRECTION_MASK)];
+            case UnitAction.TYPE_PRODUCE: {
+                int ID = getUnitTypeID(code);
+                return produce(getParameter(code), (ID == -1 ? null : utt.getUnitType(ID)));
+            }
+            case UnitAction.TYPE_ATTACK_LOCATION:
+                return attack(getX(code), getY(code));
+        }
+        throw new IllegalArgumentException("UnitActionTable.decode: invalid code " + code);
+    }
+
+    /**
+     * Returns the type of the action with the given code
+     * @param code
+     * @return
+     */
+    public static int getType(int code) {
+        return code & TYPE_MASK;
+    }
+
+    /**
+     * Returns the direction (or the duration, for "none" actions) of the
+     * action with the given code
+     * @param code
+     * @return
+     */
+    public static int getParameter(int code) {
+        switch (code & TYPE_MASK) {
+            case UnitAction.TYPE_NONE:
+                return (code >>> DIRECTION_SHIFT) - 1;
+            case UnitAction.TYPE_ATTACK_LOCATION:
+                return UnitAction.DIRECTION_NONE;
+            default:
+                return ((code >>> DIRECTION_SHIFT) & DIRECTION_MASK) - 1;
+        }
+    }
+
+    /**
+     * Returns the x coordinate of an attack action (0 for other actions)
+     * @param code
+     * @return
+     */
+    public static int getX(int code) {
+        if ((code & TYPE_MASK) != UnitAction.TYPE_ATTACK_LOCATION) return 0;
+        return (code >>> DIRECTION_SHIFT) & MAX_COORDINATE;
+    }
+
+    /**
+     * Returns the y coordinate of an attack action (0 for other actions)
+     * @param code
+     * @return
+     */
+    public static int getY(int code) {
+        if ((code & TYPE_MASK) != UnitAction.TYPE_ATTACK_LOCATION) return 0;
+        return (code >>> Y_SHIFT) & MAX_COORDINATE;
+    }
+
+    /**
+     * Returns the ID of the unit type of a produce action (-1 for other actions)
+     * @param code
+     * @return
+     */
+    public static int getUnitTypeID(int code) {
+        if ((code & TYPE_MASK) != UnitAction.TYPE_PRODUCE) return -1;
+        return (code >>> UNIT_TYPE_SHIFT) - 1;
+    }
+
+
+    /**
+     * Returns the resources used by the action with the given code, when executed by u
+     * (the returned object is shared, and should not be modified)
+     * @param code
+     * @param u
+     * @param pgs
+     * @return
+     */
+    public ResourceUsage resourceUsage(int code, Unit u, PhysicalGameState pgs) {
+        return resourceUsage(decode(code), u, pgs);
+    }
+
+    /**
+     * Returns the resources used by an interned action
+     * @param ua
+     * @param u
+     * @param pgs
+     * @return
+     */
+    ResourceUsage resourceUsage(UnitAction ua, Unit u, PhysicalGameState pgs) {
+        if (ua.type != UnitAction.TYPE_MOVE && ua.type != UnitAction.TYPE_PRODUCE) return NO_USAGE;
+        int width = pgs.getWidth();
+        int height = pgs.getHeight();
+        int pos = u.getX() + u.getY() * width;
+        if (ua.parameter >= 0 && ua.parameter < UnitAction.DIRECTION_OFFSET_X.length) {
+            pos += UnitAction.DIRECTION_OFFSET_X[ua.parameter] + UnitAction.DIRECTION_OFFSET_Y[ua.parameter] * width;
+        }
+        if (pos < 0 || pos >= width * height) {
+            // outside of the map (the action is not legal), so it is not cached:
+            return newUsage(ua, u, pos);
+        }
+        UsageCache cache = usageCache;
+        if (cache == null || cache.width != width || cache.height != height) {
+            cache = new UsageCache(width, height);
+            usageCache = cache;
+        }
+        ResourceUsage ru;
+        if (ua.type == UnitAction.TYPE_MOVE) {
+            ru = cache.moves.get(pos);
+            if (ru == null) {
+                ru = newUsage(ua, u, pos);
+                cache.moves.set(pos, ru);
+            }
+        } else {
+            Integer key = ((pos * nUnitTypes + ua.unitType.ID) << 1) + u.getPlayer();
+            ru = cache.produce.get(key);
+            // (the cost of the unit type might have been changed)
+            if (ru == null || ru.resourcesUsed[u.getPlayer()] != ua.unitType.cost) {
+                ru = newUsage(ua, u, pos);
+                cache.produce.put(key, ru);
+            }
+        }
+        return ru;
+    }
+
+    static ResourceUsage newUsage(UnitAction ua, Unit u, int pos) {
+        ResourceUsage ru = new ResourceUsage();
+        if (ua.type == UnitAction.TYPE_PRODUCE) ru.resourcesUsed[u.getPlayer()] += ua.unitType.cost;
+        ru.positionsUsed.add(pos);
+        return ru;
+    }
+}
@@ -0,0 +1,97 @@
+package rts;
+
+import rts.units.Unit;
+
+/**
+ * The keys of the Zobrist hash of a {@link GameState} (see
+ * {@link GameState#getHash()}). The hash of a state is the XOR of the keys of
+ * its units, of its unit action assignments and of its players, so it can be
+ * updated incrementally when any of them changes.
+ *
+ * Instead of tables of random numbers (which would need to be sized for the
+ * largest map, hit points, resources, etc.), each key is a pseudo-random
+ * function of the features it represents (the "splitmix64" finalizer), which
+ * has the same properties for hashing purposes.
+ */
+public class Zobrist {
+
+    static final long UNIT = 0x9E3779B97F4A7C15L;
+    static final long ASSIGNMENT = 0xC2B2AE3D27D4EB4FL;
+    static final long PLAYER = 0x165667B19E3779F9L;
+    static final long TIME = 0xD6E8FEB86659FD93L;
+    static final long SALT = 0x94D049BB133111EBL;
+
+    /**
+     * Mixes the bits of a number, so that similar inputs give unrelated outputs
+     *
+     * @param z
+     * @return
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The key of a unit: its type, owner, position, hit points and resources
+     * (but not its ID, so that the same units produced in a different order
+     * hash the same)
+     *
+     * @param u
+     * @return
+     */
+    public static long unitKey(Unit u) {
+        long a = ((long) u.getType().ID << 48) ^ ((long) (u.getPlayer() + 1) << 40)
+               ^ ((long) u.getX() << 20) ^ u.getY();
+        long b = ((long) u.getHitPoints() << 32) ^ (u.getResources() & 0xffffffffL);
+        return mix(mix(UNIT ^ a) + b);
+    }
+
+    /**
+     * The key of an action assignment: the position of the unit, the action
+     * (see {@link UnitActionTable#encode(UnitAction)}) and the time at which
+     * it will complete
+     *
+     * @param uaa
+     * @return
+     */
+    public static long assignmentKey(UnitActionAssignment uaa) {
+        Unit u = uaa.unit;
+        long a = ((long) u.getX() << 32) ^ u.getY();
+        long b = ((long) UnitActionTable.encode(uaa.action) << 32)
+               ^ ((uaa.time + uaa.action.ETA(u)) & 0xffffffffL);
+        return mix(mix(ASSIGNMENT ^ a) + b);
+    }
+
+    /**
+     * The key of the resources of a player
+     *
+     * @param p
+     * @return
+     */
+    public static long playerKey(Player p) {
+        return mix(PLAYER ^ ((long) p.getID() << 32) ^ (p.getResources() & 0xffffffffL));
+    }
+
+    /**
+     * The key of a game time (or of a time bucket)
+     *
+     * @param time
+     * @return
+     */
+    public static long timeKey(int time) {
+        return mix(TIME ^ time);
+    }
+
+    /**
+     * An additional key to tell apart otherwise equal states (e.g., which
+     * player is to move in a search tree)
+     *
+     * @param value
+     * @return
+     */
+    public static long saltKey(int value) {
+        return mix(SALT ^ value);
+    }
+}
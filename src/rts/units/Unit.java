@@ -13,6 +13,7 @@ import rts.GameState;
 import rts.PhysicalGameState;
 import rts.Player;
 import rts.UnitAction;
+import rts.UnitActionTable;
 import util.XMLWriter;
 
 /**
@@ -33,6 +34,28 @@ public class Unit implements Serializable {
      */
     public static long next_ID = 0;
 
+    /**
+     * Returns a new unit ID (incrementing {@link #next_ID}). It is synchronized,
+     * since units can be created by several threads (e.g., games played in
+     * parallel), and two units of the same game must not share an ID
+     *
+     * @return
+     */
+    public static synchronized long newID() {
+        return next_ID++;
+    }
+
+    /**
+     * Makes sure that {@link #newID()} does not return an ID already used
+     *
+     * @param ID
+     */
+    public static synchronized void reserveID(long ID) {
+        if (ID >= next_ID) {
+            next_ID = ID + 1;
+        }
+    }
+
     /**
      * The unique identifier of this unit
      */
@@ -77,9 +100,7 @@ public class Unit implements Serializable {
         resources = a_resources;
         hitpoints = a_type.hp;
         ID = a_ID;
-        if (ID >= next_ID) {
-            next_ID = ID + 1;
-        }
+        reserveID(ID);
     }
 
     /**
@@ -99,7 +120,7 @@ public class Unit implements Serializable {
         y = a_y;
         resources = a_resources;
         hitpoints = a_type.hp;
-        ID = next_ID++;
+        ID = newID();
     }
 
     /**
@@ -117,7 +138,7 @@ public class Unit implements Serializable {
         y = a_y;
         resources = 0;
         hitpoints = a_type.hp;
-        ID = next_ID++;
+        ID = newID();
     }
 
     /**
@@ -384,41 +405,28 @@ public class Unit implements Serializable {
 
         PhysicalGameState pgs = s.getPhysicalGameState();
         Player p = pgs.getPlayer(player);
+        UnitActionTable table = s.getUnitTypeTable().getUnitActionTable();
 
         // retrieves units around me
-        Unit uup = null, uright = null, udown = null, uleft = null;
-        for (Unit u : pgs.getUnits()) {
-            if (u.x == x) {
-                if (u.y == y - 1) {
-                    uup = u;
-                } else if (u.y == y + 1) {
-                    udown = u;
-                }
-            } else {
-                if (u.y == y) {
-                    if (u.x == x - 1) {
-                        uleft = u;
-                    } else if (u.x == x + 1) {
-                        uright = u;
-                    }
-                }
-            }
-        }
+        Unit uup = pgs.getUnitAt(x, y - 1);
+        Unit uright = pgs.getUnitAt(x + 1, y);
+        Unit udown = pgs.getUnitAt(x, y + 1);
+        Unit uleft = pgs.getUnitAt(x - 1, y);
 
         // if this unit can attack, adds an attack action for each unit around it
         if (type.canAttack) {
             if (type.attackRange == 1) {
                 if (y > 0 && uup != null && uup.player != player && uup.player >= 0) {
-                    l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, uup.x, uup.y));
+                    l.add(table.attack(uup.x, uup.y));
                 }
                 if (x < pgs.getWidth() - 1 && uright != null && uright.player != player && uright.player >= 0) {
-                    l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, uright.x, uright.y));
+                    l.add(table.attack(uright.x, uright.y));
                 }
                 if (y < pgs.getHeight() - 1 && udown != null && udown.player != player && udown.player >= 0) {
-                    l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, udown.x, udown.y));
+                    l.add(table.attack(udown.x, udown.y));
                 }
                 if (x > 0 && uleft != null && uleft.player != player && uleft.player >= 0) {
-                    l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, uleft.x, uleft.y));
+                    l.add(table.attack(uleft.x, uleft.y));
                 }
             } else {
                 int sqrange = type.attackRange * type.attackRange;
@@ -429,7 +437,7 @@ public class Unit implements Serializable {
                     int sq_dx = (u.x - x) * (u.x - x);
                     int sq_dy = (u.y - y) * (u.y - y);
                     if (sq_dx + sq_dy <= sqrange) {
-                        l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, u.x, u.y));
+                        l.add(table.attack(u.x, u.y));
                     }
                 }
             }
@@ -441,31 +449,31 @@ public class Unit implements Serializable {
             // harvest:
             if (resources == 0) {
                 if (y > 0 && uup != null && uup.type.isResource) {
-                    l.add(new UnitAction(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_UP));
+                    l.add(table.directional(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_UP));
                 }
                 if (x < pgs.getWidth() - 1 && uright != null && uright.type.isResource) {
-                    l.add(new UnitAction(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_RIGHT));
+                    l.add(table.directional(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_RIGHT));
                 }
                 if (y < pgs.getHeight() - 1 && udown != null && udown.type.isResource) {
-                    l.add(new UnitAction(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_DOWN));
+                    l.add(table.directional(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_DOWN));
                 }
                 if (x > 0 && uleft != null && uleft.type.isResource) {
-                    l.add(new UnitAction(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_LEFT));
+                    l.add(table.directional(UnitAction.TYPE_HARVEST, UnitAction.DIRECTION_LEFT));
                 }
             }
             // return:
             if (resources > 0) {
                 if (y > 0 && uup != null && uup.type.isStockpile && uup.player == player) {
-                    l.add(new UnitAction(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_UP));
+                    l.add(table.directional(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_UP));
                 }
                 if (x < pgs.getWidth() - 1 && uright != null && uright.type.isStockpile && uright.player == player) {
-                    l.add(new UnitAction(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_RIGHT));
+                    l.add(table.directional(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_RIGHT));
                 }
                 if (y < pgs.getHeight() - 1 && udown != null && udown.type.isStockpile && udown.player == player) {
-                    l.add(new UnitAction(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_DOWN));
+                    l.add(table.directional(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_DOWN));
                 }
                 if (x > 0 && uleft != null && uleft.type.isStockpile && uleft.player == player) {
-                    l.add(new UnitAction(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_LEFT));
+                    l.add(table.directional(UnitAction.TYPE_RETURN, UnitAction.DIRECTION_LEFT));
                 }
             }
         }
@@ -480,16 +488,16 @@ public class Unit implements Serializable {
                 int tleft = (x > 0 ? pgs.getTerrain(x - 1, y) : PhysicalGameState.TERRAIN_WALL);
 
                 if (tup == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x, y - 1) == null) {
-                    l.add(new UnitAction(UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_UP, ut));
+                    l.add(table.produce(UnitAction.DIRECTION_UP, ut));
                 }
                 if (tright == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x + 1, y) == null) {
-                    l.add(new UnitAction(UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_RIGHT, ut));
+                    l.add(table.produce(UnitAction.DIRECTION_RIGHT, ut));
                 }
                 if (tdown == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x, y + 1) == null) {
-                    l.add(new UnitAction(UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_DOWN, ut));
+                    l.add(table.produce(UnitAction.DIRECTION_DOWN, ut));
                 }
                 if (tleft == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x - 1, y) == null) {
-                    l.add(new UnitAction(UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_LEFT, ut));
+                    l.add(table.produce(UnitAction.DIRECTION_LEFT, ut));
                 }
             }
         }
@@ -502,21 +510,21 @@ public class Unit implements Serializable {
             int tleft = (x > 0 ? pgs.getTerrain(x - 1, y) : PhysicalGameState.TERRAIN_WALL);
 
             if (tup == PhysicalGameState.TERRAIN_NONE && uup == null) {
-                l.add(new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP));
+                l.add(table.directional(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP));
             }
             if (tright == PhysicalGameState.TERRAIN_NONE && uright == null) {
-                l.add(new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT));
+                l.add(table.directional(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT));
             }
             if (tdown == PhysicalGameState.TERRAIN_NONE && udown == null) {
-                l.add(new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN));
+                l.add(table.directional(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN));
             }
             if (tleft == PhysicalGameState.TERRAIN_NONE && uleft == null) {
-                l.add(new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT));
+                l.add(table.directional(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT));
             }
         }
 
         // units can always stay idle:
-        l.add(new UnitAction(UnitAction.TYPE_NONE, noneDuration));
+        l.add(table.none(noneDuration));
 
         return l;
     }
@@ -555,17 +563,17 @@ public class Unit implements Serializable {
      * @param w
      */
     public void toxml(XMLWriter w) {
-        w.tagWithAttributes(
-                this.getClass().getName(), "type=\"" + type.name + "\" "
-                + "ID=\"" + ID + "\" "
-                + "player=\"" + player + "\" "
-                + "x=\"" + x + "\" "
-                + "y=\"" + y + "\" "
-                + "resources=\"" + resources + "\" "
-                + "hitpoints=\"" + hitpoints + "\" "
-        );
-
-        w.tag("/" + this.getClass().getName());
+        String tagname = this.getClass().getName();
+        w.startTagWithAttributes(tagname);
+        w.attribute("type", type.name);
+        w.attribute("ID", ID);
+        w.attribute("player", player);
+        w.attribute("x", x);
+        w.attribute("y", y);
+        w.attribute("resources", resources);
+        w.attribute("hitpoints", hitpoints);
+        w.endAttributes();
+        w.closeTag(tagname);
     }
 
     /**
@@ -575,16 +583,21 @@ public class Unit implements Serializable {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        w.write(
-                "{\"type\":\"" + type.name + "\", "
-                + "\"ID\":" + ID + ", "
-                + "\"player\":" + player + ", "
-                + "\"x\":" + x + ", "
-                + "\"y\":" + y + ", "
-                + "\"resources\":" + resources + ", "
-                + "\"hitpoints\":" + hitpoints
-                + "}"
-        );
+        w.write("{\"type\":\"");
+        w.write(type.name);
+        w.write("\", \"ID\":");
+        w.write(String.valueOf(ID));
+        w.write(", \"player\":");
+        w.write(String.valueOf(player));
+        w.write(", \"x\":");
+        w.write(String.valueOf(x));
+        w.write(", \"y\":");
+        w.write(String.valueOf(y));
+        w.write(", \"resources\":");
+        w.write(String.valueOf(resources));
+        w.write(", \"hitpoints\":");
+        w.write(String.valueOf(hitpoints));
+        w.write('}');
     }
 
     /**
@@ -604,9 +617,7 @@ public class Unit implements Serializable {
         String hitpointsStr = e.getAttributeValue("hitpoints");
 
         long ID = Long.parseLong(IDStr);
-        if (ID >= next_ID) {
-            next_ID = ID + 1;
-        }
+        reserveID(ID);
         UnitType type = utt.getUnitType(typeName);
         int player = Integer.parseInt(playerStr);
         int x = Integer.parseInt(xStr);
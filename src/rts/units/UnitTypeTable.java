@@ -11,6 +11,7 @@ import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
+import rts.UnitActionTable;
 import util.XMLWriter;
 
 /**
@@ -65,6 +66,11 @@ public class UnitTypeTable  {
      * Which move conflict resolution is being adopted
      */
     int moveConflictResolutionStrategy = MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH;
+    
+    /**
+     * The interned unit actions of these unit types (created when first needed)
+     */
+    volatile UnitActionTable unitActionTable = null;
         
     /**
      * Creates a UnitTypeTable with version {@link #VERSION_ORIGINAL} and
@@ -326,6 +332,20 @@ public class UnitTypeTable  {
         return unitTypes;
     }
     
+    /**
+     * Returns the table with the interned unit actions of these unit types
+     * (which is created again if unit types were added since the last call)
+     * @return
+     */
+    public UnitActionTable getUnitActionTable() {
+        UnitActionTable table = unitActionTable;
+        if (table == null || table.getNumberOfUnitTypes() != unitTypes.size()) {
+            table = new UnitActionTable(this);
+            unitActionTable = table;
+        }
+        return table;
+    }
+    
     /**
      * Returns the integer corresponding to the move conflict resolution strategy in use
      * @return
@@ -10,7 +10,14 @@ import ai.core.AI;
 import ai.core.ParameterSpecification;
 import ai.mcts.informedmcts.InformedNaiveMCTS;
 import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.naivemcts.ParallelNaiveMCTS;
+import ai.mcts.uct.PooledUCT;
+import ai.mcts.uct.UCT;
+import ai.minimax.ABCD.ParallelIDABCD;
+import ai.minimax.RTMiniMax.ParallelIDRTMinimax;
 import ai.montecarlo.lsi.LSI;
+import ai.montecarlo.lsi.ParallelLSI;
+import ai.portfolio.portfoliogreedysearch.ParallelPGSAI;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -35,8 +42,15 @@ public class AIComplianceTest {
     public static void main(String args[]) {
         complianceTest(WorkerRush.class);
         complianceTest(NaiveMCTS.class);
+        complianceTest(ParallelNaiveMCTS.class);
         complianceTest(InformedNaiveMCTS.class);
+        complianceTest(UCT.class);
+        complianceTest(PooledUCT.class);
         complianceTest(LSI.class);
+        complianceTest(ParallelLSI.class);
+        complianceTest(ParallelPGSAI.class);
+        complianceTest(ParallelIDABCD.class);
+        complianceTest(ParallelIDRTMinimax.class);
     }
     
     
@@ -0,0 +1,411 @@
+package tests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.core.AI;
+import ai.reward.RewardFunctionInterface;
+import rts.GameState;
+import rts.PartiallyObservableGameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.TraceEntry;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * A vectorized client like {@link JNIGridnetVecClient} (self-play environments
+ * followed by environments of a JNI agent vs. a Java bot), intended for running
+ * hundreds of environments at once:
+ * - the environments are stepped in parallel, in a pool of threads.
+ * - observations, rewards, dones and action masks are not returned as Java
+ *   arrays, but written into direct buffers (in native byte order) allocated
+ *   once, which the Python side can read without copying them:
+ *   - observations: int [env][feature map][Y][X] (see {@link GameState#getVectorObservation(int)})
+ *   - masks: int [env][Y][X][mask] (see {@link JNIGridnetClient#getMasks(int)})
+ *   - rewards: double [env][reward function]
+ *   - dones: byte [env][reward function] (1 if done)
+ *
+ * All the maps must have the same size. Each environment uses its own instances
+ * of the reward functions (created with their constructor without parameters),
+ * since they store the last reward computed.
+ */
+public class JNIGridnetParallelVecClient {
+
+    public int maxSteps;
+    public int[] envSteps;
+    public RewardFunctionInterface[] rfs;
+    public UnitTypeTable utt;
+    boolean partialObs = false;
+    public String[] mapPaths;
+
+    public int numEnvs;
+    public int width, height;
+    public int numFeatureMaps;
+    public int maskSize;
+    public int maxAttackRadius;
+
+    ByteBuffer observationBuffer, maskBuffer, rewardBuffer, doneBuffer;
+    IntBuffer observations, masks;
+    DoubleBuffer rewards;
+
+    Game[] games;
+    ExecutorService pool;
+    int numThreads;
+    List<Callable<Object>> tasks = new ArrayList<>();
+    AtomicInteger nextGame = new AtomicInteger();
+
+    // arguments of the step being run by the threads:
+    int[][][] stepActions;
+    int[] stepPlayers;
+    boolean resetting = false;
+
+    /**
+     * One game: a self-play game (two environments), or a game of a JNI agent vs.
+     * a Java bot (one environment)
+     */
+    class Game {
+        int env;                // index of the (first) environment
+        String mapPath;
+        AI ai2;                 // null in self-play games
+        RewardFunctionInterface[] rfs;
+        GameState gs;
+        int[] mask;
+        // [environment of the game] cells whose mask was set in the last step:
+        int[][] maskCells;
+        int[] maskCellCount = new int[2];
+
+        Game(int a_env, String a_mapPath, AI a_ai2) throws Exception {
+            env = a_env;
+            mapPath = a_mapPath;
+            ai2 = a_ai2;
+            rfs = new RewardFunctionInterface[JNIGridnetParallelVecClient.this.rfs.length];
+            for (int i = 0; i < rfs.length; i++) {
+                rfs[i] = JNIGridnetParallelVecClient.this.rfs[i].getClass().getDeclaredConstructor().newInstance();
+            }
+            mask = new int[maskSize];
+            maskCells = new int[2][width * height];
+        }
+
+        boolean selfPlay() {
+            return ai2 == null;
+        }
+
+        void reset(int[] players) throws Exception {
+            if (ai2 != null) {
+                ai2 = ai2.clone();
+                ai2.reset();
+            }
+            gs = new GameState(PhysicalGameState.load(mapPath, utt), utt);
+            for (int k = 0; k < (selfPlay() ? 2 : 1); k++) {
+                envSteps[env + k] = 0;
+                for (int i = 0; i < rfs.length; i++) {
+                    rewards.put((env + k) * rfs.length + i, 0);
+                    doneBuffer.put((env + k) * rfs.length + i, (byte) 0);
+                }
+            }
+            writeObservationsAndMasks(players);
+        }
+
+        void step(int[][][] actions, int[] players) throws Exception {
+            if (selfPlay()) {
+                TraceEntry te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
+                for (int player = 0; player < 2; player++) {
+                    PlayerAction pa = PlayerAction.fromVectorAction(actions[env + player], playerState(player), utt, player, maxAttackRadius);
+                    pa.fillWithNones(gs, player, 1);
+                    gs.issueSafe(pa);
+                    te.addPlayerAction(pa.clone());
+                }
+                gs.cycle();
+                for (int player = 0; player < 2; player++) {
+                    computeRewards(env + player, player, te);
+                }
+            } else {
+                int player = players[env];
+                PlayerAction pa1 = PlayerAction.fromVectorAction(actions[env], playerState(player), utt, player, maxAttackRadius);
+                pa1.fillWithNones(gs, player, 1);
+                PlayerAction pa2;
+                try {
+                    pa2 = ai2.getAction(1 - player, playerState(1 - player));
+                } catch (final Exception e) {
+                    System.out.println("AI crash on map: " + mapPath);
+                    e.printStackTrace(System.out);
+                    throw e;
+                }
+                gs.issueSafe(pa1);
+                gs.issueSafe(pa2);
+                TraceEntry te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
+                te.addPlayerAction(pa1.clone());
+                te.addPlayerAction(pa2.clone());
+                if (gs.cycle()) {
+                    ai2.gameOver(gs.winner());
+                }
+                computeRewards(env, player, te);
+            }
+
+            boolean done = false;
+            for (int k = 0; k < (selfPlay() ? 2 : 1); k++) {
+                envSteps[env + k]++;
+                if (doneBuffer.get((env + k) * rfs.length) != 0 || envSteps[env + k] >= maxSteps) done = true;
+            }
+            if (done) {
+                // start a new game, but keep the rewards and dones of the last step:
+                if (ai2 != null) {
+                    ai2 = ai2.clone();
+                    ai2.reset();
+                }
+                gs = new GameState(PhysicalGameState.load(mapPath, utt), utt);
+                for (int k = 0; k < (selfPlay() ? 2 : 1); k++) {
+                    envSteps[env + k] = 0;
+                    doneBuffer.put((env + k) * rfs.length, (byte) 1);
+                }
+            }
+            writeObservationsAndMasks(players);
+        }
+
+        GameState playerState(int player) {
+            if (partialObs) return new PartiallyObservableGameState(gs, player);
+            return gs;
+        }
+
+        void computeRewards(int e, int player, TraceEntry te) {
+            for (int i = 0; i < rfs.length; i++) {
+                rfs[i].computeReward(player, 1 - player, te, gs);
+                rewards.put(e * rfs.length + i, rfs[i].getReward());
+                doneBuffer.put(e * rfs.length + i, (byte) (rfs[i].isDone() ? 1 : 0));
+            }
+        }
+
+        void writeObservationsAndMasks(int[] players) {
+            for (int k = 0; k < (selfPlay() ? 2 : 1); k++) {
+                int player = selfPlay() ? k : players[env];
+                playerState(player).getVectorObservation(player, observations, (env + k) * numFeatureMaps * height * width);
+                writeMasks(k, player);
+            }
+        }
+
+        void writeMasks(int k, int player) {
+            int offset = (env + k) * height * width * maskSize;
+            // only the cells set in the previous step need to be cleared:
+            for (int i = 0; i < maskCellCount[k]; i++) {
+                for (int j = 0; j < maskSize; j++) masks.put(maskCells[k][i] + j, 0);
+            }
+            maskCellCount[k] = 0;
+            for (Unit u : gs.getPhysicalGameState().getUnits()) {
+                if (u.getPlayer() == player && gs.getActionAssignment(u) == null) {
+                    Arrays.fill(mask, 0);
+                    mask[0] = 1;
+                    gs.getValidActionMask(u, mask, 1, maxAttackRadius);
+                    int cell = offset + (u.getY() * width + u.getX()) * maskSize;
+                    for (int j = 0; j < maskSize; j++) masks.put(cell + j, mask[j]);
+                    maskCells[k][maskCellCount[k]++] = cell;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param a_num_selfplayenvs Should be a multiple of 2. The number of
+     * 	self-play environments (JNI vs. JNI) that will be run is half of this,
+     * 	since each environment facilitates two agents.
+     * @param a_num_envs The number of environments in which a JNI agent plays
+     * 	against a Java bot.
+     * @param a_max_steps Maximum duration (in frames) per environment.
+     * @param a_rfs Reward functions we want to use to compute rewards at every step.
+     * @param a_micrortsPath Path for the microrts root directory (with Java code and maps).
+     * @param a_mapPaths Paths (under microrts root dir) for maps to load (as in
+     * 	{@link JNIGridnetVecClient}). All of them must have the same size.
+     * @param a_ai2s Java bots to use in the JNI agent vs. Java bot environments.
+     * @param a_utt
+     * @param partial_obs
+     * @param a_num_threads Number of threads to step the environments with (if
+     * 	0, the number of available processors).
+     * @throws Exception
+     */
+    public JNIGridnetParallelVecClient(int a_num_selfplayenvs, int a_num_envs, int a_max_steps, RewardFunctionInterface[] a_rfs, String a_micrortsPath, String[] a_mapPaths,
+            AI[] a_ai2s, UnitTypeTable a_utt, boolean partial_obs, int a_num_threads) throws Exception {
+        maxSteps = a_max_steps;
+        utt = a_utt;
+        rfs = a_rfs;
+        partialObs = partial_obs;
+        mapPaths = a_mapPaths;
+        numEnvs = a_num_selfplayenvs + a_num_envs;
+        envSteps = new int[numEnvs];
+        maxAttackRadius = utt.getMaxAttackRange() * 2 + 1;
+        maskSize = 1+6+4+4+4+4+utt.getUnitTypes().size()+maxAttackRadius*maxAttackRadius;
+
+        String[] paths = new String[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            paths[i] = mapPaths[i];
+            if (a_micrortsPath.length() != 0) paths[i] = Paths.get(a_micrortsPath, mapPaths[i]).toString();
+            if (i % 2 == 1 && i < a_num_selfplayenvs) continue;
+            PhysicalGameState pgs = PhysicalGameState.load(paths[i], utt);
+            if (i == 0) {
+                width = pgs.getWidth();
+                height = pgs.getHeight();
+                GameState gs = new GameState(pgs, utt);
+                if (partialObs) gs = new PartiallyObservableGameState(gs, 0);
+                numFeatureMaps = gs.getNumVectorObservationFeatureMaps();
+            } else if (pgs.getWidth() != width || pgs.getHeight() != height) {
+                throw new IllegalArgumentException("All the maps must have the same size, but " + mapPaths[i] + " is " +
+                        pgs.getWidth() + "x" + pgs.getHeight() + " instead of " + width + "x" + height);
+            }
+        }
+
+        // initialize storage
+        observationBuffer = ByteBuffer.allocateDirect(numEnvs * numFeatureMaps * height * width * 4).order(ByteOrder.nativeOrder());
+        maskBuffer = ByteBuffer.allocateDirect(numEnvs * height * width * maskSize * 4).order(ByteOrder.nativeOrder());
+        rewardBuffer = ByteBuffer.allocateDirect(numEnvs * rfs.length * 8).order(ByteOrder.nativeOrder());
+        doneBuffer = ByteBuffer.allocateDirect(numEnvs * rfs.length).order(ByteOrder.nativeOrder());
+        observations = observationBuffer.asIntBuffer();
+        masks = maskBuffer.asIntBuffer();
+        rewards = rewardBuffer.asDoubleBuffer();
+
+        // initialize games
+        games = new Game[a_num_selfplayenvs / 2 + a_num_envs];
+        for (int i = 0; i < a_num_selfplayenvs / 2; i++) {
+            games[i] = new Game(i * 2, paths[i * 2], null);
+        }
+        for (int i = 0; i < a_num_envs; i++) {
+            games[a_num_selfplayenvs / 2 + i] = new Game(a_num_selfplayenvs + i, paths[a_num_selfplayenvs + i], a_ai2s[i]);
+        }
+
+        numThreads = a_num_threads > 0 ? a_num_threads : Runtime.getRuntime().availableProcessors();
+        numThreads = Math.min(numThreads, games.length);
+        if (numThreads > 1) {
+            pool = Executors.newFixedThreadPool(numThreads, r -> {
+                Thread t = new Thread(r, "JNIGridnetParallelVecClient");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        for (int i = 0; i < numThreads; i++) {
+            tasks.add(() -> {
+                runGames();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Constructor using as many threads as available processors
+     */
+    public JNIGridnetParallelVecClient(int a_num_selfplayenvs, int a_num_envs, int a_max_steps, RewardFunctionInterface[] a_rfs, String a_micrortsPath, String[] a_mapPaths,
+            AI[] a_ai2s, UnitTypeTable a_utt, boolean partial_obs) throws Exception {
+        this(a_num_selfplayenvs, a_num_envs, a_max_steps, a_rfs, a_micrortsPath, a_mapPaths, a_ai2s, a_utt, partial_obs, 0);
+    }
+
+    /**
+     * Buffer with the observations: int [env][feature map][Y][X]
+     * @return
+     */
+    public ByteBuffer getObservationBuffer() {
+        return observationBuffer;
+    }
+
+    /**
+     * Buffer with the action masks of the player each environment is stepped for:
+     * int [env][Y][X][mask]
+     * @return
+     */
+    public ByteBuffer getMaskBuffer() {
+        return maskBuffer;
+    }
+
+    /**
+     * Buffer with the rewards of the last step: double [env][reward function]
+     * @return
+     */
+    public ByteBuffer getRewardBuffer() {
+        return rewardBuffer;
+    }
+
+    /**
+     * Buffer with whether the environments are done after the last step: byte
+     * [env][reward function]
+     * @return
+     */
+    public ByteBuffer getDoneBuffer() {
+        return doneBuffer;
+    }
+
+    /**
+     * Starts new games in all the environments, and writes their observations and
+     * masks into the buffers (with zero rewards and dones)
+     *
+     * @param players the player controlled by the JNI agent in each environment
+     * 	(ignored in self-play environments)
+     * @throws Exception
+     */
+    public void reset(int[] players) throws Exception {
+        resetting = true;
+        stepPlayers = players;
+        run();
+    }
+
+    /**
+     * Steps all the environments, and writes the new observations, rewards, dones
+     * and masks into the buffers. The environments that finish (or reach
+     * the maximum number of steps) are reset: their dones are set, and their
+     * observations and masks are those of the new game.
+     *
+     * @param action actions of each environment (as in {@link JNIGridnetVecClient#gameStep(int[][][], int[])})
+     * @param players the player controlled by the JNI agent in each environment
+     * 	(ignored in self-play environments)
+     * @throws Exception
+     */
+    public void gameStep(int[][][] action, int[] players) throws Exception {
+        resetting = false;
+        stepActions = action;
+        stepPlayers = players;
+        run();
+    }
+
+    void runGames() throws Exception {
+        for (int i = nextGame.getAndIncrement(); i < games.length; i = nextGame.getAndIncrement()) {
+            if (resetting) {
+                games[i].reset(stepPlayers);
+            } else {
+                games[i].step(stepActions, stepPlayers);
+            }
+        }
+    }
+
+    void run() throws Exception {
+        nextGame.set(0);
+        if (pool == null) {
+            runGames();
+            return;
+        }
+        for (Future<Object> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof Exception) throw (Exception) t;
+                if (t instanceof Error) throw (Error) t;
+                throw e;
+            }
+        }
+    }
+
+    public void close() throws Exception {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tests;
+
+import ai.abstraction.WorkerRush;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.minimax.ABCD.IDABCD;
+import ai.minimax.ABCD.ParallelIDABCD;
+import ai.minimax.RTMiniMax.IDRTMinimax;
+import ai.minimax.RTMiniMax.ParallelIDRTMinimax;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+import tests.rts.GameStateCloneBenchmark;
+
+/**
+ * Reports the deepest search that IDABCD and IDRTMinimax (depth in plies, and
+ * lookahead in cycles, respectively) complete within a 100ms frame, and the
+ * same for ParallelIDABCD and ParallelIDRTMinimax at 1, 4 and 8 threads (or
+ * the threads given as arguments). Each configuration searches for
+ * BENCHMARK_FRAMES frames from the same early-game state of the 8x8, 16x16 and
+ * 32x32 basesWorkers maps (after WARMUP_FRAMES frames with another instance).
+ */
+public class ParallelAlphaBetaBenchmark {
+
+    public static final int CYCLES_BEFORE_SEARCH = 50;
+    public static final int TIME_BUDGET = 100;
+    public static final int WARMUP_FRAMES = 10;
+    public static final int BENCHMARK_FRAMES = 20;
+
+    public static void main(String args[]) throws Exception {
+        int threads[] = {1, 4, 8};
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++) threads[i] = Integer.parseInt(args[i]);
+        }
+        UnitTypeTable utt = new UnitTypeTable();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " available processors");
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_SEARCH);
+            System.out.println(map + "\tIDABCD\t\t\tdepth " + maxDepth(gs, newIDABCD(utt, 0)));
+            for (int n : threads) {
+                System.out.println(map + "\tParallelIDABCD\t" + n + " threads\tdepth " + maxDepth(gs, newIDABCD(utt, n)));
+            }
+            System.out.println(map + "\tIDRTMinimax\t\t\tlookahead " + maxDepth(gs, newIDRTMinimax(0)));
+            for (int n : threads) {
+                System.out.println(map + "\tParallelIDRTMinimax\t" + n + " threads\tlookahead " + maxDepth(gs, newIDRTMinimax(n)));
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * IDABCD, or ParallelIDABCD with the given threads (if more than 0)
+     */
+    static IDABCD newIDABCD(UnitTypeTable utt, int threads) {
+        AI playoutAI = new WorkerRush(utt, new AStarPathFinding());
+        if (threads <= 0) return new IDABCD(TIME_BUDGET, -1, playoutAI, 100, new SimpleSqrtEvaluationFunction3(), false);
+        return new ParallelIDABCD(TIME_BUDGET, -1, playoutAI, 100, new SimpleSqrtEvaluationFunction3(), false, 0, threads);
+    }
+
+    /**
+     * IDRTMinimax, or ParallelIDRTMinimax with the given threads (if more than 0)
+     */
+    static IDRTMinimax newIDRTMinimax(int threads) {
+        if (threads <= 0) return new IDRTMinimax(TIME_BUDGET, new SimpleSqrtEvaluationFunction3());
+        return new ParallelIDRTMinimax(TIME_BUDGET, new SimpleSqrtEvaluationFunction3(), threads);
+    }
+
+    /**
+     * Searches from gs for WARMUP_FRAMES frames, and then for BENCHMARK_FRAMES
+     * frames with a clone of ai, returning the deepest search the clone completed
+     */
+    public static int maxDepth(GameState gs, AI ai) throws Exception {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            ai.getAction(0, gs);
+        }
+        AI ai2 = ai.clone();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            ai2.getAction(0, gs);
+        }
+        if (ai2 instanceof IDABCD) return ((IDABCD)ai2).getMaxDepth();
+        return ((IDRTMinimax)ai2).getMaxDepth();
+    }
+}
@@ -0,0 +1,82 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.NaiveMCTS;
+import ai.montecarlo.lsi.LSI;
+import ai.montecarlo.lsi.ParallelLSI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays LSI and ParallelLSI (at 4 threads, or the number given as the first
+ * argument) with the same simulation budget against NaiveMCTS, alternating
+ * the starting positions, and reports the score of each against it (wins
+ * count 1 and ties 0.5) together with the mean time LSI spends per action.
+ * Since both search with the same budget, the scores should only differ by
+ * the noise of the number of games played. Whether the threads reduce the
+ * time per action depends on the processors available, which are printed
+ * with the results.
+ */
+public class ParallelLSIBenchmark {
+
+    public static final String MAP = "maps/8x8/basesWorkers8x8.xml";
+    public static final int SIMULATION_BUDGET = 500;
+    public static final int LOOKAHEAD = 100;   // the default of LSI
+    public static final int MAX_CYCLES = 3000;
+    public static final int GAMES = 20;
+
+    public static void main(String args[]) throws Exception {
+        int threads = (args.length > 0 ? Integer.parseInt(args[0]) : 4);
+        int games = (args.length > 1 ? Integer.parseInt(args[1]) : GAMES);
+        UnitTypeTable utt = new UnitTypeTable();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " available processors");
+        for (int t : new int[]{1, threads}) {
+            double score = 0;
+            long time = 0;
+            int actions = 0;
+            for (int game = 0; game < games; game++) {
+                LSI lsi = (t == 1 ? newLSI(utt) : newParallelLSI(utt, t));
+                AI opponent = new NaiveMCTS(-1, SIMULATION_BUDGET, LOOKAHEAD, 10, 0.3f, 0.0f, 0.4f,
+                                            new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                int player = game % 2;
+                GameState gs = new GameState(PhysicalGameState.load(MAP, utt), utt);
+                boolean gameover = false;
+                do {
+                    long start = System.nanoTime();
+                    PlayerAction pa1 = lsi.getAction(player, gs);
+                    if (!pa1.isEmpty()) {
+                        time += System.nanoTime() - start;
+                        actions++;
+                    }
+                    PlayerAction pa2 = opponent.getAction(1 - player, gs);
+                    gs.issueSafe(pa1);
+                    gs.issueSafe(pa2);
+                    gameover = gs.cycle();
+                } while (!gameover && gs.getTime() < MAX_CYCLES);
+                if (gs.winner() == player) score += 1;
+                if (gs.winner() == -1) score += 0.5;
+            }
+            System.out.println((t == 1 ? "LSI" : "ParallelLSI " + t + " threads") + "\t"
+                    + String.format("score %.2f", score / games) + " over " + games + " games\t"
+                    + String.format("%.2f ms/action", time / 1000000.0 / actions));
+        }
+        System.exit(0);
+    }
+
+    static LSI newLSI(UnitTypeTable utt) {
+        LSI lsi = new LSI(utt);
+        lsi.setIterationsBudget(SIMULATION_BUDGET);
+        return lsi;
+    }
+
+    static LSI newParallelLSI(UnitTypeTable utt, int threads) {
+        ParallelLSI lsi = new ParallelLSI(utt);
+        lsi.setIterationsBudget(SIMULATION_BUDGET);
+        lsi.setThreads(threads);
+        return lsi;
+    }
+}
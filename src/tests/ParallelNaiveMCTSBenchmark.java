@@ -0,0 +1,63 @@
+package tests;
+
+import ai.mcts.naivemcts.ParallelNaiveMCTS;
+import ai.mcts.naivemcts.ParallelNaiveMCTS.Parallelization;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+import tests.rts.GameStateCloneBenchmark;
+
+/**
+ * Reports how the number of playouts per second of ParallelNaiveMCTS scales
+ * from 1 to N threads (by default, the number of available processors, or
+ * the first argument), with root and with tree parallelization. Each
+ * configuration searches from the same mid-game state of the 8x8, 16x16 and
+ * 32x32 basesWorkers maps for several frames.
+ */
+public class ParallelNaiveMCTSBenchmark {
+
+    public static final int CYCLES_BEFORE_SEARCH = 200;
+    public static final int TIME_BUDGET = 100;
+    public static final int WARMUP_FRAMES = 10;
+    public static final int BENCHMARK_FRAMES = 30;
+
+    public static void main(String args[]) throws Exception {
+        int maxThreads = (args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors());
+        UnitTypeTable utt = new UnitTypeTable();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " available processors");
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_SEARCH);
+            for (Parallelization p : Parallelization.values()) {
+                double base = 0;
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    double playouts = playoutsPerSecond(gs, utt, threads, p);
+                    if (threads == 1) base = playouts;
+                    System.out.println(map + "\t" + p + "\t" + threads + " threads\t"
+                            + (int)playouts + " playouts/s\t"
+                            + String.format("%.2f", playouts / base) + "x");
+                    if (threads < maxThreads && threads * 2 > maxThreads) threads = maxThreads / 2;
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Searches from gs for WARMUP_FRAMES + BENCHMARK_FRAMES frames, returning
+     * the playouts per second of the last BENCHMARK_FRAMES
+     */
+    public static double playoutsPerSecond(GameState gs, UnitTypeTable utt, int threads, Parallelization p) throws Exception {
+        ParallelNaiveMCTS ai = new ParallelNaiveMCTS(utt);
+        ai.setTimeBudget(TIME_BUDGET);
+        ai.setThreads(threads);
+        ai.setParallelization(p);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            ai.getAction(0, gs);
+        }
+        ai.total_runs = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            ai.getAction(0, gs);
+        }
+        return ai.total_runs * 1000.0 / (System.currentTimeMillis() - start);
+    }
+}
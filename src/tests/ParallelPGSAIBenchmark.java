@@ -0,0 +1,65 @@
+package tests;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.portfolio.portfoliogreedysearch.PGSAI;
+import ai.portfolio.portfoliogreedysearch.ParallelPGSAI;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+import tests.rts.GameStateCloneBenchmark;
+
+/**
+ * Reports how many improvement passes of Portfolio Greedy Search (the calls to
+ * PGSAI.improve: I iterations over all the units of one player, done 1 + 2R
+ * times per action) fit in 100ms with PGSAI and with ParallelPGSAI at 1, 4 and
+ * 8 threads (or the threads given as arguments). Each configuration searches
+ * without budget (so, all the passes are completed) from the same mid-game
+ * state of the 8x8, 16x16 and 32x32 basesWorkers maps.
+ */
+public class ParallelPGSAIBenchmark {
+
+    public static final int CYCLES_BEFORE_SEARCH = 200;
+    public static final int LOOKAHEAD = 100;
+    public static final int I = 1;
+    public static final int R = 1;
+    public static final int WARMUP_FRAMES = 10;
+    public static final int BENCHMARK_FRAMES = 20;
+
+    public static void main(String args[]) throws Exception {
+        int threads[] = {1, 4, 8};
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++) threads[i] = Integer.parseInt(args[i]);
+        }
+        UnitTypeTable utt = new UnitTypeTable();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " available processors");
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_SEARCH);
+            double base = passesIn100ms(gs, new PGSAI(-1, -1, LOOKAHEAD, I, R, new SimpleSqrtEvaluationFunction3(), utt, new AStarPathFinding()));
+            System.out.println(map + "\tPGSAI\t\t" + String.format("%.2f", base) + " passes in 100ms");
+            for (int n : threads) {
+                double passes = passesIn100ms(gs, new ParallelPGSAI(-1, -1, LOOKAHEAD, I, R, new SimpleSqrtEvaluationFunction3(), utt, new AStarPathFinding(), n));
+                System.out.println(map + "\tParallelPGSAI\t" + n + " threads\t"
+                        + String.format("%.2f", passes) + " passes in 100ms\t"
+                        + String.format("%.2f", passes / base) + "x");
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Searches from gs for WARMUP_FRAMES + BENCHMARK_FRAMES frames, returning
+     * the improvement passes per 100ms of the last BENCHMARK_FRAMES
+     */
+    public static double passesIn100ms(GameState gs, PGSAI ai) throws Exception {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            ai.getAction(0, gs);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            ai.getAction(0, gs);
+        }
+        double ms = (System.nanoTime() - start) / 1000000.0;
+        return BENCHMARK_FRAMES * (1 + 2 * R) * 100 / ms;
+    }
+}
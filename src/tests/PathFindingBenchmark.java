@@ -0,0 +1,157 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.BFSPathFinding;
+import ai.abstraction.pathfinding.BucketAStarPathFinding;
+import ai.abstraction.pathfinding.DistanceFieldPathFinding;
+import ai.abstraction.pathfinding.FloodFillPathFinding;
+import ai.abstraction.pathfinding.HPAStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import ai.core.AI;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Compares how many path queries per second AStarPathFinding, BucketAStarPathFinding,
+ * BFSPathFinding, FloodFillPathFinding, DistanceFieldPathFinding and HPAStarPathFinding
+ * answer on all the maps in "maps/" (or on the maps given as arguments). In each map, a game between two
+ * RandomBiasedAIs is played for a few cycles, and then all the path finders answer the
+ * same queries: paths from random units to random positions, with range 0 or 1 (like
+ * "move" and "attack"/"harvest").
+ *
+ * Note that FloodFillPathFinding and DistanceFieldPathFinding cache distance maps, and all
+ * the queries of a map are done on the same cycle (so, after the warmup, they only pay for
+ * looking them up).
+ */
+public class PathFindingBenchmark {
+
+    public static final int CYCLES_BEFORE_QUERIES = 100;
+    public static final int QUERIES = 200;
+    public static final long JIT_WARMUP_TIME = 2000;
+    public static final long WARMUP_TIME = 100;
+    public static final long BENCHMARK_TIME = 300;
+
+    public static void main(String args[]) throws Exception {
+        List<String> maps = new ArrayList<>();
+        if (args.length > 0) {
+            for (String map : args) maps.add(map);
+        } else {
+            findMaps(new File("maps"), maps);
+            Collections.sort(maps);
+        }
+        UnitTypeTable utt = new UnitTypeTable();
+        PathFinding pathFinders[] = {new AStarPathFinding(), new BucketAStarPathFinding(),
+                                     new BFSPathFinding(), new FloodFillPathFinding(),
+                                     new DistanceFieldPathFinding(), new HPAStarPathFinding()};
+
+        // warm up the JIT before the first map:
+        GameState warmup = midGameState("maps/16x16/basesWorkers16x16.xml", utt);
+        for (PathFinding pf : pathFinders) {
+            run(pf.clone(), warmup, queries(warmup, new Random(0)), JIT_WARMUP_TIME);
+        }
+
+        System.out.print("map\tsize\tunits");
+        for (PathFinding pf : pathFinders) System.out.print("\t" + pf + " queries/s");
+        for (int i = 1; i < pathFinders.length; i++) System.out.print("\t" + pathFinders[i] + "/AStar");
+        System.out.println();
+        for (String map : maps) {
+            GameState gs = midGameState(map, utt);
+            if (gs == null || gs.getUnits().isEmpty()) continue;
+            List<Query> queries = queries(gs, new Random(map.hashCode()));
+            double results[] = new double[pathFinders.length];
+            for (int i = 0; i < pathFinders.length; i++) {
+                // a new instance for each map, since FloodFillPathFinding caches by game cycle:
+                PathFinding pf = pathFinders[i].clone();
+                run(pf, gs, queries, WARMUP_TIME);
+                results[i] = run(pf, gs, queries, BENCHMARK_TIME);
+            }
+            PhysicalGameState pgs = gs.getPhysicalGameState();
+            System.out.print(map + "\t" + pgs.getWidth() + "x" + pgs.getHeight() + "\t" + gs.getUnits().size());
+            for (double r : results) System.out.print("\t" + (int) r);
+            for (int i = 1; i < results.length; i++) System.out.print("\t" + String.format("%.2f", results[i] / results[0]) + "x");
+            System.out.println();
+        }
+    }
+
+    static class Query {
+        Unit unit;
+        int target;
+        int range;
+
+        Query(Unit a_unit, int a_target, int a_range) {
+            unit = a_unit;
+            target = a_target;
+            range = a_range;
+        }
+    }
+
+    /**
+     * Loads a map and plays CYCLES_BEFORE_QUERIES cycles with random AIs, returning null
+     * if the map cannot be loaded with this unit type table
+     */
+    public static GameState midGameState(String map, UnitTypeTable utt) throws Exception {
+        GameState gs;
+        try {
+            gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        } catch (Exception e) {
+            return null;
+        }
+        AI ai1 = new RandomBiasedAI();
+        AI ai2 = new RandomBiasedAI();
+        for (int i = 0; i < CYCLES_BEFORE_QUERIES && !gs.gameover(); i++) {
+            gs.issueSafe(ai1.getAction(0, gs));
+            gs.issueSafe(ai2.getAction(1, gs));
+            gs.cycle();
+        }
+        return gs;
+    }
+
+    static List<Query> queries(GameState gs, Random r) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        List<Unit> units = gs.getUnits();
+        List<Query> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            Unit u = units.get(r.nextInt(units.size()));
+            queries.add(new Query(u, r.nextInt(pgs.getWidth() * pgs.getHeight()), r.nextInt(2)));
+        }
+        return queries;
+    }
+
+    /**
+     * Runs the queries for the given amount of milliseconds, returning the number of
+     * queries per second
+     */
+    static double run(PathFinding pf, GameState gs, List<Query> queries, long time) {
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (Query q : queries) {
+                pf.findPathToPositionInRange(q.unit, q.target, q.range, gs, null);
+            }
+            count += queries.size();
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+
+    static void findMaps(File folder, List<String> maps) {
+        File files[] = folder.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (f.isDirectory()) {
+                findMaps(f, maps);
+            } else if (f.getName().endsWith(".xml")) {
+                maps.add(f.getPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.uct.PooledUCT;
+import ai.mcts.uct.UCT;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+import tests.rts.GameStateCloneBenchmark;
+
+/**
+ * Compares UCT with PooledUCT (keeping the states of all the nodes, and only
+ * that of the root) searching for TIME_BUDGET ms per decision from the same
+ * state of the 8x8, 16x16 and 32x32 basesWorkers maps: for each, it reports
+ * the playouts per decision, the heap used right after the search (after a
+ * full collection, so only what the tree keeps alive), and the time spent in
+ * the garbage collector per decision. PooledUCT is also run with a budget of
+ * SMALL_TREE_NODES nodes, so that it has to prune its tree.
+ */
+public class PooledUCTBenchmark {
+
+    public static final int CYCLES_BEFORE_SEARCH = 200;
+    public static final int TIME_BUDGET = 1000;
+    public static final int SMALL_TREE_NODES = 1000;
+    public static final int WARMUP_DECISIONS = 2;
+    public static final int DECISIONS = 5;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_SEARCH);
+            run(map, "UCT", gs, new UCT(TIME_BUDGET, -1, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3()));
+            run(map, "PooledUCT, storing states", gs, newPooledUCT(1000000, true));
+            run(map, "PooledUCT, computing states", gs, newPooledUCT(1000000, false));
+            run(map, "PooledUCT, " + SMALL_TREE_NODES + " nodes", gs, newPooledUCT(SMALL_TREE_NODES, false));
+        }
+        System.exit(0);
+    }
+
+
+    static PooledUCT newPooledUCT(int maxNodes, boolean storeStates) {
+        return new PooledUCT(TIME_BUDGET, -1, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), maxNodes, storeStates);
+    }
+
+
+    static void run(String map, String name, GameState gs, AI ai) throws Exception {
+        for (int i = 0; i < WARMUP_DECISIONS; i++) {
+            ai.getAction(0, gs);
+        }
+        ai.reset();
+        long runs0 = runs(ai);
+        long heap = 0;
+        long gcTime = 0;
+        for (int i = 0; i < DECISIONS; i++) {
+            long gc0 = gcTime();
+            ai.getAction(0, gs);
+            gcTime += gcTime() - gc0;
+            System.gc();
+            Runtime rt = Runtime.getRuntime();
+            heap = Math.max(heap, rt.totalMemory() - rt.freeMemory());
+        }
+        System.out.println(map + "\t" + name + "\t"
+                + String.format("%.1f playouts/decision", (runs(ai) - runs0) / (double)DECISIONS) + "\t"
+                + String.format("%.1f MB heap", heap / (1024.0 * 1024.0)) + "\t"
+                + String.format("%.1f ms GC/decision", gcTime / (double)DECISIONS));
+    }
+
+
+    static long runs(AI ai) {
+        if (ai instanceof PooledUCT) return ((PooledUCT)ai).total_runs;
+        return ((UCT)ai).total_runs;
+    }
+
+
+    static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,87 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.uct.UCT;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays NaiveMCTS and UCT reusing the tree of the previous search (with at most
+ * REUSED_TREE_SIZE nodes) against the same AI searching from scratch, with the
+ * same time budget and alternating the starting positions, and reports for
+ * each the effective playouts per decision (the visits of the root when the
+ * action is chosen: those of its own search plus those inherited from the
+ * previous ones) and the score of the one reusing the tree (wins count 1 and
+ * ties 0.5).
+ */
+public class TreeReuseBenchmark {
+
+    public static final String MAP = "maps/8x8/basesWorkers8x8.xml";
+    public static final int TIME_BUDGET = 100;
+    public static final int REUSED_TREE_SIZE = 10000;
+    public static final int MAX_CYCLES = 3000;
+    public static final int GAMES = 10;
+
+    public static void main(String args[]) throws Exception {
+        int games = (args.length > 0 ? Integer.parseInt(args[0]) : GAMES);
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String name : new String[]{"NaiveMCTS", "UCT"}) {
+            double score = 0;
+            long playouts[] = new long[2];
+            long reused[] = new long[2];
+            long actions[] = new long[2];
+            for (int game = 0; game < games; game++) {
+                AI ais[] = {newAI(name, REUSED_TREE_SIZE), newAI(name, 0)};
+                int player = game % 2;   // the one of the AI reusing the tree
+                GameState gs = new GameState(PhysicalGameState.load(MAP, utt), utt);
+                boolean gameover = false;
+                do {
+                    PlayerAction pa1 = ais[0].getAction(player, gs);
+                    PlayerAction pa2 = ais[1].getAction(1 - player, gs);
+                    gs.issueSafe(pa1);
+                    gs.issueSafe(pa2);
+                    gameover = gs.cycle();
+                } while (!gameover && gs.getTime() < MAX_CYCLES);
+                if (gs.winner() == player) score += 1;
+                if (gs.winner() == -1) score += 0.5;
+                for (int i = 0; i < 2; i++) {
+                    if (ais[i] instanceof NaiveMCTS) {
+                        NaiveMCTS ai = (NaiveMCTS)ais[i];
+                        playouts[i] += ai.total_runs;
+                        reused[i] += ai.total_reused_runs;
+                        actions[i] += ai.total_actions_issued;
+                    } else {
+                        UCT ai = (UCT)ais[i];
+                        playouts[i] += ai.total_runs;
+                        reused[i] += ai.total_reused_runs;
+                        actions[i] += ai.total_actions_issued;
+                    }
+                }
+            }
+            for (int i = 0; i < 2; i++) {
+                System.out.println(name + (i == 0 ? " reusing the tree" : " from scratch") + "\t"
+                        + String.format("%.1f playouts/decision", playouts[i] / (double)actions[i]) + "\t"
+                        + String.format("%.1f effective playouts/decision", (playouts[i] + reused[i]) / (double)actions[i]));
+            }
+            System.out.println(name + " reusing the tree\t" + String.format("score %.2f", score / games) + " over " + games + " games");
+        }
+        System.exit(0);
+    }
+
+    static AI newAI(String name, int reusedTreeSize) {
+        if (name.equals("NaiveMCTS")) {
+            NaiveMCTS ai = new NaiveMCTS(TIME_BUDGET, -1, 100, 10, 0.3f, 0.0f, 0.4f,
+                                         new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+            ai.setReusedTreeSize(reusedTreeSize);
+            return ai;
+        }
+        UCT ai = new UCT(TIME_BUDGET, -1, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3());
+        ai.setReusedTreeSize(reusedTreeSize);
+        return ai;
+    }
+}
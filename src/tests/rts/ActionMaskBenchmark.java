@@ -0,0 +1,161 @@
+package tests.rts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import rts.GameState;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures the throughput of the action masks of the Gridnet clients from
+ * mid-game states, with the mask kernel of GameState, and deriving the masks
+ * from the actions generated for each unit (Unit.getUnitActions), as the
+ * clients used to:
+ * - masks/s: masks of all the cells of the map for a player (most of the
+ *   time is spent clearing the cells without units).
+ * - units/s: masks of the units that can be assigned an action.
+ */
+public class ActionMaskBenchmark {
+
+    public static final String MAPS[] = {
+        "maps/16x16/basesWorkers16x16.xml",
+        "maps/basesWorkers32x32A.xml",
+    };
+
+    public static final int CYCLES_BEFORE_MASKS = 400;
+    public static final long WARMUP_TIME = 1000;
+    public static final long BENCHMARK_TIME = 3000;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String map : MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_MASKS);
+            runMasks(gs, true, WARMUP_TIME);
+            double kernel = runMasks(gs, true, BENCHMARK_TIME);
+            runMasks(gs, false, WARMUP_TIME);
+            double actions = runMasks(gs, false, BENCHMARK_TIME);
+            runUnits(gs, true, WARMUP_TIME);
+            double unitsKernel = runUnits(gs, true, BENCHMARK_TIME);
+            runUnits(gs, false, WARMUP_TIME);
+            double unitsActions = runUnits(gs, false, BENCHMARK_TIME);
+            System.out.println(map + "\t" + gs.getUnits().size() + " units\t"
+                    + (int)kernel + " masks/s (kernel)\t"
+                    + (int)actions + " masks/s (unit actions)\t"
+                    + String.format("%.2f", kernel / actions) + "x\t"
+                    + (int)unitsKernel + " units/s (kernel)\t"
+                    + (int)unitsActions + " units/s (unit actions)\t"
+                    + String.format("%.2f", unitsKernel / unitsActions) + "x");
+        }
+    }
+
+    /**
+     * Computes the masks of both players for the given amount of milliseconds,
+     * returning the number of masks per second
+     */
+    public static double runMasks(GameState gs, boolean kernel, long time) {
+        UnitTypeTable utt = gs.getUnitTypeTable();
+        int maxAttackRange = utt.getMaxAttackRange() * 2 + 1;
+        int cellSize = 1 + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 4 + utt.getUnitTypes().size() + maxAttackRange * maxAttackRange;
+        int width = gs.getPhysicalGameState().getWidth();
+        int masks[] = new int[gs.getPhysicalGameState().getHeight() * width * cellSize];
+        long count = 0;
+        long checksum = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (int player = 0; player < 2; player++) {
+                if (kernel) {
+                    gs.getValidActionMasks(player, masks, 0, maxAttackRange);
+                } else {
+                    unitActionMasks(gs, player, masks, maxAttackRange, cellSize);
+                }
+                checksum += masks[masks.length / 2];
+            }
+            count += 2;
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        if (checksum < 0) System.out.println(checksum);
+        return count * 1000.0 / (end - start);
+    }
+
+    /**
+     * Computes the masks of the units of both players that can be assigned an action
+     * for the given amount of milliseconds, returning the number of units per second
+     */
+    public static double runUnits(GameState gs, boolean kernel, long time) {
+        UnitTypeTable utt = gs.getUnitTypeTable();
+        int maxAttackRange = utt.getMaxAttackRange() * 2 + 1;
+        int mask[] = new int[UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 4 + utt.getUnitTypes().size() + maxAttackRange * maxAttackRange];
+        List<Unit> units = new ArrayList<>();
+        for (Unit u : gs.getUnits()) {
+            if (u.getPlayer() >= 0 && gs.getActionAssignment(u) == null) units.add(u);
+        }
+        long count = 0;
+        long checksum = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (Unit u : units) {
+                Arrays.fill(mask, 0);
+                if (kernel) {
+                    gs.getValidActionMask(u, mask, 0, maxAttackRange);
+                } else {
+                    unitActionMask(gs, u, mask, 0, maxAttackRange);
+                }
+                checksum += mask[UnitAction.TYPE_MOVE];
+            }
+            count += units.size();
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        if (checksum < 0) System.out.println(checksum);
+        return count * 1000.0 / (end - start);
+    }
+
+    /**
+     * The masks of a player derived from the actions of its units
+     */
+    static void unitActionMasks(GameState gs, int player, int masks[], int maxAttackRange, int cellSize) {
+        int width = gs.getPhysicalGameState().getWidth();
+        Arrays.fill(masks, 0);
+        for (Unit u : gs.getUnits()) {
+            if (u.getPlayer() != player || gs.getActionAssignment(u) != null) continue;
+            int cell = (u.getY() * width + u.getX()) * cellSize;
+            masks[cell] = 1;
+            unitActionMask(gs, u, masks, cell + 1, maxAttackRange);
+        }
+    }
+
+    /**
+     * The mask of a unit derived from its actions
+     */
+    static void unitActionMask(GameState gs, Unit u, int mask[], int offset, int maxAttackRange) {
+        int numUnitTypes = gs.getUnitTypeTable().getUnitTypes().size();
+        int center = maxAttackRange / 2;
+        List<UnitAction> uas = u.getUnitActions(gs);
+        for (UnitAction ua : uas) {
+            mask[offset + ua.getType()] = 1;
+            switch (ua.getType()) {
+                case UnitAction.TYPE_MOVE:
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + ua.getDirection()] = 1;
+                    break;
+                case UnitAction.TYPE_HARVEST:
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + 4 + ua.getDirection()] = 1;
+                    break;
+                case UnitAction.TYPE_RETURN:
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 2 + ua.getDirection()] = 1;
+                    break;
+                case UnitAction.TYPE_PRODUCE:
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 3 + ua.getDirection()] = 1;
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 4 + ua.getUnitType().ID] = 1;
+                    break;
+                case UnitAction.TYPE_ATTACK_LOCATION:
+                    mask[offset + UnitAction.NUMBER_OF_ACTION_TYPES + 4 * 4 + numUnitTypes
+                          + (center + ua.getLocationY() - u.getY()) * maxAttackRange
+                          + center + ua.getLocationX() - u.getX()] = 1;
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package tests.rts;
+
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how many times per second a mid-game GameState can be cloned, on
+ * maps of different sizes. The state of each map is obtained by letting two
+ * scripted AIs play for a number of cycles, so that it contains a realistic
+ * amount of units and action assignments. Clones deep-copy all the units, so
+ * their cost grows with the number of units.
+ */
+public class GameStateCloneBenchmark {
+
+    public static final String MAPS[] = {
+        "maps/8x8/basesWorkers8x8.xml",
+        "maps/16x16/basesWorkers16x16.xml",
+        "maps/basesWorkers32x32A.xml",
+    };
+
+    public static final int CYCLES_BEFORE_CLONING = 400;
+    public static final long WARMUP_TIME = 1000;
+    public static final long BENCHMARK_TIME = 3000;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String map : MAPS) {
+            GameState gs = midGameState(map, utt);
+            runClones(gs, WARMUP_TIME);
+            double clonesPerSecond = runClones(gs, BENCHMARK_TIME);
+            System.out.println(map + "\t" + gs.getUnits().size() + " units\t"
+                    + gs.getUnitActions().size() + " assignments\t"
+                    + (int)clonesPerSecond + " clones/s");
+        }
+    }
+
+    /**
+     * Plays a game between two scripted AIs for CYCLES_BEFORE_CLONING cycles
+     * (or until it is over)
+     */
+    public static GameState midGameState(String map, UnitTypeTable utt) throws Exception {
+        return midGameState(map, utt, CYCLES_BEFORE_CLONING);
+    }
+
+    /**
+     * Plays a game between two scripted AIs for the given number of cycles
+     * (or until it is over)
+     */
+    public static GameState midGameState(String map, UnitTypeTable utt, int cycles) throws Exception {
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI ai1 = new WorkerRush(utt);
+        AI ai2 = new LightRush(utt);
+        boolean gameover = false;
+        while (!gameover && gs.getTime() < cycles) {
+            gs.issueSafe(ai1.getAction(0, gs));
+            gs.issueSafe(ai2.getAction(1, gs));
+            gameover = gs.cycle();
+        }
+        return gs;
+    }
+
+    /**
+     * Clones the state for the given amount of milliseconds, returning the
+     * number of clones per second
+     */
+    public static double runClones(GameState gs, long time) {
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                gs.clone();
+            }
+            count += 1000;
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+}
@@ -0,0 +1,90 @@
+package tests.rts;
+
+import ai.RandomBiasedAI;
+import rts.ArrayGameState;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Compares how many RandomBiasedAI playouts per second can be run from a
+ * mid-game state with a regular GameState and with an ArrayGameState (which
+ * is what NaiveMCTS uses for this playout policy). Both include the cost of
+ * creating the state the playout starts from, and the ArrayGameState one also
+ * the conversion back to a GameState to evaluate the result.
+ */
+public class PlayoutBenchmark {
+
+    public static final int CYCLES_BEFORE_PLAYOUTS = 200;
+    public static final int PLAYOUT_LENGTH = 100;
+    public static final long WARMUP_TIME = 1000;
+    public static final long BENCHMARK_TIME = 3000;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_PLAYOUTS);
+            runGameStatePlayouts(gs, WARMUP_TIME);
+            double gameStatePlayouts = runGameStatePlayouts(gs, BENCHMARK_TIME);
+            runArrayPlayouts(gs, WARMUP_TIME);
+            double arrayPlayouts = runArrayPlayouts(gs, BENCHMARK_TIME);
+            System.out.println(map + "\t" + gs.getUnits().size() + " units\t"
+                    + (int)gameStatePlayouts + " GameState playouts/s\t"
+                    + (int)arrayPlayouts + " ArrayGameState playouts/s\t"
+                    + String.format("%.2f", arrayPlayouts / gameStatePlayouts) + "x");
+        }
+    }
+
+    /**
+     * Runs playouts on clones of gs for the given amount of milliseconds,
+     * returning the number of playouts per second
+     */
+    public static double runGameStatePlayouts(GameState gs, long time) throws Exception {
+        RandomBiasedAI policy = new RandomBiasedAI();
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            GameState gs2 = gs.clone();
+            boolean gameover = false;
+            do {
+                if (gs2.isComplete()) {
+                    gameover = gs2.cycle();
+                } else {
+                    gs2.issue(policy.getAction(0, gs2));
+                    gs2.issue(policy.getAction(1, gs2));
+                }
+            } while (!gameover && gs2.getTime() < gs.getTime() + PLAYOUT_LENGTH);
+            count++;
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+
+    /**
+     * Runs playouts on an ArrayGameState loaded from gs for the given amount
+     * of milliseconds, returning the number of playouts per second
+     */
+    public static double runArrayPlayouts(GameState gs, long time) {
+        RandomBiasedAI policy = new RandomBiasedAI();
+        ArrayGameState ags = new ArrayGameState(gs);
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            ags.load(gs);
+            boolean gameover = false;
+            do {
+                if (ags.isComplete()) {
+                    gameover = ags.cycle();
+                } else {
+                    policy.issueAction(0, ags);
+                    policy.issueAction(1, ags);
+                }
+            } while (!gameover && ags.getTime() < gs.getTime() + PLAYOUT_LENGTH);
+            ags.toGameState();
+            count++;
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+}
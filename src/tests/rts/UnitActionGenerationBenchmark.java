@@ -0,0 +1,134 @@
+package tests.rts;
+
+import java.util.ArrayList;
+import java.util.List;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerActionGenerator;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.UnitActionTable;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures the throughput of action generation from mid-game states:
+ * - units/s: generating the actions of every unit (Unit.getUnitActions) and
+ *   getting their ResourceUsage, with the interned actions the engine uses,
+ *   and with a copy of each action (one new object, and one new ResourceUsage,
+ *   per action, as when actions were not interned).
+ * - codes/s: encoding all those actions as ints and decoding them back.
+ * - generators/s: creating a PlayerActionGenerator for each player.
+ */
+public class UnitActionGenerationBenchmark {
+
+    public static final int CYCLES_BEFORE_GENERATION = 200;
+    public static final long WARMUP_TIME = 1000;
+    public static final long BENCHMARK_TIME = 3000;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        for (String map : GameStateCloneBenchmark.MAPS) {
+            GameState gs = GameStateCloneBenchmark.midGameState(map, utt, CYCLES_BEFORE_GENERATION);
+            runUnits(gs, false, WARMUP_TIME);
+            double interned = runUnits(gs, false, BENCHMARK_TIME);
+            runUnits(gs, true, WARMUP_TIME);
+            double copied = runUnits(gs, true, BENCHMARK_TIME);
+            runCodes(gs, WARMUP_TIME);
+            double codes = runCodes(gs, BENCHMARK_TIME);
+            runGenerators(gs, WARMUP_TIME);
+            double generators = runGenerators(gs, BENCHMARK_TIME);
+            System.out.println(map + "\t" + gs.getUnits().size() + " units\t"
+                    + (int)interned + " units/s (interned)\t"
+                    + (int)copied + " units/s (copied)\t"
+                    + String.format("%.2f", interned / copied) + "x\t"
+                    + (int)codes + " codes/s\t"
+                    + (int)generators + " generators/s");
+        }
+    }
+
+    /**
+     * Generates the actions of all the units (and their resource usage) for the
+     * given amount of milliseconds, returning the number of units per second
+     */
+    public static double runUnits(GameState gs, boolean copy, long time) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        List<Unit> units = playerUnits(gs);
+        long count = 0;
+        long positions = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (Unit u : units) {
+                for (UnitAction ua : u.getUnitActions(gs)) {
+                    if (copy) ua = new UnitAction(ua);
+                    ResourceUsage ru = ua.resourceUsage(u, pgs);
+                    positions += ru.getPositionsUsed().size();
+                }
+            }
+            count += units.size();
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        if (positions < 0) System.out.println(positions);
+        return count * 1000.0 / (end - start);
+    }
+
+    /**
+     * Returns the units that belong to a player (resources have no actions)
+     */
+    static List<Unit> playerUnits(GameState gs) {
+        List<Unit> units = new ArrayList<>();
+        for (Unit u : gs.getUnits()) {
+            if (u.getPlayer() >= 0) units.add(u);
+        }
+        return units;
+    }
+
+    /**
+     * Encodes and decodes the actions of all the units for the given amount of
+     * milliseconds, returning the number of actions per second
+     */
+    public static double runCodes(GameState gs, long time) {
+        UnitActionTable table = gs.getUnitTypeTable().getUnitActionTable();
+        int n = 0;
+        for (Unit u : playerUnits(gs)) n += u.getUnitActions(gs).size();
+        UnitAction actions[] = new UnitAction[n];
+        n = 0;
+        for (Unit u : playerUnits(gs)) {
+            for (UnitAction ua : u.getUnitActions(gs)) actions[n++] = new UnitAction(ua);
+        }
+        int codes[] = new int[n];
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (int i = 0; i < n; i++) codes[i] = UnitActionTable.encode(actions[i]);
+            for (int i = 0; i < n; i++) {
+                if (table.decode(codes[i]).getType() != actions[i].getType()) throw new Error("wrong code " + codes[i]);
+            }
+            count += n;
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+
+    /**
+     * Creates PlayerActionGenerators for both players for the given amount
+     * of milliseconds, returning the number of generators per second
+     */
+    public static double runGenerators(GameState gs, long time) throws Exception {
+        long count = 0;
+        long start = System.currentTimeMillis();
+        long end = start;
+        do {
+            for (int player = 0; player < 2; player++) {
+                if (gs.canExecuteAnyAction(player)) {
+                    new PlayerActionGenerator(gs, player);
+                    count++;
+                }
+            }
+            end = System.currentTimeMillis();
+        } while (end - start < time);
+        return count * 1000.0 / (end - start);
+    }
+}
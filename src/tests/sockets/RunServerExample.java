@@ -27,5 +27,7 @@ public class RunServerExample {
 //        XMLSocketWrapperAI.runServer(ai, port);
         JSONSocketWrapperAI.DEBUG = 1;
         JSONSocketWrapperAI.runServer(ai, port);
+//        BinarySocketWrapperAI.DEBUG = 1;
+//        BinarySocketWrapperAI.runServer(ai, port);
     }
 }
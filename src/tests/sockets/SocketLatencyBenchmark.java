@@ -0,0 +1,125 @@
+package tests.sockets;
+
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import ai.socket.BinarySocketWrapperAI;
+import ai.socket.JSONSocketWrapperAI;
+import ai.socket.SocketAI;
+import ai.socket.XMLSocketWrapperAI;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.Arrays;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures the time it takes a {@link SocketAI} to get an action from a server
+ * with each of the communication languages (XML, JSON and binary), in games
+ * of a remote WorkerRush against a local LightRush. The servers run in this
+ * same process, and the "local" rows are the same games with a local
+ * WorkerRush, which is the time spent by the AI itself (the rest of the time
+ * is spent sending and parsing the game states and actions).
+ *
+ * Notice that XMLSocketWrapperAI sends its actions in two writes, so, the XML
+ * times include the TCP delayed acknowledgement of the first one (around 40ms
+ * in Linux).
+ */
+public class SocketLatencyBenchmark {
+
+    public static final String MAPS[] = {
+        "maps/16x16/basesWorkers16x16.xml",
+        "maps/24x24/basesWorkers24x24.xml",
+        "maps/basesWorkers32x32A.xml",
+        "maps/GardenOfWar64x64.xml",
+    };
+
+    public static final int MAX_CYCLES = 3000;
+    public static final int PORT = 9898;
+
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        startServer(SocketAI.LANGUAGE_XML, new WorkerRush(utt), PORT + SocketAI.LANGUAGE_XML);
+        startServer(SocketAI.LANGUAGE_JSON, new WorkerRush(utt), PORT + SocketAI.LANGUAGE_JSON);
+        startServer(SocketAI.LANGUAGE_BINARY, new WorkerRush(utt), PORT + SocketAI.LANGUAGE_BINARY);
+
+        String names[] = {"local", "XML", "JSON", "binary"};
+        for (String map : MAPS) {
+            // warm up:
+            for (int language = 0; language <= SocketAI.LANGUAGE_BINARY; language++) {
+                play(map, language, utt, 200);
+            }
+            for (int language = 0; language <= SocketAI.LANGUAGE_BINARY; language++) {
+                long times[] = play(map, language, utt, MAX_CYCLES);
+                Arrays.sort(times);
+                double total = 0;
+                for (long t : times) total += t;
+                System.out.println(map + "\t" + names[language] + "\t" + times.length + " actions\t"
+                        + String.format("mean %.1f us\tmedian %.1f us\tp99 %.1f us",
+                                        total / times.length / 1000.0,
+                                        times[times.length / 2] / 1000.0,
+                                        times[(int)(times.length * 0.99)] / 1000.0));
+            }
+        }
+        // the servers do not finish by themselves:
+        System.exit(0);
+    }
+
+    static void startServer(int language, WorkerRush ai, int port) {
+        Thread server = new Thread(() -> {
+            try {
+                if (language == SocketAI.LANGUAGE_XML) {
+                    XMLSocketWrapperAI.runServer(ai, port);
+                } else if (language == SocketAI.LANGUAGE_JSON) {
+                    JSONSocketWrapperAI.runServer(ai, port);
+                } else {
+                    BinarySocketWrapperAI.runServer(ai, port);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+    }
+
+    /**
+     * Plays a game, returning the time (in nanoseconds) spent in each call to
+     * getAction of the remote AI (or a local one for language 0)
+     */
+    static long[] play(String map, int language, UnitTypeTable utt, int maxCycles) throws Exception {
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI ai1 = (language == 0 ? new WorkerRush(utt) :
+                  connect(language, utt));
+        AI ai2 = new LightRush(utt);
+        long times[] = new long[maxCycles];
+        int n = 0;
+        boolean gameover = false;
+        do {
+            long start = System.nanoTime();
+            PlayerAction pa1 = ai1.getAction(0, gs);
+            times[n++] = System.nanoTime() - start;
+            PlayerAction pa2 = ai2.getAction(1, gs);
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        } while (!gameover && gs.getTime() < maxCycles);
+        ai1.gameOver(gs.winner());
+        return Arrays.copyOf(times, n);
+    }
+
+    static SocketAI connect(int language, UnitTypeTable utt) throws Exception {
+        // the servers may not be listening yet:
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Socket socket = new Socket("127.0.0.1", PORT + language);
+                return SocketAI.createFromExistingSocket(100, 0, utt, language, true, false, socket);
+            } catch (ConnectException e) {
+                if (attempt >= 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import ai.core.AI;
 
 import java.io.File;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
 import rts.PhysicalGameState;
@@ -43,6 +44,39 @@ public class RoundRobinTournament extends Tournament{
                               Writer out,
                               Writer progress,
                               String folderForReadWriteFolders) throws Exception {
+        runTournament(playOnlyGamesInvolvingThisAI, maps, iterations, maxGameLength, timeBudget,
+                iterationsBudget, preAnalysisBudgetFirstTimeInAMap, preAnalysisBudgetRestOfTimes,
+                fullObservability, selfMatches, timeoutCheck, runGC, preAnalysis, utt, traceOutputfolder,
+                out, progress, folderForReadWriteFolders, 1);
+    }
+
+    /**
+     * Same as the other runTournament, but playing the matches in a pool of "threads"
+     * threads (one match per thread, so "threads" should not be larger than the number
+     * of cores for the time budgets to be respected). The output has the same format and
+     * order as when playing them sequentially. Each thread uses its own read/write folders,
+     * in folderForReadWriteFolders/threadN. The AIs are cloned for each match, so their 
+     * clone() methods must not share mutable state between clones.
+     */
+    public void runTournament(int playOnlyGamesInvolvingThisAI,
+                              List<String> maps,
+                              int iterations,
+                              int maxGameLength,
+                              int timeBudget,
+                              int iterationsBudget,
+                              long preAnalysisBudgetFirstTimeInAMap,
+                              long preAnalysisBudgetRestOfTimes,
+                              boolean fullObservability,
+                              boolean selfMatches,
+                              boolean timeoutCheck,
+                              boolean runGC,
+                              boolean preAnalysis,
+                              UnitTypeTable utt,
+                              String traceOutputfolder,
+                              Writer out,
+                              Writer progress,
+                              String folderForReadWriteFolders,
+                              int threads) throws Exception {
         if (progress != null) {
             progress.write(getClass().getName()+": Starting tournament\n");
         }
@@ -67,6 +101,30 @@ public class RoundRobinTournament extends Tournament{
         out.write("iteration\tmap\tai1\tai2\ttime\twinner\tcrashed\ttimedout\n");
         out.flush();
         
+        if (threads > 1) {
+            List<int[]> matches = new ArrayList<>();
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                for (int map_idx = 0; map_idx < maps.size(); map_idx++) {
+                    for (int ai1_idx = 0; ai1_idx < AIs.size(); ai1_idx++) {
+                        for (int ai2_idx = 0; ai2_idx < AIs.size(); ai2_idx++) {
+                            if (!selfMatches && ai1_idx == ai2_idx) continue;
+                            if (playOnlyGamesInvolvingThisAI != -1) {
+                                if (ai1_idx != playOnlyGamesInvolvingThisAI &&
+                                        ai2_idx != playOnlyGamesInvolvingThisAI) continue;
+                            }
+                            matches.add(new int[]{iteration, map_idx, ai1_idx, ai2_idx});
+                        }
+                    }
+                }
+            }
+            playGamesInParallel(matches, threads, maps, maxGameLength, timeBudget, iterationsBudget,
+                    preAnalysisBudgetFirstTimeInAMap, preAnalysisBudgetRestOfTimes, fullObservability,
+                    timeoutCheck, runGC, preAnalysis, utt, traceOutputfolder, out, progress,
+                    folderForReadWriteFolders);
+            printEndSummary(maps, iterations, out, progress);
+            return;
+        }
+
         // create all the read/write folders:
         String readWriteFolders[] = new String[AIs.size()];
         for(int i = 0;i<AIs.size();i++) {
@@ -17,9 +17,17 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -220,24 +228,26 @@ class Tournament {
         }
 
         int winner = -1;
-        if (crashed != -1) {
-            winner = 1 - crashed;
-            if (crashed == 0) {
-                this.AIcrashes[ai1_idx][ai2_idx]++;
-            }
-            if (crashed == 1) {
-                opponentAIcrashes[ai1_idx][ai2_idx]++;
-            }
-        } else if (timedout != -1) {
-            winner = 1 - timedout;
-            if (timedout == 0) {
-                this.AItimeout[ai1_idx][ai2_idx]++;
-            }
-            if (timedout == 1) {
-                this.opponentAItimeout[ai1_idx][ai2_idx]++;
+        synchronized (this) {
+            if (crashed != -1) {
+                winner = 1 - crashed;
+                if (crashed == 0) {
+                    this.AIcrashes[ai1_idx][ai2_idx]++;
+                }
+                if (crashed == 1) {
+                    opponentAIcrashes[ai1_idx][ai2_idx]++;
+                }
+            } else if (timedout != -1) {
+                winner = 1 - timedout;
+                if (timedout == 0) {
+                    this.AItimeout[ai1_idx][ai2_idx]++;
+                }
+                if (timedout == 1) {
+                    this.opponentAItimeout[ai1_idx][ai2_idx]++;
+                }
+            } else {
+                winner = gs.winner();
             }
-        } else {
-            winner = gs.winner();
         }
         ai1.gameOver(winner);
         ai2.gameOver(winner);
@@ -258,13 +268,89 @@ class Tournament {
             progress.flush();
         }
 
-        if (winner == -1) {
-            this.ties[ai1_idx][ai2_idx]++;
-        } else if (winner == 0) {
-            this.wins[ai1_idx][ai2_idx]++;
-        } else if (winner == 1) {
+        synchronized (this) {
+            if (winner == -1) {
+                this.ties[ai1_idx][ai2_idx]++;
+            } else if (winner == 0) {
+                this.wins[ai1_idx][ai2_idx]++;
+            } else if (winner == 1) {
+            }
+            accumTime[ai1_idx][ai2_idx] += gs.getTime();
+        }
+    }
+
+    /**
+     * Plays a list of matches, each one given as {iteration, map_idx, ai1_idx, ai2_idx}, 
+     * running one match per thread in a pool of "threads" threads. Since a match runs 
+     * entirely in one thread, with as many threads as cores the AIs get the same time 
+     * as when playing sequentially (as long as "runGC" is false, since each System.gc() 
+     * call pauses all the matches).
+     * 
+     * Each thread uses its own set of read/write folders (in 
+     * folderForReadWriteFolders/threadN), so matches running at the same time do not 
+     * share them. The lines of "out" and "progress" of each match are buffered, and 
+     * written in the order of the list.
+     */
+    void playGamesInParallel(List<int[]> matches, int threads, List<String> maps, 
+                             int maxGameLength, int timeBudget,
+                             int iterationsBudget, long preAnalysisBudgetFirstTimeInAMap,
+                             long preAnalysisBudgetRestOfTimes, boolean fullObservability,
+                             boolean timeoutCheck, boolean runGC, boolean preAnalysis,
+                             UnitTypeTable utt, String traceOutputfolder, Writer out,
+                             Writer progress, String folderForReadWriteFolders) throws Exception {
+        int nFolders = Math.max(AIs.size(), opponentAIs.size());
+        final BlockingQueue<Integer> freeThreadFolders = new ArrayBlockingQueue<>(threads);
+        final String readWriteFolders[][] = new String[threads][nFolders];
+        final boolean firstPreAnalysis[][][] = new boolean[threads][nFolders][maps.size()];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < nFolders; i++) {
+                readWriteFolders[t][i] = folderForReadWriteFolders + "/thread" + t + "/AI" + i + "readWriteFolder";
+                new File(readWriteFolders[t][i]).mkdirs();
+                Arrays.fill(firstPreAnalysis[t][i], true);
+            }
+            freeThreadFolders.add(t);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Writer[]>> results = new ArrayList<>();
+        for (final int[] match : matches) {
+            results.add(pool.submit(() -> {
+                Writer matchOut = new StringWriter();
+                Writer matchProgress = (progress == null ? null : new StringWriter());
+                int t = freeThreadFolders.take();
+                try {
+                    PhysicalGameState pgs = PhysicalGameState.load(maps.get(match[1]), utt);
+                    playSingleGame(maxGameLength, timeBudget, iterationsBudget,
+                            preAnalysisBudgetFirstTimeInAMap, preAnalysisBudgetRestOfTimes, fullObservability,
+                            timeoutCheck, runGC, preAnalysis, utt, traceOutputfolder, matchOut, matchProgress,
+                            readWriteFolders[t], firstPreAnalysis[t], match[0], match[1], pgs, match[2], match[3]);
+                } finally {
+                    freeThreadFolders.add(t);
+                }
+                return new Writer[]{matchOut, matchProgress};
+            }));
+        }
+        pool.shutdown();
+
+        try {
+            for (Future<Writer[]> result : results) {
+                Writer[] w;
+                try {
+                    w = result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                    throw e;
+                }
+                out.write(w[0].toString());
+                out.flush();
+                if (progress != null) {
+                    progress.write(w[1].toString());
+                    progress.flush();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
-        accumTime[ai1_idx][ai2_idx] += gs.getTime();
     }
 
     private static void preAnalysisSingleAI(long preAnalysisBudgetFirstTimeInAMap, long preAnalysisBudgetRestOfTimes, Writer progress, String readWriteFolder, boolean[] firstPreAnalysis, int map_idx, AI ai1, GameState gs) throws Exception {
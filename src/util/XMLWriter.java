@@ -13,6 +13,7 @@ import java.io.Writer;
  */
 public class XMLWriter {
     private static final int tabsize = 2;
+    private static final char[] SPACES = "                                        ".toCharArray();
     private String lineSeparator = "\n";
 
     /**
@@ -71,12 +72,12 @@ public class XMLWriter {
      * Write out indentation.
      */
     private void indent() {
-        for(int i = 0; i < spaces; ++i)
-            try {
-                writer.write(" ");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        try {
+            for(int i = 0; i < spaces; i += SPACES.length)
+                writer.write(SPACES, 0, Math.min(SPACES.length, spaces - i));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -98,22 +99,29 @@ public class XMLWriter {
     public void tag(String tagname, String value) {
         indent();
         try {
-            writer.write("<" + tagname + ">" + value + "</" + tagname + ">" + lineSeparator);
+            writer.write('<');
+            writer.write(tagname);
+            writer.write('>');
+            writer.write(value);
+            writer.write("</");
+            writer.write(tagname);
+            writer.write('>');
+            writer.write(lineSeparator);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public void tag(String tagname, int value) {
-        tag(tagname, "" + value);
+        tag(tagname, String.valueOf(value));
     }
 
     public void tag(String tagname, long value) {
-        tag(tagname, "" + value);
+        tag(tagname, String.valueOf(value));
     }
 
     public void tag(String tagname, double value) {
-        tag(tagname, "" + value);
+        tag(tagname, String.valueOf(value));
     }
 
     /**
@@ -128,7 +136,10 @@ public class XMLWriter {
 
         indent();
         try {
-            writer.write("<" + tagname + ">" + lineSeparator);
+            writer.write('<');
+            writer.write(tagname);
+            writer.write('>');
+            writer.write(lineSeparator);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -143,7 +154,12 @@ public class XMLWriter {
 
         indent();
         try {
-            writer.write("<" + tagname + " " + attributesString + ">" + lineSeparator);
+            writer.write('<');
+            writer.write(tagname);
+            writer.write(' ');
+            writer.write(attributesString);
+            writer.write('>');
+            writer.write(lineSeparator);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -152,6 +168,78 @@ public class XMLWriter {
             tab();
     }
 
+    /**
+     * Writes the closing tag of an element (like tag("/" + tagname), but
+     * without building that string).
+     *
+     * @param tagname the tag to close, without '/'
+     */
+    public void closeTag(String tagname) {
+        untab();
+        indent();
+        try {
+            writer.write("</");
+            writer.write(tagname);
+            writer.write('>');
+            writer.write(lineSeparator);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the beginning of an opening tag, to be followed by calls to
+     * attribute and then to endAttributes. This writes the same as
+     * tagWithAttributes, but without building the string with the attributes.
+     *
+     * @param tagname the tag to open
+     */
+    public void startTagWithAttributes(String tagname) {
+        indent();
+        try {
+            writer.write('<');
+            writer.write(tagname);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes an attribute of the tag started with startTagWithAttributes.
+     *
+     * @param name
+     * @param value
+     */
+    public void attribute(String name, String value) {
+        try {
+            writer.write(' ');
+            writer.write(name);
+            writer.write("=\"");
+            writer.write(value);
+            writer.write('"');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void attribute(String name, long value) {
+        attribute(name, String.valueOf(value));
+    }
+
+    /**
+     * Ends the tag started with startTagWithAttributes, and increases the
+     * indentation.
+     */
+    public void endAttributes() {
+        try {
+            writer.write('>');
+            writer.write(lineSeparator);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        tab();
+    }
+
     /**
      * Writes the given string assuming it is raw XML.  Appends a newline.
      *
@@ -0,0 +1,197 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.ArrayGameState;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.Trace;
+import rts.TraceEntry;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * Differential tests to verify that {@link ArrayGameState} follows exactly
+ * the same rules as {@link GameState}: both are fed the same actions, and
+ * their states are compared after every step.
+ */
+public class TestArrayGameState {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testTraces() throws Exception {
+		final List<File> traceDirs = new ArrayList<File>();
+		traceDirs.add(new File("data/traces"));
+
+		while (!traceDirs.isEmpty()) {
+			final File traceDir = traceDirs.remove(traceDirs.size() - 1);
+			for (final File file : traceDir.listFiles()) {
+				if (file.isDirectory()) {
+					traceDirs.add(file);
+				}
+				else if (file.getAbsolutePath().endsWith(".zip")) {
+					final String mapPath =
+							file.getParentFile().getParentFile().getAbsolutePath()
+							.replaceAll(Pattern.quote("\\"), "/")
+							.replaceFirst(Pattern.quote("/data/traces"), "/maps") + ".xml";
+					testTrace(Trace.fromZip(file.getAbsolutePath()), mapPath);
+				}
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testGames() throws Exception {
+		for (final String map : MAPS) {
+			// scripted AIs attack, harvest and produce units, random ones create move conflicts:
+			testGame(map, new WorkerRush(UTT), new LightRush(UTT));
+			testGame(map, new RandomBiasedAI(), new RandomBiasedAI());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testRandomBiasedPlayouts() throws Exception {
+		final RandomBiasedAI policy = new RandomBiasedAI();
+		for (final String map : MAPS) {
+			final GameState start = new GameState(PhysicalGameState.load(map, UTT), UTT);
+			final ArrayGameState ags = new ArrayGameState(start);
+			assertSameState(start, ags);
+
+			boolean gameOver = false;
+			while (!gameOver && ags.getTime() < MAX_CYCLES) {
+				if (ags.isComplete()) {
+					gameOver = ags.cycle();
+					continue;
+				}
+				for (int player = 0; player < 2; player++) {
+					// the actions issued must be ones that the units could choose in a GameState:
+					final GameState before = ags.toGameState();
+					policy.issueAction(player, ags);
+					final GameState after = ags.toGameState();
+					assertSameState(after, new ArrayGameState(after));
+					for (int i = 0; i < before.getUnits().size(); i++) {
+						final Unit u = before.getUnits().get(i);
+						final UnitActionAssignment uaa = after.getActionAssignment(after.getUnits().get(i));
+						if (u.getPlayer() != player || before.getActionAssignment(u) != null) {
+							continue;
+						}
+						assertTrue(uaa != null && uaa.time == after.getTime());
+						assertTrue("Illegal action " + uaa.action + " for " + u,
+								uaa.action.getType() == UnitAction.TYPE_NONE
+								|| u.getUnitActions(before).contains(uaa.action));
+					}
+				}
+			}
+			assertEquals(gameOver, ags.toGameState().gameover());
+		}
+	}
+
+	/**
+	 * Replays a trace both in a GameState and in an ArrayGameState
+	 * @param trace
+	 * @param mapPath
+	 * @throws Exception
+	 */
+	private static void testTrace(final Trace trace, final String mapPath) throws Exception {
+		// the actions of the trace refer to the unit types of its own table:
+		final UnitTypeTable utt = trace.getUnitTypeTable();
+		final GameState gameState = new GameState(PhysicalGameState.load(mapPath, utt), utt);
+		final ArrayGameState ags = new ArrayGameState(gameState);
+
+		for (final TraceEntry traceEntry : trace.getEntries()) {
+			while (gameState.getTime() < traceEntry.getTime()) {
+				assertEquals(gameState.cycle(), ags.cycle());
+				assertSameState(gameState, ags);
+			}
+
+			final PlayerAction p1Action = new PlayerAction();
+			final PlayerAction p2Action = new PlayerAction();
+			for (final Pair<Unit, UnitAction> action : traceEntry.getActions()) {
+				if (action.m_a.getPlayer() == 0) {
+					p1Action.addUnitAction(action.m_a, action.m_b);
+				}
+				else {
+					p2Action.addUnitAction(action.m_a, action.m_b);
+				}
+			}
+			// issueSafe replaces the units by the ones of gameState and the illegal actions by NONE:
+			assertEquals(gameState.issueSafe(p1Action), ags.issue(p1Action));
+			assertEquals(gameState.issueSafe(p2Action), ags.issue(p2Action));
+			assertSameState(gameState, ags);
+		}
+		assertEquals(gameState.winner(), ags.winner());
+	}
+
+	/**
+	 * Plays a game issuing the same actions in a GameState and in an ArrayGameState
+	 * @param map
+	 * @param ai1
+	 * @param ai2
+	 * @throws Exception
+	 */
+	private static void testGame(final String map, final AI ai1, final AI ai2) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		final ArrayGameState ags = new ArrayGameState(gs);
+		boolean gameOver = false;
+
+		while (!gameOver && gs.getTime() < MAX_CYCLES) {
+			final PlayerAction pa1 = ai1.getAction(0, gs);
+			final PlayerAction pa2 = ai2.getAction(1, gs);
+			assertEquals(gs.issue(pa1), ags.issue(pa1));
+			assertEquals(gs.issue(pa2), ags.issue(pa2));
+			assertSameState(gs, ags);
+
+			gameOver = gs.cycle();
+			assertEquals(gameOver, ags.cycle());
+			assertSameState(gs, ags);
+		}
+		assertEquals(gs.winner(), ags.winner());
+	}
+
+	/**
+	 * Checks that an ArrayGameState is equivalent to a GameState
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertSameState(final GameState expected, final ArrayGameState actual) {
+		final GameState gs = actual.toGameState();
+		assertTrue("States differ at time " + expected.getTime(), expected.equals(gs));
+		final List<Unit> units = expected.getUnits();
+		for (int i = 0; i < units.size(); i++) {
+			assertEquals(units.get(i).getResources(), gs.getUnits().get(i).getResources());
+		}
+		assertEquals(expected.gameover(), actual.gameover());
+		assertEquals(expected.isComplete(), actual.isComplete());
+		assertEquals(expected.canExecuteAnyAction(0), actual.canExecuteAnyAction(0));
+		assertEquals(expected.canExecuteAnyAction(1), actual.canExecuteAnyAction(1));
+	}
+}
@@ -0,0 +1,112 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.BinaryStateDecoder;
+import rts.BinaryStateEncoder;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.PlayerAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Tests that the game states and player actions written in the binary format
+ * of the socket AIs are read back equal, when sending the differences between
+ * the states of consecutive cycles.
+ */
+public class TestBinaryState {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testGames() throws Exception {
+		for (final String map : MAPS) {
+			testGame(map, new WorkerRush(UTT), new LightRush(UTT));
+			testGame(map, new RandomBiasedAI(), new RandomBiasedAI());
+		}
+	}
+
+	private static void testGame(final String map, final AI ai1, final AI ai2) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		final BinaryStateEncoder encoder = new BinaryStateEncoder();
+		final BinaryStateDecoder decoder = new BinaryStateDecoder(UTT);
+		for (int cycle = 0; cycle < MAX_CYCLES && !gs.gameover(); cycle++) {
+			if (!gs.isComplete()) {
+				gs.issueSafe(ai1.getAction(0, gs));
+				// the state is sent with the actions of one player already issued:
+				final ByteArrayOutputStream state = new ByteArrayOutputStream();
+				encoder.write(gs, new DataOutputStream(state));
+				final GameState received = decoder.read(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+				assertEquals(map + " cycle " + cycle, describe(gs), describe(received));
+
+				// the action is computed from the received state:
+				final PlayerAction pa = ai2.getAction(1, received);
+				final ByteArrayOutputStream action = new ByteArrayOutputStream();
+				pa.toBinary(new DataOutputStream(action));
+				final PlayerAction pa2 = PlayerAction.fromBinary(new DataInputStream(new ByteArrayInputStream(action.toByteArray())), gs, UTT);
+				assertEquals(map + " action " + cycle, pa.size(), pa2.size());
+				for (int i = 0; i < pa.size(); i++) {
+					assertEquals(pa.getUnit(i).getID(), pa2.getUnit(i).getID());
+					assertEquals(pa.getUnitAction(i), pa2.getUnitAction(i));
+				}
+				gs.issueSafe(pa2);
+			}
+			gs.cycle();
+		}
+	}
+
+	/**
+	 * A description of everything the binary format includes, independent of the
+	 * order of the units
+	 */
+	private static String describe(final GameState gs) {
+		final List<String> units = new ArrayList<>();
+		for (final Unit u : gs.getUnits()) {
+			final UnitActionAssignment uaa = gs.getActionAssignment(u);
+			units.add(u + " " + (uaa == null ? "-" : uaa.action + " at " + uaa.time));
+		}
+		Collections.sort(units);
+		final StringBuilder description = new StringBuilder("time " + gs.getTime());
+		for (final Player p : gs.getPhysicalGameState().getPlayers()) {
+			description.append(", ").append(p);
+		}
+		final PhysicalGameState pgs = gs.getPhysicalGameState();
+		for (int y = 0; y < pgs.getHeight(); y++) {
+			description.append('\n');
+			for (int x = 0; x < pgs.getWidth(); x++) {
+				description.append(pgs.getTerrain(x, y));
+			}
+		}
+		for (final String unit : units) {
+			description.append('\n').append(unit);
+		}
+		return description.toString();
+	}
+}
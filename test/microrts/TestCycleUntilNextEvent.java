@@ -0,0 +1,181 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ai.abstraction.HeavyRush;
+import ai.abstraction.LightRush;
+import ai.abstraction.RangedRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.ArrayGameState;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Unit tests to verify that cycleUntilNextEvent (used by the playouts of
+ * NaiveMCTS, UCT and MonteCarlo) reaches the same states as calling cycle()
+ * in a loop, in {@link GameState} and in {@link ArrayGameState}.
+ */
+public class TestCycleUntilNextEvent {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1500;
+
+	/** Weights of the random actions (indexed by UnitAction.TYPE_*) */
+	private static final double[] ACTION_WEIGHTS = {1, 1, 5, 5, 5, 5};
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testGameState() throws Exception {
+		for (final String map : MAPS) {
+			testGame(map, new WorkerRush(UTT), new LightRush(UTT));
+			testGame(map, new RangedRush(UTT), new HeavyRush(UTT));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testArrayGameState() throws Exception {
+		for (final String map : MAPS) {
+			for (long seed = 0; seed < 3; seed++) {
+				testArrayGame(map, seed);
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testMaxTime() throws Exception {
+		// stopping at a given time, even in the middle of the actions being executed:
+		for (int maxTime = 1; maxTime < 200; maxTime += 7) {
+			final GameState gs1 = new GameState(PhysicalGameState.load(MAPS[1], UTT), UTT);
+			final GameState gs2 = gs1.clone();
+			gs1.issueSafe(new WorkerRush(UTT).getAction(0, gs1));
+			gs1.issueSafe(new LightRush(UTT).getAction(1, gs1));
+			gs2.issueSafe(new WorkerRush(UTT).getAction(0, gs2));
+			gs2.issueSafe(new LightRush(UTT).getAction(1, gs2));
+
+			boolean gameOver1;
+			do {
+				gameOver1 = gs1.cycle();
+			} while (!gameOver1 && gs1.getTime() < maxTime && gs1.isComplete());
+			final boolean gameOver2 = gs2.cycleUntilNextEvent(maxTime);
+
+			assertEquals(gameOver1, gameOver2);
+			assertEquals(gs1.getTime(), gs2.getTime());
+			assertTrue("States differ at time " + gs1.getTime(), gs1.equals(gs2));
+		}
+	}
+
+	/**
+	 * Plays the same game twice, once advancing with cycle() and once with
+	 * cycleUntilNextEvent, and checks that the AIs are asked for actions in
+	 * the same states, and that the games end in the same state
+	 * @param map
+	 * @param ai1
+	 * @param ai2
+	 * @throws Exception
+	 */
+	private static void testGame(final String map, final AI ai1, final AI ai2) throws Exception {
+		// with cycle():
+		final GameState gs1 = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		final List<GameState> decisions = new ArrayList<GameState>();
+		boolean gameOver1 = false;
+		while (!gameOver1 && gs1.getTime() < MAX_CYCLES) {
+			if (!gs1.isComplete()) {
+				decisions.add(gs1.clone());
+				gs1.issueSafe(ai1.getAction(0, gs1));
+				gs1.issueSafe(ai2.getAction(1, gs1));
+			}
+			gameOver1 = gs1.cycle();
+		}
+
+		// with cycleUntilNextEvent:
+		final AI ai3 = ai1.clone();
+		final AI ai4 = ai2.clone();
+		ai3.reset();
+		ai4.reset();
+		final GameState gs2 = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		int decision = 0;
+		boolean gameOver2 = false;
+		while (!gameOver2 && gs2.getTime() < MAX_CYCLES) {
+			if (!gs2.isComplete()) {
+				final GameState expected = decisions.get(decision++);
+				assertEquals(expected.getTime(), gs2.getTime());
+				assertTrue("States differ at time " + gs2.getTime(), expected.equals(gs2));
+				gs2.issueSafe(ai3.getAction(0, gs2));
+				gs2.issueSafe(ai4.getAction(1, gs2));
+			}
+			gameOver2 = gs2.cycleUntilNextEvent(MAX_CYCLES);
+		}
+
+		assertEquals(decisions.size(), decision);
+		assertEquals(gameOver1, gameOver2);
+		assertEquals(gs1.getTime(), gs2.getTime());
+		assertTrue("Final states differ in " + map, gs1.equals(gs2));
+		assertEquals(gs1.winner(), gs2.winner());
+	}
+
+	/**
+	 * Same as testGame, for an ArrayGameState, with random actions sampled
+	 * from a Random with the same seed in both games
+	 * @param map
+	 * @param seed
+	 * @throws Exception
+	 */
+	private static void testArrayGame(final String map, final long seed) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, UTT), UTT);
+
+		// with cycle():
+		final ArrayGameState ags1 = new ArrayGameState(gs);
+		final Random r1 = new Random(seed);
+		final List<GameState> decisions = new ArrayList<GameState>();
+		boolean gameOver1 = false;
+		while (!gameOver1 && ags1.getTime() < MAX_CYCLES) {
+			if (!ags1.isComplete()) {
+				decisions.add(ags1.toGameState());
+				ags1.issueRandomActions(0, ACTION_WEIGHTS, 10, r1);
+				ags1.issueRandomActions(1, ACTION_WEIGHTS, 10, r1);
+			}
+			gameOver1 = ags1.cycle();
+		}
+
+		// with cycleUntilNextEvent:
+		final ArrayGameState ags2 = new ArrayGameState(gs);
+		final Random r2 = new Random(seed);
+		int decision = 0;
+		boolean gameOver2 = false;
+		while (!gameOver2 && ags2.getTime() < MAX_CYCLES) {
+			if (!ags2.isComplete()) {
+				final GameState expected = decisions.get(decision++);
+				assertEquals(expected.getTime(), ags2.getTime());
+				assertTrue("States differ at time " + ags2.getTime(), expected.equals(ags2.toGameState()));
+				ags2.issueRandomActions(0, ACTION_WEIGHTS, 10, r2);
+				ags2.issueRandomActions(1, ACTION_WEIGHTS, 10, r2);
+			}
+			gameOver2 = ags2.cycleUntilNextEvent(MAX_CYCLES);
+		}
+
+		assertEquals(decisions.size(), decision);
+		assertEquals(gameOver1, gameOver2);
+		assertEquals(ags1.getTime(), ags2.getTime());
+		assertTrue("Final states differ in " + map, ags1.toGameState().equals(ags2.toGameState()));
+		assertEquals(ags1.winner(), ags2.winner());
+	}
+}
@@ -1,10 +1,15 @@
 package microrts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
@@ -12,9 +17,14 @@ import java.util.concurrent.ThreadLocalRandom;
 import org.junit.Test;
 
 import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.BucketAStarPathFinding;
+import ai.abstraction.pathfinding.DistanceFieldPathFinding;
+import ai.abstraction.pathfinding.HPAStarPathFinding;
 import ai.abstraction.pathfinding.OldAStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
 import rts.GameState;
 import rts.PhysicalGameState;
+import rts.Player;
 import rts.UnitAction;
 import rts.units.Unit;
 import rts.units.UnitTypeTable;
@@ -33,6 +43,9 @@ public class TestPathfinding {
 	/** Number of randomly selected destinations we want to test per execution of the test, per map */
 	private static final int NUM_DESTINATIONS = 3;
 	
+	/** Ranges to the destinations with which the faster pathfinding implementations are tested */
+	private static final int[] RANGES = {0, 1, 3};
+	
 	@Test
 	@SuppressWarnings({ "static-method", "deprecation" })
 	public void testAStar() throws Exception {
@@ -70,6 +83,10 @@ public class TestPathfinding {
 		
 		final AStarPathFinding aStar = new AStarPathFinding();
 		final OldAStarPathFinding oldAStar = new OldAStarPathFinding();
+		final BucketAStarPathFinding bucketAStar = new BucketAStarPathFinding();
+		final DistanceFieldPathFinding distanceField = new DistanceFieldPathFinding();
+		// small clusters, so that most paths go through the abstract graph
+		final HPAStarPathFinding hpaStar = new HPAStarPathFinding(3);
 		
 		for (int mapIdx = 0; mapIdx < NUM_MAPS; ++mapIdx) {
 			// Pick one random map
@@ -81,6 +98,7 @@ public class TestPathfinding {
 			if (!units.isEmpty()) {
 				// Pick a random unit as starting point
 				final Unit unit = units.get(rng.nextInt(units.size()));
+				final int[] bfsDists = bfs(pgs, unit);
 				
 				for (int destIdx = 0; destIdx < NUM_DESTINATIONS; ++destIdx) {
 					// Pick a random destination
@@ -122,9 +140,153 @@ public class TestPathfinding {
 					final UnitAction oldAStarAction = oldAStar.findPath(
 							unit, dest, gameState, null);
 					assertEquals(oldAStarAction, aStarAction);
+					
+					for (final int range : RANGES) {
+						// A* with a bucket queue should find exactly the same
+						// paths as A* (it breaks ties in the same way)
+						final int rangeDist = aStar.findDistToPositionInRange(
+								unit, dest, range, gameState, null);
+						final UnitAction rangeAction = aStar.findPathToPositionInRange(
+								unit, dest, range, gameState, null);
+						assertEquals(rangeDist, bucketAStar.findDistToPositionInRange(
+								unit, dest, range, gameState, null));
+						assertEquals(rangeAction, bucketAStar.findPathToPositionInRange(
+								unit, dest, range, gameState, null));
+						
+						// distance fields should find shortest paths (which
+						// A* does not always find)
+						final int bfsDist = bfsDistToPositionInRange(pgs, bfsDists, dest, range);
+						assertEquals(bfsDist,
+								distanceField.findDistToPositionInRange(unit, dest, range, gameState, null));
+						
+						// HPA* paths are not always shortest paths, but it
+						// should know exactly which destinations can be reached
+						assertEquals(bfsDist >= 0, hpaStar.pathToPositionInRangeExists(
+								unit, dest, range, gameState, null));
+						if (bfsDist > 0) {
+							assertNotNull(hpaStar.findPathToPositionInRange(unit, dest, range, gameState, null));
+						}
+						else {
+							assertNull(hpaStar.findPathToPositionInRange(unit, dest, range, gameState, null));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testHPAStarBlockedByUnits() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		final PhysicalGameState pgs = PhysicalGameState.load("maps/12x12/FourBasesWorkers12x12.xml", utt);
+		final Unit worker = new Unit(0, utt.getUnitType("Worker"), 5, 8, 0);
+		pgs.addUnit(worker);
+		// (10, 10) is free, but a worker at (10, 9) walls it off (and all the
+		// positions next to it), although it can be reached by the terrain:
+		pgs.addUnit(new Unit(1, utt.getUnitType("Worker"), 10, 9, 0));
+		final GameState gameState = new GameState(pgs, utt);
+		final int dest = 10 + 10 * pgs.getWidth();
+		
+		for (final int clusterSize : new int[] {3, HPAStarPathFinding.DEFAULT_CLUSTER_SIZE}) {
+			final HPAStarPathFinding hpaStar = new HPAStarPathFinding(clusterSize);
+			assertFalse(hpaStar.pathExists(worker, dest, gameState, null));
+			assertNull(hpaStar.findPath(worker, dest, gameState, null));
+			assertTrue(hpaStar.pathToPositionInRangeExists(worker, dest, 2, gameState, null));
+			assertNotNull(hpaStar.findPathToPositionInRange(worker, dest, 2, gameState, null));
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("static-method")
+	public void testTerrainEdits() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		final PhysicalGameState pgs = new PhysicalGameState(16, 16);
+		pgs.addPlayer(new Player(0, 0));
+		pgs.addPlayer(new Player(1, 0));
+		final Unit worker = new Unit(0, utt.getUnitType("Worker"), 1, 1, 0);
+		pgs.addUnit(worker);
+		final GameState gameState = new GameState(pgs, utt);
+		final int dest = 14 + 14 * pgs.getWidth();
+		
+		// the terrain is edited in place, after the path finders have seen it
+		final PathFinding[] pathFinders = {new DistanceFieldPathFinding(), new HPAStarPathFinding(4)};
+		for (final PathFinding pf : pathFinders) {
+			assertTrue(pf.pathExists(worker, dest, gameState, null));
+		}
+		for (int y = 0; y < pgs.getHeight(); ++y) {
+			pgs.setTerrain(8, y, PhysicalGameState.TERRAIN_WALL);
+		}
+		for (final PathFinding pf : pathFinders) {
+			assertFalse(pf.pathExists(worker, dest, gameState, null));
+			assertNull(pf.findPath(worker, dest, gameState, null));
+		}
+		pgs.setTerrain(8, 3, PhysicalGameState.TERRAIN_NONE);
+		for (final PathFinding pf : pathFinders) {
+			assertTrue(pf.pathExists(worker, dest, gameState, null));
+			assertNotNull(pf.findPath(worker, dest, gameState, null));
+		}
+	}
+	
+	/**
+	 * Breadth-first search over the free positions of the map from the position
+	 * of a unit
+	 * @param pgs
+	 * @param start
+	 * @return the number of moves from the unit to each position (x + y * width),
+	 * or -1 for the positions it cannot reach
+	 */
+	private static int[] bfs(final PhysicalGameState pgs, final Unit start) {
+		final int width = pgs.getWidth();
+		final int height = pgs.getHeight();
+		final boolean[][] free = pgs.getAllFree();
+		final int[] dists = new int[width * height];
+		Arrays.fill(dists, -1);
+		
+		final int[] queue = new int[width * height];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start.getPosition(pgs);
+		dists[start.getPosition(pgs)] = 0;
+		while (head < tail) {
+			final int pos = queue[head++];
+			final int x = pos % width;
+			final int y = pos / width;
+			final int[][] neighbours = {{x, y - 1}, {x + 1, y}, {x, y + 1}, {x - 1, y}};
+			for (final int[] neighbour : neighbours) {
+				final int nx = neighbour[0];
+				final int ny = neighbour[1];
+				if (nx >= 0 && ny >= 0 && nx < width && ny < height && free[nx][ny] && dists[nx + ny * width] == -1) {
+					dists[nx + ny * width] = dists[pos] + 1;
+					queue[tail++] = nx + ny * width;
 				}
 			}
 		}
+		return dists;
+	}
+	
+	/**
+	 * @param pgs
+	 * @param dists the distances computed by bfs()
+	 * @param targetpos
+	 * @param range
+	 * @return the number of moves needed to get in range of the target, or -1
+	 * if it cannot be reached
+	 */
+	private static int bfsDistToPositionInRange(final PhysicalGameState pgs, final int[] dists, 
+			final int targetpos, final int range) {
+		final int width = pgs.getWidth();
+		final int tx = targetpos % width;
+		final int ty = targetpos / width;
+		int best = -1;
+		for (int pos = 0; pos < dists.length; ++pos) {
+			final int dx = pos % width - tx;
+			final int dy = pos / width - ty;
+			if (dists[pos] >= 0 && dx * dx + dy * dy <= range * range && (best == -1 || dists[pos] < best)) {
+				best = dists[pos];
+			}
+		}
+		return best;
 	}
 
 }
@@ -0,0 +1,235 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.MCTSNodePool;
+import ai.mcts.uct.PooledUCT;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerActionGenerator;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Unit tests to verify that the tree of {@link PooledUCT} is consistent: that
+ * the states computed by issuing the actions of the nodes are the same ones
+ * the nodes store, with and without STORE_STATES, with indexed and unindexed
+ * actions, and after the tree has been pruned.
+ */
+public class TestPooledUCT {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final String MAP = "maps/8x8/basesWorkers8x8.xml";
+
+	/** Generators with more actions than this are not enumerated by the tests */
+	private static final int MAX_ENUMERATED_ACTIONS = 2000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testStoredStates() throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(MAP, UTT), UTT);
+		final PooledUCT ai = search(gs, 100000, true, 2000);
+		final MCTSNodePool pool = ai.pool;
+
+		// every node stores its state, which must be the one computed from its parent:
+		int checked = 0;
+		final Deque<Integer> open = new ArrayDeque<Integer>();
+		open.add(ai.getRoot());
+		while (!open.isEmpty()) {
+			final int node = open.poll();
+			for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+				final GameState parentState = (GameState) pool.state[node];
+				assertTrue(pool.state[child] != null);
+				assertTrue("State differs at depth " + pool.depth[child],
+						pool.state[child].equals(ai.childState(node, child, parentState)));
+				checked++;
+				open.add(child);
+			}
+		}
+		assertEquals(pool.getNodes() - 1, checked);
+		assertTrue(checkTree(ai) >= 2);
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testComputedStates() throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(MAP, UTT), UTT);
+
+		// a tree with all the states, from which all of them but the root's are removed:
+		final PooledUCT ai = search(gs, 100000, true, 2000);
+		final MCTSNodePool pool = ai.pool;
+		final Object[] stored = pool.state.clone();
+		for (int node = 0; node < stored.length; node++) {
+			if (node != ai.getRoot()) {
+				pool.state[node] = null;
+				pool.data[node] = null;
+			}
+		}
+		int checked = 0;
+		final Deque<Integer> open = new ArrayDeque<Integer>();
+		final Deque<GameState> states = new ArrayDeque<GameState>();
+		open.add(ai.getRoot());
+		states.add((GameState) stored[ai.getRoot()]);
+		while (!open.isEmpty()) {
+			final int node = open.poll();
+			final GameState state = states.poll();
+			for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+				final GameState childState = ai.childState(node, child, state);
+				assertTrue("State differs at depth " + pool.depth[child], stored[child].equals(childState));
+				checked++;
+				open.add(child);
+				states.add(childState);
+			}
+		}
+		assertEquals(pool.getNodes() - 1, checked);
+
+		// and a tree that only keeps the state of the root:
+		assertTrue(checkTree(search(gs, 100000, false, 2000)) >= 2);
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testUnindexedActions() throws Exception {
+		final GameState gs = manyWorkersState();
+		assertEquals(Long.MAX_VALUE, new PlayerActionGenerator(gs, 0).getSize());
+		for (final boolean store : new boolean[] {false, true}) {
+			final PooledUCT ai = search(gs, 100000, store, 300);
+			assertTrue(ai.getUnindexedActions() > 0);
+			checkTree(ai);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testPruning() throws Exception {
+		final GameState[] states = {new GameState(PhysicalGameState.load(MAP, UTT), UTT), manyWorkersState()};
+		for (final GameState gs : states) {
+			for (final boolean store : new boolean[] {false, true}) {
+				final PooledUCT ai = search(gs, 200, store, 3000);
+				assertTrue(ai.pool.getPrunedNodes() > 0);
+				checkTree(ai);
+			}
+		}
+	}
+
+	/**
+	 * Runs a search of PooledUCT for player 0, with an iterations budget
+	 * @param gs
+	 * @param maxNodes
+	 * @param storeStates
+	 * @param iterations
+	 * @return the AI, with the tree of the search
+	 * @throws Exception
+	 */
+	private static PooledUCT search(final GameState gs, final int maxNodes, final boolean storeStates, final int iterations) throws Exception {
+		final PooledUCT ai = new PooledUCT(-1, iterations, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(),
+				maxNodes, storeStates);
+		ai.startNewComputation(0, gs.clone());
+		ai.computeDuringOneGameFrame();
+		return ai;
+	}
+
+	/**
+	 * Walks the tree computing the states of the nodes from the root, and checks
+	 * that the nodes are linked correctly, that no node has two children with the
+	 * same action, that the nodes that store their state store the computed one,
+	 * that the unindexed actions are only kept for the nodes in the tree, and
+	 * that the nodes with all their actions expanded have a child for each one
+	 * @param ai
+	 * @return the depth of the tree
+	 * @throws Exception
+	 */
+	private static int checkTree(final PooledUCT ai) throws Exception {
+		final MCTSNodePool pool = ai.pool;
+		int nodes = 0;
+		int unindexed = 0;
+		int maxDepth = 0;
+		final Deque<Integer> open = new ArrayDeque<Integer>();
+		final Deque<GameState> states = new ArrayDeque<GameState>();
+		open.add(ai.getRoot());
+		states.add((GameState) pool.state[ai.getRoot()]);
+		while (!open.isEmpty()) {
+			final int node = open.poll();
+			GameState state = states.poll();
+			nodes++;
+			maxDepth = Math.max(maxDepth, pool.depth[node]);
+			if (pool.state[node] != null) {
+				assertTrue("State differs at depth " + pool.depth[node], pool.state[node].equals(state));
+				// the actions of the children refer to the units of the stored state:
+				state = (GameState) pool.state[node];
+			}
+
+			final Set<Long> indexes = new HashSet<Long>();
+			final List<GameState> unindexedStates = new ArrayList<GameState>();
+			int children = 0;
+			for (int child = pool.firstChild[node]; child != MCTSNodePool.NONE; child = pool.nextSibling[child]) {
+				assertEquals(node, pool.parent[child]);
+				assertEquals(pool.depth[node] + 1, pool.depth[child]);
+				assertTrue(pool.lastUsed[child] <= pool.lastUsed[node]);
+				final GameState childState = ai.childState(node, child, state);
+				if (pool.action[child] >= 0) {
+					assertTrue("Repeated action at depth " + pool.depth[node], indexes.add(pool.action[child]));
+				} else {
+					// unindexed actions are compared by the states they lead to:
+					for (final GameState other : unindexedStates) {
+						assertFalse("Repeated action at depth " + pool.depth[node], other.equals(childState));
+					}
+					unindexedStates.add(childState);
+					unindexed++;
+				}
+				children++;
+				open.add(child);
+				states.add(childState);
+			}
+
+			if (pool.nextAction[node] == -1 && pool.type[node] != -1) {
+				assertFalse(pool.pruned[node]);
+				final PlayerActionGenerator generator = new PlayerActionGenerator(state, pool.type[node] == 0 ? 0 : 1);
+				if (generator.getSize() <= MAX_ENUMERATED_ACTIONS) {
+					int actions = 0;
+					final int[] choice = new int[generator.getChoiceUnits().length];
+					while (generator.nextChoice(choice, 0)) actions++;
+					assertEquals("Missing children at depth " + pool.depth[node], actions, children);
+				}
+			}
+		}
+		assertEquals(pool.getNodes(), nodes);
+		assertEquals(unindexed, ai.getUnindexedActions());
+		return maxDepth;
+	}
+
+	/**
+	 * A state where player 0 has so many workers that the number of its player
+	 * actions overflows a long, so they cannot be indexed
+	 * @return
+	 * @throws Exception
+	 */
+	private static GameState manyWorkersState() throws Exception {
+		final PhysicalGameState pgs = PhysicalGameState.load("maps/16x16/basesWorkers16x16.xml", UTT);
+		pgs.getPlayer(0).setResources(0);
+		int added = 0;
+		for (int y = 4; y < 13 && added < 30; y += 2) {
+			for (int x = 2; x < 14 && added < 30; x += 2) {
+				if (pgs.getUnitAt(x, y) == null) {
+					pgs.addUnit(new Unit(0, UTT.getUnitType("Worker"), x, y, 0));
+					added++;
+				}
+			}
+		}
+		return new GameState(pgs, UTT);
+	}
+}
@@ -0,0 +1,119 @@
+package microrts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.jdom.input.SAXBuilder;
+import org.junit.Test;
+
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.Trace;
+import rts.TraceEntry;
+import rts.TraceReader;
+import rts.units.UnitTypeTable;
+import util.XMLWriter;
+
+/**
+ * Tests that the traces written by {@link Trace#toxml(String)} and
+ * {@link Trace#toZip(String)} are read back equal by {@link TraceReader},
+ * and the terrain written by {@link PhysicalGameState#toxml(XMLWriter, boolean, boolean)}.
+ */
+public class TestTraceReader {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testTraces() throws Exception {
+		final Trace trace = playGame("maps/16x16/basesWorkers16x16.xml", 1000);
+		final File xml = File.createTempFile("trace", ".xml");
+		final File zip = File.createTempFile("trace", ".zip");
+		try {
+			trace.toxml(xml.getAbsolutePath());
+			trace.toZip(zip.getAbsolutePath());
+			final Trace dom = new Trace(new SAXBuilder().build(xml).getRootElement());
+			for (final File file : new File[] {xml, zip}) {
+				try (TraceReader reader = TraceReader.open(file.getAbsolutePath())) {
+					assertEquals(toJSON(dom.getUnitTypeTable()), toJSON(reader.getUnitTypeTable()));
+					for (final TraceEntry expected : dom.getEntries()) {
+						assertEquals(toJSON(expected), toJSON(reader.next()));
+					}
+					assertFalse(reader.hasNext());
+				}
+			}
+			assertEquals(toJSON(trace), toJSON(Trace.fromZip(zip.getAbsolutePath())));
+		} finally {
+			xml.delete();
+			zip.delete();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testTerrain() throws Exception {
+		final PhysicalGameState pgs = PhysicalGameState.load("maps/16x16/basesWorkers16x16.xml", UTT);
+		final PhysicalGameState clone = pgs.clone();
+		for (final boolean compress : new boolean[] {false, true}) {
+			assertArrayEquals(pgs.getTerrain(), readTerrain(pgs, compress));
+			// the text of the terrain is shared with the clone, and updated with it:
+			clone.setTerrain(3, 2, PhysicalGameState.TERRAIN_WALL);
+			assertArrayEquals(pgs.getTerrain(), readTerrain(pgs, compress));
+			clone.setTerrain(15, 15, PhysicalGameState.TERRAIN_WALL);
+			assertArrayEquals(pgs.getTerrain(), readTerrain(clone, compress));
+			clone.setTerrain(15, 15, PhysicalGameState.TERRAIN_NONE);
+			clone.setTerrain(0, 0, PhysicalGameState.TERRAIN_WALL);
+			assertArrayEquals(pgs.getTerrain(), readTerrain(pgs, compress));
+			clone.setTerrain(0, 0, PhysicalGameState.TERRAIN_NONE);
+		}
+	}
+
+	private static int[] readTerrain(final PhysicalGameState pgs, final boolean compress) throws Exception {
+		final StringWriter w = new StringWriter();
+		pgs.toxml(new XMLWriter(w), true, compress);
+		return PhysicalGameState.fromXML(new SAXBuilder().build(new StringReader(w.toString())).getRootElement(), UTT).getTerrain();
+	}
+
+	private static Trace playGame(final String map, final int maxCycles) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		final AI ai1 = new WorkerRush(UTT);
+		final AI ai2 = new LightRush(UTT);
+		final Trace trace = new Trace(UTT);
+		trace.addEntry(new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime()));
+		for (int cycle = 0; cycle < maxCycles && !gs.gameover(); cycle++) {
+			final PlayerAction pa1 = ai1.getAction(0, gs);
+			final PlayerAction pa2 = ai2.getAction(1, gs);
+			if (!pa1.isEmpty() || !pa2.isEmpty()) {
+				final TraceEntry te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
+				te.addPlayerAction(pa1.clone());
+				te.addPlayerAction(pa2.clone());
+				trace.addEntry(te);
+			}
+			gs.issueSafe(pa1);
+			gs.issueSafe(pa2);
+			gs.cycle();
+		}
+		return trace;
+	}
+
+	private static String toJSON(final Object o) throws Exception {
+		final StringWriter w = new StringWriter();
+		if (o instanceof Trace) {
+			((Trace) o).toJSON(w);
+		} else if (o instanceof TraceEntry) {
+			((TraceEntry) o).toJSON(w);
+		} else {
+			((UnitTypeTable) o).toJSON(w);
+		}
+		return w.toString();
+	}
+}
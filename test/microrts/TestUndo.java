@@ -0,0 +1,158 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UndoLog;
+import rts.units.UnitTypeTable;
+
+/**
+ * Unit tests to verify that {@link GameState#undo(UndoLog)} reverts
+ * the changes made by issueWithUndo and cycleWithUndo.
+ */
+public class TestUndo {
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testIssueAndCycleUndo() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		for (final String map : MAPS) {
+			// scripted AIs attack, harvest and produce units, random ones create move conflicts:
+			testGame(map, utt, new WorkerRush(utt), new LightRush(utt));
+			testGame(map, utt, new RandomBiasedAI(), new RandomBiasedAI());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testDepthFirstUndo() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		final GameState gs = new GameState(PhysicalGameState.load(MAPS[0], utt), utt);
+		final AI ai1 = new WorkerRush(utt);
+		final AI ai2 = new RandomBiasedAI();
+
+		for (int start = 0; start < 200 && !gs.gameover(); start += 20) {
+			// play 20 cycles keeping all the logs, and then undo them all:
+			final GameState original = gs.clone();
+			final List<UndoLog> logs = new ArrayList<UndoLog>();
+			for (int i = 0; i < 20 && !gs.gameover(); i++) {
+				logs.add(gs.issueWithUndo(ai1.getAction(0, gs)));
+				logs.add(gs.issueWithUndo(ai2.getAction(1, gs)));
+				logs.add(gs.cycleWithUndo());
+			}
+			for (int i = logs.size() - 1; i >= 0; i--) {
+				gs.undo(logs.get(i));
+			}
+			assertSameState(original, gs);
+
+			// and move on:
+			for (int i = 0; i < 20 && !gs.gameover(); i++) {
+				gs.issueSafe(ai1.getAction(0, gs));
+				gs.issueSafe(ai2.getAction(1, gs));
+				gs.cycle();
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testMultiCycleUndo() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		for (final String map : MAPS) {
+			final GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+			final AI ai1 = new WorkerRush(utt);
+			final AI ai2 = new LightRush(utt);
+
+			while (!gs.gameover() && gs.getTime() < MAX_CYCLES) {
+				gs.issueSafe(ai1.getAction(0, gs));
+				gs.issueSafe(ai2.getAction(1, gs));
+
+				// several cycles recorded in a single log:
+				final GameState original = gs.clone();
+				UndoLog log = null;
+				for (int i = 0; i < 10 && !gs.gameover(); i++) {
+					log = gs.cycleWithUndo(log);
+				}
+				gs.undo(log);
+				assertSameState(original, gs);
+
+				gs.cycle();
+			}
+		}
+	}
+
+	/**
+	 * Plays a game, undoing and then redoing each cycle
+	 * @param map
+	 * @param utt
+	 * @param ai1
+	 * @param ai2
+	 * @throws Exception
+	 */
+	private static void testGame(final String map, final UnitTypeTable utt, final AI ai1, final AI ai2) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+		boolean gameOver = false;
+
+		while (!gameOver && gs.getTime() < MAX_CYCLES) {
+			final PlayerAction pa1 = ai1.getAction(0, gs);
+			final PlayerAction pa2 = ai2.getAction(1, gs);
+
+			final GameState original = gs.clone();
+			final UndoLog log1 = gs.issueWithUndo(pa1);
+			final UndoLog log2 = gs.issueWithUndo(pa2);
+			final GameState issued = gs.clone();
+			final UndoLog log3 = gs.cycleWithUndo();
+
+			gs.undo(log3);
+			assertSameState(issued, gs);
+			gs.undo(log2);
+			gs.undo(log1);
+			assertSameState(original, gs);
+
+			gs.issue(pa1);
+			gs.issue(pa2);
+			gameOver = gs.cycle();
+		}
+	}
+
+	/**
+	 * Checks that the state after undoing is equal to the original one, and
+	 * that it answers position queries in the same way
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertSameState(final GameState expected, final GameState actual) {
+		assertTrue("State differs after undo at time " + expected.getTime(), expected.equals(actual));
+		final PhysicalGameState pgs = expected.getPhysicalGameState();
+		for (int i = 0; i < pgs.getUnits().size(); i++) {
+			assertEquals(pgs.getUnits().get(i).getID(), actual.getUnits().get(i).getID());
+			assertEquals(pgs.getUnits().get(i).getResources(), actual.getUnits().get(i).getResources());
+		}
+		for (int x = 0; x < pgs.getWidth(); x++) {
+			for (int y = 0; y < pgs.getHeight(); y++) {
+				assertEquals(expected.free(x, y), actual.free(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import rts.UnitAction;
+import rts.UnitActionTable;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Unit tests to verify that the int codes of {@link UnitActionTable} decode
+ * to the actions they were encoded from, for every type of action.
+ */
+public class TestUnitActionTable {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final int[] DIRECTIONS = {
+		UnitAction.DIRECTION_NONE,
+		UnitAction.DIRECTION_UP,
+		UnitAction.DIRECTION_RIGHT,
+		UnitAction.DIRECTION_DOWN,
+		UnitAction.DIRECTION_LEFT,
+	};
+
+	/** codes seen so far by each test, to check that different actions get different codes */
+	private final Map<Integer, UnitAction> codes = new HashMap<Integer, UnitAction>();
+
+	@Test
+	public void testNone() {
+		final UnitActionTable table = UTT.getUnitActionTable();
+		for (int duration = -1; duration <= UnitActionTable.MAX_INTERNED_DURATION; duration++) {
+			final UnitAction ua = new UnitAction(UnitAction.TYPE_NONE, duration);
+			final UnitAction decoded = roundTrip(table, ua);
+			assertSame(table.none(duration), decoded);
+		}
+		// longer ones are not interned, but are still encoded:
+		final int[] long_durations = {UnitActionTable.MAX_INTERNED_DURATION + 1, 1000, (1 << 28) - 2};
+		for (final int duration : long_durations) {
+			roundTrip(table, new UnitAction(UnitAction.TYPE_NONE, duration));
+		}
+	}
+
+	@Test
+	public void testDirectional() {
+		final UnitActionTable table = UTT.getUnitActionTable();
+		final int[] types = {UnitAction.TYPE_MOVE, UnitAction.TYPE_HARVEST, UnitAction.TYPE_RETURN};
+		for (final int type : types) {
+			for (final int direction : DIRECTIONS) {
+				final UnitAction decoded = roundTrip(table, new UnitAction(type, direction));
+				assertSame(table.directional(type, direction), decoded);
+				assertEquals(direction, decoded.getDirection());
+			}
+		}
+	}
+
+	@Test
+	public void testProduce() {
+		final UnitActionTable table = UTT.getUnitActionTable();
+		for (final UnitType ut : UTT.getUnitTypes()) {
+			for (final int direction : DIRECTIONS) {
+				final UnitAction decoded = roundTrip(table, new UnitAction(UnitAction.TYPE_PRODUCE, direction, ut));
+				assertSame(table.produce(direction, ut), decoded);
+				assertSame(ut, decoded.getUnitType());
+				assertEquals(direction, decoded.getDirection());
+				assertEquals(ut.ID, UnitActionTable.getUnitTypeID(UnitActionTable.encode(decoded)));
+			}
+		}
+	}
+
+	@Test
+	public void testAttack() {
+		final UnitActionTable table = UTT.getUnitActionTable();
+		final int[] coordinates = {0, 1, 7, 63, 255, 4096, UnitActionTable.MAX_COORDINATE};
+		for (final int x : coordinates) {
+			for (final int y : coordinates) {
+				final UnitAction decoded = roundTrip(table, new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, x, y));
+				assertSame(table.attack(x, y), decoded);
+				assertEquals(x, decoded.getLocationX());
+				assertEquals(y, decoded.getLocationY());
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testCannotEncode() {
+		final UnitAction[] actions = {
+			new UnitAction(UnitAction.TYPE_MOVE, 4),
+			new UnitAction(UnitAction.TYPE_PRODUCE, -2, UTT.getUnitType("Worker")),
+			new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, UnitActionTable.MAX_COORDINATE + 1, 0),
+			new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, 0, -1),
+		};
+		for (final UnitAction ua : actions) {
+			try {
+				UnitActionTable.encode(ua);
+				fail("encoded " + ua);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Checks that ua decodes back to an equal action with the same code, and
+	 * that no other action seen by the test had that code
+	 */
+	private UnitAction roundTrip(final UnitActionTable table, final UnitAction ua) {
+		final int code = UnitActionTable.encode(ua);
+		assertTrue("negative code for " + ua, code >= 0);
+		assertEquals(ua.getType(), UnitActionTable.getType(code));
+
+		final UnitAction decoded = table.decode(code);
+		assertEquals(ua, decoded);
+		assertEquals(code, UnitActionTable.encode(decoded));
+
+		final UnitAction previous = codes.put(code, ua);
+		assertTrue(ua + " has the same code as " + previous, previous == null || previous.equals(ua));
+		return decoded;
+	}
+}
@@ -0,0 +1,161 @@
+package microrts;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.GameState;
+import rts.PartiallyObservableGameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UndoLog;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Tests that the vector observations, which {@link GameState} updates
+ * incrementally, are always equal to the ones computed from scratch.
+ */
+public class TestVectorObservation {
+
+	private static final UnitTypeTable UTT = new UnitTypeTable();
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testGames() throws Exception {
+		for (final String map : MAPS) {
+			// scripted AIs attack, harvest and produce units, random ones create move conflicts:
+			testGame(map, new WorkerRush(UTT), new LightRush(UTT), false);
+			testGame(map, new RandomBiasedAI(), new RandomBiasedAI(), false);
+			testGame(map, new WorkerRush(UTT), new RandomBiasedAI(), true);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testUndo() throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(MAPS[1], UTT), UTT);
+		final AI ai1 = new WorkerRush(UTT);
+		final AI ai2 = new LightRush(UTT);
+		for (int cycle = 0; cycle < MAX_CYCLES && !gs.gameover(); cycle++) {
+			final PlayerAction pa1 = ai1.getAction(0, gs);
+			final PlayerAction pa2 = ai2.getAction(1, gs);
+			// a cycle that is undone, observing the state in between:
+			final UndoLog log1 = gs.issueWithUndo(pa1.clone());
+			final UndoLog log2 = gs.issueWithUndo(pa2.clone());
+			final UndoLog log3 = gs.cycleWithUndo();
+			checkObservation(gs, 0, "undo cycle " + cycle);
+			gs.undo(log3);
+			gs.undo(log2);
+			gs.undo(log1);
+			checkObservation(gs, 0, "undone cycle " + cycle);
+			gs.issueSafe(pa1);
+			gs.issueSafe(pa2);
+			gs.cycle();
+			checkObservation(gs, 0, "cycle " + cycle);
+		}
+	}
+
+	private static void testGame(final String map, final AI ai1, final AI ai2, final boolean partiallyObservable) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, UTT), UTT);
+		for (int cycle = 0; cycle < MAX_CYCLES && !gs.gameover(); cycle++) {
+			if (gs.isComplete()) {
+				gs.cycle();
+			} else {
+				gs.issueSafe(ai1.getAction(0, gs));
+				gs.issueSafe(ai2.getAction(1, gs));
+				checkObservation(gs, 0, map + " issue " + cycle);
+				gs.cycle();
+			}
+			// player 0 is observed every cycle, and player 1 only every few cycles, so that
+			// changes accumulate:
+			checkObservation(gs, 0, map + " cycle " + cycle);
+			if (cycle % 7 == 0) checkObservation(gs, 1, map + " cycle " + cycle);
+			if (partiallyObservable) {
+				for (int player = 0; player < 2; player++) {
+					final GameState pogs = new PartiallyObservableGameState(gs, player);
+					checkObservation(pogs, player, map + " partially observable cycle " + cycle);
+				}
+			}
+		}
+	}
+
+	private static void checkObservation(final GameState gs, final int player, final String message) {
+		final int[][][] expected = computeObservation(gs, player);
+		final int[][][] observation = gs.getVectorObservation(player);
+		assertArrayEquals(message, expected, observation);
+
+		// the flat version:
+		final int height = gs.getPhysicalGameState().getHeight();
+		final int width = gs.getPhysicalGameState().getWidth();
+		final int offset = 3;
+		final IntBuffer buffer = IntBuffer.allocate(offset + expected.length * height * width);
+		gs.getVectorObservation(player, buffer, offset);
+		for (int f = 0; f < expected.length; f++) {
+			for (int y = 0; y < height; y++) {
+				final int[] row = new int[width];
+				for (int x = 0; x < width; x++) {
+					row[x] = buffer.get(offset + (f * height + y) * width + x);
+				}
+				assertArrayEquals(message + " flat", expected[f][y], row);
+			}
+		}
+	}
+
+	/**
+	 * Computes a vector observation from scratch, as described in
+	 * {@link GameState#getVectorObservation(int)}
+	 */
+	private static int[][][] computeObservation(final GameState gs, final int player) {
+		final PhysicalGameState pgs = gs.getPhysicalGameState();
+		final boolean partiallyObservable = gs instanceof PartiallyObservableGameState;
+		final int[][][] observation = new int[partiallyObservable ? 8 : 6][pgs.getHeight()][pgs.getWidth()];
+		for (final Unit u : pgs.getUnits()) {
+			final int x = u.getX();
+			final int y = u.getY();
+			observation[0][y][x] = u.getHitPoints();
+			observation[1][y][x] = u.getResources();
+			if (u.getPlayer() >= 0) {
+				observation[2][y][x] = ((u.getPlayer() + player) % 2) + 1;
+			}
+			observation[3][y][x] = u.getType().ID + 1;
+			final UnitActionAssignment uaa = gs.getActionAssignment(u);
+			if (uaa != null) {
+				observation[4][y][x] = uaa.action.getType();
+			}
+			if (partiallyObservable && u.getPlayer() >= 0) {
+				final int plane = u.getPlayer() == player ? 6 : 7;
+				final int r = u.getType().sightRadius;
+				for (int y2 = 0; y2 < pgs.getHeight(); y2++) {
+					for (int x2 = 0; x2 < pgs.getWidth(); x2++) {
+						if ((x2 - x) * (x2 - x) + (y2 - y) * (y2 - y) <= r * r) {
+							observation[plane][y2][x2] = 1;
+						}
+					}
+				}
+			}
+		}
+		for (int y = 0; y < pgs.getHeight(); y++) {
+			for (int x = 0; x < pgs.getWidth(); x++) {
+				observation[5][y][x] = pgs.getTerrain(x, y);
+			}
+		}
+		return observation;
+	}
+}
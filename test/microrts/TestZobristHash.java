@@ -0,0 +1,147 @@
+package microrts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UndoLog;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Unit tests to verify that the Zobrist hash of a {@link GameState}, which is
+ * updated incrementally by issue, cycle, removeUnit and undo, is always equal
+ * to the hash computed from scratch.
+ */
+public class TestZobristHash {
+
+	private static final String[] MAPS = {
+		"maps/8x8/basesWorkers8x8.xml",
+		"maps/16x16/basesWorkers16x16.xml",
+		"maps/melee14x12Mixed18.xml",
+	};
+
+	/** Maximum number of cycles of each game */
+	private static final int MAX_CYCLES = 1000;
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testIssueAndCycle() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		for (final String map : MAPS) {
+			// scripted AIs attack, harvest and produce units, random ones create move conflicts:
+			testGame(map, utt, new WorkerRush(utt), new LightRush(utt));
+			testGame(map, utt, new RandomBiasedAI(), new RandomBiasedAI());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testUndo() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		for (final String map : MAPS) {
+			final GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+			final AI ai1 = new WorkerRush(utt);
+			final AI ai2 = new RandomBiasedAI();
+			gs.getHash();
+
+			while (!gs.gameover() && gs.getTime() < MAX_CYCLES) {
+				final PlayerAction pa1 = ai1.getAction(0, gs);
+				final PlayerAction pa2 = ai2.getAction(1, gs);
+				final long original = gs.getHash();
+
+				// issue and play several cycles, and then undo them all:
+				final List<UndoLog> logs = new ArrayList<UndoLog>();
+				logs.add(gs.issueWithUndo(pa1));
+				assertHash(gs);
+				logs.add(gs.issueWithUndo(pa2));
+				assertHash(gs);
+				for (int i = 0; i < 5 && !gs.gameover(); i++) {
+					logs.add(gs.cycleWithUndo());
+					assertHash(gs);
+				}
+				for (int i = logs.size() - 1; i >= 0; i--) {
+					gs.undo(logs.get(i));
+					assertHash(gs);
+				}
+				assertEquals(original, gs.getHash());
+
+				gs.issueSafe(pa1);
+				gs.issueSafe(pa2);
+				gs.cycle();
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("static-method")
+	public void testCloneAndRemoveUnit() throws Exception {
+		final UnitTypeTable utt = new UnitTypeTable();
+		final GameState gs = new GameState(PhysicalGameState.load(MAPS[1], utt), utt);
+		final AI ai1 = new WorkerRush(utt);
+		final AI ai2 = new LightRush(utt);
+		gs.getHash();
+
+		while (!gs.gameover() && gs.getTime() < 300) {
+			final PlayerAction pa1 = ai1.getAction(0, gs);
+			final GameState gs2 = gs.cloneIssue(pa1);
+			assertHash(gs2);
+			gs.issueSafe(pa1);
+			gs.issueSafe(ai2.getAction(1, gs));
+			gs.cycle();
+
+			// removing a unit (with or without an action assigned) from a clone:
+			final GameState gs3 = gs.clone();
+			assertEquals(gs.getHash(), gs3.getHash());
+			final Unit u = gs3.getUnits().get(gs.getTime() % gs3.getUnits().size());
+			gs3.removeUnit(u);
+			assertHash(gs3);
+			assertHash(gs);
+		}
+	}
+
+	/**
+	 * Plays a game checking the hash after each call to issue and cycle
+	 * @param map
+	 * @param utt
+	 * @param ai1
+	 * @param ai2
+	 * @throws Exception
+	 */
+	private static void testGame(final String map, final UnitTypeTable utt, final AI ai1, final AI ai2) throws Exception {
+		final GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+		boolean gameOver = false;
+		// from here on, the hash is updated incrementally:
+		gs.getHash();
+
+		while (!gameOver && gs.getTime() < MAX_CYCLES) {
+			gs.issueSafe(ai1.getAction(0, gs));
+			assertHash(gs);
+			gs.issueSafe(ai2.getAction(1, gs));
+			assertHash(gs);
+			gameOver = gs.cycle();
+			assertHash(gs);
+		}
+	}
+
+	/**
+	 * Checks that the hash of the state is equal to the one computed from scratch
+	 * @param gs
+	 */
+	private static void assertHash(final GameState gs) {
+		final GameState recomputed = gs.clone();
+		recomputed.invalidateHash();
+		assertEquals("Hash differs from a full recompute at time " + gs.getTime(),
+				recomputed.getHash(), gs.getHash());
+	}
+}